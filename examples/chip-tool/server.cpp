@@ -4,6 +4,10 @@
 #include <transport/UDP.h>
 
 #include <cassert>
+#include <inttypes.h>
+#include <sstream>
+#include <stdlib.h>
+#include <string.h>
 
 #include "attribute-storage.h"
 #include "gen/attribute-id.h"
@@ -12,7 +16,7 @@
 #include "util.h"
 #include <app/chip-zcl-zpro-codec.h>
 
-constexpr chip::NodeId kLocalNodeId = 12344321;
+constexpr chip::NodeId kDefaultLocalNodeId = 12344321;
 
 using namespace chip;
 using namespace chip::Inet;
@@ -20,7 +24,26 @@ using namespace chip::Transport;
 
 namespace {
 chip::SecureSessionMgr<chip::Transport::UDP> sessions;
-}
+
+struct ServerArgs
+{
+    NodeId localNodeId = kDefaultLocalNodeId;
+    uint16_t port      = CHIP_PORT;
+    bool quiet         = false;
+};
+
+ServerArgs gServerArgs;
+} // namespace
+
+// Per-message output, turned off with --quiet so that the server can take load.
+#define LOG_MESSAGE(...)                                                                                                           \
+    do                                                                                                                             \
+    {                                                                                                                              \
+        if (!gServerArgs.quiet)                                                                                                    \
+        {                                                                                                                          \
+            printf(__VA_ARGS__);                                                                                                   \
+        }                                                                                                                          \
+    } while (0)
 
 extern "C" {
 void emberAfPostAttributeChangeCallback(uint8_t endpoint, EmberAfClusterId clusterId, EmberAfAttributeId attributeId, uint8_t mask,
@@ -44,7 +67,7 @@ void emberAfPostAttributeChangeCallback(uint8_t endpoint, EmberAfClusterId clust
     }
 
     // At this point we can assume that value points to a boolean value.
-    printf("OnOff: %d\n", value[0]);
+    LOG_MESSAGE("OnOff: %d\n", value[0]);
 }
 }
 
@@ -55,6 +78,7 @@ public:
     void OnMessageReceived(const MessageHeader & header, Transport::PeerConnectionState * state, System::PacketBuffer * buffer,
                            SecureSessionMgrBase * mgr) override
     {
+        CHIP_ERROR err;
         const size_t data_len = buffer->DataLength();
         char src_addr[PeerAddress::kMaxToStringSize];
 
@@ -66,10 +90,23 @@ public:
 
         state->GetPeerAddress().ToString(src_addr, sizeof(src_addr));
 
-        printf("Packet received from %s: %zu bytes\n", src_addr, static_cast<size_t>(data_len));
+        LOG_MESSAGE("Packet received from %s: %zu bytes\n", src_addr, static_cast<size_t>(data_len));
 
-        HandleDataModelMessage(header, buffer, mgr);
-        buffer = NULL;
+        // Echo the messages that cannot be data model messages, as the wifi-echo server does.
+        if (ContentMayBeADataModelMessage(buffer))
+        {
+            HandleDataModelMessage(header, buffer, mgr);
+            buffer = NULL;
+        }
+        else
+        {
+            err    = mgr->SendMessage(header.GetSourceNodeId().Value(), buffer);
+            buffer = NULL;
+            if (err != CHIP_NO_ERROR)
+            {
+                printf("Unable to echo back to client: %s\n", ErrorStr(err));
+            }
+        }
 
     exit:
         // SendTo calls Free on the buffer without an AddRef, if SendTo was not called, free the buffer.
@@ -85,6 +122,15 @@ public:
     }
 
 private:
+    /**
+     * Data model messages start with the APS frame control, which is at most 0x03; echo messages
+     * generally don't.
+     */
+    bool ContentMayBeADataModelMessage(System::PacketBuffer * buffer)
+    {
+        return buffer->DataLength() > 0 && buffer->Start()[0] < 0x04;
+    }
+
     /**
      * Handle a message that should be processed via our data model processing
      * codepath.
@@ -98,11 +144,11 @@ private:
         bool ok = extractApsFrame(buffer->Start(), buffer->DataLength(), &frame);
         if (ok)
         {
-            printf("APS frame processing success!\n");
+            LOG_MESSAGE("APS frame processing success!\n");
         }
         else
         {
-            printf("APS frame processing failure\n");
+            LOG_MESSAGE("APS frame processing failure\n");
             System::PacketBuffer::Free(buffer);
             return;
         }
@@ -120,11 +166,11 @@ private:
 
         if (ok)
         {
-            printf("Data model processing success!\n");
+            LOG_MESSAGE("Data model processing success!\n");
         }
         else
         {
-            printf("Data model processing failure\n");
+            LOG_MESSAGE("Data model processing failure\n");
         }
     }
 };
@@ -146,8 +192,9 @@ void StartServer(chip::SecureSessionMgr<chip::Transport::UDP> * sessions)
     CHIP_ERROR err = CHIP_NO_ERROR;
     Optional<Transport::PeerAddress> peer(Transport::Type::kUndefined);
 
-    err = sessions->Init(kLocalNodeId, &DeviceLayer::SystemLayer,
-                         UdpListenParameters(&DeviceLayer::InetLayer).SetAddressType(kIPAddressType_IPv6));
+    err = sessions->Init(
+        gServerArgs.localNodeId, &DeviceLayer::SystemLayer,
+        UdpListenParameters(&DeviceLayer::InetLayer).SetAddressType(kIPAddressType_IPv6).SetListenPort(gServerArgs.port));
     SuccessOrExit(err);
 
     err = sessions->NewPairing(Optional<NodeId>::Value(kUndefinedNodeId), peer, 0, 0, &gTestPairing);
@@ -162,12 +209,73 @@ exit:
     }
     else
     {
-        printf("Lock Server Listening...\n");
+        printf("Lock Server Listening on port %u...\n", gServerArgs.port);
+        fflush(stdout);
     }
 }
 
-int main()
+void ShowUsage(const char * executable)
 {
+    fprintf(stderr,
+            "Usage: \n"
+            "  %s [--port port] [--node-id node-id] [--quiet]\n"
+            "  Options:\n"
+            "    --port     UDP port to listen on, defaults to %u\n"
+            "    --node-id  Node ID of the server, defaults to %" PRIu64 "\n"
+            "    --quiet    Do not print a line per message received\n",
+            executable, CHIP_PORT, kDefaultLocalNodeId);
+}
+
+template <typename T>
+bool ParseNumber(const char * str, T * value)
+{
+    std::stringstream ss(str);
+    ss >> *value;
+    return !ss.fail() && ss.eof();
+}
+
+bool DetermineServerArgs(int argc, char * argv[], ServerArgs * serverArgs)
+{
+    for (int i = 1; i < argc; i++)
+    {
+        if (strcmp(argv[i], "--quiet") == 0)
+        {
+            serverArgs->quiet = true;
+        }
+        else if (strcmp(argv[i], "--port") == 0 && i + 1 < argc)
+        {
+            if (!ParseNumber(argv[++i], &serverArgs->port))
+            {
+                fputs("Error: Invalid port\n", stderr);
+                return false;
+            }
+        }
+        else if (strcmp(argv[i], "--node-id") == 0 && i + 1 < argc)
+        {
+            if (!ParseNumber(argv[++i], &serverArgs->localNodeId) || serverArgs->localNodeId == kUndefinedNodeId)
+            {
+                fputs("Error: Invalid node ID\n", stderr);
+                return false;
+            }
+        }
+        else
+        {
+            fprintf(stderr, "Unknown option: %s\n", argv[i]);
+            return false;
+        }
+    }
+
+    return true;
+}
+
+int main(int argc, char * argv[])
+{
+    if (!DetermineServerArgs(argc, argv, &gServerArgs))
+    {
+        ShowUsage(argv[0]);
+        return EXIT_FAILURE;
+    }
+
     chip::DeviceLayer::PlatformMgr().InitChipStack();
 
     // Init ZCL Data Model
@@ -95,11 +95,20 @@ def main():
       dest='outfile',
       required=True,
       help='Output file containing a list of classes')
+  parser.add_argument(
+      '--classpath',
+      dest='classpath',
+      action='append',
+      default=[],
+      help='Jar or directory to compile against; may be repeated')
   parser.add_argument(
       'rest', metavar='JAVAC_ARGS', nargs='*', help='Argumets to pass to javac')
 
   args = parser.parse_args()
-  retcode = subprocess.check_call([java_path] + args.rest)
+  classpath_args = []
+  if args.classpath:
+    classpath_args = ['-classpath', os.pathsep.join(args.classpath)]
+  retcode = subprocess.check_call([java_path] + classpath_args + args.rest)
   if retcode != EXIT_SUCCESS:
     return retcode
 
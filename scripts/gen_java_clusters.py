@@ -0,0 +1,225 @@
+#!/usr/bin/env python
+
+# Copyright (c) 2020 Project CHIP Authors
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+#
+#    Description:
+#      Generates the Java cluster command encoders of the device controller
+#      (package chip.devicecontroller.clusters) from the generated ZCL client
+#      command macros, for the clusters implemented under src/app/clusters.
+#
+
+import optparse
+import os
+import re
+import sys
+
+# Clusters implemented under src/app/clusters, by cluster ID macro name.
+CLUSTERS = [
+    'BASIC',
+    'IDENTIFY',
+    'GROUPS',
+    'SCENES',
+    'ON_OFF',
+    'LEVEL_CONTROL',
+    'COLOR_CONTROL',
+    'DOOR_LOCK',
+    'BARRIER_CONTROL',
+    'IAS_ZONE',
+]
+
+# emberAfFillExternalBuffer format characters, mapped to the Java parameter
+# type and the CommandBuffer method writing it.  'b' is a buffer whose length
+# is given by the following macro argument.
+FORMATS = {
+    'u': ('int', 'putUint8'),
+    'v': ('int', 'putUint16'),
+    'w': ('long', 'putUint32'),
+    's': ('byte[]', 'putString'),
+    'b': ('byte[]', 'putBytes'),
+}
+
+LICENSE = '''/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+'''
+
+MACRO_RE = re.compile(
+    r'/\*\*(?P<doc>(?:(?!\*/).)*)\*/\s*'
+    r'#define emberAfFillCommand(?P<name>\w+)\([^)]*\)\s*\\\s*'
+    r'emberAfFillExternalBuffer\(\(ZCL_CLUSTER_SPECIFIC_COMMAND \| ZCL_FRAME_CONTROL_CLIENT_TO_SERVER\),\s*'
+    r'(?P<cluster>\w+),\s*\\?\s*(?P<command>\w+),\s*"(?P<format>[^"]*)"', re.S)
+PARAM_RE = re.compile(r'@param (\w+) ([\w*]+)')
+DEFINE_RE = re.compile(r'#define (\w+) (0x[0-9A-Fa-f]+)')
+
+MAX_LINE_LENGTH = 100
+
+
+def lower_camel(name):
+    if name.isupper():
+        return name.lower()
+    return name[0].lower() + name[1:]
+
+
+def constant_to_camel(name):
+    return ''.join(word.capitalize() for word in name.split('_'))
+
+
+def read_defines(path):
+    with open(path) as f:
+        return dict(DEFINE_RE.findall(f.read()))
+
+
+def read_commands(path, cluster_ids, command_ids):
+    clusters = dict((name, []) for name in CLUSTERS)
+
+    with open(path) as f:
+        macros = f.read()
+
+    for match in MACRO_RE.finditer(macros):
+        cluster = match.group('cluster')[len('ZCL_'):-len('_CLUSTER_ID')]
+        if cluster not in clusters:
+            continue
+
+        # emberAfFillCommand<Cluster>Cluster<Command>
+        prefix = constant_to_camel(cluster) + 'Cluster'
+        name = match.group('name')
+        if not name.startswith(prefix):
+            raise ValueError('Unexpected command macro name: ' + name)
+
+        params = PARAM_RE.findall(match.group('doc'))
+        args = []
+        for fmt in match.group('format'):
+            if fmt not in FORMATS:
+                raise ValueError('Unsupported format %r in %s' % (fmt, name))
+            param_name, param_type = params.pop(0)
+            java_type, method = FORMATS[fmt]
+            if param_type == 'int16_t':
+                method = 'putInt16'
+            args.append((java_type, lower_camel(param_name), method))
+            if fmt == 'b':
+                # The buffer length is implied by the Java array.
+                params.pop(0)
+
+        clusters[cluster].append({
+            'name': name[len(prefix):],
+            'id': command_ids[match.group('command')],
+            'constant': match.group('command')[len('ZCL_'):],
+            'args': args,
+        })
+
+    return [(cluster, cluster_ids['ZCL_%s_CLUSTER_ID' % cluster], clusters[cluster]) for cluster in CLUSTERS]
+
+
+def method_signature(name, params):
+    head = '  public static void %s(' % name
+    one_line = head + ', '.join(params) + ') {'
+    if len(one_line) <= MAX_LINE_LENGTH:
+        return [one_line]
+
+    continuation = '      ' + ', '.join(params) + ') {'
+    if len(continuation) <= MAX_LINE_LENGTH:
+        return [head, continuation]
+
+    lines = [head]
+    for i, param in enumerate(params):
+        lines.append('      ' + param + (') {' if i == len(params) - 1 else ','))
+    return lines
+
+
+def generate_cluster(program, cluster, cluster_id, commands):
+    class_name = constant_to_camel(cluster) + 'Cluster'
+    lines = [LICENSE.rstrip('\n')]
+    lines.append('')
+    lines.append('// DO NOT EDIT THIS FILE! This file is automatically-generated by')
+    lines.append('// the \'%s\' script.' % program)
+    lines.append('')
+    lines.append('package chip.devicecontroller.clusters;')
+    lines.append('')
+    lines.append('import chip.devicecontroller.CommandBuffer;')
+    lines.append('')
+    lines.append('/** Encoders for the client-to-server commands of the %s cluster. */' %
+                 ' '.join(word.capitalize() for word in cluster.split('_')))
+    lines.append('public final class %s {' % class_name)
+    lines.append('')
+    lines.append('  public static final int CLUSTER_ID = %s;' % cluster_id)
+
+    for command in commands:
+        lines.append('  public static final int %s = %s;' % (command['constant'], command['id']))
+
+    lines.append('')
+    lines.append('  private %s() {}' % class_name)
+
+    for command in commands:
+        params = ['CommandBuffer buffer', 'int endpoint'] + ['%s %s' % (arg[0], arg[1]) for arg in command['args']]
+        lines.append('')
+        lines.append('  /** Encodes the %s command for the given endpoint. */' % command['name'])
+        lines.extend(method_signature('encode' + command['name'], params))
+        begin = '    buffer.beginClusterCommand(CLUSTER_ID, endpoint, %s);' % command['constant']
+        if len(begin) <= MAX_LINE_LENGTH:
+            lines.append(begin)
+        else:
+            lines.append('    buffer.beginClusterCommand(')
+            lines.append('        CLUSTER_ID, endpoint, %s);' % command['constant'])
+        for java_type, name, method in command['args']:
+            lines.append('    buffer.%s(%s);' % (method, name))
+        lines.append('  }')
+
+    lines.append('}')
+    lines.append('')
+
+    return class_name, '\n'.join(lines)
+
+
+def main(argv):
+    parser = optparse.OptionParser()
+    parser.add_option('--gen-dir', dest='gen_dir', help='directory holding the generated ZCL client headers',
+                      default='examples/chip-tool/gen')
+    parser.add_option('--output-dir', dest='output_dir', help='directory to write the Java sources to',
+                      default='src/controller/java/src/chip/devicecontroller/clusters')
+    options, _ = parser.parse_args(argv)
+
+    cluster_ids = read_defines(os.path.join(options.gen_dir, 'cluster-id.h'))
+    command_ids = read_defines(os.path.join(options.gen_dir, 'command-id.h'))
+    clusters = read_commands(os.path.join(options.gen_dir, 'client-command-macro.h'), cluster_ids, command_ids)
+
+    if not os.path.isdir(options.output_dir):
+        os.makedirs(options.output_dir)
+
+    program = os.path.join('scripts', os.path.basename(argv[0]))
+    for cluster, cluster_id, commands in clusters:
+        class_name, source = generate_cluster(program, cluster, cluster_id, commands)
+        with open(os.path.join(options.output_dir, class_name + '.java'), 'w') as f:
+            f.write(source)
+
+    return 0
+
+
+if __name__ == '__main__':
+    sys.exit(main(sys.argv))
@@ -17,6 +17,8 @@
  */
 package com.google.chip.chiptool
 
+import android.os.Handler
+import android.os.Looper
 import chip.devicecontroller.ChipDeviceController
 
 /** Lazily instantiates [ChipDeviceController] and holds a reference to it. */
@@ -26,7 +28,11 @@ object ChipClient {
 
   fun getDeviceController(): ChipDeviceController {
     if (!this::chipDeviceController.isInitialized) {
-      chipDeviceController = ChipDeviceController()
+      chipDeviceController = ChipDeviceController().apply {
+        // Listeners update views, so they run on the main thread.
+        val mainHandler = Handler(Looper.getMainLooper())
+        setCallbackExecutor { mainHandler.post(it) }
+      }
     }
     return chipDeviceController
   }
@@ -25,7 +25,7 @@ class OnOffClientFragment : Fragment(), ChipDeviceController.CompletionListener
       savedInstanceState: Bundle?
   ): View {
     return inflater.inflate(R.layout.on_off_client_fragment, container, false).apply {
-      deviceController.setCompletionListener(this@OnOffClientFragment)
+      deviceController.addCompletionListener(this@OnOffClientFragment)
 
       onBtn.setOnClickListener { sendOnCommandClick() }
       offBtn.setOnClickListener { sendOffCommandClick() }
@@ -33,6 +33,11 @@ class OnOffClientFragment : Fragment(), ChipDeviceController.CompletionListener
     }
   }
 
+  override fun onDestroyView() {
+    super.onDestroyView()
+    deviceController.removeCompletionListener(this)
+  }
+
   override fun onConnectDeviceComplete() {
     sendCommand()
   }
@@ -0,0 +1,133 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.google.chip.chiptool.commissioner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Border Agents resolved so far, by the extended PAN ID of their network and then by their service
+ * name. An agent is fresh for a TTL after it is resolved, and left out once it has expired, so that
+ * the services found again in that time need not be resolved again.
+ *
+ * <p>It is only accessed on the main thread.
+ */
+final class BorderAgentCache {
+
+  private static final class Entry {
+    final BorderAgentInfo borderAgent;
+    final long expiresAtMillis;
+
+    Entry(BorderAgentInfo borderAgent, long expiresAtMillis) {
+      this.borderAgent = borderAgent;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+  }
+
+  private final long ttlMillis;
+
+  // Entries by hex extended PAN ID, then by service name.
+  private final Map<String, Map<String, Entry>> networks = new LinkedHashMap<>();
+
+  // Hex extended PAN IDs by service name, as the lost services are only known by their name.
+  private final Map<String, String> extendedPanIds = new HashMap<>();
+
+  BorderAgentCache(long ttlMillis) {
+    this.ttlMillis = ttlMillis;
+  }
+
+  /** Returns whether the service with the given name was resolved less than a TTL ago. */
+  boolean isFresh(String serviceName, long nowMillis) {
+    Entry entry = get(serviceName);
+    return entry != null && entry.expiresAtMillis > nowMillis;
+  }
+
+  /**
+   * Caches the Border Agent resolved from the service with the given name, and returns the one
+   * cached for it before, if any.
+   */
+  BorderAgentInfo put(String serviceName, BorderAgentInfo borderAgent, long nowMillis) {
+    BorderAgentInfo previous = remove(serviceName);
+
+    String extendedPanId = toHex(borderAgent.extendedPanId);
+    Map<String, Entry> borderAgents = networks.get(extendedPanId);
+    if (borderAgents == null) {
+      borderAgents = new LinkedHashMap<>();
+      networks.put(extendedPanId, borderAgents);
+    }
+    borderAgents.put(serviceName, new Entry(borderAgent, nowMillis + ttlMillis));
+    extendedPanIds.put(serviceName, extendedPanId);
+    return previous;
+  }
+
+  /** Removes the Border Agent of the service with the given name, and returns it if cached. */
+  BorderAgentInfo remove(String serviceName) {
+    String extendedPanId = extendedPanIds.remove(serviceName);
+    if (extendedPanId == null) {
+      return null;
+    }
+
+    Map<String, Entry> borderAgents = networks.get(extendedPanId);
+    Entry entry = borderAgents.remove(serviceName);
+    if (borderAgents.isEmpty()) {
+      networks.remove(extendedPanId);
+    }
+    return entry.borderAgent;
+  }
+
+  /** Evicts the expired Border Agents, and returns the others, grouped by network. */
+  List<BorderAgentInfo> getFreshBorderAgents(long nowMillis) {
+    List<BorderAgentInfo> freshBorderAgents = new ArrayList<>();
+    Iterator<Map<String, Entry>> networkIterator = networks.values().iterator();
+    while (networkIterator.hasNext()) {
+      Map<String, Entry> borderAgents = networkIterator.next();
+      Iterator<Map.Entry<String, Entry>> iterator = borderAgents.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Entry> entry = iterator.next();
+        if (entry.getValue().expiresAtMillis > nowMillis) {
+          freshBorderAgents.add(entry.getValue().borderAgent);
+        } else {
+          extendedPanIds.remove(entry.getKey());
+          iterator.remove();
+        }
+      }
+      if (borderAgents.isEmpty()) {
+        networkIterator.remove();
+      }
+    }
+    return freshBorderAgents;
+  }
+
+  private Entry get(String serviceName) {
+    String extendedPanId = extendedPanIds.get(serviceName);
+    return extendedPanId == null ? null : networks.get(extendedPanId).get(serviceName);
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b & 0xFF));
+    }
+    return hex.toString();
+  }
+}
@@ -26,25 +26,68 @@ import android.net.nsd.NsdServiceInfo;
 import android.net.wifi.WifiManager;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.RequiresPermission;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * Discovers the Border Agents of the Thread networks around, and lists their networks in a {@link
+ * NetworkAdapter}.
+ *
+ * <p>NsdManager only resolves one service at a time, so the services found are queued and resolved
+ * one after the other, with a few retries for those which fail. The Border Agents resolved are
+ * cached for a TTL, shared by all the discoverers, so that the networks show up at once when the
+ * discovery starts again, and the services found again in that time are not resolved again. Lost
+ * services are removed from the cache and from the adapter.
+ */
 public class BorderAgentDiscoverer implements NsdManager.DiscoveryListener {
 
   private static final String TAG = BorderAgentDiscoverer.class.getSimpleName();
 
   private static final String SERVICE_TYPE = "_meshcop._udp";
-  private static final String KEY_DISCRIMINATOR = "discriminator";
-  private static final String KEY_NETWORK_NAME = "nn";
-  private static final String KEY_EXTENDED_PAN_ID = "xp";
 
-  private static final byte[] PSKC = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+  private static final int MAX_RESOLVE_ATTEMPTS = 3;
+  private static final long RESOLVE_RETRY_DELAY_MILLIS = 200;
+
+  // The TTL mDNS gives to the SRV records of a service.
+  private static final long CACHE_TTL_MILLIS = 120 * 1000;
+
+  private static final BorderAgentCache cache = new BorderAgentCache(CACHE_TTL_MILLIS);
 
   private WifiManager.MulticastLock wifiMulticastLock;
   private NsdManager nsdManager;
   private NetworkAdapter networkAdapter;
 
+  // NsdManager calls back on its own thread; the queue, the cache and the adapter are all only
+  // accessed on the main thread.
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  // Services waiting to be resolved, by name, and the one being resolved.
+  private final Map<String, ResolveRequest> pendingResolves = new LinkedHashMap<>();
+  private ResolveRequest activeResolve;
+
+  private boolean started;
+
+  private final Runnable resolveNext =
+      new Runnable() {
+        @Override
+        public void run() {
+          resolveNext();
+        }
+      };
+
+  private static final class ResolveRequest {
+    final NsdServiceInfo serviceInfo;
+    int attempts;
+
+    ResolveRequest(NsdServiceInfo serviceInfo) {
+      this.serviceInfo = serviceInfo;
+    }
+  }
+
   @RequiresPermission(permission.INTERNET)
   public BorderAgentDiscoverer(Context context, NetworkAdapter networkAdapter) {
     WifiManager wifi = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
@@ -59,6 +102,11 @@ public class BorderAgentDiscoverer implements NsdManager.DiscoveryListener {
     wifiMulticastLock.setReferenceCounted(true);
     wifiMulticastLock.acquire();
 
+    started = true;
+    for (BorderAgentInfo borderAgent : cache.getFreshBorderAgents(SystemClock.elapsedRealtime())) {
+      networkAdapter.addNetwork(new NetworkInfo(borderAgent));
+    }
+
     nsdManager.discoverServices(
         BorderAgentDiscoverer.SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, this);
   }
@@ -66,6 +114,10 @@ public class BorderAgentDiscoverer implements NsdManager.DiscoveryListener {
   public void stop() {
     nsdManager.stopServiceDiscovery(this);
 
+    started = false;
+    pendingResolves.clear();
+    handler.removeCallbacks(resolveNext);
+
     if (wifiMulticastLock != null) {
       wifiMulticastLock.release();
       wifiMulticastLock = null;
@@ -83,69 +135,139 @@ public class BorderAgentDiscoverer implements NsdManager.DiscoveryListener {
   }
 
   @Override
-  public void onServiceFound(NsdServiceInfo nsdServiceInfo) {
+  public void onServiceFound(final NsdServiceInfo nsdServiceInfo) {
     Log.d(TAG, "a Border Agent service found");
 
+    handler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            String serviceName = nsdServiceInfo.getServiceName();
+            if (!started
+                || cache.isFresh(serviceName, SystemClock.elapsedRealtime())
+                || pendingResolves.containsKey(serviceName)
+                || (activeResolve != null
+                    && activeResolve.serviceInfo.getServiceName().equals(serviceName))) {
+              return;
+            }
+
+            pendingResolves.put(serviceName, new ResolveRequest(nsdServiceInfo));
+            resolveNext();
+          }
+        });
+  }
+
+  @Override
+  public void onServiceLost(final NsdServiceInfo nsdServiceInfo) {
+    Log.d(TAG, "a Border Agent service is gone");
+
+    handler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            String serviceName = nsdServiceInfo.getServiceName();
+            pendingResolves.remove(serviceName);
+
+            BorderAgentInfo borderAgent = cache.remove(serviceName);
+            if (started && borderAgent != null) {
+              networkAdapter.removeBorderAgent(borderAgent);
+            }
+          }
+        });
+  }
+
+  @Override
+  public void onStartDiscoveryFailed(String serviceType, int errorCode) {
+    Log.d(TAG, "start discovering Border Agent failed: " + errorCode);
+  }
+
+  @Override
+  public void onStopDiscoveryFailed(String serviceType, int errorCode) {
+    Log.d(TAG, "stop discovering Border Agent failed: " + errorCode);
+  }
+
+  private void resolveNext() {
+    if (!started || activeResolve != null || pendingResolves.isEmpty()) {
+      return;
+    }
+
+    Iterator<ResolveRequest> iterator = pendingResolves.values().iterator();
+    final ResolveRequest request = iterator.next();
+    iterator.remove();
+    activeResolve = request;
+    request.attempts++;
+
     nsdManager.resolveService(
-        nsdServiceInfo,
+        request.serviceInfo,
         new NsdManager.ResolveListener() {
           @Override
-          public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
+          public void onResolveFailed(final NsdServiceInfo serviceInfo, final int errorCode) {
             Log.e(
                 TAG,
                 String.format(
                     "failed to resolve service %s, error: %d", serviceInfo.toString(), errorCode));
+
+            handler.post(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    onResolveDone(request);
+                    if (started && request.attempts < MAX_RESOLVE_ATTEMPTS) {
+                      // Found again in the meantime, the service will be resolved anyway.
+                      String serviceName = serviceInfo.getServiceName();
+                      if (!pendingResolves.containsKey(serviceName)) {
+                        pendingResolves.put(serviceName, request);
+                      }
+                      handler.postDelayed(
+                          resolveNext, RESOLVE_RETRY_DELAY_MILLIS * request.attempts);
+                    } else {
+                      resolveNext();
+                    }
+                  }
+                });
           }
 
           @Override
-          public void onServiceResolved(NsdServiceInfo serviceInfo) {
+          public void onServiceResolved(final NsdServiceInfo serviceInfo) {
             Log.d(TAG, "successfully resolved service " + serviceInfo.toString());
 
-            Map<String, byte[]> attrs = serviceInfo.getAttributes();
-
-            String discriminator = "CC11BB22";
-
-            try {
-              if (attrs.containsKey(KEY_DISCRIMINATOR)) {
-                discriminator = new String(attrs.get(KEY_DISCRIMINATOR));
-              }
-              final BorderAgentInfo borderAgent =
-                  new BorderAgentInfo(
-                      discriminator,
-                      new String(attrs.get(KEY_NETWORK_NAME)),
-                      attrs.get(KEY_EXTENDED_PAN_ID),
-                      serviceInfo.getHost(),
-                      serviceInfo.getPort(),
-                      PSKC);
-
-              Handler handler = new Handler(Looper.getMainLooper());
-              handler.post(
-                  new Runnable() {
-                    @RequiresPermission(Manifest.permission.CAMERA)
-                    @Override
-                    public void run() {
-                      networkAdapter.addNetwork(new NetworkInfo(borderAgent));
-                    }
-                  });
-            } catch (Exception e) {
-              Log.e(TAG, "invalid Border Agent service: " + e.toString());
-            }
+            handler.post(
+                new Runnable() {
+                  @RequiresPermission(Manifest.permission.CAMERA)
+                  @Override
+                  public void run() {
+                    onResolveDone(request);
+                    addBorderAgent(serviceInfo);
+                    resolveNext();
+                  }
+                });
           }
         });
   }
 
-  @Override
-  public void onServiceLost(NsdServiceInfo nsdServiceInfo) {
-    Log.d(TAG, "a Border Agent service is gone");
+  private void onResolveDone(ResolveRequest request) {
+    if (activeResolve == request) {
+      activeResolve = null;
+    }
   }
 
-  @Override
-  public void onStartDiscoveryFailed(String serviceType, int errorCode) {
-    Log.d(TAG, "start discovering Border Agent failed: " + errorCode);
-  }
+  private void addBorderAgent(NsdServiceInfo serviceInfo) {
+    try {
+      BorderAgentInfo borderAgent =
+          BorderAgentInfo.fromAttributes(
+              serviceInfo.getAttributes(), serviceInfo.getHost(), serviceInfo.getPort());
 
-  @Override
-  public void onStopDiscoveryFailed(String serviceType, int errorCode) {
-    Log.d(TAG, "stop discovering Border Agent failed: " + errorCode);
+      BorderAgentInfo previousBorderAgent =
+          cache.put(serviceInfo.getServiceName(), borderAgent, SystemClock.elapsedRealtime());
+      if (!started) {
+        return;
+      }
+      if (previousBorderAgent != null) {
+        networkAdapter.removeBorderAgent(previousBorderAgent);
+      }
+      networkAdapter.addNetwork(new NetworkInfo(borderAgent));
+    } catch (Exception e) {
+      Log.e(TAG, "invalid Border Agent service: " + e.toString());
+    }
   }
 }
@@ -21,10 +21,20 @@ package com.google.chip.chiptool.commissioner;
 import android.os.Parcel;
 import android.os.Parcelable;
 import androidx.annotation.NonNull;
+import chip.devicecontroller.discovery.DnsSdService;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Map;
 
 public class BorderAgentInfo implements Parcelable {
+  private static final String KEY_DISCRIMINATOR = "discriminator";
+  private static final String KEY_NETWORK_NAME = "nn";
+  private static final String KEY_EXTENDED_PAN_ID = "xp";
+
+  private static final String DEFAULT_DISCRIMINATOR = "CC11BB22";
+
+  private static final byte[] PSKC = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+
   public String discriminator;
   public String networkName;
   public byte[] extendedPanId;
@@ -47,6 +57,36 @@ public class BorderAgentInfo implements Parcelable {
     this.pskc = pskc;
   }
 
+  /**
+   * Returns the Border Agent at the given host and port, with the given attributes of the TXT
+   * record of its _meshcop._udp service.
+   *
+   * @throws IllegalArgumentException if the network name or extended PAN ID is missing
+   */
+  public static BorderAgentInfo fromAttributes(
+      Map<String, byte[]> attrs, InetAddress host, int port) {
+    if (!attrs.containsKey(KEY_NETWORK_NAME) || !attrs.containsKey(KEY_EXTENDED_PAN_ID)) {
+      throw new IllegalArgumentException("missing network name or extended PAN ID");
+    }
+
+    String discriminator = DEFAULT_DISCRIMINATOR;
+    if (attrs.containsKey(KEY_DISCRIMINATOR)) {
+      discriminator = new String(attrs.get(KEY_DISCRIMINATOR));
+    }
+    return new BorderAgentInfo(
+        discriminator,
+        new String(attrs.get(KEY_NETWORK_NAME)),
+        attrs.get(KEY_EXTENDED_PAN_ID),
+        host,
+        port,
+        PSKC);
+  }
+
+  /** Returns the Border Agent of a _meshcop._udp service resolved by a DnsSdBrowser. */
+  public static BorderAgentInfo fromDnsSdService(DnsSdService service) {
+    return fromAttributes(service.getAttributes(), service.getHost(), service.getPort());
+  }
+
   protected BorderAgentInfo(Parcel in) {
     discriminator = in.readString();
     networkName = in.readString();
@@ -36,8 +36,14 @@ import io.openthread.commissioner.Error;
 import io.openthread.commissioner.ErrorCode;
 import io.openthread.commissioner.LogLevel;
 import io.openthread.commissioner.Logger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 class NativeCommissionerLogger extends Logger {
   private static final String TAG = "NativeCommissioner";
@@ -60,12 +66,13 @@ class NativeCommissionerHandler extends CommissionerHandler {
   @Override
   public String onJoinerRequest(ByteArray joinerId) {
     Log.d(TAG, "A joiner is requesting commissioning");
-    return commissionerWorker.getPskd();
+    return commissionerWorker.getPskd(joinerId);
   }
 
   @Override
   public void onJoinerConnected(ByteArray joinerId, Error error) {
     Log.d(TAG, "A joiner is connected");
+    commissionerWorker.onJoinerConnected(joinerId, error);
   }
 
   @Override
@@ -103,23 +110,52 @@ class NativeCommissionerHandler extends CommissionerHandler {
   }
 }
 
+/**
+ * Commissions the devices given in its input data onto a Thread network, under a single petition.
+ * The input holds either one device, under {@link Constants#KEY_DEVICE_INFO}, which lets any joiner
+ * in with its PSKd, or a batch of them, under {@link Constants#KEY_DEVICE_INFOS}: the steering data
+ * then only lets their joiners in, and each joiner is given the PSKd of its own device, so that
+ * they are commissioned in parallel.
+ *
+ * <p>The output holds the timestamps of the phases of the run, under the {@code KEY_TIMING_*} keys
+ * of {@link Constants}; see {@link CommissioningTimings}.
+ */
 public class CommissionerWorker extends Worker {
 
   private static final String TAG = CommissionerWorker.class.getSimpleName();
 
-  private CHIPDeviceInfo deviceInfo;
+  private static final int JOINER_TIMEOUT_SECONDS = 200;
+
+  private List<CHIPDeviceInfo> deviceInfos;
+  private boolean batch;
   private NetworkInfo networkInfo;
 
-  private AtomicBoolean curJoinerCommissioned = new AtomicBoolean(false);
+  // PSKds of the devices to commission, by hex Joiner ID; filled before the petition.
+  private final Map<String, String> pskds = new ConcurrentHashMap<>();
+
+  // Hex Joiner IDs of the devices commissioned so far, added to by the native commissioner.
+  private final Set<String> commissionedJoiners = ConcurrentHashMap.newKeySet();
+
+  // Counted down as the joiners are commissioned, to wake up the worker once they all are.
+  private volatile CountDownLatch joinersDone = new CountDownLatch(0);
+
+  private volatile CommissioningTimings timings = new CommissioningTimings();
 
   private static Commissioner nativeCommissioner;
 
   public CommissionerWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
     super(context, workerParams);
 
-    deviceInfo =
-        new Gson()
-            .fromJson(getInputData().getString(Constants.KEY_DEVICE_INFO), CHIPDeviceInfo.class);
+    String deviceInfosJson = getInputData().getString(Constants.KEY_DEVICE_INFOS);
+    if (deviceInfosJson != null) {
+      deviceInfos = Arrays.asList(new Gson().fromJson(deviceInfosJson, CHIPDeviceInfo[].class));
+      batch = true;
+    } else {
+      CHIPDeviceInfo deviceInfo =
+          new Gson()
+              .fromJson(getInputData().getString(Constants.KEY_DEVICE_INFO), CHIPDeviceInfo.class);
+      deviceInfos = Arrays.asList(deviceInfo);
+    }
     networkInfo =
         new Gson()
             .fromJson(getInputData().getString(Constants.KEY_NETWORK_INFO), NetworkInfo.class);
@@ -142,28 +178,86 @@ public class CommissionerWorker extends Worker {
     nativeCommissioner.init(config);
   }
 
-  String getPskd() {
-    return String.format("%09u", deviceInfo.getSetupPinCode());
+  /** Returns the PSKd of the device with the given Joiner ID, or an empty one to reject it. */
+  String getPskd(ByteArray joinerId) {
+    String hexJoinerId = toHex(joinerId);
+    timings.mark(hexJoinerId, CommissioningTimings.JoinerEvent.REQUEST);
+    if (!batch) {
+      return getPskd(deviceInfos.get(0));
+    }
+
+    String pskd = pskds.get(hexJoinerId);
+    if (pskd == null) {
+      Log.d(TAG, "Rejecting unknown joiner " + hexJoinerId);
+      return "";
+    }
+    return pskd;
   }
 
-  private ByteArray getJoinerId() {
+  private static String getPskd(CHIPDeviceInfo deviceInfo) {
+    return String.format("%09d", deviceInfo.getSetupPinCode());
+  }
+
+  private static byte[] getEui64(CHIPDeviceInfo deviceInfo) {
     int productId = deviceInfo.getProductId();
-    return new ByteArray(
-        new short[] {
-          0x00,
-          0x00,
-          0x00,
-          0x00,
-          (short) (productId >> 24),
-          (short) (productId >> 16),
-          (short) (productId >> 8),
-          (short) (productId & 0xff)
-        });
+    return new byte[] {
+      0x00,
+      0x00,
+      0x00,
+      0x00,
+      (byte) (productId >> 24),
+      (byte) (productId >> 16),
+      (byte) (productId >> 8),
+      (byte) (productId & 0xff)
+    };
+  }
+
+  /**
+   * Maps the Joiner ID of every device to its PSKd, and returns the steering data letting them all
+   * in, or null if two devices share a Joiner ID but not their PSKd, which no commissioner can tell
+   * apart. A single device lets any joiner in.
+   */
+  private ByteArray prepareJoiners() {
+    pskds.clear();
+    if (!batch) {
+      pskds.put("", getPskd(deviceInfos.get(0)));
+      return new ByteArray(new short[] {0xFF});
+    }
+
+    List<byte[]> joinerIds = new ArrayList<>();
+    for (CHIPDeviceInfo deviceInfo : deviceInfos) {
+      byte[] joinerId = SteeringData.joinerIdOf(getEui64(deviceInfo));
+      String pskd = getPskd(deviceInfo);
+      String previousPskd = pskds.put(toHex(joinerId), pskd);
+      if (previousPskd == null) {
+        joinerIds.add(joinerId);
+      } else if (!previousPskd.equals(pskd)) {
+        return null;
+      }
+    }
+    return new ByteArray(SteeringData.toUnsigned(SteeringData.forJoiners(joinerIds)));
+  }
+
+  private static String toHex(ByteArray bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (int i = 0; i < (int) bytes.size(); i++) {
+      hex.append(String.format("%02x", bytes.get(i) & 0xFF));
+    }
+    return hex.toString();
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b & 0xFF));
+    }
+    return hex.toString();
   }
 
   @NonNull
   @Override
   public Result doWork() {
+    timings = new CommissioningTimings();
     setProgressAsync(StateToData("commissioning..."));
 
     if (nativeCommissioner != null) {
@@ -176,55 +270,78 @@ public class CommissionerWorker extends Worker {
     // }
 
     String[] existingCommissionerId = new String[1];
+    timings.start(CommissioningTimings.Phase.PETITION);
     Error error =
         nativeCommissioner.petition(
             existingCommissionerId, networkInfo.getHost().getHostAddress(), networkInfo.getPort());
+    timings.end(CommissioningTimings.Phase.PETITION);
     if (error.getCode() != ErrorCode.kNone) {
       return errorToResult(error);
     }
 
     setProgressAsync(StateToData("commissioner connected"));
 
-    curJoinerCommissioned.set(false);
+    commissionedJoiners.clear();
 
-    ByteArray steeringData = new ByteArray(new short[] {0xFF});
-    // Commissioner.addJoiner(steeringData, getJoinerId());
+    ByteArray steeringData = prepareJoiners();
+    if (steeringData == null) {
+      resign();
+      return errorToResult(
+          new Error(ErrorCode.kInvalidArgs, "Devices with the same Joiner ID need the same PSKd"));
+    }
     CommissionerDataset commDataset = new CommissionerDataset();
     commDataset.setSteeringData(steeringData);
     commDataset.setPresentFlags(
         commDataset.getPresentFlags() | CommissionerDataset.kSteeringDataBit);
 
+    // Ready before the steering data lets the joiners in.
+    joinersDone = new CountDownLatch(pskds.size());
+
+    timings.start(CommissioningTimings.Phase.SET_DATASET);
     error = nativeCommissioner.setCommissionerDataset(commDataset);
+    timings.end(CommissioningTimings.Phase.SET_DATASET);
     if (error.getCode() != ErrorCode.kNone) {
-      nativeCommissioner.resign();
+      resign();
       return errorToResult(error);
     }
 
-    setProgressAsync(StateToData("waiting for new device...\nPSKD: " + getPskd()));
-
-    // Wait 200 seconds for a joiner.
-    for (int i = 0; i < 200; ++i) {
-      if (curJoinerCommissioned.get()) {
-        break;
-      }
+    if (pskds.size() == 1) {
+      setProgressAsync(
+          StateToData("waiting for new device...\nPSKD: " + pskds.values().iterator().next()));
+    } else {
+      setProgressAsync(StateToData("waiting for " + pskds.size() + " new devices..."));
+    }
 
-      try {
-        TimeUnit.SECONDS.sleep(1);
-      } catch (InterruptedException e) {
-        Log.d(TAG, "interrupted exception");
-      }
+    // Wait 200 seconds for the joiners, which all join in parallel.
+    try {
+      joinersDone.await(JOINER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Log.d(TAG, "interrupted exception");
+      Thread.currentThread().interrupt();
     }
 
-    if (!curJoinerCommissioned.get()) {
-      nativeCommissioner.resign();
-      return errorToResult(new Error(ErrorCode.kTimeout, "No joiner is pairing"));
+    if (commissionedJoiners.size() < pskds.size()) {
+      resign();
+      if (commissionedJoiners.isEmpty()) {
+        return errorToResult(new Error(ErrorCode.kTimeout, "No joiner is pairing"));
+      }
+      return errorToResult(
+          new Error(
+              ErrorCode.kTimeout,
+              "Only " + commissionedJoiners.size() + " of " + pskds.size() + " joiners paired"));
     }
 
-    nativeCommissioner.resign();
+    resign();
 
     return errorToResult(new Error(ErrorCode.kNone, ""));
   }
 
+  private void resign() {
+    timings.start(CommissioningTimings.Phase.RESIGN);
+    nativeCommissioner.resign();
+    timings.end(CommissioningTimings.Phase.RESIGN);
+  }
+
   @Override
   public void onStopped() {
     if (nativeCommissioner != null) {
@@ -234,6 +351,8 @@ public class CommissionerWorker extends Worker {
 
   private Result errorToResult(Error error) {
     Data.Builder dataBuilder = new Data.Builder();
+    timings.writeTo(dataBuilder);
+    Log.d(TAG, "Commissioning timings: " + timings);
 
     if (error.getCode() == ErrorCode.kNone) {
       dataBuilder.putString(Constants.KEY_COMMISSIONING_STATUS, "commission device success!");
@@ -242,7 +361,7 @@ public class CommissionerWorker extends Worker {
     } else {
       dataBuilder.putString(Constants.KEY_COMMISSIONING_STATUS, error.toString());
       dataBuilder.putBoolean(Constants.KEY_SUCCESS, false);
-      return Result.failure(StateToData(error.toString()));
+      return Result.failure(dataBuilder.build());
     }
   }
 
@@ -250,7 +369,22 @@ public class CommissionerWorker extends Worker {
     return new Data.Builder().putString(Constants.KEY_COMMISSIONING_STATUS, state).build();
   }
 
+  void onJoinerConnected(ByteArray joinerId, Error error) {
+    String hexJoinerId = toHex(joinerId);
+    timings.mark(hexJoinerId, CommissioningTimings.JoinerEvent.CONNECTED);
+    if (error.getCode() != ErrorCode.kNone) {
+      Log.d(TAG, "Joiner " + hexJoinerId + " failed to connect: " + error.toString());
+    }
+  }
+
   public void onJoinerFinalize(ByteArray joinerId) {
-    curJoinerCommissioned.set(true);
+    String hexJoinerId = toHex(joinerId);
+    timings.mark(hexJoinerId, CommissioningTimings.JoinerEvent.FINALIZE);
+    if ((!batch || pskds.containsKey(hexJoinerId)) && commissionedJoiners.add(hexJoinerId)) {
+      joinersDone.countDown();
+      setProgressAsync(
+          StateToData(
+              "commissioned " + commissionedJoiners.size() + " of " + pskds.size() + " devices"));
+    }
   }
 }
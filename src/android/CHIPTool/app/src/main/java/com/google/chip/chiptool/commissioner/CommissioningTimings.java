@@ -0,0 +1,141 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.google.chip.chiptool.commissioner;
+
+import androidx.work.Data;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timestamps of the phases of a commissioning run, in milliseconds since the run started, or -1 for
+ * the phases that were not reached. They are exported with the output of {@link
+ * CommissionerWorker}, to tell which phase takes the time.
+ */
+final class CommissioningTimings {
+
+  /** Phases the worker runs itself, each exported as its start and end. */
+  enum Phase {
+    PETITION(Constants.KEY_TIMING_PETITION),
+    SET_DATASET(Constants.KEY_TIMING_SET_DATASET),
+    RESIGN(Constants.KEY_TIMING_RESIGN);
+
+    final String key;
+
+    Phase(String key) {
+      this.key = key;
+    }
+  }
+
+  /** Events of each joiner, exported as arrays following the order of the Joiner IDs. */
+  enum JoinerEvent {
+    REQUEST(Constants.KEY_TIMING_JOINER_REQUEST),
+    CONNECTED(Constants.KEY_TIMING_JOINER_CONNECTED),
+    FINALIZE(Constants.KEY_TIMING_JOINER_FINALIZE);
+
+    final String key;
+
+    JoinerEvent(String key) {
+      this.key = key;
+    }
+  }
+
+  // Joiners beyond this are left out of the output, which WorkManager caps at 10 KB.
+  private static final int MAX_EXPORTED_JOINERS = 64;
+
+  private final long startNanos = System.nanoTime();
+  private final long[] phaseStarts = newTimestamps(Phase.values().length);
+  private final long[] phaseEnds = newTimestamps(Phase.values().length);
+
+  // Event timestamps by hex Joiner ID, in the order the joiners first showed up.
+  private final Map<String, long[]> joiners = new LinkedHashMap<>();
+
+  synchronized void start(Phase phase) {
+    phaseStarts[phase.ordinal()] = now();
+  }
+
+  synchronized void end(Phase phase) {
+    phaseEnds[phase.ordinal()] = now();
+  }
+
+  /** Records the first time the given event happened to the joiner with the given ID. */
+  synchronized void mark(String joinerId, JoinerEvent event) {
+    long[] events = joiners.get(joinerId);
+    if (events == null) {
+      events = newTimestamps(JoinerEvent.values().length);
+      joiners.put(joinerId, events);
+    }
+    if (events[event.ordinal()] < 0) {
+      events[event.ordinal()] = now();
+    }
+  }
+
+  synchronized void writeTo(Data.Builder dataBuilder) {
+    for (Phase phase : Phase.values()) {
+      dataBuilder.putLongArray(
+          phase.key, new long[] {phaseStarts[phase.ordinal()], phaseEnds[phase.ordinal()]});
+    }
+
+    int count = Math.min(joiners.size(), MAX_EXPORTED_JOINERS);
+    String[] joinerIds = new String[count];
+    long[][] events = new long[JoinerEvent.values().length][count];
+    int i = 0;
+    for (Map.Entry<String, long[]> joiner : joiners.entrySet()) {
+      if (i == count) {
+        break;
+      }
+      joinerIds[i] = joiner.getKey();
+      for (JoinerEvent event : JoinerEvent.values()) {
+        events[event.ordinal()][i] = joiner.getValue()[event.ordinal()];
+      }
+      i++;
+    }
+    dataBuilder.putStringArray(Constants.KEY_TIMING_JOINER_IDS, joinerIds);
+    for (JoinerEvent event : JoinerEvent.values()) {
+      dataBuilder.putLongArray(event.key, events[event.ordinal()]);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (Phase phase : Phase.values()) {
+      builder.append(
+          String.format(
+              "%s: %d-%d ms, ", phase, phaseStarts[phase.ordinal()], phaseEnds[phase.ordinal()]));
+    }
+    for (Map.Entry<String, long[]> joiner : joiners.entrySet()) {
+      builder.append(
+          String.format(
+              "joiner %s: %s ms, ", joiner.getKey(), Arrays.toString(joiner.getValue())));
+    }
+    return builder.toString();
+  }
+
+  private long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  private static long[] newTimestamps(int count) {
+    long[] timestamps = new long[count];
+    Arrays.fill(timestamps, -1);
+    return timestamps;
+  }
+}
@@ -21,9 +21,25 @@ package com.google.chip.chiptool.commissioner;
 public class Constants {
   public static final String KEY_DEVICE_INFO = "deviceinfo";
 
+  public static final String KEY_DEVICE_INFOS = "deviceinfos";
+
   public static final String KEY_NETWORK_INFO = "networkinfo";
 
   public static final String KEY_COMMISSIONING_STATUS = "commissioning_status";
 
   public static final String KEY_SUCCESS = "success";
+
+  public static final String KEY_TIMING_PETITION = "timing_petition";
+
+  public static final String KEY_TIMING_SET_DATASET = "timing_set_dataset";
+
+  public static final String KEY_TIMING_RESIGN = "timing_resign";
+
+  public static final String KEY_TIMING_JOINER_IDS = "timing_joiner_ids";
+
+  public static final String KEY_TIMING_JOINER_REQUEST = "timing_joiner_request";
+
+  public static final String KEY_TIMING_JOINER_CONNECTED = "timing_joiner_connected";
+
+  public static final String KEY_TIMING_JOINER_FINALIZE = "timing_joiner_finalize";
 }
@@ -52,6 +52,20 @@ public class NetworkAdapter extends BaseAdapter {
     return true;
   }
 
+  /** Removes the given Border Agent, and its network if it has no other. */
+  public boolean removeBorderAgent(BorderAgentInfo borderAgent) {
+    for (NetworkInfo network : networks) {
+      if (network.removeBorderAgent(borderAgent)) {
+        if (!network.hasBorderAgents()) {
+          networks.remove(network);
+        }
+        notifyDataSetChanged();
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public int getCount() {
     return networks.size();
@@ -57,6 +57,14 @@ public class NetworkInfo implements Parcelable {
     borderAgents.add(borderAgent);
   }
 
+  public boolean removeBorderAgent(BorderAgentInfo borderAgent) {
+    return borderAgents.remove(borderAgent);
+  }
+
+  public boolean hasBorderAgents() {
+    return !borderAgents.isEmpty();
+  }
+
   protected NetworkInfo(Parcel in) {
     borderAgents = in.readArrayList(BorderAgentInfo.class.getClassLoader());
   }
@@ -0,0 +1,97 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.google.chip.chiptool.commissioner;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Thread Joiner IDs and the steering data Bloom filter that lets exactly the joiners with the given
+ * IDs, give or take false positives, through a commissioner petition.
+ */
+final class SteeringData {
+
+  /** Length of the steering data, the longest Thread allows, for the fewest false positives. */
+  static final int LENGTH = 16;
+
+  static final int JOINER_ID_LENGTH = 8;
+
+  private static final int CRC16_CCITT_POLYNOMIAL = 0x1021;
+  private static final int CRC16_ANSI_POLYNOMIAL = 0x8005;
+
+  private SteeringData() {}
+
+  /**
+   * Returns the Joiner ID of the device with the given EUI-64: the first 8 bytes of its SHA-256,
+   * with the local bit of the first byte set.
+   */
+  static byte[] joinerIdOf(byte[] eui64) {
+    MessageDigest sha256;
+    try {
+      sha256 = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] joinerId = Arrays.copyOf(sha256.digest(eui64), JOINER_ID_LENGTH);
+    joinerId[0] |= 0x02;
+    return joinerId;
+  }
+
+  /**
+   * Returns the steering data matching the given Joiner IDs: each ID sets the bits at its
+   * CRC16-CCITT and CRC16-ANSI, modulo the number of bits, counting from the last byte.
+   */
+  static byte[] forJoiners(Collection<byte[]> joinerIds) {
+    byte[] steeringData = new byte[LENGTH];
+    for (byte[] joinerId : joinerIds) {
+      setBit(steeringData, crc16(joinerId, CRC16_CCITT_POLYNOMIAL));
+      setBit(steeringData, crc16(joinerId, CRC16_ANSI_POLYNOMIAL));
+    }
+    return steeringData;
+  }
+
+  /** Widens the bytes to the unsigned values {@code io.openthread.commissioner.ByteArray} takes. */
+  static short[] toUnsigned(byte[] bytes) {
+    short[] values = new short[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      values[i] = (short) (bytes[i] & 0xFF);
+    }
+    return values;
+  }
+
+  private static void setBit(byte[] steeringData, int hash) {
+    int bit = hash % (steeringData.length * 8);
+    steeringData[steeringData.length - 1 - bit / 8] |= 1 << (bit % 8);
+  }
+
+  // CRC16 with no reflection and an initial value of 0, as computed by OpenThread.
+  private static int crc16(byte[] data, int polynomial) {
+    int crc = 0;
+    for (byte b : data) {
+      crc ^= (b & 0xFF) << 8;
+      for (int i = 0; i < 8; i++) {
+        crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ polynomial : crc << 1;
+      }
+      crc &= 0xFFFF;
+    }
+    return crc;
+  }
+}
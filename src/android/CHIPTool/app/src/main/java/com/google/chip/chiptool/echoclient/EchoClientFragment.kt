@@ -41,7 +41,7 @@ class EchoClientFragment : Fragment(), ChipDeviceController.CompletionListener {
       savedInstanceState: Bundle?
   ): View {
     return inflater.inflate(R.layout.echo_client_fragment, container, false).apply {
-      deviceController.setCompletionListener(this@EchoClientFragment)
+      deviceController.addCompletionListener(this@EchoClientFragment)
 
       inputTextEd.hint = requireContext().getString(R.string.echo_input_hint_text)
 
@@ -49,6 +49,11 @@ class EchoClientFragment : Fragment(), ChipDeviceController.CompletionListener {
     }
   }
 
+  override fun onDestroyView() {
+    super.onDestroyView()
+    deviceController.removeCompletionListener(this)
+  }
+
   override fun onConnectDeviceComplete() {
     sendEcho()
   }
@@ -64,6 +64,9 @@ BLEDeviceConnectionParameters::BLEDeviceConnectionParameters()
 static constexpr uint32_t kSpake2p_Iteration_Count = 50000;
 static const char * kSpake2pKeyExchangeSalt        = "SPAKE2P Key Exchange Salt";
 
+// Device sessions in each session manager, as many as it has peer connections.
+static constexpr size_t kDeviceSessionsPerManager = CHIP_CONFIG_PEER_CONNECTION_POOL_SIZE;
+
 ChipDeviceController::ChipDeviceController()
 {
     mState           = kState_NotInitialized;
@@ -90,6 +93,9 @@ CHIP_ERROR ChipDeviceController::Init(NodeId localNodeId)
     SuccessOrExit(err);
 
     err = Init(localNodeId, &DeviceLayer::SystemLayer, &DeviceLayer::InetLayer);
+    SuccessOrExit(err);
+
+    mManagedStack = true;
 #endif // CONFIG_DEVICE_LAYER
 
 exit:
@@ -120,15 +126,15 @@ CHIP_ERROR ChipDeviceController::Shutdown()
 
     mState = kState_NotInitialized;
 
+    // Layers given to Init() belong to the caller, which may share them with other controllers.
+    if (mManagedStack)
+    {
 #if CONFIG_DEVICE_LAYER
-    err = DeviceLayer::PlatformMgr().Shutdown();
-    SuccessOrExit(err);
-#else
-    mSystemLayer->Shutdown();
-    mInetLayer->Shutdown();
-    delete mSystemLayer;
-    delete mInetLayer;
+        err = DeviceLayer::PlatformMgr().Shutdown();
+        SuccessOrExit(err);
 #endif // CONFIG_DEVICE_LAYER
+        mManagedStack = false;
+    }
 
     mSystemLayer = NULL;
     mInetLayer   = NULL;
@@ -145,6 +151,8 @@ CHIP_ERROR ChipDeviceController::Shutdown()
         mUnsecuredTransport = NULL;
     }
 
+    ReleaseDeviceSessions();
+
     mConState = kConnectionState_NotConnected;
     memset(&mOnComplete, 0, sizeof(mOnComplete));
     mOnError         = NULL;
@@ -177,6 +185,13 @@ void ChipDeviceController::OnPairingComplete(Optional<NodeId> peerNodeId, uint16
     ChipLogProgress(Controller, "Successfully paired with accessory. Key Id %d", peerKeyId);
     mPairingInProgress = false;
 
+    if (mRemoteDeviceId.HasValue())
+    {
+        mPairedDeviceId = mRemoteDeviceId.Value();
+        // On failure, the pairing still works until the next restart, after which the device is paired again.
+        ReserveSendMessageIndexes(mPairedDeviceId, mPairingSession);
+    }
+
     if (mPairingComplete != nullptr)
     {
         mPeerKeyId        = peerKeyId;
@@ -186,6 +201,154 @@ void ChipDeviceController::OnPairingComplete(Optional<NodeId> peerNodeId, uint16
     }
 }
 
+CHIP_ERROR ChipDeviceController::StorePairing(NodeId remoteDeviceId, const SecurePairingSession & pairing)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+    uint8_t serialized[SecurePairingSession::kMaxSerializedLength];
+    size_t serializedLen = sizeof(serialized);
+
+    VerifyOrExit(mSessionStore != nullptr, err = CHIP_NO_ERROR);
+
+    err = pairing.Serialize(serialized, serializedLen);
+    SuccessOrExit(err);
+
+    err = mSessionStore->StoreSession(remoteDeviceId, serialized, serializedLen);
+    SuccessOrExit(err);
+
+exit:
+    memset(serialized, 0, sizeof(serialized));
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Failed to store the pairing. Error %d", err);
+    }
+    return err;
+}
+
+CHIP_ERROR ChipDeviceController::ReserveSendMessageIndexes(NodeId remoteDeviceId, SecurePairingSession & pairing)
+{
+    CHIP_ERROR err = pairing.ReserveSendMessageIndexes(CHIP_CONTROLLER_SEND_MESSAGE_INDEX_WINDOW);
+    SuccessOrExit(err);
+
+    // The session keys are derived again from the stored pairing after a restart, so the new limit has to be
+    // stored before any message index below it is used, or those indexes would be sent twice with the same keys.
+    err = StorePairing(remoteDeviceId, pairing);
+    SuccessOrExit(err);
+
+exit:
+    return err;
+}
+
+CHIP_ERROR ChipDeviceController::LoadPairing(NodeId remoteDeviceId, SecurePairingSession & pairing)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+    uint8_t serialized[SecurePairingSession::kMaxSerializedLength];
+    size_t serializedLen = sizeof(serialized);
+
+    VerifyOrExit(mSessionStore != nullptr, err = CHIP_ERROR_KEY_NOT_FOUND);
+
+    err = mSessionStore->LoadSession(remoteDeviceId, serialized, serializedLen);
+    VerifyOrExit(err == CHIP_NO_ERROR || err == CHIP_ERROR_BUFFER_TOO_SMALL, );
+
+    if (err == CHIP_NO_ERROR)
+    {
+        // The pairing in memory, if it is the one loaded, is overwritten from here on.
+        if (&pairing == &mPairingSession)
+        {
+            mPairedDeviceId = kUndefinedNodeId;
+        }
+
+        err = pairing.Deserialize(serialized, serializedLen);
+    }
+    if (err == CHIP_NO_ERROR && pairing.GetPeerNodeId().HasValue() && pairing.GetPeerNodeId().Value() != remoteDeviceId)
+    {
+        err = CHIP_ERROR_WRONG_NODE_ID;
+    }
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Dropping the stored pairing, which cannot be resumed. Error %d", err);
+        mSessionStore->RemoveSession(remoteDeviceId);
+        ExitNow(err = CHIP_ERROR_KEY_NOT_FOUND);
+    }
+
+exit:
+    memset(serialized, 0, sizeof(serialized));
+    return err;
+}
+
+CHIP_ERROR ChipDeviceController::FindPairing(NodeId remoteDeviceId, SecurePairingSession & loaded, SecurePairingSession *& pairing)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    // The pairing in memory is used as is: it may not have been stored, or be ahead of the stored one.
+    if (mPairedDeviceId == remoteDeviceId && mPairingSession.IsPaired())
+    {
+        pairing = &mPairingSession;
+        ExitNow();
+    }
+
+    err = LoadPairing(remoteDeviceId, loaded);
+    SuccessOrExit(err);
+
+    pairing = &loaded;
+
+exit:
+    return err;
+}
+
+CHIP_ERROR ChipDeviceController::ResumePairing(NodeId remoteDeviceId)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    VerifyOrExit(mState == kState_Initialized, err = CHIP_ERROR_INCORRECT_STATE);
+    VerifyOrExit(!mPairingInProgress, err = CHIP_ERROR_INCORRECT_STATE);
+    VerifyOrExit(mPairedDeviceId != remoteDeviceId || !mPairingSession.IsPaired(), err = CHIP_NO_ERROR);
+
+    err = LoadPairing(remoteDeviceId, mPairingSession);
+    SuccessOrExit(err);
+
+    err = ReserveSendMessageIndexes(remoteDeviceId, mPairingSession);
+    if (err == CHIP_ERROR_INVALID_USE_OF_SESSION_KEY)
+    {
+        ChipLogError(Controller, "Dropping the stored pairing, which has used all its message indexes");
+        mSessionStore->RemoveSession(remoteDeviceId);
+        ExitNow(err = CHIP_ERROR_KEY_NOT_FOUND);
+    }
+    SuccessOrExit(err);
+
+    mPeerKeyId        = mPairingSession.GetPeerKeyId();
+    mLocalPairedKeyId = mPairingSession.GetLocalKeyId();
+    mPairedDeviceId   = remoteDeviceId;
+    ChipLogProgress(Controller, "Resumed the stored pairing. Key Id %d", mPeerKeyId);
+
+exit:
+    return err;
+}
+
+CHIP_ERROR ChipDeviceController::ReserveDeviceSessionMessageIndexes(DeviceSession & session)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+    SecurePairingSession loaded;
+    SecurePairingSession * pairing = NULL;
+
+    err = FindPairing(session.mDeviceId, loaded, pairing);
+    SuccessOrExit(err);
+
+    // The pairing is not told about the messages the session sends, so it carries on from where the session is.
+    if (pairing->GetNextSendMessageIndex() < session.mNextSendMessageIndex)
+    {
+        pairing->SetNextSendMessageIndex(session.mNextSendMessageIndex);
+    }
+
+    err = ReserveSendMessageIndexes(session.mDeviceId, *pairing);
+    SuccessOrExit(err);
+
+    session.mSendMessageIndexLimit = pairing->GetSendMessageIndexLimit();
+    pairing->SetNextSendMessageIndex(session.mSendMessageIndexLimit);
+
+exit:
+    return err;
+}
+
 void ChipDeviceController::PairingMessageHandler(ChipDeviceController * controller, void * appReqState,
                                                  System::PacketBuffer * payload)
 {
@@ -288,20 +451,16 @@ CHIP_ERROR ChipDeviceController::ConnectDeviceUsingPairing(NodeId remoteDeviceId
         return CHIP_ERROR_INCORRECT_STATE;
     }
 
-    mRemoteDeviceId  = Optional<NodeId>::Value(remoteDeviceId);
-    mDeviceAddr      = deviceAddr;
-    mDevicePort      = devicePort;
-    mAppReqState     = appReqState;
-    mOnNewConnection = onConnected;
-
-    mSessionManager = new SecureSessionMgr<Transport::UDP>();
+    mRemoteDeviceId      = Optional<NodeId>::Value(remoteDeviceId);
+    mDeviceAddr          = deviceAddr;
+    mDevicePort          = devicePort;
+    mAppReqState         = appReqState;
+    mOnNewConnection     = onConnected;
+    mUsingPairingSession = (pairing == &mPairingSession);
 
-    err = mSessionManager->Init(mLocalDeviceId, mSystemLayer,
-                                Transport::UdpListenParameters(mInetLayer).SetAddressType(deviceAddr.Type()));
+    err = InitSessionManager(mSessionManager, deviceAddr.Type(), CHIP_PORT);
     SuccessOrExit(err);
 
-    mSessionManager->SetDelegate(this);
-
     mConState = kConnectionState_SecureConnected;
 
     mOnComplete.Response = onMessageReceived;
@@ -337,8 +496,20 @@ CHIP_ERROR ChipDeviceController::ConnectDevice(NodeId remoteDeviceId, IPAddress
                                                NewConnectionHandler onConnected, MessageReceiveHandler onMessageReceived,
                                                ErrorHandler onError, uint16_t devicePort)
 {
-    return ConnectDeviceUsingPairing(remoteDeviceId, deviceAddr, appReqState, onConnected, onMessageReceived, onError, devicePort,
-                                     mLocalPairedKeyId, &mPairingSession);
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    // The device session and the connection would each send from their own message index with the keys of the pairing.
+    VerifyOrExit(!HasDeviceSession(remoteDeviceId) || !FindDeviceSession(remoteDeviceId)->mUsingPairing,
+                 err = CHIP_ERROR_INCORRECT_STATE);
+
+    err = ResumePairing(remoteDeviceId);
+    SuccessOrExit(err);
+
+    err = ConnectDeviceUsingPairing(remoteDeviceId, deviceAddr, appReqState, onConnected, onMessageReceived, onError, devicePort,
+                                    mLocalPairedKeyId, &mPairingSession);
+
+exit:
+    return err;
 }
 
 CHIP_ERROR ChipDeviceController::ConnectDeviceWithoutSecurePairing(NodeId remoteDeviceId, IPAddress deviceAddr, void * appReqState,
@@ -351,6 +522,206 @@ CHIP_ERROR ChipDeviceController::ConnectDeviceWithoutSecurePairing(NodeId remote
                                      0, &pairing);
 }
 
+CHIP_ERROR ChipDeviceController::OpenDeviceSession(NodeId remoteDeviceId, IPAddress deviceAddr, void * appReqState,
+                                                   DeviceMessageReceiveHandler onMessageReceived, DeviceErrorHandler onError,
+                                                   uint16_t devicePort)
+{
+    return OpenDeviceSessionUsingPairing(remoteDeviceId, deviceAddr, appReqState, onMessageReceived, onError, devicePort, false);
+}
+
+CHIP_ERROR ChipDeviceController::OpenDeviceSessionWithoutSecurePairing(NodeId remoteDeviceId, IPAddress deviceAddr,
+                                                                       void * appReqState,
+                                                                       DeviceMessageReceiveHandler onMessageReceived,
+                                                                       DeviceErrorHandler onError, uint16_t devicePort)
+{
+    return OpenDeviceSessionUsingPairing(remoteDeviceId, deviceAddr, appReqState, onMessageReceived, onError, devicePort, true);
+}
+
+CHIP_ERROR ChipDeviceController::OpenDeviceSessionUsingPairing(NodeId remoteDeviceId, IPAddress deviceAddr, void * appReqState,
+                                                               DeviceMessageReceiveHandler onMessageReceived,
+                                                               DeviceErrorHandler onError, uint16_t devicePort, bool useTestSecret)
+{
+    CHIP_ERROR err          = CHIP_NO_ERROR;
+    DeviceSession * session = NULL;
+    SecurePairingSession loaded;
+    SecurePairingUsingTestSecret testPairing;
+    SecurePairingSession * pairing = &testPairing;
+
+    VerifyOrExit(mState == kState_Initialized, err = CHIP_ERROR_INCORRECT_STATE);
+    VerifyOrExit(remoteDeviceId != kUndefinedNodeId, err = CHIP_ERROR_INVALID_ARGUMENT);
+
+    if (mDeviceSessions == NULL)
+    {
+        size_t managers = (mMaxDeviceSessions + kDeviceSessionsPerManager - 1) / kDeviceSessionsPerManager;
+
+        mDeviceSessions        = new DeviceSession[mMaxDeviceSessions];
+        mDeviceSessionManagers = new SecureSessionMgr<Transport::UDP> *[managers]();
+    }
+
+    // Reopening a session replaces the keys of the existing one.
+    session = FindDeviceSession(remoteDeviceId);
+    if (session == NULL)
+    {
+        session = FindDeviceSession(kUndefinedNodeId);
+        VerifyOrExit(session != NULL, err = CHIP_ERROR_NO_MEMORY);
+    }
+
+    if (!useTestSecret)
+    {
+        err = FindPairing(remoteDeviceId, loaded, pairing);
+        SuccessOrExit(err);
+
+        // The connection of ConnectDevice sends from its own message index with the keys of the pairing.
+        VerifyOrExit(pairing != &mPairingSession || !mUsingPairingSession || !IsSecurelyConnected(),
+                     err = CHIP_ERROR_INCORRECT_STATE);
+
+        err = ReserveSendMessageIndexes(remoteDeviceId, *pairing);
+        SuccessOrExit(err);
+    }
+
+    // The sessions of a session manager share its transport, created for the first one.
+    if (DeviceSessionManager(*session) == NULL)
+    {
+        // The connection of ConnectDevice listens on CHIP_PORT.
+        err = InitSessionManager(DeviceSessionManager(*session), deviceAddr.Type(), 0);
+        SuccessOrExit(err);
+    }
+
+    // Release the slot while the old keys are expired, so that it is not reported as closed.
+    *session = DeviceSession();
+
+    err = DeviceSessionManager(*session)->NewPairing(
+        Optional<NodeId>::Value(remoteDeviceId),
+        Optional<Transport::PeerAddress>::Value(Transport::PeerAddress::UDP(deviceAddr, devicePort)), pairing->GetPeerKeyId(),
+        pairing->GetLocalKeyId(), pairing);
+    SuccessOrExit(err);
+
+    session->mDeviceId          = remoteDeviceId;
+    session->mAppReqState       = appReqState;
+    session->mOnMessageReceived = onMessageReceived;
+    session->mOnError           = onError;
+
+    if (!useTestSecret)
+    {
+        // The session sends from the index the pairing was at up to the limit just reserved.
+        session->mUsingPairing          = true;
+        session->mNextSendMessageIndex  = pairing->GetNextSendMessageIndex();
+        session->mSendMessageIndexLimit = pairing->GetSendMessageIndexLimit();
+        pairing->SetNextSendMessageIndex(session->mSendMessageIndexLimit);
+    }
+
+exit:
+    return err;
+}
+
+CHIP_ERROR ChipDeviceController::SetMaxDeviceSessions(uint16_t maxSessions)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    VerifyOrExit(maxSessions > 0, err = CHIP_ERROR_INVALID_ARGUMENT);
+
+    for (uint16_t i = 0; mDeviceSessions != NULL && i < mMaxDeviceSessions; i++)
+    {
+        VerifyOrExit(mDeviceSessions[i].mDeviceId == kUndefinedNodeId, err = CHIP_ERROR_INCORRECT_STATE);
+    }
+
+    ReleaseDeviceSessions();
+    mMaxDeviceSessions = maxSessions;
+
+exit:
+    return err;
+}
+
+CHIP_ERROR ChipDeviceController::CloseDeviceSession(NodeId remoteDeviceId)
+{
+    CHIP_ERROR err          = CHIP_NO_ERROR;
+    DeviceSession * session = NULL;
+    size_t first;
+
+    VerifyOrExit(HasDeviceSession(remoteDeviceId), err = CHIP_ERROR_INCORRECT_STATE);
+
+    session  = FindDeviceSession(remoteDeviceId);
+    *session = DeviceSession();
+
+    DeviceSessionManager(*session)->ExpirePairing(remoteDeviceId);
+
+    // Release the transport along with the last session of the session manager.
+    first = static_cast<size_t>(session - mDeviceSessions) / kDeviceSessionsPerManager * kDeviceSessionsPerManager;
+    for (size_t i = first; i < first + kDeviceSessionsPerManager && i < mMaxDeviceSessions; i++)
+    {
+        VerifyOrExit(mDeviceSessions[i].mDeviceId == kUndefinedNodeId, );
+    }
+
+    delete DeviceSessionManager(*session);
+    DeviceSessionManager(*session) = NULL;
+
+exit:
+    return err;
+}
+
+bool ChipDeviceController::HasDeviceSession(NodeId remoteDeviceId)
+{
+    return remoteDeviceId != kUndefinedNodeId && FindDeviceSession(remoteDeviceId) != NULL;
+}
+
+ChipDeviceController::DeviceSession * ChipDeviceController::FindDeviceSession(NodeId remoteDeviceId)
+{
+    for (uint16_t i = 0; mDeviceSessions != NULL && i < mMaxDeviceSessions; i++)
+    {
+        if (mDeviceSessions[i].mDeviceId == remoteDeviceId)
+        {
+            return &mDeviceSessions[i];
+        }
+    }
+
+    return NULL;
+}
+
+SecureSessionMgr<Transport::UDP> *& ChipDeviceController::DeviceSessionManager(const DeviceSession & session)
+{
+    return mDeviceSessionManagers[static_cast<size_t>(&session - mDeviceSessions) / kDeviceSessionsPerManager];
+}
+
+void ChipDeviceController::ReleaseDeviceSessions()
+{
+    VerifyOrExit(mDeviceSessions != NULL, );
+
+    for (size_t i = 0; i < mMaxDeviceSessions; i += kDeviceSessionsPerManager)
+    {
+        delete DeviceSessionManager(mDeviceSessions[i]);
+    }
+
+    delete[] mDeviceSessionManagers;
+    delete[] mDeviceSessions;
+    mDeviceSessionManagers = NULL;
+    mDeviceSessions        = NULL;
+
+exit:
+    return;
+}
+
+CHIP_ERROR ChipDeviceController::InitSessionManager(SecureSessionMgr<Transport::UDP> *& manager, IPAddressType addressType,
+                                                    uint16_t listenPort)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    manager = new SecureSessionMgr<Transport::UDP>();
+
+    err = manager->Init(mLocalDeviceId, mSystemLayer,
+                        Transport::UdpListenParameters(mInetLayer).SetAddressType(addressType).SetListenPort(listenPort));
+    SuccessOrExit(err);
+
+    manager->SetDelegate(this);
+
+exit:
+    if (err != CHIP_NO_ERROR)
+    {
+        delete manager;
+        manager = NULL;
+    }
+    return err;
+}
+
 CHIP_ERROR ChipDeviceController::PopulatePeerAddress(Transport::PeerAddress & peerAddress)
 {
     CHIP_ERROR err = CHIP_NO_ERROR;
@@ -416,13 +787,63 @@ CHIP_ERROR ChipDeviceController::SendMessage(void * appReqState, PacketBuffer *
         MessageHeader header;
         Transport::PeerAddress peerAddress = Transport::PeerAddress::BLE();
         err                                = mUnsecuredTransport->SendMessage(header, peerAddress, buffer);
+        buffer                             = NULL;
     }
     else
     {
         VerifyOrExit(IsSecurelyConnected(), err = CHIP_ERROR_INCORRECT_STATE);
-        err = mSessionManager->SendMessage(mRemoteDeviceId.Value(), buffer);
+
+        if (mUsingPairingSession)
+        {
+            // Count the index as used whether or not the message gets out, since it may have been encrypted with it.
+            uint32_t index = mPairingSession.GetNextSendMessageIndex();
+            if (index >= mPairingSession.GetSendMessageIndexLimit())
+            {
+                err = ReserveSendMessageIndexes(mPairedDeviceId, mPairingSession);
+                SuccessOrExit(err);
+            }
+            mPairingSession.SetNextSendMessageIndex(index + 1);
+        }
+
+        err    = mSessionManager->SendMessage(mRemoteDeviceId.Value(), buffer);
+        buffer = NULL;
+    }
+exit:
+    if (err != CHIP_NO_ERROR && buffer != NULL)
+    {
+        PacketBuffer::Free(buffer);
+    }
+
+    return err;
+}
+
+CHIP_ERROR ChipDeviceController::SendMessage(NodeId remoteDeviceId, PacketBuffer * buffer)
+{
+    CHIP_ERROR err          = CHIP_NO_ERROR;
+    DeviceSession * session = NULL;
+
+    VerifyOrExit(HasDeviceSession(remoteDeviceId), err = CHIP_ERROR_INCORRECT_STATE);
+
+    session = FindDeviceSession(remoteDeviceId);
+    if (session->mUsingPairing)
+    {
+        // Count the index as used whether or not the message gets out, since it may have been encrypted with it.
+        if (session->mNextSendMessageIndex >= session->mSendMessageIndexLimit)
+        {
+            err = ReserveDeviceSessionMessageIndexes(*session);
+            SuccessOrExit(err);
+        }
+        session->mNextSendMessageIndex++;
     }
+
+    err    = DeviceSessionManager(*session)->SendMessage(remoteDeviceId, buffer);
+    buffer = NULL;
+
 exit:
+    if (buffer != NULL)
+    {
+        PacketBuffer::Free(buffer);
+    }
 
     return err;
 }
@@ -450,6 +871,9 @@ CHIP_ERROR ChipDeviceController::ServiceEventSignal()
 
 #if CONFIG_DEVICE_LAYER && (CHIP_SYSTEM_CONFIG_USE_SOCKETS || CHIP_SYSTEM_CONFIG_USE_NETWORK_FRAMEWORK)
     DeviceLayer::SystemLayer.WakeSelect();
+#elif CHIP_SYSTEM_CONFIG_USE_SOCKETS || CHIP_SYSTEM_CONFIG_USE_NETWORK_FRAMEWORK
+    // Without a device layer, wake up whichever thread is running select() on the system layer we were given.
+    mSystemLayer->WakeSelect();
 #else
     err = CHIP_ERROR_UNSUPPORTED_CHIP_FEATURE;
 #endif // CONFIG_DEVICE_LAYER && (CHIP_SYSTEM_CONFIG_USE_SOCKETS || CHIP_SYSTEM_CONFIG_USE_NETWORK_FRAMEWORK)
@@ -469,9 +893,53 @@ void ChipDeviceController::ClearRequestState()
 
 void ChipDeviceController::OnNewConnection(Transport::PeerConnectionState * state, SecureSessionMgrBase * mgr) {}
 
+void ChipDeviceController::OnConnectionExpired(const Transport::PeerConnectionState & state, SecureSessionMgrBase * mgr)
+{
+    DeviceSession * session = NULL;
+    DeviceSession expired;
+
+    // The sessions closed by the application are released before their keys are expired.
+    VerifyOrExit(mgr != mSessionManager && HasDeviceSession(state.GetPeerNodeId()), );
+
+    ChipLogProgress(Controller, "Device session expired");
+
+    // The transport is kept for the remaining sessions, or until the next one is opened.
+    session  = FindDeviceSession(state.GetPeerNodeId());
+    expired  = *session;
+    *session = DeviceSession();
+
+    if (expired.mOnError != NULL)
+    {
+        expired.mOnError(this, expired.mDeviceId, expired.mAppReqState, CHIP_ERROR_CONNECTION_CLOSED_UNEXPECTEDLY);
+    }
+
+exit:
+    return;
+}
+
 void ChipDeviceController::OnMessageReceived(const MessageHeader & header, Transport::PeerConnectionState * state,
                                              System::PacketBuffer * msgBuf, SecureSessionMgrBase * mgr)
 {
+    if (mgr != mSessionManager)
+    {
+        DeviceSession * session = NULL;
+
+        if (header.GetSourceNodeId().HasValue() && HasDeviceSession(header.GetSourceNodeId().Value()))
+        {
+            session = FindDeviceSession(header.GetSourceNodeId().Value());
+        }
+
+        if (session != NULL && session->mOnMessageReceived != NULL)
+        {
+            session->mOnMessageReceived(this, session->mDeviceId, session->mAppReqState, msgBuf);
+        }
+        else
+        {
+            PacketBuffer::Free(msgBuf);
+        }
+        return;
+    }
+
     if (header.GetSourceNodeId().HasValue())
     {
         if (!mRemoteDeviceId.HasValue())
@@ -49,8 +49,37 @@ typedef void (*CompleteHandler)(ChipDeviceController * deviceController, void *
 typedef void (*ErrorHandler)(ChipDeviceController * deviceController, void * appReqState, CHIP_ERROR err,
                              const IPPacketInfo * pktInfo);
 typedef void (*MessageReceiveHandler)(ChipDeviceController * deviceController, void * appReqState, System::PacketBuffer * payload);
+typedef void (*DeviceMessageReceiveHandler)(ChipDeviceController * deviceController, NodeId deviceId, void * appReqState,
+                                            System::PacketBuffer * payload);
+typedef void (*DeviceErrorHandler)(ChipDeviceController * deviceController, NodeId deviceId, void * appReqState, CHIP_ERROR err);
 };
 
+/**
+ * @def CHIP_CONTROLLER_MAX_DEVICE_SESSIONS
+ *
+ * @brief
+ *   Default maximum number of device sessions a single controller can keep
+ *   open at the same time, see SetMaxDeviceSessions(). The sessions are
+ *   spread over session managers of CHIP_CONFIG_PEER_CONNECTION_POOL_SIZE
+ *   peer connections each, and every session manager has its own UDP
+ *   endpoint.
+ */
+#ifndef CHIP_CONTROLLER_MAX_DEVICE_SESSIONS
+#define CHIP_CONTROLLER_MAX_DEVICE_SESSIONS 512
+#endif // CHIP_CONTROLLER_MAX_DEVICE_SESSIONS
+
+/**
+ * @def CHIP_CONTROLLER_SEND_MESSAGE_INDEX_WINDOW
+ *
+ * @brief
+ *   Number of message indexes reserved at a time for the paired device. The
+ *   pairing is stored again every time a window is reserved, and a restart
+ *   skips what is left of the current window.
+ */
+#ifndef CHIP_CONTROLLER_SEND_MESSAGE_INDEX_WINDOW
+#define CHIP_CONTROLLER_SEND_MESSAGE_INDEX_WINDOW 4096
+#endif // CHIP_CONTROLLER_SEND_MESSAGE_INDEX_WINDOW
+
 class BLEDeviceConnectionParameters
 {
 public:
@@ -123,6 +152,41 @@ private:
     BleLayer * bleLayer                     = nullptr;
 };
 
+/**
+ * Persistent store of the pairings established by a controller, keyed by the
+ * remote device id. The stored data is the shared secret of each pairing, so
+ * implementations are expected to keep it encrypted at rest.
+ */
+class DLL_EXPORT SessionStoreDelegate
+{
+public:
+    virtual ~SessionStoreDelegate() {}
+
+    /**
+     * @brief
+     *   Load the pairing stored for a device
+     *
+     * @param[in] deviceId          The remote device Id.
+     * @param[out] buf              Buffer to copy the pairing to
+     * @param[in,out] inOutLen      Size of the buffer in, length of the pairing out
+     * @return CHIP_ERROR   CHIP_ERROR_KEY_NOT_FOUND if no pairing is stored for the device, or
+     *                      CHIP_ERROR_BUFFER_TOO_SMALL if the stored pairing does not fit in the buffer
+     */
+    virtual CHIP_ERROR LoadSession(NodeId deviceId, uint8_t * buf, size_t & inOutLen) = 0;
+
+    /**
+     * @brief
+     *   Store the pairing established with a device, replacing any previous one
+     */
+    virtual CHIP_ERROR StoreSession(NodeId deviceId, const uint8_t * buf, size_t len) = 0;
+
+    /**
+     * @brief
+     *   Remove the pairing stored for a device, if any
+     */
+    virtual CHIP_ERROR RemoveSession(NodeId deviceId) = 0;
+};
+
 class DLL_EXPORT ChipDeviceController : public SecureSessionMgrCallback,
                                         public SecurePairingSessionDelegate,
                                         public Transport::BLECallbackHandler
@@ -196,6 +260,31 @@ public:
     CHIP_ERROR ConnectDevice(NodeId remoteDeviceId, IPAddress deviceAddr, void * appReqState, NewConnectionHandler onConnected,
                              MessageReceiveHandler onMessageReceived, ErrorHandler onError, uint16_t devicePort = CHIP_PORT);
 
+    /**
+     * @brief
+     *   Set the store the pairings are saved to once complete, and resumed from by ConnectDevice with an
+     *   address, so that a device paired once does not go through Rendezvous again after a disconnect or
+     *   a restart. The store must outlive the controller, or be reset to nullptr before it is destroyed.
+     *
+     * @param[in] store     The pairing store, or nullptr to keep the pairings in memory only
+     */
+    void SetSessionStore(SessionStoreDelegate * store) { mSessionStore = store; }
+    SessionStoreDelegate * GetSessionStore() const { return mSessionStore; }
+
+    /**
+     * @brief
+     *   Make the pairing with a device current, loading it from the session store if it is not the one
+     *   in memory. A stored pairing that cannot be restored is removed from the store, so that the
+     *   device is paired again.
+     *
+     *   A loaded pairing carries on from the message indexes it had reserved, and it is stored with a
+     *   new reservation before it is used; the pairing is not resumed if that fails.
+     *
+     * @param[in] remoteDeviceId        The remote device Id.
+     * @return CHIP_ERROR   CHIP_ERROR_KEY_NOT_FOUND if there is no pairing with the device
+     */
+    CHIP_ERROR ResumePairing(NodeId remoteDeviceId);
+
     /**
      * @brief
      *   Connect to a CHIP device at a given address and an optional port. This is a test only API
@@ -271,6 +360,78 @@ public:
      */
     bool IsSecurelyConnected();
 
+    // ----- Device Sessions -----
+    /**
+     * @brief
+     *   Open a secure session with a paired CHIP device at a given address and an optional port. Unlike ConnectDevice,
+     *   several device sessions can be open at the same time, alongside the connection of ConnectDevice; they are
+     *   addressed by the remote device id. The sessions share one UDP endpoint, bound to an ephemeral port, per
+     *   CHIP_CONFIG_PEER_CONNECTION_POOL_SIZE sessions, created for the address type of the first device among them.
+     *
+     *   The session keys are derived from the pairing with the device: the one in memory, or else the one in the
+     *   session store. As in ResumePairing, CHIP_CONTROLLER_SEND_MESSAGE_INDEX_WINDOW message indexes are reserved,
+     *   and stored, before the session sends anything, and again every time they are used up. The pairing cannot be
+     *   used by the connection of ConnectDevice and by a device session at the same time.
+     *
+     *   At most GetMaxDeviceSessions() sessions can be open at once; opening one more fails with CHIP_ERROR_NO_MEMORY.
+     *   When the session manager expires the connection of a session, e.g. after CHIP_PEER_CONNECTION_TIMEOUT_MS
+     *   without traffic when CHIP_CONFIG_SESSION_REKEYING is enabled, the session is closed and onError is called with
+     *   CHIP_ERROR_CONNECTION_CLOSED_UNEXPECTEDLY; the session has to be opened again to send to the device.
+     *
+     * @param[in] remoteDeviceId        The remote device Id.
+     * @param[in] deviceAddr            The IPAddress of the requested Device
+     * @param[in] appReqState           Application specific context to be passed back when a message is received
+     * @param[in] onMessageReceived     Callback for when a message is received from the device
+     * @param[in] onError               Callback for when the session is closed by the session manager
+     * @param[in] devicePort            [Optional] The CHIP Device's port, defaults to CHIP_PORT
+     * @return CHIP_ERROR           CHIP_ERROR_KEY_NOT_FOUND if there is no pairing with the device
+     */
+    CHIP_ERROR OpenDeviceSession(NodeId remoteDeviceId, IPAddress deviceAddr, void * appReqState,
+                                 DeviceMessageReceiveHandler onMessageReceived, DeviceErrorHandler onError,
+                                 uint16_t devicePort = CHIP_PORT);
+
+    /**
+     * @brief
+     *   Open a device session like OpenDeviceSession, without a pairing. This is a test only API that bypasses
+     *   Rendezvous and Secure Pairing process, for devices that do not support them yet.
+     *
+     *   The session is NOT secure: its keys are derived from the test secret, which is public and the same for every
+     *   device, with key IDs 0 and 0, and its message indexes start from 0 every time it is opened, so the nonces
+     *   repeat. Anyone on the network can read and forge its messages.
+     */
+    CHIP_ERROR OpenDeviceSessionWithoutSecurePairing(NodeId remoteDeviceId, IPAddress deviceAddr, void * appReqState,
+                                                     DeviceMessageReceiveHandler onMessageReceived, DeviceErrorHandler onError,
+                                                     uint16_t devicePort = CHIP_PORT);
+
+    /**
+     * @brief
+     *   Set the maximum number of device sessions that can be open at the same time, which can only change while no
+     *   device session is open.
+     *
+     * @param[in] maxSessions   The maximum number of device sessions, CHIP_CONTROLLER_MAX_DEVICE_SESSIONS by default
+     * @return CHIP_ERROR   CHIP_ERROR_INCORRECT_STATE if a device session is open
+     */
+    CHIP_ERROR SetMaxDeviceSessions(uint16_t maxSessions);
+    uint16_t GetMaxDeviceSessions() const { return mMaxDeviceSessions; }
+
+    /**
+     * @brief
+     *   Close the session previously opened with a CHIP device
+     *
+     * @param[in] remoteDeviceId    The remote device Id.
+     * @return CHIP_ERROR   If the session was closed successfully
+     */
+    CHIP_ERROR CloseDeviceSession(NodeId remoteDeviceId);
+
+    /**
+     * @brief
+     *   Check if there's an open session with a CHIP device
+     *
+     * @param[in] remoteDeviceId    The remote device Id.
+     * @return bool   If there is an open session with the device
+     */
+    bool HasDeviceSession(NodeId remoteDeviceId);
+
     // ----- Messaging -----
     /**
      * @brief
@@ -282,6 +443,20 @@ public:
      */
     CHIP_ERROR SendMessage(void * appReqState, System::PacketBuffer * buffer);
 
+    /**
+     * @brief
+     *   Send a message to a CHIP device with an open device session
+     *
+     * @param[in] remoteDeviceId    The remote device Id.
+     * @param[in] buffer            The Data Buffer to trasmit to the device
+     * @return CHIP_ERROR   The return status
+     *
+     * @details
+     *   This method calls <tt>chip::System::PacketBuffer::Free</tt> on
+     *   behalf of the caller regardless of the return status.
+     */
+    CHIP_ERROR SendMessage(NodeId remoteDeviceId, System::PacketBuffer * buffer);
+
     // ----- IO -----
     /**
      * @brief
@@ -303,6 +478,8 @@ public:
 
     void OnNewConnection(Transport::PeerConnectionState * state, SecureSessionMgrBase * mgr) override;
 
+    void OnConnectionExpired(const Transport::PeerConnectionState & state, SecureSessionMgrBase * mgr) override;
+
     //////////// BLECallbackHandler Implementation ///////////////
     void OnBLEConnectionError(BLE_ERROR err) override;
     void OnBLEConnectionComplete(BLE_ERROR err) override;
@@ -329,6 +506,7 @@ private:
 
     System::Layer * mSystemLayer;
     Inet::InetLayer * mInetLayer;
+    bool mManagedStack = false; ///< whether the layers were initialized by Init() and are to be shut down
 
     SecureSessionMgr<Transport::UDP> * mSessionManager;
     Transport::Base * mUnsecuredTransport = NULL;
@@ -355,14 +533,47 @@ private:
     uint32_t mMessageNumber = 0;
 
     SecurePairingSession mPairingSession;
-    uint16_t mNextKeyId     = 0;
-    bool mPairingInProgress = false;
+    NodeId mPairedDeviceId               = kUndefinedNodeId;
+    SessionStoreDelegate * mSessionStore = nullptr;
+    uint16_t mNextKeyId                  = 0;
+    bool mPairingInProgress              = false;
+    bool mUsingPairingSession            = false;
 
     uint32_t mSetupPINCode     = 0;
     uint16_t mPeerKeyId        = 0;
     uint16_t mLocalPairedKeyId = 0;
 
+    struct DeviceSession
+    {
+        NodeId mDeviceId                               = kUndefinedNodeId;
+        void * mAppReqState                            = nullptr;
+        DeviceMessageReceiveHandler mOnMessageReceived = nullptr;
+        DeviceErrorHandler mOnError                    = nullptr;
+        // When the keys come from the pairing with the device, the session sends below the limit it reserved.
+        bool mUsingPairing                             = false;
+        uint32_t mNextSendMessageIndex                 = 0;
+        uint32_t mSendMessageIndexLimit                = 0;
+    };
+
+    // Allocated along with the first session. Slot i belongs to the session manager i / CHIP_CONFIG_PEER_CONNECTION_POOL_SIZE,
+    // which is created with the first session of its slots and deleted with the last one.
+    DeviceSession * mDeviceSessions                            = NULL;
+    SecureSessionMgr<Transport::UDP> ** mDeviceSessionManagers = NULL;
+    uint16_t mMaxDeviceSessions                                = CHIP_CONTROLLER_MAX_DEVICE_SESSIONS;
+
+    DeviceSession * FindDeviceSession(NodeId remoteDeviceId);
+    SecureSessionMgr<Transport::UDP> *& DeviceSessionManager(const DeviceSession & session);
+    void ReleaseDeviceSessions();
+    CHIP_ERROR OpenDeviceSessionUsingPairing(NodeId remoteDeviceId, IPAddress deviceAddr, void * appReqState,
+                                             DeviceMessageReceiveHandler onMessageReceived, DeviceErrorHandler onError,
+                                             uint16_t devicePort, bool useTestSecret);
+    CHIP_ERROR InitSessionManager(SecureSessionMgr<Transport::UDP> *& manager, IPAddressType addressType, uint16_t listenPort);
     void ClearRequestState();
+    CHIP_ERROR LoadPairing(NodeId remoteDeviceId, SecurePairingSession & pairing);
+    CHIP_ERROR FindPairing(NodeId remoteDeviceId, SecurePairingSession & loaded, SecurePairingSession *& pairing);
+    CHIP_ERROR StorePairing(NodeId remoteDeviceId, const SecurePairingSession & pairing);
+    CHIP_ERROR ReserveSendMessageIndexes(NodeId remoteDeviceId, SecurePairingSession & pairing);
+    CHIP_ERROR ReserveDeviceSessionMessageIndexes(DeviceSession & session);
     void ClearOpState();
 
     static void PairingMessageHandler(ChipDeviceController * deviceController, void * appReqState, System::PacketBuffer * payload);
@@ -22,8 +22,14 @@
  *
  */
 
+#include "EpollEventLoop.h"
+#include "LatencyHistogram.h"
+#include "RequestTimerWheel.h"
+#include "StackCommandQueue.h"
+
 #include <controller/CHIPDeviceController.h>
 
+#include <inttypes.h>
 #include <jni.h>
 #include <pthread.h>
 #include <support/CodeUtils.h>
@@ -45,6 +51,9 @@ using namespace chip::DeviceController;
 #define JNI_METHOD(RETURN, METHOD_NAME)                                                                                            \
     extern "C" JNIEXPORT RETURN JNICALL Java_chip_devicecontroller_ChipDeviceController_##METHOD_NAME
 
+#define JNI_MESSAGE_BUFFER_METHOD(RETURN, METHOD_NAME)                                                                             \
+    extern "C" JNIEXPORT RETURN JNICALL Java_chip_devicecontroller_MessageBuffer_##METHOD_NAME
+
 #define CDC_JNI_ERROR_MIN 10000
 #define CDC_JNI_ERROR_MAX 10999
 
@@ -54,19 +63,44 @@ using namespace chip::DeviceController;
 #define CDC_JNI_ERROR_TYPE_NOT_FOUND _CDC_JNI_ERROR(1)
 #define CDC_JNI_ERROR_METHOD_NOT_FOUND _CDC_JNI_ERROR(2)
 #define CDC_JNI_ERROR_FIELD_NOT_FOUND _CDC_JNI_ERROR(3)
+#define CDC_JNI_ERROR_REQUEST_TIMEOUT _CDC_JNI_ERROR(4)
 
 #define CDC_JNI_CALLBACK_LOCAL_REF_COUNT 256
 
 static void HandleKeyExchange(ChipDeviceController * deviceController, Transport::PeerConnectionState * state, void * appReqState);
 static void HandleEchoResponse(ChipDeviceController * deviceController, void * appReqState, System::PacketBuffer * payload);
+static void HandleDeviceMessage(ChipDeviceController * deviceController, NodeId deviceId, void * appReqState,
+                                System::PacketBuffer * payload);
 static void HandleError(ChipDeviceController * deviceController, void * appReqState, CHIP_ERROR err, const IPPacketInfo * pktInfo);
+static void HandleDeviceError(ChipDeviceController * deviceController, NodeId deviceId, CHIP_ERROR err);
+static void HandleDeviceSessionExpired(ChipDeviceController * deviceController, NodeId deviceId, void * appReqState,
+                                       CHIP_ERROR err);
+static void HandleRequestError(ChipDeviceController * deviceController, NodeId deviceId, uint64_t requestId, CHIP_ERROR err);
+static void BatchDeviceMessage(JNIEnv * env, ChipDeviceController * deviceController, NodeId deviceId, uint64_t requestId,
+                               System::PacketBuffer * payload);
+static void FlushDeviceMessages(JNIEnv * env);
 static void ThrowError(JNIEnv * env, CHIP_ERROR errToThrow);
+static CHIP_ERROR SubmitStackCommand(StackCommand * command);
+static CHIP_ERROR SubmitStackCommands(StackCommand * newest, StackCommand * oldest);
+static void RunStackCommands(JNIEnv * env);
+static void WakeIOThread();
+static void LockStack(ChipDeviceController * deviceController);
+static CHIP_ERROR SendRequest(StackCommand * command, NodeId deviceId);
+static CHIP_ERROR CopyMessageBuffer(const System::PacketBuffer * inBuffer, System::PacketBuffer *& outBuffer);
+static void StartRequestTimer();
+static void HandleRequestTimer(System::Layer * systemLayer, void * appState, System::Error err);
 static void * IOThreadMain(void * arg);
+static CHIP_ERROR J2N_IPAddress(JNIEnv * env, jstring addrObj, IPAddress & outAddr);
+static CHIP_ERROR J2N_MessageBuffer(JNIEnv * env, jstring messageObj, System::PacketBuffer *& outBuffer);
+static CHIP_ERROR J2N_CommandBuffer(JNIEnv * env, jobject commandObj, System::PacketBuffer *& outBuffer);
+static CHIP_ERROR EncodeCommand(jint commandID, uint8_t endpoint, System::PacketBuffer *& outBuffer);
+static CHIP_ERROR J2N_ByteArrayBuffer(JNIEnv * env, jbyteArray dataObj, jint dataLen, System::PacketBuffer *& outBuffer);
+static CHIP_ERROR J2N_MessageBufferHandle(jlong bufferHandle, jint length, System::PacketBuffer *& outBuffer);
+static void J2N_RequestPolicy(JNIEnv * env, jobject self, uint32_t & outTimeoutMS, uint8_t & outMaxRetransmissions);
 static CHIP_ERROR GetClassRef(JNIEnv * env, const char * clsType, jclass & outCls);
-static CHIP_ERROR N2J_ByteArray(JNIEnv * env, const uint8_t * inArray, uint32_t inArrayLen, jbyteArray & outArray);
 static CHIP_ERROR N2J_Error(JNIEnv * env, CHIP_ERROR inErr, jthrowable & outEx);
-static CHIP_ERROR N2J_NewStringUTF(JNIEnv * env, const char * inStr, jstring & outString);
-static CHIP_ERROR N2J_NewStringUTF(JNIEnv * env, const char * inStr, size_t inStrLen, jstring & outString);
+static CHIP_ERROR N2J_MessageBuffer(JNIEnv * env, System::PacketBuffer * buffer, uint32_t length, jobject & outObj);
+static CHIP_ERROR N2J_Controller(JNIEnv * env, ChipDeviceController * deviceController, jobject & outSelf);
 
 static JavaVM * sJVM;
 static System::Layer sSystemLayer;
@@ -75,8 +109,203 @@ static pthread_mutex_t sStackLock = PTHREAD_MUTEX_INITIALIZER;
 static pthread_t sIOThread        = PTHREAD_NULL;
 static bool sShutdown             = false;
 
-static jclass sChipDeviceControllerCls          = NULL;
-static jclass sChipDeviceControllerExceptionCls = NULL;
+// Operations submitted by Java threads, run by the IO thread between two select() calls.
+static StackCommandQueue sStackCommandQueue;
+
+#if CHIP_CONTROLLER_USE_EPOLL
+static EpollEventLoop sEventLoop;
+#endif
+
+// Resends the requests that got no response in time, and reports the ones out of retransmissions.
+class RequestTimerDelegate : public RequestTimerWheel::Delegate
+{
+public:
+    CHIP_ERROR RetransmitRequest(const PendingRequest & request) override
+    {
+        CHIP_ERROR err                = CHIP_NO_ERROR;
+        System::PacketBuffer * buffer = NULL;
+
+        ChipLogProgress(Controller, "Retransmitting request %" PRIu64, request.mRequestId);
+
+        err = CopyMessageBuffer(request.mPayload, buffer);
+        SuccessOrExit(err);
+
+        if (request.mDeviceId == kUndefinedNodeId)
+        {
+            err = request.mController->SendMessage((void *) "SendMessage", buffer);
+        }
+        else
+        {
+            err = request.mController->SendMessage(request.mDeviceId, buffer);
+        }
+
+    exit:
+        return err;
+    }
+
+    void ExpireRequest(const PendingRequest & request, CHIP_ERROR err) override
+    {
+        ChipLogError(Controller, "Request %" PRIu64 " failed: %s", request.mRequestId, ErrorStr(err));
+        HandleRequestError(request.mController, request.mDeviceId, request.mRequestId,
+                           (err == CHIP_ERROR_TIMEOUT) ? CDC_JNI_ERROR_REQUEST_TIMEOUT : err);
+    }
+};
+
+// Requests in flight, advanced by a System::Layer timer while any of them has a deadline.
+static RequestTimerDelegate sRequestTimerDelegate;
+static RequestTimerWheel sRequestTimerWheel;
+static bool sRequestTimerArmed = false;
+
+// Durations measured by the native layer for each controller. The values of NativeLatency match
+// the NATIVE_* constants of ChipDeviceController.
+enum NativeLatency
+{
+    kNativeLatency_Submit        = 0, ///< from the creation of a StackCommand to the IO thread running it
+    kNativeLatency_Upcall        = 1, ///< in calls from the IO thread into Java
+    kNativeLatency_StackLockWait = 2, ///< waiting for sStackLock in calls on the controller
+    kNativeLatency_Connect       = 3, ///< from starting to connect to a device to its key exchange handler
+};
+
+// State of the JNI layer for each controller, held in its AppState and deleted along with it.
+struct ControllerState
+{
+    jweak mSelf = NULL; ///< the Java controller
+    LatencyHistogram mSubmitLatency;
+    LatencyHistogram mUpcallLatency;
+    LatencyHistogram mStackLockWait;
+    LatencyHistogram mConnectLatency;
+    uint64_t mConnectStartUS = 0; ///< only used by the IO thread
+};
+
+static ControllerState * GetControllerState(ChipDeviceController * deviceController)
+{
+    return (ControllerState *) deviceController->AppState;
+}
+
+static jclass sChipDeviceControllerCls           = NULL;
+static jclass sChipDeviceControllerExceptionCls  = NULL;
+static jclass sChipCommandTypeCls                = NULL;
+static jclass sMessageBufferCls                  = NULL;
+static jfieldID sRequestTimeoutFieldID           = NULL;
+static jfieldID sMaxRetransmissionsFieldID       = NULL;
+static jmethodID sOnDeviceMessagesMethodID       = NULL;
+static jmethodID sOnErrorMethodID                = NULL;
+static jmethodID sOnDeviceErrorMethodID          = NULL;
+static jmethodID sOnDeviceSessionExpiredMethodID = NULL;
+static jmethodID sOnRequestErrorMethodID         = NULL;
+static jmethodID sExceptionConstructorID         = NULL;
+static jmethodID sCommandTypeGetValueMethodID    = NULL;
+static jmethodID sMessageBufferConstructorID     = NULL;
+static jmethodID sLoadSessionMethodID            = NULL;
+static jmethodID sStoreSessionMethodID           = NULL;
+static jmethodID sRemoveSessionMethodID          = NULL;
+
+// Messages received during one iteration of the IO thread, all for the same controller, delivered to
+// Java in one upcall by FlushDeviceMessages(). The payloads are handed over as MessageBuffers mapped
+// over their packet buffers, which Java releases; the arrays are reused from one batch to the next.
+struct ReceivedMessage
+{
+    NodeId mDeviceId;   ///< kUndefinedNodeId for the connection opened by ConnectDevice
+    uint64_t mRequestId; ///< Java request the message responds to, 0 if none
+    System::PacketBuffer * mPayload;
+};
+
+static constexpr int kMaxBatchedMessages       = 32;
+static ChipDeviceController * sBatchController = NULL;
+static ReceivedMessage sBatch[kMaxBatchedMessages];
+static int sBatchCount             = 0;
+static jlongArray sBatchDeviceIds  = NULL;
+static jlongArray sBatchRequestIds = NULL;
+static jobjectArray sBatchMessages = NULL;
+
+// Keeps the pairings of a controller in the SessionStore of its Java controller, if it has one. Only
+// called on the IO thread.
+class JniSessionStore : public SessionStoreDelegate
+{
+public:
+    explicit JniSessionStore(ChipDeviceController * deviceController) : mController(deviceController) {}
+
+    CHIP_ERROR LoadSession(NodeId deviceId, uint8_t * buf, size_t & inOutLen) override
+    {
+        CHIP_ERROR err        = CHIP_NO_ERROR;
+        JNIEnv * env          = NULL;
+        jobject self          = NULL;
+        jbyteArray sessionObj = NULL;
+        jsize sessionLen;
+
+        sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+
+        err = N2J_Controller(env, mController, self);
+        SuccessOrExit(err);
+
+        sessionObj = (jbyteArray) env->CallObjectMethod(self, sLoadSessionMethodID, (jlong) deviceId);
+        VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+        VerifyOrExit(sessionObj != NULL, err = CHIP_ERROR_KEY_NOT_FOUND);
+
+        sessionLen = env->GetArrayLength(sessionObj);
+        VerifyOrExit((size_t) sessionLen <= inOutLen, err = CHIP_ERROR_BUFFER_TOO_SMALL);
+
+        env->GetByteArrayRegion(sessionObj, 0, sessionLen, (jbyte *) buf);
+        inOutLen = (size_t) sessionLen;
+
+    exit:
+        env->ExceptionClear();
+        env->DeleteLocalRef(sessionObj);
+        env->DeleteLocalRef(self);
+        return err;
+    }
+
+    CHIP_ERROR StoreSession(NodeId deviceId, const uint8_t * buf, size_t len) override
+    {
+        CHIP_ERROR err        = CHIP_NO_ERROR;
+        JNIEnv * env          = NULL;
+        jobject self          = NULL;
+        jbyteArray sessionObj = NULL;
+        jboolean stored;
+
+        sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+
+        err = N2J_Controller(env, mController, self);
+        SuccessOrExit(err);
+
+        sessionObj = env->NewByteArray((jsize) len);
+        VerifyOrExit(sessionObj != NULL, err = CHIP_ERROR_NO_MEMORY);
+        env->SetByteArrayRegion(sessionObj, 0, (jsize) len, (const jbyte *) buf);
+
+        stored = env->CallBooleanMethod(self, sStoreSessionMethodID, (jlong) deviceId, sessionObj);
+        VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+        VerifyOrExit(stored, err = CHIP_ERROR_PERSISTED_STORAGE_FAILED);
+
+    exit:
+        env->ExceptionClear();
+        env->DeleteLocalRef(sessionObj);
+        env->DeleteLocalRef(self);
+        return err;
+    }
+
+    CHIP_ERROR RemoveSession(NodeId deviceId) override
+    {
+        CHIP_ERROR err = CHIP_NO_ERROR;
+        JNIEnv * env   = NULL;
+        jobject self   = NULL;
+
+        sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+
+        err = N2J_Controller(env, mController, self);
+        SuccessOrExit(err);
+
+        env->CallVoidMethod(self, sRemoveSessionMethodID, (jlong) deviceId);
+        VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+
+    exit:
+        env->ExceptionClear();
+        env->DeleteLocalRef(self);
+        return err;
+    }
+
+private:
+    ChipDeviceController * mController;
+};
 
 // NOTE: Remote device ID is in sync with the echo server device id
 // At some point, we may want to add an option to connect to a device without
@@ -106,8 +335,53 @@ jint JNI_OnLoad(JavaVM * jvm, void * reserved)
     SuccessOrExit(err);
     err = GetClassRef(env, "chip/devicecontroller/ChipDeviceControllerException", sChipDeviceControllerExceptionCls);
     SuccessOrExit(err);
+    err = GetClassRef(env, "chip/devicecontroller/ChipCommandType", sChipCommandTypeCls);
+    SuccessOrExit(err);
+    err = GetClassRef(env, "chip/devicecontroller/MessageBuffer", sMessageBufferCls);
+    SuccessOrExit(err);
     ChipLogProgress(Controller, "Java class references loaded.");
 
+    // Get the methods called from the IO thread, rather than looking them up on every upcall.
+    sOnDeviceMessagesMethodID = env->GetMethodID(sChipDeviceControllerCls, "onDeviceMessages",
+                                                 "(I[J[J[Lchip/devicecontroller/MessageBuffer;)V");
+    VerifyOrExit(sOnDeviceMessagesMethodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sOnErrorMethodID = env->GetMethodID(sChipDeviceControllerCls, "onError", "(Ljava/lang/Throwable;)V");
+    VerifyOrExit(sOnErrorMethodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sOnDeviceErrorMethodID = env->GetMethodID(sChipDeviceControllerCls, "onDeviceError", "(JLjava/lang/Throwable;)V");
+    VerifyOrExit(sOnDeviceErrorMethodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sOnDeviceSessionExpiredMethodID =
+        env->GetMethodID(sChipDeviceControllerCls, "onDeviceSessionExpired", "(JLjava/lang/Throwable;)V");
+    VerifyOrExit(sOnDeviceSessionExpiredMethodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sOnRequestErrorMethodID = env->GetMethodID(sChipDeviceControllerCls, "onRequestError", "(JJLjava/lang/Throwable;)V");
+    VerifyOrExit(sOnRequestErrorMethodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sExceptionConstructorID = env->GetMethodID(sChipDeviceControllerExceptionCls, "<init>", "(ILjava/lang/String;)V");
+    VerifyOrExit(sExceptionConstructorID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sCommandTypeGetValueMethodID = env->GetMethodID(sChipCommandTypeCls, "getValue", "()I");
+    VerifyOrExit(sCommandTypeGetValueMethodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sMessageBufferConstructorID = env->GetMethodID(sMessageBufferCls, "<init>", "(JLjava/nio/ByteBuffer;)V");
+    VerifyOrExit(sMessageBufferConstructorID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sLoadSessionMethodID = env->GetMethodID(sChipDeviceControllerCls, "loadSession", "(J)[B");
+    VerifyOrExit(sLoadSessionMethodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sStoreSessionMethodID = env->GetMethodID(sChipDeviceControllerCls, "storeSession", "(J[B)Z");
+    VerifyOrExit(sStoreSessionMethodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    sRemoveSessionMethodID = env->GetMethodID(sChipDeviceControllerCls, "removeSession", "(J)V");
+    VerifyOrExit(sRemoveSessionMethodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+
+    sBatchDeviceIds = (jlongArray) env->NewGlobalRef(env->NewLongArray(kMaxBatchedMessages));
+    VerifyOrExit(sBatchDeviceIds != NULL, err = CHIP_ERROR_NO_MEMORY);
+    sBatchRequestIds = (jlongArray) env->NewGlobalRef(env->NewLongArray(kMaxBatchedMessages));
+    VerifyOrExit(sBatchRequestIds != NULL, err = CHIP_ERROR_NO_MEMORY);
+    sBatchMessages = (jobjectArray) env->NewGlobalRef(env->NewObjectArray(kMaxBatchedMessages, sMessageBufferCls, NULL));
+    VerifyOrExit(sBatchMessages != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+    // Get the fields read on every request, rather than looking them up each time.
+    sRequestTimeoutFieldID = env->GetFieldID(sChipDeviceControllerCls, "requestTimeoutMillis", "I");
+    VerifyOrExit(sRequestTimeoutFieldID != NULL, err = CDC_JNI_ERROR_FIELD_NOT_FOUND);
+    sMaxRetransmissionsFieldID = env->GetFieldID(sChipDeviceControllerCls, "maxRetransmissions", "I");
+    VerifyOrExit(sMaxRetransmissionsFieldID != NULL, err = CDC_JNI_ERROR_FIELD_NOT_FOUND);
+
+    sRequestTimerWheel.SetDelegate(&sRequestTimerDelegate);
+
     // Initialize the lock that will be used to protect the stack.
     // Note that this needs to allow recursive acquisition.
     pthread_mutexattr_init(&stackLockAttrs);
@@ -123,6 +397,11 @@ jint JNI_OnLoad(JavaVM * jvm, void * reserved)
     err = sInetLayer.Init(sSystemLayer, NULL);
     SuccessOrExit(err);
 
+#if CHIP_CONTROLLER_USE_EPOLL
+    err = sEventLoop.Init();
+    SuccessOrExit(err);
+#endif
+
     // Create and start the IO thread.
     sShutdown  = false;
     pthreadErr = pthread_create(&sIOThread, NULL, IOThreadMain, NULL);
@@ -146,13 +425,17 @@ void JNI_OnUnload(JavaVM * jvm, void * reserved)
     if (sIOThread != PTHREAD_NULL)
     {
         sShutdown = true;
-        sSystemLayer.WakeSelect();
+        WakeIOThread();
         pthread_join(sIOThread, NULL);
     }
 
     sSystemLayer.Shutdown();
     sInetLayer.Shutdown();
 
+#if CHIP_CONTROLLER_USE_EPOLL
+    sEventLoop.Shutdown();
+#endif
+
     pthread_mutex_destroy(&sStackLock);
     sJVM = NULL;
 }
@@ -161,6 +444,7 @@ JNI_METHOD(jlong, newDeviceController)(JNIEnv * env, jobject self)
 {
     CHIP_ERROR err                          = CHIP_NO_ERROR;
     ChipDeviceController * deviceController = NULL;
+    ControllerState * state                 = NULL;
     long result                             = 0;
 
     ChipLogProgress(Controller, "newDeviceController() called");
@@ -171,7 +455,17 @@ JNI_METHOD(jlong, newDeviceController)(JNIEnv * env, jobject self)
     err = deviceController->Init(kLocalDeviceId, &sSystemLayer, &sInetLayer);
     SuccessOrExit(err);
 
-    deviceController->AppState = (void *) env->NewGlobalRef(self);
+    state = new ControllerState();
+    VerifyOrExit(state != NULL, err = CHIP_ERROR_NO_MEMORY);
+    deviceController->AppState = state;
+
+    // Only hold the Java controller weakly, so that it can be collected, and its native controller
+    // deleted, if it is never closed.
+    state->mSelf = env->NewWeakGlobalRef(self);
+    VerifyOrExit(state->mSelf != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+    deviceController->SetSessionStore(new JniSessionStore(deviceController));
+    VerifyOrExit(deviceController->GetSessionStore() != NULL, err = CHIP_ERROR_NO_MEMORY);
 
     result = (long) deviceController;
 
@@ -180,10 +474,12 @@ exit:
     {
         if (deviceController != NULL)
         {
-            if (deviceController->AppState != NULL)
+            if (state != NULL && state->mSelf != NULL)
             {
-                env->DeleteGlobalRef((jobject) deviceController->AppState);
+                env->DeleteWeakGlobalRef(state->mSelf);
             }
+            delete state;
+            delete deviceController->GetSessionStore();
             deviceController->Shutdown();
             delete deviceController;
         }
@@ -201,360 +497,1297 @@ JNI_METHOD(void, beginConnectDevice)(JNIEnv * env, jobject self, jlong deviceCon
 {
     CHIP_ERROR err                          = CHIP_NO_ERROR;
     ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
-    chip::Inet::IPAddress deviceIPAddr;
+    StackCommand * command                  = NULL;
 
     ChipLogProgress(Controller, "beginConnectDevice() called with IP Address");
 
-    const char * deviceAddrStr = env->GetStringUTFChars(deviceAddr, 0);
-    chip::Inet::IPAddress::FromString(deviceAddrStr, deviceIPAddr);
-    env->ReleaseStringUTFChars(deviceAddr, deviceAddrStr);
+    command = new StackCommand(StackCommand::kConnectDevice, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-    pthread_mutex_lock(&sStackLock);
-    err = deviceController->ConnectDeviceWithoutSecurePairing(kRemoteDeviceId, deviceIPAddr, (void *) "ConnectDevice",
-                                                              HandleKeyExchange, HandleEchoResponse, HandleError, CHIP_PORT);
-    pthread_mutex_unlock(&sStackLock);
+    err = J2N_IPAddress(env, deviceAddr, command->mDeviceAddr);
+    SuccessOrExit(err);
+
+    err     = SubmitStackCommand(command);
+    command = NULL;
 
+exit:
     if (err != CHIP_NO_ERROR)
     {
         ChipLogError(Controller, "Failed to connect to device.");
+        delete command;
         ThrowError(env, err);
     }
 }
 
-JNI_METHOD(void, beginSendMessage)(JNIEnv * env, jobject self, jlong deviceControllerPtr, jstring messageObj)
+JNI_METHOD(void, beginSendMessage)(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong requestId, jstring messageObj)
 {
     CHIP_ERROR err                          = CHIP_NO_ERROR;
     ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
 
     ChipLogProgress(Controller, "beginSendMessage() called");
 
-    const char * messageStr = env->GetStringUTFChars(messageObj, 0);
-    size_t messageLen       = strlen(messageStr);
-
-    pthread_mutex_lock(&sStackLock);
+    command = new StackCommand(StackCommand::kSendMessage, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-    auto * buffer = System::PacketBuffer::NewWithAvailableSize(messageLen);
-    memcpy(buffer->Start(), messageStr, messageLen);
-    buffer->SetDataLength(messageLen);
-    err = deviceController->SendMessage((void *) "SendMessage", buffer);
+    command->mRequestId = (uint64_t) requestId;
+    J2N_RequestPolicy(env, self, command->mTimeoutMS, command->mMaxRetransmissions);
 
-    pthread_mutex_unlock(&sStackLock);
+    err = J2N_MessageBuffer(env, messageObj, command->mBuffer);
+    SuccessOrExit(err);
 
-    env->ReleaseStringUTFChars(messageObj, messageStr);
+    err     = SubmitStackCommand(command);
+    command = NULL;
 
+exit:
     if (err != CHIP_NO_ERROR)
     {
         ChipLogError(Controller, "Failed to send echo message.");
+        delete command;
         ThrowError(env, err);
     }
 }
 
-JNI_METHOD(void, beginSendCommand)(JNIEnv * env, jobject self, jlong deviceControllerPtr, jobject commandObj)
+JNI_METHOD(void, beginSendCommand)(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong requestId, jobject commandObj)
 {
     CHIP_ERROR err                          = CHIP_NO_ERROR;
     ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
 
     ChipLogProgress(Controller, "beginSendCommand() called");
 
-    jclass commandCls         = env->GetObjectClass(commandObj);
-    jmethodID commandMethodID = env->GetMethodID(commandCls, "getValue", "()I");
-    jint commandID            = env->CallIntMethod(commandObj, commandMethodID);
+    command = new StackCommand(StackCommand::kSendMessage, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-    pthread_mutex_lock(&sStackLock);
+    command->mRequestId = (uint64_t) requestId;
+    J2N_RequestPolicy(env, self, command->mTimeoutMS, command->mMaxRetransmissions);
 
-    // Make sure our buffer is big enough, but this will need a better setup!
-    static const size_t bufferSize = 1024;
-    auto * buffer                  = System::PacketBuffer::NewWithAvailableSize(bufferSize);
+    err = J2N_CommandBuffer(env, commandObj, command->mBuffer);
+    SuccessOrExit(err);
 
-    // Hardcode endpoint to 1 for now
-    uint8_t endpoint = 1;
+    err     = SubmitStackCommand(command);
+    command = NULL;
 
-    uint16_t dataLength = 0;
-    switch (commandID)
+exit:
+    if (err != CHIP_NO_ERROR)
     {
-    case 0:
-        dataLength = encodeOffCommand(buffer->Start(), bufferSize, endpoint);
-        break;
-    case 1:
-        dataLength = encodeOnCommand(buffer->Start(), bufferSize, endpoint);
-        break;
-    case 2:
-        dataLength = encodeToggleCommand(buffer->Start(), bufferSize, endpoint);
-        break;
-    default:
-        ChipLogError(Controller, "Unknown command: %d", commandID);
-        return;
+        ChipLogError(Controller, "Failed to send CHIP command.");
+        delete command;
+        ThrowError(env, err);
     }
+}
+
+JNI_METHOD(void, beginSendCommandBuffer)
+(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong requestId, jbyteArray commandObj, jint commandLen)
+{
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
 
-    buffer->SetDataLength(dataLength);
+    ChipLogProgress(Controller, "beginSendCommandBuffer() called");
 
-    // Hardcode endpoint to 1 for now
-    err = deviceController->SendMessage((void *) "SendMessage", buffer);
+    command = new StackCommand(StackCommand::kSendMessage, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-    pthread_mutex_unlock(&sStackLock);
+    command->mRequestId = (uint64_t) requestId;
+    J2N_RequestPolicy(env, self, command->mTimeoutMS, command->mMaxRetransmissions);
 
+    err = J2N_ByteArrayBuffer(env, commandObj, commandLen, command->mBuffer);
+    SuccessOrExit(err);
+
+    err     = SubmitStackCommand(command);
+    command = NULL;
+
+exit:
     if (err != CHIP_NO_ERROR)
     {
         ChipLogError(Controller, "Failed to send CHIP command.");
+        delete command;
         ThrowError(env, err);
     }
 }
 
-JNI_METHOD(jboolean, isConnected)(JNIEnv * env, jobject self, jlong deviceControllerPtr)
+JNI_METHOD(void, openDeviceSession)
+(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong deviceId, jstring deviceAddr, jint devicePort,
+ jboolean withoutSecurePairing)
 {
-    ChipLogProgress(Controller, "isConnected() called");
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
     ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
-    return deviceController->IsConnected() ? JNI_TRUE : JNI_FALSE;
-}
+    StackCommand * command                  = NULL;
 
-JNI_METHOD(jboolean, disconnectDevice)(JNIEnv * env, jobject self, jlong deviceControllerPtr)
-{
-    ChipLogProgress(Controller, "disconnectDevice() called");
+    ChipLogProgress(Controller, "openDeviceSession() called");
 
-    CHIP_ERROR err = CHIP_NO_ERROR;
+    command = new StackCommand(withoutSecurePairing ? StackCommand::kOpenDeviceSessionWithoutSecurePairing
+                                                    : StackCommand::kOpenDeviceSession,
+                               deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    command->mDeviceId   = (NodeId) deviceId;
+    command->mDevicePort = (uint16_t) devicePort;
 
-    pthread_mutex_lock(&sStackLock);
-    err = deviceController->DisconnectDevice();
-    pthread_mutex_unlock(&sStackLock);
+    err = J2N_IPAddress(env, deviceAddr, command->mDeviceAddr);
+    SuccessOrExit(err);
+
+    err     = SubmitStackCommand(command);
+    command = NULL;
 
+exit:
     if (err != CHIP_NO_ERROR)
     {
-        ChipLogError(Controller, "Failed to disconnect ChipDeviceController");
-        return JNI_FALSE;
+        ChipLogError(Controller, "Failed to open device session.");
+        delete command;
+        ThrowError(env, err);
     }
-
-    return JNI_TRUE;
 }
 
-JNI_METHOD(void, deleteDeviceController)(JNIEnv * env, jobject self, jlong deviceControllerPtr)
+JNI_METHOD(void, setMaxDeviceSessions)(JNIEnv * env, jobject self, jlong deviceControllerPtr, jint maxSessions)
 {
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
     ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
 
-    ChipLogProgress(Controller, "deleteDeviceController() called");
+    LockStack(deviceController);
+    err = deviceController->SetMaxDeviceSessions((uint16_t) maxSessions);
+    pthread_mutex_unlock(&sStackLock);
 
-    if (deviceController != NULL)
+    if (err != CHIP_NO_ERROR)
     {
-        if (deviceController->AppState != NULL)
-        {
-            env->DeleteGlobalRef((jobject) deviceController->AppState);
-        }
-        deviceController->Shutdown();
-        delete deviceController;
+        ChipLogError(Controller, "Failed to set the maximum number of device sessions.");
+        ThrowError(env, err);
     }
 }
 
-void HandleKeyExchange(ChipDeviceController * deviceController, Transport::PeerConnectionState * state, void * appReqState) {}
-
-void HandleEchoResponse(ChipDeviceController * deviceController, void * appReqState, System::PacketBuffer * payload)
+JNI_METHOD(jboolean, hasDeviceSession)(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong deviceId)
 {
-    JNIEnv * env;
-    jclass deviceControllerCls;
-    jmethodID methodID;
-    jobject self      = (jobject) deviceController->AppState;
-    jstring msgString = NULL;
-    CHIP_ERROR err    = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    bool hasSession;
 
-    sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+    LockStack(deviceController);
+    hasSession = deviceController->HasDeviceSession((NodeId) deviceId);
+    pthread_mutex_unlock(&sStackLock);
 
-    int dataLen = payload->DataLength();
-    char msgBuffer[dataLen];
-    msgBuffer[dataLen] = 0;
-    memcpy(msgBuffer, payload->Start(), dataLen);
+    return hasSession ? JNI_TRUE : JNI_FALSE;
+}
 
-    err = N2J_NewStringUTF(env, msgBuffer, msgString);
+JNI_METHOD(void, sendDeviceMessage)
+(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong deviceId, jlong requestId, jstring messageObj)
+{
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
 
-    ChipLogProgress(Controller, "Echo response %s", msgBuffer);
+    ChipLogProgress(Controller, "sendDeviceMessage() called");
 
-    deviceControllerCls = env->GetObjectClass(self);
-    VerifyOrExit(deviceControllerCls != NULL, err = CDC_JNI_ERROR_TYPE_NOT_FOUND);
+    command = new StackCommand(StackCommand::kSendDeviceMessage, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-    methodID = env->GetMethodID(deviceControllerCls, "onSendMessageComplete", "(Ljava/lang/String;)V");
-    VerifyOrExit(methodID != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    command->mDeviceId  = (NodeId) deviceId;
+    command->mRequestId = (uint64_t) requestId;
+    J2N_RequestPolicy(env, self, command->mTimeoutMS, command->mMaxRetransmissions);
 
-    env->ExceptionClear();
-    env->CallVoidMethod(self, methodID, msgString);
-    VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+    err = J2N_MessageBuffer(env, messageObj, command->mBuffer);
+    SuccessOrExit(err);
+
+    err     = SubmitStackCommand(command);
+    command = NULL;
 
 exit:
-    env->ExceptionClear();
-    System::PacketBuffer::Free(payload);
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Failed to send message to device.");
+        delete command;
+        ThrowError(env, err);
+    }
 }
 
-void HandleError(ChipDeviceController * deviceController, void * appReqState, CHIP_ERROR err, const IPPacketInfo * pktInfo)
+JNI_METHOD(void, sendDeviceCommand)
+(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong deviceId, jlong requestId, jobject commandObj)
 {
-    JNIEnv * env;
-    jclass cls;
-    jmethodID method;
-    jthrowable ex;
-    jobject self = (jobject) deviceController->AppState;
-
-    ChipLogError(Controller, "HandleError");
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
 
-    sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+    ChipLogProgress(Controller, "sendDeviceCommand() called");
 
-    err = N2J_Error(env, err, ex);
-    SuccessOrExit(err);
+    command = new StackCommand(StackCommand::kSendDeviceMessage, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-    cls = env->GetObjectClass(self);
-    VerifyOrExit(cls != NULL, err = CDC_JNI_ERROR_TYPE_NOT_FOUND);
+    command->mDeviceId  = (NodeId) deviceId;
+    command->mRequestId = (uint64_t) requestId;
+    J2N_RequestPolicy(env, self, command->mTimeoutMS, command->mMaxRetransmissions);
 
-    method = env->GetMethodID(cls, "onError", "(Ljava/lang/Throwable;)V");
-    VerifyOrExit(method != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    err = J2N_CommandBuffer(env, commandObj, command->mBuffer);
+    SuccessOrExit(err);
 
-    env->ExceptionClear();
-    env->CallVoidMethod(self, method, ex);
-    VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+    err     = SubmitStackCommand(command);
+    command = NULL;
 
 exit:
-    env->ExceptionClear();
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Failed to send CHIP command to device.");
+        delete command;
+        ThrowError(env, err);
+    }
 }
 
-void * IOThreadMain(void * arg)
+JNI_METHOD(void, sendDeviceCommandBuffer)
+(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong deviceId, jlong requestId, jbyteArray commandObj, jint commandLen)
 {
-    JNIEnv * env;
-    JavaVMAttachArgs attachArgs;
-    struct timeval sleepTime;
-    fd_set readFDs, writeFDs, exceptFDs;
-    int numFDs = 0;
-
-    // Attach the IO thread to the JVM as a daemon thread.
-    // This allows the JVM to shutdown without waiting for this thread to exit.
-    attachArgs.version = JNI_VERSION_1_6;
-    attachArgs.name    = (char *) "CHIP Device Controller IO Thread";
-    attachArgs.group   = NULL;
-#ifdef __ANDROID__
-    sJVM->AttachCurrentThreadAsDaemon(&env, (void *) &attachArgs);
-#else
-    sJVM->AttachCurrentThreadAsDaemon((void **) &env, (void *) &attachArgs);
-#endif
-
-    ChipLogProgress(Controller, "IO thread starting");
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
 
-    // Lock the stack to prevent collisions with Java threads.
-    pthread_mutex_lock(&sStackLock);
+    ChipLogProgress(Controller, "sendDeviceCommandBuffer() called");
 
-    // Loop until we are told to exit.
-    while (true)
-    {
-        numFDs = 0;
-        FD_ZERO(&readFDs);
-        FD_ZERO(&writeFDs);
-        FD_ZERO(&exceptFDs);
+    command = new StackCommand(StackCommand::kSendDeviceMessage, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-        sleepTime.tv_sec  = 10;
-        sleepTime.tv_usec = 0;
+    command->mDeviceId  = (NodeId) deviceId;
+    command->mRequestId = (uint64_t) requestId;
+    J2N_RequestPolicy(env, self, command->mTimeoutMS, command->mMaxRetransmissions);
 
-        // Collect the currently active file descriptors.
-        sSystemLayer.PrepareSelect(numFDs, &readFDs, &writeFDs, &exceptFDs, sleepTime);
-        sInetLayer.PrepareSelect(numFDs, &readFDs, &writeFDs, &exceptFDs, sleepTime);
+    err = J2N_ByteArrayBuffer(env, commandObj, commandLen, command->mBuffer);
+    SuccessOrExit(err);
 
-        // Unlock the stack so that Java threads can make API calls.
-        pthread_mutex_unlock(&sStackLock);
+    err     = SubmitStackCommand(command);
+    command = NULL;
 
-        // Wait for for I/O or for the next timer to expire.
-        int selectRes = select(numFDs, &readFDs, &writeFDs, &exceptFDs, &sleepTime);
+exit:
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Failed to send CHIP command to device.");
+        delete command;
+        ThrowError(env, err);
+    }
+}
 
-        // Break the loop if requested to shutdown.
-        // if (sShutdown)
-        // break;
+JNI_METHOD(void, sendDeviceMessageBuffer)
+(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong deviceId, jlong requestId, jlong bufferHandle, jint length)
+{
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
+    System::PacketBuffer * buffer           = NULL;
 
-        // Re-lock the stack.
-        pthread_mutex_lock(&sStackLock);
+    ChipLogProgress(Controller, "sendDeviceMessageBuffer() called");
 
-        // Perform I/O and/or dispatch timers.
-        sSystemLayer.HandleSelectResult(selectRes, &readFDs, &writeFDs, &exceptFDs);
-        sInetLayer.HandleSelectResult(selectRes, &readFDs, &writeFDs, &exceptFDs);
-    }
+    // Send the packet buffer the message was written into, rather than a copy of it.
+    err = J2N_MessageBufferHandle(bufferHandle, length, buffer);
+    SuccessOrExit(err);
 
-    // Detach the thread from the JVM.
-    sJVM->DetachCurrentThread();
+    command = new StackCommand(StackCommand::kSendDeviceMessage, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-    return NULL;
-}
+    command->mDeviceId  = (NodeId) deviceId;
+    command->mRequestId = (uint64_t) requestId;
+    command->mBuffer    = buffer;
+    buffer              = NULL;
+    J2N_RequestPolicy(env, self, command->mTimeoutMS, command->mMaxRetransmissions);
 
-void ThrowError(JNIEnv * env, CHIP_ERROR errToThrow)
-{
-    CHIP_ERROR err = CHIP_NO_ERROR;
-    jthrowable ex;
+    err     = SubmitStackCommand(command);
+    command = NULL;
 
-    err = N2J_Error(env, errToThrow, ex);
-    if (err == CHIP_NO_ERROR)
+exit:
+    if (err != CHIP_NO_ERROR)
     {
-        env->Throw(ex);
+        ChipLogError(Controller, "Failed to send message buffer to device.");
+        if (buffer != NULL)
+        {
+            System::PacketBuffer::Free(buffer);
+        }
+        delete command;
+        ThrowError(env, err);
     }
 }
 
-CHIP_ERROR GetClassRef(JNIEnv * env, const char * clsType, jclass & outCls)
+JNI_METHOD(void, sendDeviceCommands)
+(JNIEnv * env, jobject self, jlong deviceControllerPtr, jint count, jlongArray deviceIdsObj, jintArray endpointsObj,
+ jintArray commandsObj, jlongArray requestIdsObj)
 {
-    CHIP_ERROR err = CHIP_NO_ERROR;
-    jclass cls     = NULL;
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    jlong * deviceIds                       = NULL;
+    jint * endpoints                        = NULL;
+    jint * commands                         = NULL;
+    jlong * requestIds                      = NULL;
+    StackCommand * newest                   = NULL;
+    StackCommand * oldest                   = NULL;
+    uint32_t timeoutMS                      = 0;
+    uint8_t maxRetransmissions              = 0;
+
+    ChipLogProgress(Controller, "sendDeviceCommands() called with %d commands", count);
+
+    VerifyOrExit(count > 0, );
+
+    J2N_RequestPolicy(env, self, timeoutMS, maxRetransmissions);
+
+    deviceIds  = env->GetLongArrayElements(deviceIdsObj, NULL);
+    endpoints  = env->GetIntArrayElements(endpointsObj, NULL);
+    commands   = env->GetIntArrayElements(commandsObj, NULL);
+    requestIds = env->GetLongArrayElements(requestIdsObj, NULL);
+    VerifyOrExit(deviceIds != NULL && endpoints != NULL && commands != NULL && requestIds != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+    // Encode the whole batch before queuing any of it, linking the commands from the newest to the oldest
+    // as StackCommandQueue expects.
+    for (jint i = 0; i < count; i++)
+    {
+        StackCommand * command = new StackCommand(StackCommand::kSendDeviceMessage, deviceController);
+        VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+        command->mDeviceId           = (NodeId) deviceIds[i];
+        command->mRequestId          = (uint64_t) requestIds[i];
+        command->mTimeoutMS          = timeoutMS;
+        command->mMaxRetransmissions = maxRetransmissions;
+        command->mNext               = newest;
+        newest                       = command;
+        if (oldest == NULL)
+        {
+            oldest = command;
+        }
 
-    cls = env->FindClass(clsType);
-    VerifyOrExit(cls != NULL, err = CDC_JNI_ERROR_TYPE_NOT_FOUND);
+        err = EncodeCommand(commands[i], (uint8_t) endpoints[i], command->mBuffer);
+        SuccessOrExit(err);
+    }
 
-    outCls = (jclass) env->NewGlobalRef((jobject) cls);
-    VerifyOrExit(outCls != NULL, err = CDC_JNI_ERROR_TYPE_NOT_FOUND);
+    err    = SubmitStackCommands(newest, oldest);
+    newest = NULL;
 
 exit:
-    env->DeleteLocalRef(cls);
-    return err;
-}
-
-CHIP_ERROR N2J_NewStringUTF(JNIEnv * env, const char * inStr, jstring & outString)
-{
-    return N2J_NewStringUTF(env, inStr, strlen(inStr), outString);
-}
-
-CHIP_ERROR N2J_ByteArray(JNIEnv * env, const uint8_t * inArray, uint32_t inArrayLen, jbyteArray & outArray)
+    if (deviceIds != NULL)
+    {
+        env->ReleaseLongArrayElements(deviceIdsObj, deviceIds, JNI_ABORT);
+    }
+    if (endpoints != NULL)
+    {
+        env->ReleaseIntArrayElements(endpointsObj, endpoints, JNI_ABORT);
+    }
+    if (commands != NULL)
+    {
+        env->ReleaseIntArrayElements(commandsObj, commands, JNI_ABORT);
+    }
+    if (requestIds != NULL)
+    {
+        env->ReleaseLongArrayElements(requestIdsObj, requestIds, JNI_ABORT);
+    }
+
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Failed to send CHIP commands to devices.");
+
+        while (newest != NULL)
+        {
+            StackCommand * next = newest->mNext;
+            if (newest->mBuffer != NULL)
+            {
+                System::PacketBuffer::Free(newest->mBuffer);
+            }
+            delete newest;
+            newest = next;
+        }
+
+        ThrowError(env, err);
+    }
+}
+
+JNI_METHOD(jboolean, closeDeviceSession)(JNIEnv * env, jobject self, jlong deviceControllerPtr, jlong deviceId)
+{
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
+
+    ChipLogProgress(Controller, "closeDeviceSession() called");
+
+    command = new StackCommand(StackCommand::kCloseDeviceSession, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+    command->mDeviceId = (NodeId) deviceId;
+
+    err = SubmitStackCommand(command);
+
+exit:
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Failed to close device session");
+        return JNI_FALSE;
+    }
+
+    return JNI_TRUE;
+}
+
+JNI_METHOD(jboolean, isConnected)(JNIEnv * env, jobject self, jlong deviceControllerPtr)
+{
+    ChipLogProgress(Controller, "isConnected() called");
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    return deviceController->IsConnected() ? JNI_TRUE : JNI_FALSE;
+}
+
+JNI_METHOD(jboolean, disconnectDevice)(JNIEnv * env, jobject self, jlong deviceControllerPtr)
+{
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
+
+    ChipLogProgress(Controller, "disconnectDevice() called");
+
+    command = new StackCommand(StackCommand::kDisconnectDevice, deviceController);
+    VerifyOrExit(command != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+    err = SubmitStackCommand(command);
+
+exit:
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Failed to disconnect ChipDeviceController");
+        return JNI_FALSE;
+    }
+
+    return JNI_TRUE;
+}
+
+JNI_METHOD(void, deleteDeviceController)(JNIEnv * env, jclass cls, jlong deviceControllerPtr)
+{
+    ChipDeviceController * deviceController = (ChipDeviceController *) deviceControllerPtr;
+    StackCommand * command                  = NULL;
+
+    ChipLogProgress(Controller, "deleteDeviceController() called");
+
+    VerifyOrExit(deviceController != NULL, );
+
+    command = new StackCommand(StackCommand::kDeleteDeviceController, deviceController);
+    VerifyOrExit(command != NULL, ChipLogError(Controller, "Failed to delete ChipDeviceController"));
+
+    // The controller may be gone by the time Push() returns, so wake the IO thread directly
+    // instead of through the controller being deleted.
+    if (sStackCommandQueue.Push(command))
+    {
+        WakeIOThread();
+    }
+
+exit:
+    return;
+}
+
+JNI_METHOD(void, readNativeLatencies)
+(JNIEnv * env, jobject self, jlong deviceControllerPtr, jint latency, jlongArray countsObj)
+{
+    CHIP_ERROR err                  = CHIP_NO_ERROR;
+    ControllerState * state         = GetControllerState((ChipDeviceController *) deviceControllerPtr);
+    const LatencyHistogram * source = NULL;
+    jlong counts[LatencyHistogram::kBucketCount];
+
+    switch (latency)
+    {
+    case kNativeLatency_Submit:
+        source = &state->mSubmitLatency;
+        break;
+    case kNativeLatency_Upcall:
+        source = &state->mUpcallLatency;
+        break;
+    case kNativeLatency_StackLockWait:
+        source = &state->mStackLockWait;
+        break;
+    case kNativeLatency_Connect:
+        source = &state->mConnectLatency;
+        break;
+    default:
+        ExitNow(err = CHIP_ERROR_INVALID_ARGUMENT);
+    }
+    VerifyOrExit(env->GetArrayLength(countsObj) == LatencyHistogram::kBucketCount, err = CHIP_ERROR_INVALID_ARGUMENT);
+
+    source->Read(counts);
+    env->SetLongArrayRegion(countsObj, 0, LatencyHistogram::kBucketCount, counts);
+
+exit:
+    if (err != CHIP_NO_ERROR)
+    {
+        ThrowError(env, err);
+    }
+}
+
+JNI_MESSAGE_BUFFER_METHOD(jobject, allocateNative)(JNIEnv * env, jclass cls, jint capacity)
+{
+    CHIP_ERROR err                = CHIP_NO_ERROR;
+    System::PacketBuffer * buffer = NULL;
+    jobject messageObj            = NULL;
+
+    VerifyOrExit(capacity >= 0, err = CHIP_ERROR_INVALID_ARGUMENT);
+
+    // The buffer leaves room in front of the payload for the headers added when it is sent.
+    buffer = System::PacketBuffer::NewWithAvailableSize((size_t) capacity);
+    VerifyOrExit(buffer != NULL, err = CHIP_ERROR_NO_MEMORY);
+    VerifyOrExit(buffer->AvailableDataLength() >= capacity, err = CHIP_ERROR_BUFFER_TOO_SMALL);
+
+    err = N2J_MessageBuffer(env, buffer, (uint32_t) capacity, messageObj);
+    SuccessOrExit(err);
+
+exit:
+    if (err != CHIP_NO_ERROR)
+    {
+        if (buffer != NULL)
+        {
+            System::PacketBuffer::Free(buffer);
+        }
+        ThrowError(env, err);
+    }
+    return messageObj;
+}
+
+JNI_MESSAGE_BUFFER_METHOD(void, free)(JNIEnv * env, jclass cls, jlong bufferHandle)
+{
+    System::PacketBuffer::Free((System::PacketBuffer *) bufferHandle);
+}
+
+void LockStack(ChipDeviceController * deviceController)
+{
+    uint64_t start = System::Layer::GetClock_MonotonicHiRes();
+
+    pthread_mutex_lock(&sStackLock);
+
+    // The waits of the IO thread are not on behalf of any controller.
+    if (deviceController != NULL)
+    {
+        GetControllerState(deviceController)->mStackLockWait.Record(System::Layer::GetClock_MonotonicHiRes() - start);
+    }
+}
+
+CHIP_ERROR SubmitStackCommand(StackCommand * command)
+{
+    return SubmitStackCommands(command, command);
+}
+
+CHIP_ERROR SubmitStackCommands(StackCommand * newest, StackCommand * oldest)
+{
+    // Only the first commands queued since the IO thread last drained the queue need to wake it up;
+    // the following ones are picked up in the same batch. Wake it directly rather than through the
+    // controller, which only the IO thread may use once the commands are queued.
+    if (sStackCommandQueue.Push(newest, oldest))
+    {
+        WakeIOThread();
+    }
+
+    return CHIP_NO_ERROR;
+}
+
+void WakeIOThread()
+{
+#if CHIP_CONTROLLER_USE_EPOLL
+    sEventLoop.Wake();
+#else
+    sSystemLayer.WakeSelect();
+#endif
+}
+
+void RunStackCommands(JNIEnv * env)
+{
+    StackCommand * command = sStackCommandQueue.PopAll();
+
+    while (command != NULL)
+    {
+        StackCommand * next                     = command->mNext;
+        ChipDeviceController * deviceController = command->mController;
+        CHIP_ERROR err                          = CHIP_NO_ERROR;
+
+        GetControllerState(deviceController)->mSubmitLatency.Record(System::Layer::GetClock_MonotonicHiRes() -
+                                                                    command->mSubmitTimeUS);
+
+        switch (command->mType)
+        {
+        case StackCommand::kConnectDevice:
+            GetControllerState(deviceController)->mConnectStartUS = System::Layer::GetClock_MonotonicHiRes();
+            // Resume the stored pairing with the device if there is one, rather than exchanging keys again.
+            if (deviceController->ResumePairing(kRemoteDeviceId) == CHIP_NO_ERROR)
+            {
+                err = deviceController->ConnectDevice(kRemoteDeviceId, command->mDeviceAddr, (void *) "ConnectDevice",
+                                                      HandleKeyExchange, HandleEchoResponse, HandleError, CHIP_PORT);
+            }
+            else
+            {
+                err = deviceController->ConnectDeviceWithoutSecurePairing(kRemoteDeviceId, command->mDeviceAddr,
+                                                                          (void *) "ConnectDevice", HandleKeyExchange,
+                                                                          HandleEchoResponse, HandleError, CHIP_PORT);
+            }
+            if (err != CHIP_NO_ERROR)
+            {
+                ChipLogError(Controller, "Failed to connect to device.");
+                HandleError(deviceController, NULL, err, NULL);
+            }
+            break;
+
+        case StackCommand::kSendMessage:
+            err = SendRequest(command, kUndefinedNodeId);
+            if (err != CHIP_NO_ERROR)
+            {
+                ChipLogError(Controller, "Failed to send message.");
+                HandleRequestError(deviceController, kUndefinedNodeId, command->mRequestId, err);
+            }
+            break;
+
+        case StackCommand::kDisconnectDevice:
+            sRequestTimerWheel.RemoveAll(deviceController, kUndefinedNodeId);
+            err = deviceController->DisconnectDevice();
+            if (err != CHIP_NO_ERROR)
+            {
+                ChipLogError(Controller, "Failed to disconnect ChipDeviceController");
+            }
+            break;
+
+        case StackCommand::kOpenDeviceSession:
+            err = deviceController->OpenDeviceSession(command->mDeviceId, command->mDeviceAddr, NULL, HandleDeviceMessage,
+                                                      HandleDeviceSessionExpired, command->mDevicePort);
+            if (err != CHIP_NO_ERROR)
+            {
+                ChipLogError(Controller, "Failed to open device session.");
+                HandleDeviceError(deviceController, command->mDeviceId, err);
+            }
+            break;
+
+        case StackCommand::kOpenDeviceSessionWithoutSecurePairing:
+            err = deviceController->OpenDeviceSessionWithoutSecurePairing(command->mDeviceId, command->mDeviceAddr, NULL,
+                                                                          HandleDeviceMessage, HandleDeviceSessionExpired,
+                                                                          command->mDevicePort);
+            if (err != CHIP_NO_ERROR)
+            {
+                ChipLogError(Controller, "Failed to open device session.");
+                HandleDeviceError(deviceController, command->mDeviceId, err);
+            }
+            break;
+
+        case StackCommand::kSendDeviceMessage:
+            err = SendRequest(command, command->mDeviceId);
+            if (err != CHIP_NO_ERROR)
+            {
+                ChipLogError(Controller, "Failed to send message to device.");
+                HandleRequestError(deviceController, command->mDeviceId, command->mRequestId, err);
+            }
+            break;
+
+        case StackCommand::kCloseDeviceSession:
+            sRequestTimerWheel.RemoveAll(deviceController, command->mDeviceId);
+            err = deviceController->CloseDeviceSession(command->mDeviceId);
+            if (err != CHIP_NO_ERROR)
+            {
+                ChipLogError(Controller, "Failed to close device session");
+            }
+            break;
+
+        case StackCommand::kDeleteDeviceController:
+            sRequestTimerWheel.RemoveAll(deviceController);
+            env->DeleteWeakGlobalRef(GetControllerState(deviceController)->mSelf);
+            delete GetControllerState(deviceController);
+            delete deviceController->GetSessionStore();
+            deviceController->Shutdown();
+            delete deviceController;
+            break;
+        }
+
+#if CHIP_CONTROLLER_USE_EPOLL
+        // Anything but sending may have closed and reopened sockets under the same descriptors.
+        if (command->mType != StackCommand::kSendMessage && command->mType != StackCommand::kSendDeviceMessage)
+        {
+            sEventLoop.Invalidate();
+        }
+#endif
+
+        if (command->mBuffer != NULL)
+        {
+            System::PacketBuffer::Free(command->mBuffer);
+        }
+        delete command;
+
+        command = next;
+    }
+}
+
+CHIP_ERROR SendRequest(StackCommand * command, NodeId deviceId)
+{
+    CHIP_ERROR err                          = CHIP_NO_ERROR;
+    ChipDeviceController * deviceController = command->mController;
+    System::PacketBuffer * payload          = NULL;
+    int16_t sequenceNumber                  = kNoSequenceNumber;
+
+    // Number ZCL commands so that their response can be told apart from the other messages of the device.
+    err = sRequestTimerWheel.AssignSequenceNumber(deviceController, deviceId, command->mBuffer, sequenceNumber);
+    SuccessOrExit(err);
+
+    // Sending consumes the buffer, so keep a copy of the payload for retransmissions, which only ZCL commands get.
+    if (command->mTimeoutMS > 0 && command->mMaxRetransmissions > 0 && sequenceNumber != kNoSequenceNumber)
+    {
+        err = CopyMessageBuffer(command->mBuffer, payload);
+        SuccessOrExit(err);
+    }
+
+    if (deviceId == kUndefinedNodeId)
+    {
+        err = deviceController->SendMessage((void *) "SendMessage", command->mBuffer);
+    }
+    else
+    {
+        err = deviceController->SendMessage(deviceId, command->mBuffer);
+    }
+    command->mBuffer = NULL;
+    SuccessOrExit(err);
+
+    // Requests without a deadline are tracked too, so that their responses are not matched to later requests.
+    err     = sRequestTimerWheel.Add(deviceController, deviceId, command->mRequestId, sequenceNumber, payload,
+                                 command->mTimeoutMS, command->mMaxRetransmissions, System::Layer::GetClock_MonotonicMS());
+    payload = NULL;
+    SuccessOrExit(err);
+
+    StartRequestTimer();
+
+exit:
+    if (payload != NULL)
+    {
+        System::PacketBuffer::Free(payload);
+    }
+    return err;
+}
+
+CHIP_ERROR CopyMessageBuffer(const System::PacketBuffer * inBuffer, System::PacketBuffer *& outBuffer)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    outBuffer = System::PacketBuffer::NewWithAvailableSize(inBuffer->DataLength());
+    VerifyOrExit(outBuffer != NULL, err = CHIP_ERROR_NO_MEMORY);
+    VerifyOrExit(outBuffer->AvailableDataLength() >= inBuffer->DataLength(), err = CHIP_ERROR_BUFFER_TOO_SMALL);
+
+    memcpy(outBuffer->Start(), inBuffer->Start(), inBuffer->DataLength());
+    outBuffer->SetDataLength(inBuffer->DataLength());
+
+exit:
+    if (err != CHIP_NO_ERROR && outBuffer != NULL)
+    {
+        System::PacketBuffer::Free(outBuffer);
+        outBuffer = NULL;
+    }
+    return err;
+}
+
+void StartRequestTimer()
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    // Starting the timer again would push the next tick back, so leave a running timer alone.
+    VerifyOrExit(!sRequestTimerArmed && sRequestTimerWheel.HasDeadlines(), );
+
+    err = sSystemLayer.StartTimer(RequestTimerWheel::GetTickMS(), HandleRequestTimer, NULL);
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Failed to start request timer: %s", ErrorStr(err));
+        ExitNow();
+    }
+
+    sRequestTimerArmed = true;
+
+exit:
+    return;
+}
+
+void HandleRequestTimer(System::Layer * systemLayer, void * appState, System::Error err)
+{
+    sRequestTimerArmed = false;
+
+    sRequestTimerWheel.Advance(System::Layer::GetClock_MonotonicMS());
+
+    StartRequestTimer();
+}
+
+void HandleKeyExchange(ChipDeviceController * deviceController, Transport::PeerConnectionState * state, void * appReqState)
+{
+    ControllerState * controllerState = GetControllerState(deviceController);
+
+    controllerState->mConnectLatency.Record(System::Layer::GetClock_MonotonicHiRes() - controllerState->mConnectStartUS);
+}
+
+void HandleEchoResponse(ChipDeviceController * deviceController, void * appReqState, System::PacketBuffer * payload)
+{
+    JNIEnv * env;
+
+    uint64_t requestId;
+
+    sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+
+    requestId = sRequestTimerWheel.Complete(deviceController, kUndefinedNodeId, payload);
+
+    // Delivered along with the device messages; Java tells echo responses apart by their device ID.
+    BatchDeviceMessage(env, deviceController, kUndefinedNodeId, requestId, payload);
+}
+
+void HandleDeviceMessage(ChipDeviceController * deviceController, NodeId deviceId, void * appReqState,
+                         System::PacketBuffer * payload)
+{
+    JNIEnv * env;
+
+    uint64_t requestId;
+
+    sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+
+    requestId = sRequestTimerWheel.Complete(deviceController, deviceId, payload);
+
+    BatchDeviceMessage(env, deviceController, deviceId, requestId, payload);
+}
+
+void BatchDeviceMessage(JNIEnv * env, ChipDeviceController * deviceController, NodeId deviceId, uint64_t requestId,
+                        System::PacketBuffer * payload)
+{
+    if (sBatchCount == kMaxBatchedMessages || (sBatchCount > 0 && sBatchController != deviceController))
+    {
+        FlushDeviceMessages(env);
+    }
+
+    sBatchController               = deviceController;
+    sBatch[sBatchCount].mDeviceId  = deviceId;
+    sBatch[sBatchCount].mRequestId = requestId;
+    sBatch[sBatchCount].mPayload   = payload;
+    sBatchCount++;
+}
+
+void FlushDeviceMessages(JNIEnv * env)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+    uint64_t upcallStart;
+    jobject self = NULL;
+    jobject messageObj;
+    jlong deviceIds[kMaxBatchedMessages];
+    jlong requestIds[kMaxBatchedMessages];
+    bool delivered = false;
+
+    VerifyOrExit(sBatchCount > 0, );
+
+    err = N2J_Controller(env, sBatchController, self);
+    SuccessOrExit(err);
+
+    // Map the payloads into Java as they are, so that they are never copied on the way up.
+    for (int i = 0; i < sBatchCount; i++)
+    {
+        err = N2J_MessageBuffer(env, sBatch[i].mPayload, sBatch[i].mPayload->DataLength(), messageObj);
+        SuccessOrExit(err);
+
+        deviceIds[i]  = (jlong) sBatch[i].mDeviceId;
+        requestIds[i] = (jlong) sBatch[i].mRequestId;
+        env->SetObjectArrayElement(sBatchMessages, i, messageObj);
+        env->DeleteLocalRef(messageObj);
+    }
+    env->SetLongArrayRegion(sBatchDeviceIds, 0, sBatchCount, deviceIds);
+    env->SetLongArrayRegion(sBatchRequestIds, 0, sBatchCount, requestIds);
+    VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+
+    // From here on, the packet buffers belong to Java, which releases them once it is done with them.
+    upcallStart = System::Layer::GetClock_MonotonicHiRes();
+    env->CallVoidMethod(self, sOnDeviceMessagesMethodID, (jint) sBatchCount, sBatchDeviceIds, sBatchRequestIds, sBatchMessages);
+    GetControllerState(sBatchController)->mUpcallLatency.Record(System::Layer::GetClock_MonotonicHiRes() - upcallStart);
+    delivered = true;
+    VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+
+exit:
+    if (err != CHIP_NO_ERROR)
+    {
+        ChipLogError(Controller, "Failed to deliver %d messages: %s", sBatchCount, ErrorStr(err));
+    }
+    env->ExceptionClear();
+
+    env->DeleteLocalRef(self);
+
+    for (int i = 0; i < sBatchCount && !delivered; i++)
+    {
+        System::PacketBuffer::Free(sBatch[i].mPayload);
+    }
+    sBatchController = NULL;
+    sBatchCount      = 0;
+}
+
+void HandleError(ChipDeviceController * deviceController, void * appReqState, CHIP_ERROR err, const IPPacketInfo * pktInfo)
 {
-    CHIP_ERROR err = CHIP_NO_ERROR;
+    uint64_t upcallStart;
+    JNIEnv * env;
+    jthrowable ex = NULL;
+    jobject self  = NULL;
+
+    ChipLogError(Controller, "HandleError");
+
+    sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+
+    // Deliver the messages received before the error first.
+    FlushDeviceMessages(env);
+
+    err = N2J_Error(env, err, ex);
+    SuccessOrExit(err);
+
+    err = N2J_Controller(env, deviceController, self);
+    SuccessOrExit(err);
+
+    env->ExceptionClear();
+    upcallStart = System::Layer::GetClock_MonotonicHiRes();
+    env->CallVoidMethod(self, sOnErrorMethodID, ex);
+    GetControllerState(deviceController)->mUpcallLatency.Record(System::Layer::GetClock_MonotonicHiRes() - upcallStart);
+    VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+
+exit:
+    env->ExceptionClear();
+    env->DeleteLocalRef(self);
+    env->DeleteLocalRef(ex);
+}
+
+void HandleDeviceError(ChipDeviceController * deviceController, NodeId deviceId, CHIP_ERROR err)
+{
+    uint64_t upcallStart;
+    JNIEnv * env;
+    jthrowable ex = NULL;
+    jobject self  = NULL;
+
+    ChipLogError(Controller, "HandleDeviceError");
+
+    sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+
+    // Deliver the messages received before the error first.
+    FlushDeviceMessages(env);
+
+    err = N2J_Error(env, err, ex);
+    SuccessOrExit(err);
+
+    err = N2J_Controller(env, deviceController, self);
+    SuccessOrExit(err);
+
+    env->ExceptionClear();
+    upcallStart = System::Layer::GetClock_MonotonicHiRes();
+    env->CallVoidMethod(self, sOnDeviceErrorMethodID, (jlong) deviceId, ex);
+    GetControllerState(deviceController)->mUpcallLatency.Record(System::Layer::GetClock_MonotonicHiRes() - upcallStart);
+    VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+
+exit:
+    env->ExceptionClear();
+    env->DeleteLocalRef(self);
+    env->DeleteLocalRef(ex);
+}
+
+void HandleDeviceSessionExpired(ChipDeviceController * deviceController, NodeId deviceId, void * appReqState, CHIP_ERROR err)
+{
+    uint64_t upcallStart;
+    JNIEnv * env;
+    jthrowable ex = NULL;
+    jobject self  = NULL;
+
+    ChipLogError(Controller, "HandleDeviceSessionExpired");
+
+    sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+
+    // Nothing can answer the requests still in flight; Java fails them.
+    sRequestTimerWheel.RemoveAll(deviceController, deviceId);
+
+    FlushDeviceMessages(env);
+
+    err = N2J_Error(env, err, ex);
+    SuccessOrExit(err);
+
+    err = N2J_Controller(env, deviceController, self);
+    SuccessOrExit(err);
+
+    env->ExceptionClear();
+    upcallStart = System::Layer::GetClock_MonotonicHiRes();
+    env->CallVoidMethod(self, sOnDeviceSessionExpiredMethodID, (jlong) deviceId, ex);
+    GetControllerState(deviceController)->mUpcallLatency.Record(System::Layer::GetClock_MonotonicHiRes() - upcallStart);
+    VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+
+exit:
+    env->ExceptionClear();
+    env->DeleteLocalRef(self);
+    env->DeleteLocalRef(ex);
+}
+
+void HandleRequestError(ChipDeviceController * deviceController, NodeId deviceId, uint64_t requestId, CHIP_ERROR err)
+{
+    uint64_t upcallStart;
+    JNIEnv * env;
+    jthrowable ex = NULL;
+    jobject self  = NULL;
+
+    ChipLogError(Controller, "HandleRequestError");
+
+    sJVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+
+    // Deliver the messages received before the error first.
+    FlushDeviceMessages(env);
+
+    err = N2J_Error(env, err, ex);
+    SuccessOrExit(err);
 
-    outArray = env->NewByteArray((int) inArrayLen);
-    VerifyOrExit(outArray != NULL, err = CHIP_ERROR_NO_MEMORY);
+    err = N2J_Controller(env, deviceController, self);
+    SuccessOrExit(err);
 
     env->ExceptionClear();
-    env->SetByteArrayRegion(outArray, 0, inArrayLen, (jbyte *) inArray);
+    upcallStart = System::Layer::GetClock_MonotonicHiRes();
+    env->CallVoidMethod(self, sOnRequestErrorMethodID, (jlong) deviceId, (jlong) requestId, ex);
+    GetControllerState(deviceController)->mUpcallLatency.Record(System::Layer::GetClock_MonotonicHiRes() - upcallStart);
     VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
 
 exit:
+    env->ExceptionClear();
+    env->DeleteLocalRef(self);
+    env->DeleteLocalRef(ex);
+}
+
+void * IOThreadMain(void * arg)
+{
+    JNIEnv * env;
+    JavaVMAttachArgs attachArgs;
+    struct timeval sleepTime;
+    fd_set readFDs, writeFDs, exceptFDs;
+    int numFDs = 0;
+
+    // Attach the IO thread to the JVM as a daemon thread.
+    // This allows the JVM to shutdown without waiting for this thread to exit.
+    attachArgs.version = JNI_VERSION_1_6;
+    attachArgs.name    = (char *) "CHIP Device Controller IO Thread";
+    attachArgs.group   = NULL;
+#ifdef __ANDROID__
+    sJVM->AttachCurrentThreadAsDaemon(&env, (void *) &attachArgs);
+#else
+    sJVM->AttachCurrentThreadAsDaemon((void **) &env, (void *) &attachArgs);
+#endif
+
+    ChipLogProgress(Controller, "IO thread starting");
+
+    // Lock the stack to prevent collisions with Java threads.
+    LockStack(NULL);
+
+    // Loop until we are told to exit.
+    while (true)
+    {
+        numFDs = 0;
+        FD_ZERO(&readFDs);
+        FD_ZERO(&writeFDs);
+        FD_ZERO(&exceptFDs);
+
+        sleepTime.tv_sec  = 10;
+        sleepTime.tv_usec = 0;
+
+        // Collect the currently active file descriptors.
+        sSystemLayer.PrepareSelect(numFDs, &readFDs, &writeFDs, &exceptFDs, sleepTime);
+        sInetLayer.PrepareSelect(numFDs, &readFDs, &writeFDs, &exceptFDs, sleepTime);
+
+        // Unlock the stack so that Java threads can make API calls.
+        pthread_mutex_unlock(&sStackLock);
+
+        // Wait for for I/O or for the next timer to expire.
+#if CHIP_CONTROLLER_USE_EPOLL
+        int selectRes = sEventLoop.Wait(numFDs, &readFDs, &writeFDs, &exceptFDs, sleepTime);
+#else
+        int selectRes = select(numFDs, &readFDs, &writeFDs, &exceptFDs, &sleepTime);
+#endif
+
+        // Break the loop if requested to shutdown.
+        // if (sShutdown)
+        // break;
+
+        // Re-lock the stack.
+        LockStack(NULL);
+
+        // Perform I/O and/or dispatch timers.
+        sSystemLayer.HandleSelectResult(selectRes, &readFDs, &writeFDs, &exceptFDs);
+        sInetLayer.HandleSelectResult(selectRes, &readFDs, &writeFDs, &exceptFDs);
+
+        // Deliver the messages received in this iteration in one upcall.
+        FlushDeviceMessages(env);
+
+        // Run the operations submitted by Java threads since the last iteration.
+        RunStackCommands(env);
+    }
+
+    // Detach the thread from the JVM.
+    sJVM->DetachCurrentThread();
+
+    return NULL;
+}
+
+void ThrowError(JNIEnv * env, CHIP_ERROR errToThrow)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+    jthrowable ex;
+
+    err = N2J_Error(env, errToThrow, ex);
+    if (err == CHIP_NO_ERROR)
+    {
+        env->Throw(ex);
+    }
+}
+
+void J2N_RequestPolicy(JNIEnv * env, jobject self, uint32_t & outTimeoutMS, uint8_t & outMaxRetransmissions)
+{
+    // Set by ChipDeviceController.setRetransmissionPolicy().
+    outTimeoutMS          = (uint32_t) env->GetIntField(self, sRequestTimeoutFieldID);
+    outMaxRetransmissions = (uint8_t) env->GetIntField(self, sMaxRetransmissionsFieldID);
+}
+
+CHIP_ERROR J2N_IPAddress(JNIEnv * env, jstring addrObj, IPAddress & outAddr)
+{
+    CHIP_ERROR err       = CHIP_NO_ERROR;
+    const char * addrStr = env->GetStringUTFChars(addrObj, 0);
+    VerifyOrExit(addrStr != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+    VerifyOrExit(IPAddress::FromString(addrStr, outAddr), err = CHIP_ERROR_INVALID_ADDRESS);
+
+exit:
+    if (addrStr != NULL)
+    {
+        env->ReleaseStringUTFChars(addrObj, addrStr);
+    }
     return err;
 }
 
-CHIP_ERROR N2J_NewStringUTF(JNIEnv * env, const char * inStr, size_t inStrLen, jstring & outString)
+CHIP_ERROR J2N_MessageBuffer(JNIEnv * env, jstring messageObj, System::PacketBuffer *& outBuffer)
 {
     CHIP_ERROR err          = CHIP_NO_ERROR;
-    jbyteArray charArray    = NULL;
-    jstring utf8Encoding    = NULL;
-    jclass java_lang_String = NULL;
-    jmethodID ctor          = NULL;
+    const char * messageStr = env->GetStringUTFChars(messageObj, 0);
+    size_t messageLen;
+    VerifyOrExit(messageStr != NULL, err = CHIP_ERROR_NO_MEMORY);
 
-    err = N2J_ByteArray(env, reinterpret_cast<const uint8_t *>(inStr), inStrLen, charArray);
-    SuccessOrExit(err);
+    messageLen = strlen(messageStr);
+
+    outBuffer = System::PacketBuffer::NewWithAvailableSize(messageLen);
+    VerifyOrExit(outBuffer != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+    memcpy(outBuffer->Start(), messageStr, messageLen);
+    outBuffer->SetDataLength(messageLen);
+
+exit:
+    if (messageStr != NULL)
+    {
+        env->ReleaseStringUTFChars(messageObj, messageStr);
+    }
+    return err;
+}
+
+CHIP_ERROR EncodeCommand(jint commandID, uint8_t endpoint, System::PacketBuffer *& outBuffer)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    // Large enough for any of the commands below; the packet buffer is then sized to fit the encoded command.
+    static const size_t kMaxCommandLength = 64;
+    uint8_t commandBuffer[kMaxCommandLength];
+
+    uint32_t dataLength = 0;
+
+    switch (commandID)
+    {
+    case 0:
+        dataLength = encodeOffCommand(commandBuffer, sizeof(commandBuffer), endpoint);
+        break;
+    case 1:
+        dataLength = encodeOnCommand(commandBuffer, sizeof(commandBuffer), endpoint);
+        break;
+    case 2:
+        dataLength = encodeToggleCommand(commandBuffer, sizeof(commandBuffer), endpoint);
+        break;
+    default:
+        ChipLogError(Controller, "Unknown command: %d", commandID);
+        ExitNow(err = CHIP_ERROR_INVALID_ARGUMENT);
+    }
+    VerifyOrExit(dataLength != 0, err = CHIP_ERROR_BUFFER_TOO_SMALL);
+
+    outBuffer = System::PacketBuffer::NewWithAvailableSize(dataLength);
+    VerifyOrExit(outBuffer != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+    memcpy(outBuffer->Start(), commandBuffer, dataLength);
+    outBuffer->SetDataLength(dataLength);
+
+exit:
+    return err;
+}
+
+CHIP_ERROR J2N_ByteArrayBuffer(JNIEnv * env, jbyteArray dataObj, jint dataLen, System::PacketBuffer *& outBuffer)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    VerifyOrExit(dataLen >= 0 && dataLen <= env->GetArrayLength(dataObj), err = CHIP_ERROR_INVALID_ARGUMENT);
+
+    outBuffer = System::PacketBuffer::NewWithAvailableSize((uint16_t) dataLen);
+    VerifyOrExit(outBuffer != NULL, err = CHIP_ERROR_NO_MEMORY);
+    VerifyOrExit(outBuffer->AvailableDataLength() >= dataLen, err = CHIP_ERROR_BUFFER_TOO_SMALL);
+
+    // Copy the encoded command straight into the packet buffer.
+    env->GetByteArrayRegion(dataObj, 0, dataLen, (jbyte *) outBuffer->Start());
+    outBuffer->SetDataLength((uint16_t) dataLen);
+
+exit:
+    if (err != CHIP_NO_ERROR && outBuffer != NULL)
+    {
+        System::PacketBuffer::Free(outBuffer);
+        outBuffer = NULL;
+    }
+    return err;
+}
+
+CHIP_ERROR J2N_MessageBufferHandle(jlong bufferHandle, jint length, System::PacketBuffer *& outBuffer)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    // The buffer is handed over whatever happens: it is freed here if it cannot be sent.
+    outBuffer = (System::PacketBuffer *) bufferHandle;
+    VerifyOrExit(outBuffer != NULL, err = CHIP_ERROR_INVALID_ARGUMENT);
+    VerifyOrExit(length >= 0 && length <= outBuffer->AvailableDataLength(), err = CHIP_ERROR_INVALID_ARGUMENT);
+
+    outBuffer->SetDataLength((uint16_t) length);
+
+exit:
+    if (err != CHIP_NO_ERROR && outBuffer != NULL)
+    {
+        System::PacketBuffer::Free(outBuffer);
+        outBuffer = NULL;
+    }
+    return err;
+}
+
+CHIP_ERROR J2N_CommandBuffer(JNIEnv * env, jobject commandObj, System::PacketBuffer *& outBuffer)
+{
+    jint commandID = env->CallIntMethod(commandObj, sCommandTypeGetValueMethodID);
 
-    utf8Encoding = env->NewStringUTF("UTF-8");
-    VerifyOrExit(utf8Encoding != NULL, err = CHIP_ERROR_NO_MEMORY);
+    // Hardcode endpoint to 1 for now
+    return EncodeCommand(commandID, 1, outBuffer);
+}
 
-    java_lang_String = env->FindClass("java/lang/String");
-    VerifyOrExit(java_lang_String != NULL, err = CDC_JNI_ERROR_TYPE_NOT_FOUND);
+CHIP_ERROR GetClassRef(JNIEnv * env, const char * clsType, jclass & outCls)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+    jclass cls     = NULL;
 
-    ctor = env->GetMethodID(java_lang_String, "<init>", "([BLjava/lang/String;)V");
-    VerifyOrExit(ctor != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
+    cls = env->FindClass(clsType);
+    VerifyOrExit(cls != NULL, err = CDC_JNI_ERROR_TYPE_NOT_FOUND);
 
-    outString = (jstring) env->NewObject(java_lang_String, ctor, charArray, utf8Encoding);
-    VerifyOrExit(outString != NULL, err = CHIP_ERROR_NO_MEMORY);
+    outCls = (jclass) env->NewGlobalRef((jobject) cls);
+    VerifyOrExit(outCls != NULL, err = CDC_JNI_ERROR_TYPE_NOT_FOUND);
 
 exit:
-    // error code propagated from here, so clear any possible
-    // exceptions that arose here
+    env->DeleteLocalRef(cls);
+    return err;
+}
+
+CHIP_ERROR N2J_MessageBuffer(JNIEnv * env, System::PacketBuffer * buffer, uint32_t length, jobject & outObj)
+{
+    CHIP_ERROR err   = CHIP_NO_ERROR;
+    jobject bytesObj = NULL;
+
     env->ExceptionClear();
+    bytesObj = env->NewDirectByteBuffer(buffer->Start(), (jlong) length);
+    VerifyOrExit(bytesObj != NULL, err = CHIP_ERROR_NO_MEMORY);
+
+    outObj = env->NewObject(sMessageBufferCls, sMessageBufferConstructorID, (jlong) buffer, bytesObj);
+    VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
+
+exit:
+    env->DeleteLocalRef(bytesObj);
+    return err;
+}
+
+CHIP_ERROR N2J_Controller(JNIEnv * env, ChipDeviceController * deviceController, jobject & outSelf)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
 
-    if (utf8Encoding != NULL)
-        env->DeleteLocalRef(utf8Encoding);
-    if (charArray != NULL)
-        env->DeleteLocalRef(charArray);
+    // The Java controller is held weakly; it may have been collected before its native controller
+    // got deleted.
+    outSelf = env->NewLocalRef(GetControllerState(deviceController)->mSelf);
+    VerifyOrExit(outSelf != NULL, err = CHIP_ERROR_INCORRECT_STATE);
 
+exit:
     return err;
 }
 
@@ -563,10 +1796,6 @@ CHIP_ERROR N2J_Error(JNIEnv * env, CHIP_ERROR inErr, jthrowable & outEx)
     CHIP_ERROR err      = CHIP_NO_ERROR;
     const char * errStr = NULL;
     jstring errStrObj   = NULL;
-    jmethodID constructor;
-
-    constructor = env->GetMethodID(sChipDeviceControllerExceptionCls, "<init>", "(ILjava/lang/String;)V");
-    VerifyOrExit(constructor != NULL, err = CDC_JNI_ERROR_METHOD_NOT_FOUND);
 
     switch (inErr)
     {
@@ -579,6 +1808,9 @@ CHIP_ERROR N2J_Error(JNIEnv * env, CHIP_ERROR inErr, jthrowable & outEx)
     case CDC_JNI_ERROR_FIELD_NOT_FOUND:
         errStr = "CHIP Device Controller Error: JNI field not found";
         break;
+    case CDC_JNI_ERROR_REQUEST_TIMEOUT:
+        errStr = "CHIP Device Controller Error: Request timed out";
+        break;
     default:
         errStr = ErrorStr(inErr);
         break;
@@ -586,7 +1818,7 @@ CHIP_ERROR N2J_Error(JNIEnv * env, CHIP_ERROR inErr, jthrowable & outEx)
     errStrObj = (errStr != NULL) ? env->NewStringUTF(errStr) : NULL;
 
     env->ExceptionClear();
-    outEx = (jthrowable) env->NewObject(sChipDeviceControllerExceptionCls, constructor, (jint) inErr, errStrObj);
+    outEx = (jthrowable) env->NewObject(sChipDeviceControllerExceptionCls, sExceptionConstructorID, (jint) inErr, errStrObj);
     VerifyOrExit(!env->ExceptionCheck(), err = CDC_JNI_ERROR_EXCEPTION_THROWN);
 
 exit:
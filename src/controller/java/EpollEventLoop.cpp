@@ -0,0 +1,290 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+/**
+ *    @file
+ *      Implementation of the epoll-based wait of the controller IO thread.
+ *
+ */
+
+#include "EpollEventLoop.h"
+
+#if CHIP_CONTROLLER_USE_EPOLL
+
+#include <support/CodeUtils.h>
+#include <support/ErrorStr.h>
+#include <support/logging/CHIPLogging.h>
+#include <system/SystemError.h>
+
+#include <errno.h>
+#include <sys/eventfd.h>
+#include <sys/timerfd.h>
+#include <unistd.h>
+
+namespace chip {
+namespace DeviceController {
+
+namespace {
+
+uint64_t GetMonotonicUS()
+{
+    struct timespec now;
+    clock_gettime(CLOCK_MONOTONIC, &now);
+    return static_cast<uint64_t>(now.tv_sec) * 1000000 + static_cast<uint64_t>(now.tv_nsec) / 1000;
+}
+
+} // anonymous namespace
+
+CHIP_ERROR EpollEventLoop::Init()
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+    struct epoll_event event;
+
+    mEpollFD = epoll_create1(EPOLL_CLOEXEC);
+    VerifyOrExit(mEpollFD >= 0, err = System::MapErrorPOSIX(errno));
+
+    mTimerFD = timerfd_create(CLOCK_MONOTONIC, TFD_NONBLOCK | TFD_CLOEXEC);
+    VerifyOrExit(mTimerFD >= 0, err = System::MapErrorPOSIX(errno));
+
+    event.events  = EPOLLIN;
+    event.data.fd = mTimerFD;
+    VerifyOrExit(epoll_ctl(mEpollFD, EPOLL_CTL_ADD, mTimerFD, &event) == 0, err = System::MapErrorPOSIX(errno));
+
+    mWakeFD = eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+    VerifyOrExit(mWakeFD >= 0, err = System::MapErrorPOSIX(errno));
+
+    event.events  = EPOLLIN;
+    event.data.fd = mWakeFD;
+    VerifyOrExit(epoll_ctl(mEpollFD, EPOLL_CTL_ADD, mWakeFD, &event) == 0, err = System::MapErrorPOSIX(errno));
+
+    mNumFDs      = 0;
+    mInvalidated = false;
+    mTimerArmed  = false;
+
+exit:
+    if (err != CHIP_NO_ERROR)
+    {
+        Shutdown();
+    }
+    return err;
+}
+
+void EpollEventLoop::Shutdown()
+{
+    if (mWakeFD >= 0)
+    {
+        close(mWakeFD);
+        mWakeFD = -1;
+    }
+
+    if (mTimerFD >= 0)
+    {
+        close(mTimerFD);
+        mTimerFD = -1;
+    }
+
+    if (mEpollFD >= 0)
+    {
+        close(mEpollFD);
+        mEpollFD = -1;
+    }
+
+    for (int fd = 0; fd < mNumFDs; fd++)
+    {
+        mInterest[fd] = 0;
+    }
+    mNumFDs = 0;
+}
+
+int EpollEventLoop::Wait(int numFDs, fd_set * readFDs, fd_set * writeFDs, fd_set * exceptFDs, const struct timeval & sleepTime)
+{
+    int numEvents;
+    int numReady = 0;
+    int timeout  = -1;
+
+    UpdateInterest(numFDs, readFDs, writeFDs, exceptFDs);
+
+    // Timers that are already due are handled without going through the timerfd.
+    if (sleepTime.tv_sec == 0 && sleepTime.tv_usec == 0)
+    {
+        timeout = 0;
+    }
+    else if (UpdateTimer(sleepTime) < 0)
+    {
+        return -1;
+    }
+
+    numEvents = epoll_wait(mEpollFD, mEvents, kMaxEvents, timeout);
+    if (numEvents < 0)
+    {
+        return -1;
+    }
+
+    FD_ZERO(readFDs);
+    FD_ZERO(writeFDs);
+    FD_ZERO(exceptFDs);
+
+    for (int i = 0; i < numEvents; i++)
+    {
+        const int fd           = mEvents[i].data.fd;
+        const uint32_t events  = mEvents[i].events;
+        const uint32_t failure = events & (EPOLLERR | EPOLLHUP);
+
+        if (fd == mTimerFD)
+        {
+            uint64_t expirations;
+            if (read(mTimerFD, &expirations, sizeof(expirations)) == sizeof(expirations))
+            {
+                mTimerArmed = false;
+            }
+            continue;
+        }
+
+        if (fd == mWakeFD)
+        {
+            // Reading resets the counter, so the next Wait() blocks again.
+            uint64_t count;
+            if (read(mWakeFD, &count, sizeof(count)) < 0 && errno != EAGAIN)
+            {
+                ChipLogError(Controller, "Failed to reset the IO thread wakeup: %s", ErrorStr(System::MapErrorPOSIX(errno)));
+            }
+            continue;
+        }
+
+        // Like select(), report errors as readiness for whatever the descriptor was waited for.
+        if ((events & EPOLLIN) || (failure && (mInterest[fd] & EPOLLIN)))
+        {
+            FD_SET(fd, readFDs);
+            numReady++;
+        }
+        if ((events & EPOLLOUT) || (failure && (mInterest[fd] & EPOLLOUT)))
+        {
+            FD_SET(fd, writeFDs);
+            numReady++;
+        }
+        if (events & EPOLLPRI)
+        {
+            FD_SET(fd, exceptFDs);
+            numReady++;
+        }
+    }
+
+    return numReady;
+}
+
+void EpollEventLoop::Wake()
+{
+    const uint64_t count = 1;
+
+    // Failing with EAGAIN means the counter is saturated, so a wakeup is pending anyway.
+    if (write(mWakeFD, &count, sizeof(count)) < 0 && errno != EAGAIN)
+    {
+        ChipLogError(Controller, "Failed to wake the IO thread: %s", ErrorStr(System::MapErrorPOSIX(errno)));
+    }
+}
+
+void EpollEventLoop::UpdateInterest(int numFDs, const fd_set * readFDs, const fd_set * writeFDs, const fd_set * exceptFDs)
+{
+    const int maxFDs = (numFDs > mNumFDs) ? numFDs : mNumFDs;
+
+    for (int fd = 0; fd < maxFDs; fd++)
+    {
+        uint32_t events = 0;
+        struct epoll_event event;
+        int res;
+
+        if (fd < numFDs)
+        {
+            events |= FD_ISSET(fd, readFDs) ? EPOLLIN : 0;
+            events |= FD_ISSET(fd, writeFDs) ? EPOLLOUT : 0;
+            events |= FD_ISSET(fd, exceptFDs) ? EPOLLPRI : 0;
+        }
+
+        if (events == mInterest[fd] && (!mInvalidated || events == 0))
+        {
+            continue;
+        }
+
+        event.events  = events;
+        event.data.fd = fd;
+
+        if (events == 0)
+        {
+            // The descriptor may have been closed already, in which case the kernel has dropped it.
+            epoll_ctl(mEpollFD, EPOLL_CTL_DEL, fd, &event);
+            mInterest[fd] = 0;
+            continue;
+        }
+
+        // The registration may be stale if the descriptor was closed and reopened, so fall back to
+        // the other operation when the kernel disagrees.
+        res = epoll_ctl(mEpollFD, (mInterest[fd] == 0) ? EPOLL_CTL_ADD : EPOLL_CTL_MOD, fd, &event);
+        if (res < 0 && errno == EEXIST)
+        {
+            res = epoll_ctl(mEpollFD, EPOLL_CTL_MOD, fd, &event);
+        }
+        else if (res < 0 && errno == ENOENT)
+        {
+            res = epoll_ctl(mEpollFD, EPOLL_CTL_ADD, fd, &event);
+        }
+
+        if (res < 0)
+        {
+            ChipLogError(Controller, "Failed to watch socket %d: %s", fd, ErrorStr(System::MapErrorPOSIX(errno)));
+            mInterest[fd] = 0;
+            continue;
+        }
+
+        mInterest[fd] = events;
+    }
+
+    mNumFDs      = numFDs;
+    mInvalidated = false;
+}
+
+int EpollEventLoop::UpdateTimer(const struct timeval & sleepTime)
+{
+    const uint64_t deadlineUS =
+        GetMonotonicUS() + static_cast<uint64_t>(sleepTime.tv_sec) * 1000000 + static_cast<uint64_t>(sleepTime.tv_usec);
+    struct itimerspec timerSpec = {};
+
+    // A later deadline than the armed one only costs a spurious wakeup, after which the timer is re-armed,
+    // so the timerfd is only touched when the next timer gets earlier.
+    if (mTimerArmed && deadlineUS >= mTimerDeadlineUS)
+    {
+        return 0;
+    }
+
+    timerSpec.it_value.tv_sec  = static_cast<time_t>(deadlineUS / 1000000);
+    timerSpec.it_value.tv_nsec = static_cast<long>(deadlineUS % 1000000) * 1000;
+
+    if (timerfd_settime(mTimerFD, TFD_TIMER_ABSTIME, &timerSpec, NULL) < 0)
+    {
+        return -1;
+    }
+
+    mTimerArmed      = true;
+    mTimerDeadlineUS = deadlineUS;
+
+    return 0;
+}
+
+} // namespace DeviceController
+} // namespace chip
+
+#endif // CHIP_CONTROLLER_USE_EPOLL
@@ -0,0 +1,120 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+/**
+ *    @file
+ *      epoll-based replacement for the select() call of the controller IO thread.
+ *
+ */
+
+#ifndef EPOLL_EVENT_LOOP_H
+#define EPOLL_EVENT_LOOP_H
+
+#include <core/CHIPError.h>
+
+#include <stdint.h>
+#include <sys/select.h>
+#include <sys/time.h>
+#include <time.h>
+
+#ifndef CHIP_CONTROLLER_USE_EPOLL
+#if defined(__linux__)
+#define CHIP_CONTROLLER_USE_EPOLL 1
+#else
+#define CHIP_CONTROLLER_USE_EPOLL 0
+#endif
+#endif // CHIP_CONTROLLER_USE_EPOLL
+
+#if CHIP_CONTROLLER_USE_EPOLL
+
+#include <sys/epoll.h>
+
+namespace chip {
+namespace DeviceController {
+
+/**
+ * Waits for I/O and timers with epoll, behind the same interface as select().
+ *
+ * The file descriptors collected by System::Layer::PrepareSelect() and InetLayer::PrepareSelect() are
+ * kept registered with an epoll instance between two calls to Wait(), which only tells the kernel about
+ * the descriptors whose interest changed. The sleep time computed by PrepareSelect() arms a timerfd,
+ * which is only re-armed when the next timer gets earlier. The result is returned in the fd_sets, so it
+ * can be handed to HandleSelectResult() unchanged. Java threads wake the IO thread with Wake(), which
+ * signals an eventfd owned by the loop.
+ *
+ * The system and inet layers only expose their descriptors through PrepareSelect(), so descriptors are
+ * still limited to FD_SETSIZE, and every call to Wait() still compares the fd_sets with the registered
+ * interest for each descriptor below the highest one. Lifting both requires a registration hook in those
+ * layers; until then, this only saves the registration and wait costs of select().
+ */
+class EpollEventLoop
+{
+public:
+    CHIP_ERROR Init();
+    void Shutdown();
+
+    /**
+     * Wait for one of the given file descriptors to be ready, or for the sleep time to elapse.
+     *
+     * @param[in]     numFDs     One more than the highest file descriptor in the sets
+     * @param[inout]  readFDs    Descriptors to wait for reading on input; ready ones on output
+     * @param[inout]  writeFDs   Descriptors to wait for writing on input; ready ones on output
+     * @param[inout]  exceptFDs  Descriptors to wait for exceptions on input; ready ones on output
+     * @param[in]     sleepTime  Maximum time to wait
+     *
+     * @return the number of ready descriptors in the sets, or -1 with errno set, like select()
+     */
+    int Wait(int numFDs, fd_set * readFDs, fd_set * writeFDs, fd_set * exceptFDs, const struct timeval & sleepTime);
+
+    /**
+     * Make the next Wait() re-register every descriptor.
+     *
+     * Wait() cannot tell a descriptor that was closed and reopened under the same number since the
+     * previous call from one that did not change, so this must be called after anything that may
+     * close and open sockets outside of the select callbacks, such as opening or closing a session.
+     */
+    void Invalidate() { mInvalidated = true; }
+
+    /**
+     * Make the current or next Wait() return. May be called from any thread.
+     */
+    void Wake();
+
+private:
+    static constexpr int kMaxEvents = 64;
+
+    void UpdateInterest(int numFDs, const fd_set * readFDs, const fd_set * writeFDs, const fd_set * exceptFDs);
+    int UpdateTimer(const struct timeval & sleepTime);
+
+    int mEpollFD      = -1;
+    int mTimerFD      = -1;
+    int mWakeFD       = -1;
+    int mNumFDs       = 0;
+    bool mInvalidated = false;
+    bool mTimerArmed  = false;
+    uint64_t mTimerDeadlineUS;
+    uint32_t mInterest[FD_SETSIZE] = {}; ///< epoll events currently registered for each descriptor below FD_SETSIZE
+    struct epoll_event mEvents[kMaxEvents];
+};
+
+} // namespace DeviceController
+} // namespace chip
+
+#endif // CHIP_CONTROLLER_USE_EPOLL
+
+#endif // EPOLL_EVENT_LOOP_H
@@ -0,0 +1,90 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+/**
+ *    @file
+ *      Fixed-size latency histogram recorded by the controller IO thread
+ *      and read by chip.devicecontroller.ControllerMetrics.
+ *
+ */
+
+#ifndef LATENCY_HISTOGRAM_H
+#define LATENCY_HISTOGRAM_H
+
+#include <atomic>
+#include <stdint.h>
+
+namespace chip {
+namespace DeviceController {
+
+/**
+ * Log-linear histogram of durations in microseconds.
+ *
+ * Durations below 32 us get a bucket each; above that, every power of two is split into 16 buckets,
+ * so that a duration is known within 1/16 of its value, up to 2^40 us. The buckets must match the
+ * ones of chip.devicecontroller.LatencyHistogram.
+ *
+ * Record() neither allocates nor locks, and may be called from any thread.
+ */
+class LatencyHistogram
+{
+public:
+    static constexpr int kBucketCount = 592;
+
+    void Record(uint64_t micros) { mCounts[BucketIndex(micros)].fetch_add(1, std::memory_order_relaxed); }
+
+    /**
+     * Copy the count of every bucket into the given array of kBucketCount elements.
+     */
+    template <typename T>
+    void Read(T * outCounts) const
+    {
+        for (int i = 0; i < kBucketCount; i++)
+        {
+            outCounts[i] = static_cast<T>(mCounts[i].load(std::memory_order_relaxed));
+        }
+    }
+
+private:
+    static constexpr int kSubBucketBits  = 4;
+    static constexpr uint64_t kMaxMicros = (static_cast<uint64_t>(1) << 40) - 1;
+
+    static int BucketIndex(uint64_t micros)
+    {
+        int shift;
+
+        if (micros > kMaxMicros)
+        {
+            micros = kMaxMicros;
+        }
+        if (micros < (2u << kSubBucketBits))
+        {
+            return static_cast<int>(micros);
+        }
+
+        shift = (63 - __builtin_clzll(micros)) - kSubBucketBits;
+        return (shift << kSubBucketBits) + static_cast<int>(micros >> shift);
+    }
+
+    std::atomic<uint64_t> mCounts[kBucketCount] = {};
+};
+
+} // namespace DeviceController
+} // namespace chip
+
+#endif // LATENCY_HISTOGRAM_H
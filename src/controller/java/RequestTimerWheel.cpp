@@ -0,0 +1,632 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+/**
+ *    @file
+ *      Implementation of the timing wheel tracking the requests in flight.
+ *
+ */
+
+#include "RequestTimerWheel.h"
+
+#include <support/CodeUtils.h>
+
+#include <string.h>
+
+namespace chip {
+namespace DeviceController {
+
+namespace {
+
+// ZCL messages start with the APS frame encoded by src/app/encoder.cpp, whose control byte is 0,
+// followed by the ZCL header: frame control, manufacturer code if any, transaction sequence number
+// and command ID. Echo messages are text, so they never start with a 0 byte.
+constexpr uint16_t kApsFrameLength              = 13;
+constexpr uint8_t kZclFrameTypeMask             = 0x03;
+constexpr uint8_t kZclFrameTypeGlobal           = 0x00;
+constexpr uint8_t kZclManufacturerSpecificMask  = 0x04;
+constexpr uint8_t kZclServerToClientMask        = 0x08;
+constexpr uint8_t kZclReportAttributesCommandId = 0x0A;
+
+/**
+ * Returns the offset of the transaction sequence number in the given message, or 0 if the message
+ * is not a ZCL frame.
+ */
+uint16_t SequenceNumberOffset(const uint8_t * data, uint16_t length)
+{
+    uint16_t offset = kApsFrameLength + 1;
+
+    if (length <= kApsFrameLength || data[0] != 0)
+    {
+        return 0;
+    }
+
+    if ((data[kApsFrameLength] & kZclManufacturerSpecificMask) != 0)
+    {
+        offset += 2;
+    }
+
+    // The command ID must follow.
+    return (offset + 1 < length) ? offset : 0;
+}
+
+/**
+ * Whether the ZCL frame at the given offset may respond to a command: it is sent from the server to
+ * the client, and is not an attribute report, which devices send on their own.
+ */
+bool IsZclResponse(const uint8_t * data, uint16_t sequenceNumberOffset)
+{
+    uint8_t frameControl = data[kApsFrameLength];
+    uint8_t commandId    = data[sequenceNumberOffset + 1];
+
+    return (frameControl & kZclServerToClientMask) != 0 &&
+        !((frameControl & kZclFrameTypeMask) == kZclFrameTypeGlobal && commandId == kZclReportAttributesCommandId);
+}
+
+} // namespace
+
+RequestTimerWheel::RequestTimerWheel()
+{
+    memset(mSlots, 0, sizeof(mSlots));
+}
+
+RequestTimerWheel::~RequestTimerWheel()
+{
+    for (uint32_t i = 0; i < mNumBuckets; i++)
+    {
+        while (mBuckets[i] != nullptr)
+        {
+            Remove(mBuckets[i]->mHead);
+        }
+    }
+    delete[] mBuckets;
+
+    while (mRequestBlocks != nullptr)
+    {
+        PoolBlock<PendingRequest> * next = mRequestBlocks->mNext;
+        delete mRequestBlocks;
+        mRequestBlocks = next;
+    }
+
+    while (mQueueBlocks != nullptr)
+    {
+        PoolBlock<DeviceRequestQueue> * next = mQueueBlocks->mNext;
+        delete mQueueBlocks;
+        mQueueBlocks = next;
+    }
+}
+
+CHIP_ERROR RequestTimerWheel::AssignSequenceNumber(ChipDeviceController * controller, NodeId deviceId,
+                                                   System::PacketBuffer * payload, int16_t & outSequenceNumber)
+{
+    CHIP_ERROR err             = CHIP_NO_ERROR;
+    DeviceRequestQueue * queue = FindQueue(controller, deviceId);
+    uint16_t offset            = SequenceNumberOffset(payload->Start(), payload->DataLength());
+
+    outSequenceNumber = kNoSequenceNumber;
+    VerifyOrExit(offset != 0, );
+
+    for (uint32_t i = 0; i <= UINT8_MAX; i++)
+    {
+        uint8_t sequenceNumber = mNextSequenceNumber++;
+
+        if (queue == nullptr || !IsInUse(queue, sequenceNumber))
+        {
+            payload->Start()[offset] = sequenceNumber;
+            outSequenceNumber        = sequenceNumber;
+            ExitNow();
+        }
+    }
+
+    err = CHIP_ERROR_NO_MEMORY;
+
+exit:
+    return err;
+}
+
+CHIP_ERROR RequestTimerWheel::Add(ChipDeviceController * controller, NodeId deviceId, uint64_t requestId,
+                                  int16_t sequenceNumber, System::PacketBuffer * payload, uint32_t timeoutMS,
+                                  uint8_t maxRetransmissions, uint64_t nowMS)
+{
+    CHIP_ERROR err             = CHIP_NO_ERROR;
+    PendingRequest * request   = nullptr;
+    DeviceRequestQueue * queue = FindQueue(controller, deviceId);
+
+    if (queue == nullptr)
+    {
+        queue = AddQueue(controller, deviceId);
+        VerifyOrExit(queue != nullptr, err = CHIP_ERROR_NO_MEMORY);
+    }
+
+    request = AllocRequest();
+    if (request == nullptr)
+    {
+        if (queue->mHead == nullptr)
+        {
+            RemoveQueue(queue);
+        }
+        ExitNow(err = CHIP_ERROR_NO_MEMORY);
+    }
+
+    request->mController = controller;
+    request->mDeviceId   = deviceId;
+    request->mRequestId      = requestId;
+    request->mSequenceNumber = sequenceNumber;
+    request->mTimeoutMS      = timeoutMS;
+    request->mExpiryTick     = 0;
+    request->mQueue          = queue;
+    request->mSlotPrev       = nullptr;
+    request->mSlotNext       = nullptr;
+
+    if (sequenceNumber != kNoSequenceNumber)
+    {
+        SetInUse(queue, static_cast<uint8_t>(sequenceNumber), true);
+    }
+
+    // Only a ZCL command with a deadline is retransmitted: the duplicate responses it may get carry its sequence number,
+    // so they cannot be taken for the response to another request.
+    if (timeoutMS > 0 && sequenceNumber != kNoSequenceNumber)
+    {
+        request->mPayload             = payload;
+        request->mRetransmissionsLeft = (payload != nullptr) ? maxRetransmissions : 0;
+        payload                       = nullptr;
+    }
+    else
+    {
+        request->mPayload             = nullptr;
+        request->mRetransmissionsLeft = 0;
+    }
+
+    request->mOrderPrev = queue->mTail;
+    request->mOrderNext = nullptr;
+    if (queue->mTail != nullptr)
+    {
+        queue->mTail->mOrderNext = request;
+    }
+    else
+    {
+        queue->mHead = request;
+    }
+    queue->mTail = request;
+    mCount++;
+
+    if (timeoutMS > 0)
+    {
+        // Restart the wheel from the current time when no slot is in use, so that ticks never go backwards.
+        if (mScheduledCount == 0)
+        {
+            mStartMS = nowMS;
+            mTick    = 0;
+        }
+
+        Schedule(request);
+    }
+
+exit:
+    if (payload != nullptr)
+    {
+        System::PacketBuffer::Free(payload);
+    }
+    return err;
+}
+
+uint64_t RequestTimerWheel::Complete(ChipDeviceController * controller, NodeId deviceId, const System::PacketBuffer * message)
+{
+    DeviceRequestQueue * queue = FindQueue(controller, deviceId);
+    PendingRequest * request   = nullptr;
+    int16_t sequenceNumber     = kNoSequenceNumber;
+    uint64_t requestId         = 0;
+    uint16_t offset;
+
+    VerifyOrExit(queue != nullptr, );
+
+    offset = SequenceNumberOffset(message->Start(), message->DataLength());
+    if (offset != 0)
+    {
+        VerifyOrExit(IsZclResponse(message->Start(), offset), );
+
+        sequenceNumber = message->Start()[offset];
+        VerifyOrExit(IsInUse(queue, static_cast<uint8_t>(sequenceNumber)), );
+    }
+
+    // Numbers are unique among the requests in flight; the requests without one complete in send order.
+    request = queue->mHead;
+    while (request != nullptr && request->mSequenceNumber != sequenceNumber)
+    {
+        request = request->mOrderNext;
+    }
+    VerifyOrExit(request != nullptr, );
+
+    requestId = request->mRequestId;
+    Remove(request);
+
+exit:
+    return requestId;
+}
+
+void RequestTimerWheel::RemoveAll(ChipDeviceController * controller, NodeId deviceId)
+{
+    DeviceRequestQueue * queue = FindQueue(controller, deviceId);
+
+    // The queue is released along with its last request.
+    while (queue != nullptr)
+    {
+        PendingRequest * request = queue->mHead;
+
+        queue = (request->mOrderNext != nullptr) ? queue : nullptr;
+        Remove(request);
+    }
+}
+
+void RequestTimerWheel::RemoveAll(ChipDeviceController * controller)
+{
+    for (uint32_t i = 0; i < mNumBuckets; i++)
+    {
+        DeviceRequestQueue * queue = mBuckets[i];
+
+        while (queue != nullptr)
+        {
+            DeviceRequestQueue * next = queue->mHashNext;
+
+            if (queue->mController == controller)
+            {
+                RemoveAll(controller, queue->mDeviceId);
+            }
+
+            queue = next;
+        }
+    }
+}
+
+void RequestTimerWheel::Advance(uint64_t nowMS)
+{
+    uint64_t lastTick = mTick;
+    uint64_t steps;
+
+    VerifyOrExit(mScheduledCount > 0, );
+    VerifyOrExit(nowMS >= mStartMS, );
+
+    mTick = TickAt(nowMS);
+    VerifyOrExit(mTick > lastTick, );
+
+    // Past one full turn, every slot has been reached; walking them once is enough.
+    steps = mTick - lastTick;
+    if (steps > kNumSlots)
+    {
+        steps = kNumSlots;
+    }
+
+    for (uint64_t i = 1; i <= steps; i++)
+    {
+        uint32_t slot            = static_cast<uint32_t>((lastTick + i) & (kNumSlots - 1));
+        PendingRequest * request = mSlots[slot];
+
+        mSlots[slot] = nullptr;
+
+        while (request != nullptr)
+        {
+            PendingRequest * next = request->mSlotNext;
+            CHIP_ERROR err        = CHIP_ERROR_TIMEOUT;
+
+            if (request->mExpiryTick > mTick)
+            {
+                // Due on a later turn of the wheel.
+                request->mSlotPrev = nullptr;
+                request->mSlotNext = mSlots[slot];
+                if (mSlots[slot] != nullptr)
+                {
+                    mSlots[slot]->mSlotPrev = request;
+                }
+                mSlots[slot] = request;
+            }
+            else
+            {
+                // The request is out of its slot, which is being walked.
+                request->mSlotPrev = request->mSlotNext = nullptr;
+                mScheduledCount--;
+
+                if (request->mRetransmissionsLeft > 0)
+                {
+                    request->mRetransmissionsLeft--;
+                    if (request->mTimeoutMS <= UINT32_MAX / 2)
+                    {
+                        request->mTimeoutMS *= 2;
+                    }
+
+                    err = mDelegate->RetransmitRequest(*request);
+                }
+
+                if (err == CHIP_NO_ERROR)
+                {
+                    Schedule(request);
+                }
+                else
+                {
+                    mDelegate->ExpireRequest(*request, err);
+                    Remove(request);
+                }
+            }
+
+            request = next;
+        }
+    }
+
+exit:
+    return;
+}
+
+void RequestTimerWheel::Schedule(PendingRequest * request)
+{
+    uint64_t ticks = (request->mTimeoutMS + kTickMS - 1) / kTickMS;
+    uint32_t slot;
+
+    request->mExpiryTick = mTick + ((ticks > 0) ? ticks : 1);
+    slot                 = static_cast<uint32_t>(request->mExpiryTick & (kNumSlots - 1));
+
+    request->mSlotPrev = nullptr;
+    request->mSlotNext = mSlots[slot];
+    if (mSlots[slot] != nullptr)
+    {
+        mSlots[slot]->mSlotPrev = request;
+    }
+    mSlots[slot] = request;
+    mScheduledCount++;
+}
+
+void RequestTimerWheel::Unschedule(PendingRequest * request)
+{
+    uint32_t slot = static_cast<uint32_t>(request->mExpiryTick & (kNumSlots - 1));
+
+    if (request->mSlotPrev != nullptr)
+    {
+        request->mSlotPrev->mSlotNext = request->mSlotNext;
+    }
+    else if (mSlots[slot] == request)
+    {
+        mSlots[slot] = request->mSlotNext;
+    }
+    else
+    {
+        // Not scheduled: waiting for ever, or being expired by Advance().
+        ExitNow();
+    }
+
+    if (request->mSlotNext != nullptr)
+    {
+        request->mSlotNext->mSlotPrev = request->mSlotPrev;
+    }
+
+    request->mSlotPrev = request->mSlotNext = nullptr;
+    mScheduledCount--;
+
+exit:
+    return;
+}
+
+void RequestTimerWheel::Remove(PendingRequest * request)
+{
+    DeviceRequestQueue * queue = request->mQueue;
+
+    Unschedule(request);
+
+    if (request->mSequenceNumber != kNoSequenceNumber)
+    {
+        SetInUse(queue, static_cast<uint8_t>(request->mSequenceNumber), false);
+    }
+
+    if (request->mOrderPrev != nullptr)
+    {
+        request->mOrderPrev->mOrderNext = request->mOrderNext;
+    }
+    else
+    {
+        queue->mHead = request->mOrderNext;
+    }
+
+    if (request->mOrderNext != nullptr)
+    {
+        request->mOrderNext->mOrderPrev = request->mOrderPrev;
+    }
+    else
+    {
+        queue->mTail = request->mOrderPrev;
+    }
+
+    if (queue->mHead == nullptr)
+    {
+        RemoveQueue(queue);
+    }
+
+    if (request->mPayload != nullptr)
+    {
+        System::PacketBuffer::Free(request->mPayload);
+        request->mPayload = nullptr;
+    }
+
+    request->mOrderNext = mFreeRequests;
+    mFreeRequests       = request;
+    mCount--;
+}
+
+DeviceRequestQueue * RequestTimerWheel::FindQueue(ChipDeviceController * controller, NodeId deviceId) const
+{
+    DeviceRequestQueue * queue = (mNumBuckets > 0) ? mBuckets[Bucket(controller, deviceId)] : nullptr;
+
+    while (queue != nullptr && (queue->mController != controller || queue->mDeviceId != deviceId))
+    {
+        queue = queue->mHashNext;
+    }
+
+    return queue;
+}
+
+DeviceRequestQueue * RequestTimerWheel::AddQueue(ChipDeviceController * controller, NodeId deviceId)
+{
+    DeviceRequestQueue * queue = nullptr;
+    uint32_t bucket;
+
+    // Keep about one queue per bucket. When the table cannot grow, the chains just get longer.
+    if (mNumQueues >= mNumBuckets)
+    {
+        GrowBuckets();
+        VerifyOrExit(mNumBuckets > 0, );
+    }
+
+    queue = AllocQueue();
+    VerifyOrExit(queue != nullptr, );
+
+    bucket             = Bucket(controller, deviceId);
+    queue->mController = controller;
+    queue->mDeviceId   = deviceId;
+    queue->mHead       = nullptr;
+    queue->mTail       = nullptr;
+    queue->mHashNext   = mBuckets[bucket];
+    mBuckets[bucket]   = queue;
+    memset(queue->mSequenceNumbersInUse, 0, sizeof(queue->mSequenceNumbersInUse));
+    mNumQueues++;
+
+exit:
+    return queue;
+}
+
+void RequestTimerWheel::RemoveQueue(DeviceRequestQueue * queue)
+{
+    DeviceRequestQueue ** link = &mBuckets[Bucket(queue->mController, queue->mDeviceId)];
+
+    while (*link != queue)
+    {
+        link = &(*link)->mHashNext;
+    }
+    *link = queue->mHashNext;
+
+    queue->mHashNext = mFreeQueues;
+    mFreeQueues      = queue;
+    mNumQueues--;
+}
+
+void RequestTimerWheel::GrowBuckets()
+{
+    uint32_t numBuckets              = (mNumBuckets > 0) ? mNumBuckets * 2 : kMinNumBuckets;
+    DeviceRequestQueue ** buckets    = new DeviceRequestQueue *[numBuckets]();
+    DeviceRequestQueue ** oldBuckets = mBuckets;
+    uint32_t oldNumBuckets           = mNumBuckets;
+
+    VerifyOrExit(buckets != nullptr, );
+
+    mBuckets    = buckets;
+    mNumBuckets = numBuckets;
+
+    for (uint32_t i = 0; i < oldNumBuckets; i++)
+    {
+        while (oldBuckets[i] != nullptr)
+        {
+            DeviceRequestQueue * queue = oldBuckets[i];
+            uint32_t bucket            = Bucket(queue->mController, queue->mDeviceId);
+
+            oldBuckets[i]    = queue->mHashNext;
+            queue->mHashNext = mBuckets[bucket];
+            mBuckets[bucket] = queue;
+        }
+    }
+
+    delete[] oldBuckets;
+
+exit:
+    return;
+}
+
+uint32_t RequestTimerWheel::Bucket(ChipDeviceController * controller, NodeId deviceId) const
+{
+    uint64_t hash = deviceId ^ (reinterpret_cast<uintptr_t>(controller) >> 4);
+
+    // Fibonacci hashing spreads consecutive node IDs, and the high bits of 64-bit ones.
+    hash *= UINT64_C(0x9E3779B97F4A7C15);
+    return static_cast<uint32_t>(hash >> 32) & (mNumBuckets - 1);
+}
+
+bool RequestTimerWheel::IsInUse(const DeviceRequestQueue * queue, uint8_t sequenceNumber)
+{
+    return (queue->mSequenceNumbersInUse[sequenceNumber / 32] & (1u << (sequenceNumber % 32))) != 0;
+}
+
+void RequestTimerWheel::SetInUse(DeviceRequestQueue * queue, uint8_t sequenceNumber, bool inUse)
+{
+    if (inUse)
+    {
+        queue->mSequenceNumbersInUse[sequenceNumber / 32] |= (1u << (sequenceNumber % 32));
+    }
+    else
+    {
+        queue->mSequenceNumbersInUse[sequenceNumber / 32] &= ~(1u << (sequenceNumber % 32));
+    }
+}
+
+PendingRequest * RequestTimerWheel::AllocRequest()
+{
+    PendingRequest * request = nullptr;
+
+    if (mFreeRequests == nullptr)
+    {
+        PoolBlock<PendingRequest> * block = new PoolBlock<PendingRequest>();
+        VerifyOrExit(block != nullptr, );
+
+        block->mNext   = mRequestBlocks;
+        mRequestBlocks = block;
+
+        for (uint32_t i = 0; i < kPoolBlockSize; i++)
+        {
+            block->mObjects[i].mOrderNext = mFreeRequests;
+            mFreeRequests                 = &block->mObjects[i];
+        }
+    }
+
+    request       = mFreeRequests;
+    mFreeRequests = request->mOrderNext;
+
+exit:
+    return request;
+}
+
+DeviceRequestQueue * RequestTimerWheel::AllocQueue()
+{
+    DeviceRequestQueue * queue = nullptr;
+
+    if (mFreeQueues == nullptr)
+    {
+        PoolBlock<DeviceRequestQueue> * block = new PoolBlock<DeviceRequestQueue>();
+        VerifyOrExit(block != nullptr, );
+
+        block->mNext = mQueueBlocks;
+        mQueueBlocks = block;
+
+        for (uint32_t i = 0; i < kPoolBlockSize; i++)
+        {
+            block->mObjects[i].mHashNext = mFreeQueues;
+            mFreeQueues                  = &block->mObjects[i];
+        }
+    }
+
+    queue       = mFreeQueues;
+    mFreeQueues = queue->mHashNext;
+
+exit:
+    return queue;
+}
+
+} // namespace DeviceController
+} // namespace chip
@@ -0,0 +1,244 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+/**
+ *    @file
+ *      Hashed timing wheel tracking the deadlines of the requests sent by
+ *      the controller IO thread.
+ *
+ */
+
+#ifndef REQUEST_TIMER_WHEEL_H
+#define REQUEST_TIMER_WHEEL_H
+
+#include <controller/CHIPDeviceController.h>
+
+#include <stdint.h>
+
+namespace chip {
+namespace DeviceController {
+
+struct DeviceRequestQueue;
+
+/**
+ * Sequence number of the requests that are not ZCL commands, such as echo messages.
+ */
+constexpr int16_t kNoSequenceNumber = -1;
+
+/**
+ * A request sent to a device and waiting for its response.
+ */
+struct PendingRequest
+{
+    ChipDeviceController * mController;
+    NodeId mDeviceId;                ///< kUndefinedNodeId for the connection opened by ConnectDevice
+    uint64_t mRequestId;             ///< Java request the request was issued for, 0 if none
+    int16_t mSequenceNumber;         ///< ZCL transaction sequence number, kNoSequenceNumber if none
+    System::PacketBuffer * mPayload; ///< copy of the payload to retransmit, nullptr if none
+    uint32_t mTimeoutMS;             ///< time to wait for the response to the last transmission, 0 for ever
+    uint8_t mRetransmissionsLeft;
+    uint64_t mExpiryTick;
+
+    DeviceRequestQueue * mQueue; ///< requests in flight on the same device
+    PendingRequest * mSlotPrev;
+    PendingRequest * mSlotNext;
+    PendingRequest * mOrderPrev;
+    PendingRequest * mOrderNext; ///< also links the free requests of the pool
+};
+
+/**
+ * The requests in flight on one device of one controller, oldest first.
+ */
+struct DeviceRequestQueue
+{
+    ChipDeviceController * mController;
+    NodeId mDeviceId;
+    PendingRequest * mHead;
+    PendingRequest * mTail;
+    DeviceRequestQueue * mHashNext;           ///< also links the free queues of the pool
+    uint32_t mSequenceNumbersInUse[256 / 32]; ///< sequence numbers of the requests in flight, as a bitmap
+};
+
+/**
+ * Tracks the requests in flight, and retransmits the ZCL commands with a deadline with exponential
+ * backoff.
+ *
+ * The requests with a deadline are hashed by expiry tick into a fixed ring of slots, and all the
+ * requests are queued in send order by device in a hash table, so that adding, completing and
+ * expiring a request costs O(1) whatever the number of requests and devices. The wheel only moves
+ * when Advance() is called, which the IO thread does every GetTickMS() milliseconds while requests
+ * with a deadline are in flight.
+ *
+ * Messages carry no exchange ID, so requests are matched with their response through the ZCL
+ * transaction sequence number, which the device copies from a command into its response. The wheel
+ * gives each ZCL command a number that no other request in flight on the device uses. Other
+ * requests, such as echo messages, are matched in send order with the messages that are not ZCL
+ * frames. ZCL frames that respond to no request in flight, such as attribute reports or late
+ * responses, complete none.
+ *
+ * Requests and device queues are taken from pools that grow by blocks and are only released with
+ * the wheel, so that the IO thread does not allocate once the wheel has grown to its working size.
+ *
+ * Only the IO thread may use the wheel.
+ */
+class RequestTimerWheel
+{
+public:
+    /**
+     * Callbacks of the wheel, run from Advance(). They must not add or remove requests.
+     */
+    class Delegate
+    {
+    public:
+        virtual ~Delegate() {}
+
+        /**
+         * Send the payload of a request again. The payload must not be consumed.
+         */
+        virtual CHIP_ERROR RetransmitRequest(const PendingRequest & request) = 0;
+
+        /**
+         * Report a request that got no response, with CHIP_ERROR_TIMEOUT, or whose retransmission
+         * failed. The request is freed when this returns.
+         */
+        virtual void ExpireRequest(const PendingRequest & request, CHIP_ERROR err) = 0;
+    };
+
+    RequestTimerWheel();
+    ~RequestTimerWheel();
+
+    void SetDelegate(Delegate * delegate) { mDelegate = delegate; }
+
+    /**
+     * Write into a ZCL command about to be sent to the given device a transaction sequence number
+     * that no request in flight on the device uses. Payloads that are not ZCL commands are left
+     * alone. Numbers are handed out in turn, so that a late response to a request that expired is
+     * unlikely to match the request sent after it.
+     *
+     * @param[in]  controller          The controller sending the request
+     * @param[in]  deviceId            The device the request is sent to
+     * @param[in]  payload             The payload of the request
+     * @param[out] outSequenceNumber   The number written, kNoSequenceNumber if the payload is not a ZCL command
+     *
+     * @return CHIP_ERROR_NO_MEMORY if all the numbers are in use on the device
+     */
+    CHIP_ERROR AssignSequenceNumber(ChipDeviceController * controller, NodeId deviceId, System::PacketBuffer * payload,
+                                    int16_t & outSequenceNumber);
+
+    /**
+     * Start tracking a request that was just sent.
+     *
+     * @param[in] controller           The controller that sent the request
+     * @param[in] deviceId             The device the request was sent to
+     * @param[in] requestId            The Java request the request was issued for, 0 if none
+     * @param[in] sequenceNumber       The number given by AssignSequenceNumber()
+     * @param[in] payload              Copy of the payload to retransmit, owned by the wheel from now
+     *                                 on; nullptr if the request is not to be retransmitted. Only ZCL
+     *                                 commands are retransmitted.
+     * @param[in] timeoutMS            Time to wait for the response before retransmitting, doubled
+     *                                 on each retransmission; 0 to wait for ever
+     * @param[in] maxRetransmissions   Number of retransmissions before the request expires
+     * @param[in] nowMS                Current monotonic time
+     */
+    CHIP_ERROR Add(ChipDeviceController * controller, NodeId deviceId, uint64_t requestId, int16_t sequenceNumber,
+                   System::PacketBuffer * payload, uint32_t timeoutMS, uint8_t maxRetransmissions, uint64_t nowMS);
+
+    /**
+     * Stop tracking the request in flight on the given device that a message received from it
+     * responds to, if any.
+     *
+     * @return the request ID of the completed request, 0 if the message responds to none, or to a
+     *         request issued for no Java request
+     */
+    uint64_t Complete(ChipDeviceController * controller, NodeId deviceId, const System::PacketBuffer * message);
+
+    /**
+     * Stop tracking the requests in flight on the given device, without reporting them.
+     */
+    void RemoveAll(ChipDeviceController * controller, NodeId deviceId);
+
+    /**
+     * Stop tracking the requests in flight on all the devices of the given controller, without
+     * reporting them.
+     */
+    void RemoveAll(ChipDeviceController * controller);
+
+    /**
+     * Retransmit or expire the requests whose deadline passed.
+     */
+    void Advance(uint64_t nowMS);
+
+    bool IsEmpty() const { return mCount == 0; }
+
+    /**
+     * Whether any request in flight has a deadline, in which case Advance() has to be called every
+     * GetTickMS() milliseconds.
+     */
+    bool HasDeadlines() const { return mScheduledCount != 0; }
+
+    static constexpr uint32_t GetTickMS() { return kTickMS; }
+
+private:
+    static constexpr uint32_t kTickMS        = 50;
+    static constexpr uint32_t kNumSlots      = 512; ///< must be a power of two
+    static constexpr uint32_t kMinNumBuckets = 64;  ///< must be a power of two
+    static constexpr uint32_t kPoolBlockSize = 64;
+
+    template <typename T>
+    struct PoolBlock
+    {
+        PoolBlock * mNext;
+        T mObjects[kPoolBlockSize];
+    };
+
+    uint64_t TickAt(uint64_t nowMS) const { return (nowMS - mStartMS) / kTickMS; }
+    void Schedule(PendingRequest * request);
+    void Unschedule(PendingRequest * request);
+    void Remove(PendingRequest * request);
+    DeviceRequestQueue * FindQueue(ChipDeviceController * controller, NodeId deviceId) const;
+    DeviceRequestQueue * AddQueue(ChipDeviceController * controller, NodeId deviceId);
+    void RemoveQueue(DeviceRequestQueue * queue);
+    void GrowBuckets();
+    uint32_t Bucket(ChipDeviceController * controller, NodeId deviceId) const;
+    static bool IsInUse(const DeviceRequestQueue * queue, uint8_t sequenceNumber);
+    static void SetInUse(DeviceRequestQueue * queue, uint8_t sequenceNumber, bool inUse);
+    PendingRequest * AllocRequest();
+    DeviceRequestQueue * AllocQueue();
+
+    Delegate * mDelegate        = nullptr;
+    uint64_t mStartMS           = 0;
+    uint64_t mTick              = 0;
+    uint32_t mCount             = 0;
+    uint32_t mScheduledCount    = 0;
+    uint8_t mNextSequenceNumber = 0;
+    PendingRequest * mSlots[kNumSlots]; ///< requests with a deadline, by expiry tick
+
+    DeviceRequestQueue ** mBuckets = nullptr; ///< queues of the devices with requests in flight
+    uint32_t mNumBuckets           = 0;
+    uint32_t mNumQueues            = 0;
+
+    PendingRequest * mFreeRequests               = nullptr;
+    DeviceRequestQueue * mFreeQueues             = nullptr;
+    PoolBlock<PendingRequest> * mRequestBlocks   = nullptr;
+    PoolBlock<DeviceRequestQueue> * mQueueBlocks = nullptr;
+};
+
+} // namespace DeviceController
+} // namespace chip
+
+#endif // REQUEST_TIMER_WHEEL_H
@@ -0,0 +1,136 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+/**
+ *    @file
+ *      Multi-producer, single-consumer queue used to hand CHIP stack
+ *      operations from Java threads over to the controller IO thread.
+ *
+ */
+
+#ifndef STACK_COMMAND_QUEUE_H
+#define STACK_COMMAND_QUEUE_H
+
+#include <controller/CHIPDeviceController.h>
+
+#include <atomic>
+
+namespace chip {
+namespace DeviceController {
+
+/**
+ * An operation on the CHIP stack, prepared by a Java thread and run on the IO thread.
+ */
+struct StackCommand
+{
+    enum Type
+    {
+        kConnectDevice,
+        kSendMessage,
+        kDisconnectDevice,
+        kOpenDeviceSession,
+        kOpenDeviceSessionWithoutSecurePairing,
+        kSendDeviceMessage,
+        kCloseDeviceSession,
+        kDeleteDeviceController,
+    };
+
+    StackCommand(Type type, ChipDeviceController * controller) :
+        mType(type), mController(controller), mSubmitTimeUS(System::Layer::GetClock_MonotonicHiRes())
+    {}
+
+    Type mType;
+    ChipDeviceController * mController;
+    uint64_t mSubmitTimeUS;
+    NodeId mDeviceId               = kUndefinedNodeId;
+    IPAddress mDeviceAddr          = IPAddress::Any;
+    uint16_t mDevicePort           = CHIP_PORT;
+    System::PacketBuffer * mBuffer = nullptr;
+    uint64_t mRequestId            = 0; ///< Java request the command was issued for, 0 if none
+    uint32_t mTimeoutMS            = 0; ///< time to wait for the response to a message, 0 for ever
+    uint8_t mMaxRetransmissions    = 0; ///< times to resend a message that got no response
+    StackCommand * mNext           = nullptr;
+};
+
+/**
+ * Lock-free queue of StackCommands.
+ *
+ * Any number of threads may Push() concurrently without blocking; only the IO
+ * thread may call PopAll(), which takes every queued command in one step so
+ * that they can be run as a batch.
+ */
+class StackCommandQueue
+{
+public:
+    /**
+     * Add a command at the end of the queue.
+     *
+     * @return true if the queue was empty, in which case the consumer has to be woken up
+     */
+    bool Push(StackCommand * command) { return Push(command, command); }
+
+    /**
+     * Add a batch of commands at the end of the queue in one step.
+     *
+     * @param[in] newest  The last command of the batch, linked through mNext down to oldest
+     * @param[in] oldest  The first command of the batch
+     *
+     * @return true if the queue was empty, in which case the consumer has to be woken up
+     */
+    bool Push(StackCommand * newest, StackCommand * oldest)
+    {
+        StackCommand * head = mHead.load(std::memory_order_relaxed);
+
+        do
+        {
+            oldest->mNext = head;
+        } while (!mHead.compare_exchange_weak(head, newest, std::memory_order_release, std::memory_order_relaxed));
+
+        return head == nullptr;
+    }
+
+    /**
+     * Remove all the queued commands.
+     *
+     * @return the removed commands, linked through mNext from the oldest to the newest
+     */
+    StackCommand * PopAll()
+    {
+        StackCommand * head     = mHead.exchange(nullptr, std::memory_order_acquire);
+        StackCommand * reversed = nullptr;
+
+        // Commands are pushed at the head, so reverse the list to run them in submission order.
+        while (head != nullptr)
+        {
+            StackCommand * next = head->mNext;
+            head->mNext         = reversed;
+            reversed            = head;
+            head                = next;
+        }
+
+        return reversed;
+    }
+
+private:
+    std::atomic<StackCommand *> mHead{ nullptr };
+};
+
+} // namespace DeviceController
+} // namespace chip
+
+#endif // STACK_COMMAND_QUEUE_H
@@ -0,0 +1,174 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller.benchmarks;
+
+import chip.devicecontroller.ChipCommandType;
+import chip.devicecontroller.ChipDeviceController;
+import chip.devicecontroller.ControllerMetrics;
+import chip.devicecontroller.LatencyHistogram;
+import chip.devicecontroller.MessageBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the controller JNI layer, run over a device session with a responder on the local
+ * host answering echo messages and On/Off commands, such as the chip-tool-server example. The
+ * responder must not listen on {@link ChipDeviceController#DEFAULT_PORT}, which the controller
+ * listens on.
+ *
+ * <p>All the threads of a run share one controller. Run them with several threads ({@code -t}) to
+ * measure contention, and with the GC profiler ({@code -prof gc}) to track the allocations per
+ * operation; {@link ControllerBenchmarkMain} adds the latter. The latencies measured by the native
+ * layer are printed at the end of each run.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ControllerBenchmark {
+
+  private static final long OPEN_TIMEOUT_MILLIS = 5000;
+  private static final long RESPONSE_TIMEOUT_MILLIS = 1000;
+
+  private static final String MESSAGE = "benchmark";
+  private static final byte[] MESSAGE_BYTES = MESSAGE.getBytes(StandardCharsets.UTF_8);
+
+  @Param("::1")
+  public String deviceAddress;
+
+  @Param("11096")
+  public int devicePort;
+
+  // Node ID chip-tool-server uses by default.
+  @Param("12344321")
+  public long deviceId;
+
+  private ChipDeviceController controller;
+
+  @Setup(Level.Trial)
+  public void openSession() throws InterruptedException {
+    controller = new ChipDeviceController();
+    controller.addDeviceSessionListener(new IgnoringListener());
+    controller.openDeviceSessionWithoutSecurePairing(deviceId, deviceAddress, devicePort);
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(OPEN_TIMEOUT_MILLIS);
+    while (!controller.hasDeviceSession(deviceId)) {
+      if (System.nanoTime() - deadline > 0) {
+        throw new IllegalStateException("Cannot open a session with " + deviceAddress);
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void closeSession() {
+    ControllerMetrics metrics = controller.getMetrics();
+    print("Submit latency", metrics.getSubmitLatency());
+    print("Upcall latency", metrics.getUpcallLatency());
+    print("Stack lock wait", metrics.getStackLockWait());
+
+    controller.closeDeviceSession(deviceId);
+    controller.close();
+  }
+
+  /** Queues an On/Off command to the IO thread, without waiting for the response. */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void beginSendDeviceCommand() {
+    controller.beginSendDeviceCommand(deviceId, ChipCommandType.TOGGLE);
+  }
+
+  /** Queues an echo message to the IO thread, without waiting for the response. */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void beginSendDeviceMessage() {
+    controller.beginSendDeviceMessage(deviceId, MESSAGE);
+  }
+
+  /**
+   * Queues the same echo message as {@link #beginSendDeviceMessage}, written straight into a native
+   * buffer instead of going through a string.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void beginSendDeviceMessageBuffer() {
+    MessageBuffer message = MessageBuffer.allocate(MESSAGE_BYTES.length);
+    message.buffer().put(MESSAGE_BYTES);
+    controller.beginSendDeviceMessage(deviceId, message);
+  }
+
+  /**
+   * Sends an On/Off command and waits for the response, which goes through the IO thread, the
+   * responder and the upcall into Java.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public String sendDeviceCommandRoundTrip()
+      throws InterruptedException, ExecutionException, TimeoutException {
+    return controller
+        .sendDeviceCommand(deviceId, ChipCommandType.TOGGLE)
+        .get(RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Makes a call that takes the lock of the native stack, contending with the IO thread. */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public boolean hasDeviceSession() {
+    return controller.hasDeviceSession(deviceId);
+  }
+
+  private static void print(String name, LatencyHistogram histogram) {
+    System.out.printf(
+        "%s: count %d, p50 %d us, p99 %d us, max %d us%n",
+        name,
+        histogram.getCount(),
+        histogram.getValueAtPercentile(50),
+        histogram.getValueAtPercentile(99),
+        histogram.getMaxMicros());
+  }
+
+  /** Drops the responses to the requests sent without a future. */
+  private static final class IgnoringListener
+      implements ChipDeviceController.DeviceSessionListener {
+    @Override
+    public void onDeviceMessage(long deviceId, String message) {}
+
+    @Override
+    public void onDeviceError(long deviceId, Throwable error) {}
+  }
+}
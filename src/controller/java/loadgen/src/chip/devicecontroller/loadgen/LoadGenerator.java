@@ -0,0 +1,374 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller.loadgen;
+
+import chip.devicecontroller.ChipCommandType;
+import chip.devicecontroller.ChipDeviceController;
+import chip.devicecontroller.ChipDeviceControllerException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives simulated devices through a {@link ChipDeviceController} at fixed rates, and reports the
+ * throughput and latency percentiles it gets at each rate.
+ *
+ * <p>Each device is a chip-tool-server process on its own port of the loopback interface, see
+ * {@link SimulatedDevice}. Requests go round-robin over the devices at the given rate whether or
+ * not the previous ones were answered, and their latency is measured from the time they were due,
+ * so that a saturated controller shows in the percentiles rather than in a lower send rate.
+ *
+ * <p>chip-tool-server has no pairing with the controller, so the sessions are keyed from the test
+ * secret: they are not secure, which does not matter on the loopback interface.
+ */
+public final class LoadGenerator {
+
+  private static final String USAGE =
+      "Usage: LoadGenerator --server <chip-tool-server> [options]\n"
+          + "  --devices <count>         simulated devices, 1 by default\n"
+          + "  --base-port <port>        port of the first device, the next ones follow\n"
+          + "  --rates <rate>[,<rate>]   requests per second to measure in turn, 1000 by default\n"
+          + "  --duration <seconds>      measurement time at each rate, 10 by default\n"
+          + "  --warmup <seconds>        time to run at each rate before measuring, 2 by default\n"
+          + "  --window <count>          requests in flight per device, 16 by default\n"
+          + "  --queue <count>           requests queued per device beyond those, 1024 by default\n"
+          + "  --timeout <millis>        time to wait for a response, 1000 by default\n"
+          + "  --echo-percent <percent>  percentage of echo messages, On/Off commands otherwise";
+
+  private static final String LOOPBACK_ADDRESS = "::1";
+
+  // Node ID of the first device, the one chip-tool-server uses by default; the next ones follow.
+  private static final long FIRST_DEVICE_ID = 12344321;
+
+  private static final String ECHO_MESSAGE = "load";
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private final Options options;
+  private final ChipDeviceController controller = new ChipDeviceController();
+  private final long[] deviceIds;
+  private long requestCount;
+
+  private LoadGenerator(Options options, long[] deviceIds) {
+    this.options = options;
+    this.deviceIds = deviceIds;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Options options;
+    try {
+      options = Options.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+      return;
+    }
+
+    List<SimulatedDevice> devices = new ArrayList<>();
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  synchronized (devices) {
+                    devices.forEach(SimulatedDevice::stop);
+                  }
+                }));
+
+    long[] deviceIds = new long[options.devices];
+    for (int i = 0; i < options.devices; i++) {
+      SimulatedDevice device =
+          SimulatedDevice.start(options.server, FIRST_DEVICE_ID + i, options.basePort + i);
+      synchronized (devices) {
+        devices.add(device);
+      }
+      deviceIds[i] = device.getDeviceId();
+    }
+
+    new LoadGenerator(options, deviceIds).run(devices);
+
+    // The IO thread of the controller never ends; the hook stops the devices.
+    System.exit(0);
+  }
+
+  private void run(List<SimulatedDevice> devices) throws InterruptedException {
+    controller.addDeviceSessionListener(
+        new ChipDeviceController.DeviceSessionListener() {
+          @Override
+          public void onDeviceMessage(long deviceId, String message) {
+            // Late response to a request that timed out.
+          }
+
+          @Override
+          public void onDeviceError(long deviceId, Throwable error) {
+            System.err.println("Device " + deviceId + ": " + error.getMessage());
+          }
+        });
+    controller.setRequestWindow(options.window, options.queue);
+    controller.setRetransmissionPolicy(options.timeoutMillis, 0);
+    controller.setMaxDeviceSessions(options.devices);
+    for (SimulatedDevice device : devices) {
+      controller.openDeviceSessionWithoutSecurePairing(
+          device.getDeviceId(), LOOPBACK_ADDRESS, device.getPort());
+    }
+
+    System.out.printf(
+        "%d devices, %d s per rate, window %d, echo %d%%%n",
+        options.devices, options.durationSeconds, options.window, options.echoPercent);
+    System.out.printf(
+        "%10s %10s %8s %8s %8s %10s %10s %10s %10s %10s%n",
+        "rate/s",
+        "resp/s",
+        "timeout",
+        "rejected",
+        "failed",
+        "p50 us",
+        "p90 us",
+        "p99 us",
+        "p99.9 us",
+        "max us");
+
+    for (double rate : options.rates) {
+      drive(rate, TimeUnit.SECONDS.toNanos(options.warmupSeconds), null);
+
+      Step step = new Step(rate, options.durationSeconds);
+      drive(rate, TimeUnit.SECONDS.toNanos(options.durationSeconds), step);
+      step.awaitResponses(TimeUnit.MILLISECONDS.toNanos(2L * options.timeoutMillis));
+      step.print(options.durationSeconds);
+    }
+
+    for (long deviceId : deviceIds) {
+      controller.closeDeviceSession(deviceId);
+    }
+    controller.close();
+  }
+
+  /** Sends requests at the given rate for the given time, recording their outcome in step. */
+  private void drive(double rate, long durationNanos, Step step) {
+    long startNanos = System.nanoTime();
+    long sent = 0;
+
+    while (true) {
+      long elapsedNanos = System.nanoTime() - startNanos;
+      if (elapsedNanos >= durationNanos) {
+        break;
+      }
+
+      long due = (long) (elapsedNanos * rate / TimeUnit.SECONDS.toNanos(1)) + 1;
+      for (; sent < due; sent++) {
+        long dueNanos = startNanos + (long) (sent * TimeUnit.SECONDS.toNanos(1) / rate);
+        send(dueNanos, step);
+      }
+
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  private void send(long dueNanos, Step step) {
+    long deviceId = deviceIds[(int) (requestCount % deviceIds.length)];
+    boolean echo = requestCount % 100 < options.echoPercent;
+    requestCount++;
+
+    CompletableFuture<String> future =
+        echo
+            ? controller.sendDeviceMessage(deviceId, ECHO_MESSAGE)
+            : controller.sendDeviceCommand(deviceId, ChipCommandType.TOGGLE);
+    if (step != null) {
+      step.track(future, dueNanos);
+    }
+  }
+
+  /** Outcome of the requests sent while measuring one rate. */
+  private static final class Step {
+
+    final double rate;
+    final long[] latencies;
+    final AtomicInteger latencyCount = new AtomicInteger();
+    final AtomicInteger pending = new AtomicInteger();
+    final AtomicLong timedOut = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+
+    Step(double rate, int durationSeconds) {
+      this.rate = rate;
+      // One more than the requests due, for the one sent at the very start.
+      this.latencies = new long[(int) Math.min(Integer.MAX_VALUE - 8, rate * durationSeconds + 1)];
+    }
+
+    void track(CompletableFuture<String> future, long dueNanos) {
+      pending.incrementAndGet();
+      future.whenComplete(
+          (response, error) -> {
+            if (error == null) {
+              int index = latencyCount.getAndIncrement();
+              if (index < latencies.length) {
+                latencies[index] = System.nanoTime() - dueNanos;
+              }
+            } else if (error instanceof RejectedExecutionException) {
+              rejected.incrementAndGet();
+            } else if (error instanceof ChipDeviceControllerException
+                && ((ChipDeviceControllerException) error).errorCode
+                    == ChipDeviceControllerException.REQUEST_TIMEOUT) {
+              timedOut.incrementAndGet();
+            } else {
+              failed.incrementAndGet();
+            }
+            pending.decrementAndGet();
+          });
+    }
+
+    /** Waits for the requests still in flight, up to the given time. */
+    void awaitResponses(long timeoutNanos) {
+      long deadline = System.nanoTime() + timeoutNanos;
+      while (pending.get() > 0 && System.nanoTime() - deadline < 0) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+      }
+    }
+
+    void print(int durationSeconds) {
+      int count = Math.min(latencyCount.get(), latencies.length);
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+
+      StringBuilder line = new StringBuilder();
+      line.append(String.format("%10.0f %10.0f", rate, (double) count / durationSeconds));
+      // Requests still pending by now got lost without timing out.
+      line.append(
+          String.format(
+              " %8d %8d %8d", timedOut.get(), rejected.get(), failed.get() + pending.get()));
+      for (double percentile : PERCENTILES) {
+        line.append(String.format(" %10d", micros(sorted, percentile)));
+      }
+      line.append(String.format(" %10d", micros(sorted, 100)));
+      System.out.println(line);
+    }
+
+    private static long micros(long[] sorted, double percentile) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+      return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, index)]);
+    }
+  }
+
+  /** Command line options. */
+  private static final class Options {
+
+    String server;
+    int devices = 1;
+    int basePort = ChipDeviceController.DEFAULT_PORT + 1;
+    double[] rates = {1000};
+    int durationSeconds = 10;
+    int warmupSeconds = 2;
+    int window = 16;
+    int queue = 1024;
+    int timeoutMillis = 1000;
+    int echoPercent = 0;
+
+    static Options parse(String[] args) {
+      Options options = new Options();
+
+      for (int i = 0; i < args.length; i += 2) {
+        String name = args[i];
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value for " + name);
+        }
+        String value = args[i + 1];
+
+        switch (name) {
+          case "--server":
+            options.server = value;
+            break;
+          case "--devices":
+            options.devices = parseInt(name, value, 1, 0xFFFF);
+            break;
+          case "--base-port":
+            options.basePort = parseInt(name, value, 1, 0xFFFF);
+            break;
+          case "--rates":
+            options.rates = parseRates(value);
+            break;
+          case "--duration":
+            options.durationSeconds = parseInt(name, value, 1, Integer.MAX_VALUE);
+            break;
+          case "--warmup":
+            options.warmupSeconds = parseInt(name, value, 0, Integer.MAX_VALUE);
+            break;
+          case "--window":
+            options.window = parseInt(name, value, 1, Integer.MAX_VALUE);
+            break;
+          case "--queue":
+            options.queue = parseInt(name, value, 0, Integer.MAX_VALUE);
+            break;
+          case "--timeout":
+            options.timeoutMillis = parseInt(name, value, 1, Integer.MAX_VALUE);
+            break;
+          case "--echo-percent":
+            options.echoPercent = parseInt(name, value, 0, 100);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option: " + name);
+        }
+      }
+
+      if (options.server == null) {
+        throw new IllegalArgumentException("Missing --server");
+      }
+      if (options.basePort + options.devices - 1 > 0xFFFF) {
+        throw new IllegalArgumentException("Too many devices for --base-port");
+      }
+      return options;
+    }
+
+    private static int parseInt(String name, String value, int min, int max) {
+      int result;
+      try {
+        result = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid value for " + name + ": " + value, e);
+      }
+      if (result < min || result > max) {
+        throw new IllegalArgumentException("Value out of range for " + name + ": " + value);
+      }
+      return result;
+    }
+
+    private static double[] parseRates(String value) {
+      String[] values = value.split(",");
+      double[] rates = new double[values.length];
+      for (int i = 0; i < values.length; i++) {
+        try {
+          rates[i] = Double.parseDouble(values[i]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid rate: " + values[i], e);
+        }
+        if (!(rates[i] > 0)) {
+          throw new IllegalArgumentException("Invalid rate: " + values[i]);
+        }
+      }
+      return rates;
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller.loadgen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A chip-tool-server process standing for one device, listening on its own port of the loopback
+ * interface and answering echo messages and On/Off commands.
+ */
+final class SimulatedDevice {
+
+  // Printed by chip-tool-server once it listens for messages, or when it cannot.
+  private static final String READY_MESSAGE = "Listening";
+  private static final String ERROR_PREFIX = "ERROR";
+
+  private final Process process;
+  private final long deviceId;
+  private final int port;
+
+  private SimulatedDevice(Process process, long deviceId, int port) {
+    this.process = process;
+    this.deviceId = deviceId;
+    this.port = port;
+  }
+
+  /**
+   * Starts a device with the given node ID on the given port, and waits for it to listen.
+   *
+   * @param server path to the chip-tool-server executable
+   */
+  static SimulatedDevice start(String server, long deviceId, int port) throws IOException {
+    Process process =
+        new ProcessBuilder(
+                server,
+                "--port",
+                Integer.toString(port),
+                "--node-id",
+                Long.toString(deviceId),
+                "--quiet")
+            .redirectErrorStream(true)
+            .start();
+
+    SimulatedDevice device = new SimulatedDevice(process, deviceId, port);
+    try {
+      device.awaitReady();
+    } catch (IOException e) {
+      process.destroy();
+      throw e;
+    }
+    return device;
+  }
+
+  long getDeviceId() {
+    return deviceId;
+  }
+
+  int getPort() {
+    return port;
+  }
+
+  void stop() {
+    process.destroy();
+  }
+
+  private void awaitReady() throws IOException {
+    BufferedReader output =
+        new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+    String line;
+    while ((line = output.readLine()) != null) {
+      if (line.startsWith(ERROR_PREFIX)) {
+        throw new IOException("Device on port " + port + ": " + line);
+      }
+      if (line.contains(READY_MESSAGE)) {
+        drain(output);
+        return;
+      }
+    }
+    throw new IOException("Device on port " + port + " exited");
+  }
+
+  // Keeps reading the output of the process, which would otherwise block on a full pipe.
+  private void drain(BufferedReader output) {
+    Thread thread =
+        new Thread(
+            () -> {
+              char[] buffer = new char[4096];
+              try {
+                while (output.read(buffer) >= 0) {
+                  continue;
+                }
+              } catch (IOException e) {
+                // The process is gone.
+              }
+            },
+            "SimulatedDevice-" + deviceId);
+    thread.setDaemon(true);
+    thread.start();
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the attribute values reported by devices, keyed by node ID, endpoint, cluster and
+ * attribute.
+ *
+ * <p>The cache is fed with every Report Attributes and Read Attributes Response command received on
+ * a device session, and can be read from any thread without going through the native stack.
+ */
+public final class AttributeCache {
+
+  // ZCL frame control bits.
+  private static final int ZCL_FRAME_TYPE_MASK = 0x03;
+  private static final int ZCL_FRAME_TYPE_GLOBAL = 0x00;
+  private static final int ZCL_MANUFACTURER_SPECIFIC_MASK = 0x04;
+
+  // Global commands carrying attribute values.
+  private static final int ZCL_READ_ATTRIBUTES_RESPONSE_COMMAND_ID = 0x01;
+  private static final int ZCL_REPORT_ATTRIBUTES_COMMAND_ID = 0x0A;
+
+  private static final int ZCL_STATUS_SUCCESS = 0x00;
+
+  // Length of the APS frame preceding the ZCL message, see src/app/decoder.cpp.
+  private static final int APS_FRAME_LENGTH = 13;
+  private static final int APS_CLUSTER_ID_OFFSET = 3;
+  private static final int APS_SOURCE_ENDPOINT_OFFSET = 5;
+
+  private final Map<Long, Map<Long, CachedAttribute>> nodes = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the cached value of the given attribute, or null if no value was received for it.
+   */
+  public CachedAttribute get(long nodeId, int endpoint, int clusterId, int attributeId) {
+    Map<Long, CachedAttribute> attributes = nodes.get(nodeId);
+    return attributes != null ? attributes.get(key(endpoint, clusterId, attributeId)) : null;
+  }
+
+  /**
+   * Returns the cached value of the given attribute, or null if no value was received for it in
+   * the last {@code maxAgeMillis} milliseconds.
+   */
+  public CachedAttribute get(
+      long nodeId, int endpoint, int clusterId, int attributeId, long maxAgeMillis) {
+    CachedAttribute attribute = get(nodeId, endpoint, clusterId, attributeId);
+    if (attribute == null || attribute.getAgeMillis() > maxAgeMillis) {
+      return null;
+    }
+    return attribute;
+  }
+
+  /** Drops the cached values of the given node. */
+  public void invalidate(long nodeId) {
+    nodes.remove(nodeId);
+  }
+
+  /** Drops all the cached values. */
+  public void clear() {
+    nodes.clear();
+  }
+
+  /** Drops the values received more than {@code maxAgeMillis} milliseconds ago. */
+  public void evictOlderThan(long maxAgeMillis) {
+    long oldest = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    for (Map<Long, CachedAttribute> attributes : nodes.values()) {
+      attributes.values().removeIf(attribute -> attribute.getUpdateTimeNanos() - oldest < 0);
+    }
+  }
+
+  /**
+   * Caches the attribute values carried by a message received from the given node. Messages that
+   * are not attribute reports or read responses are ignored.
+   */
+  void update(long nodeId, ByteBuffer message) {
+    int messageLength = message.limit();
+    if (messageLength < APS_FRAME_LENGTH + 3) {
+      return;
+    }
+
+    int clusterId = readUint16(message, APS_CLUSTER_ID_OFFSET);
+    int endpoint = message.get(APS_SOURCE_ENDPOINT_OFFSET) & 0xFF;
+
+    int offset = APS_FRAME_LENGTH;
+    int frameControl = message.get(offset++) & 0xFF;
+    if ((frameControl & ZCL_FRAME_TYPE_MASK) != ZCL_FRAME_TYPE_GLOBAL) {
+      return;
+    }
+    if ((frameControl & ZCL_MANUFACTURER_SPECIFIC_MASK) != 0) {
+      // Manufacturer-specific attributes live in another namespace; don't mix them up.
+      return;
+    }
+
+    offset++; // Transaction sequence number.
+    int commandId = message.get(offset++) & 0xFF;
+    boolean hasStatus;
+    if (commandId == ZCL_READ_ATTRIBUTES_RESPONSE_COMMAND_ID) {
+      hasStatus = true;
+    } else if (commandId == ZCL_REPORT_ATTRIBUTES_COMMAND_ID) {
+      hasStatus = false;
+    } else {
+      return;
+    }
+
+    Map<Long, CachedAttribute> attributes = null;
+    long now = System.nanoTime();
+
+    while (offset + 3 <= messageLength) {
+      int attributeId = readUint16(message, offset);
+      offset += 2;
+
+      if (hasStatus && (message.get(offset++) & 0xFF) != ZCL_STATUS_SUCCESS) {
+        continue;
+      }
+      if (offset >= messageLength) {
+        break;
+      }
+
+      int dataType = message.get(offset++) & 0xFF;
+      int length = ZclDataType.valueLength(dataType, message, offset);
+      if (length < 0 || offset + length > messageLength) {
+        // Unknown or truncated value: the following records cannot be located.
+        break;
+      }
+
+      byte[] value = new byte[length];
+      for (int i = 0; i < length; i++) {
+        value[i] = message.get(offset++);
+      }
+
+      if (attributes == null) {
+        attributes = nodes.computeIfAbsent(nodeId, id -> new ConcurrentHashMap<>());
+      }
+      attributes.put(
+          key(endpoint, clusterId, attributeId), new CachedAttribute(dataType, value, now));
+    }
+  }
+
+  private static long key(int endpoint, int clusterId, int attributeId) {
+    return ((long) (endpoint & 0xFF) << 32)
+        | ((long) (clusterId & 0xFFFF) << 16)
+        | (attributeId & 0xFFFF);
+  }
+
+  private static int readUint16(ByteBuffer data, int offset) {
+    return (data.get(offset) & 0xFF) | ((data.get(offset + 1) & 0xFF) << 8);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.util.concurrent.TimeUnit;
+
+/** Last value of an attribute reported by a device, as held by {@link AttributeCache}. */
+public final class CachedAttribute {
+
+  private final int dataType;
+  private final byte[] value;
+  private final long updateTimeNanos;
+
+  CachedAttribute(int dataType, byte[] value, long updateTimeNanos) {
+    this.dataType = dataType;
+    this.value = value;
+    this.updateTimeNanos = updateTimeNanos;
+  }
+
+  /** Returns the ZCL data type of the attribute. */
+  public int getDataType() {
+    return dataType;
+  }
+
+  /** Returns the value of the attribute, encoded as it was received. */
+  public byte[] getValue() {
+    return value.clone();
+  }
+
+  /**
+   * Returns the value of a boolean, bitmap, enumeration or unsigned integer attribute of up to 8
+   * bytes, decoded from little-endian.
+   */
+  public long getLongValue() {
+    if (value.length > 8) {
+      throw new IllegalStateException("Not an integer attribute");
+    }
+
+    long result = 0;
+    for (int i = value.length - 1; i >= 0; i--) {
+      result = (result << 8) | (value[i] & 0xFF);
+    }
+    return result;
+  }
+
+  /** Returns how long ago the value was received, in milliseconds. */
+  public long getAgeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - updateTimeNanos);
+  }
+
+  long getUpdateTimeNanos() {
+    return updateTimeNanos;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands the callbacks of a controller from the IO thread over to an {@link Executor}.
+ *
+ * <p>Callbacks wait in a bounded queue and run one at a time, in the order they were dispatched,
+ * whatever the executor. Dispatching never blocks: once the queue is full, callbacks are dropped
+ * and counted, so that a slow listener cannot stall the IO thread. Completions of futures are never
+ * dropped, since nothing else would complete them; there are no more of them than requests in
+ * flight.
+ */
+final class CallbackDispatcher {
+
+  private final Executor executor;
+  private final int maxQueuedCallbacks;
+  private final ConcurrentLinkedQueue<Runnable> callbacks = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queuedCallbacks = new AtomicInteger();
+  private final AtomicLong droppedCallbacks;
+  private final AtomicBoolean draining = new AtomicBoolean();
+
+  /**
+   * @param executor executor to run the callbacks on, or null for a thread shared by all the
+   *     controllers
+   * @param maxQueuedCallbacks number of callbacks that can wait for the executor
+   * @param droppedCallbacks counter of the callbacks dropped for lack of room
+   */
+  CallbackDispatcher(Executor executor, int maxQueuedCallbacks, AtomicLong droppedCallbacks) {
+    this.executor = executor != null ? executor : DefaultExecutor.INSTANCE;
+    this.maxQueuedCallbacks = maxQueuedCallbacks;
+    this.droppedCallbacks = droppedCallbacks;
+  }
+
+  /** Returns false if the callback was dropped, in which case it will never run. */
+  boolean dispatch(Runnable callback) {
+    if (queuedCallbacks.incrementAndGet() > maxQueuedCallbacks) {
+      queuedCallbacks.decrementAndGet();
+      droppedCallbacks.incrementAndGet();
+      return false;
+    }
+    callbacks.offer(callback);
+    scheduleDrain();
+    return true;
+  }
+
+  /**
+   * Dispatches the completion of a future, in order with the callbacks, even if the queue is full.
+   * Completions take room in the queue, so that callbacks are dropped rather than delayed further.
+   */
+  void dispatchCompletion(Runnable completion) {
+    queuedCallbacks.incrementAndGet();
+    callbacks.offer(completion);
+    scheduleDrain();
+  }
+
+  private void scheduleDrain() {
+    if (draining.compareAndSet(false, true)) {
+      try {
+        executor.execute(this::drain);
+      } catch (RuntimeException e) {
+        // The executor is shut down; the next dispatch tries again.
+        draining.set(false);
+      }
+    }
+  }
+
+  private void drain() {
+    try {
+      Runnable callback;
+      while ((callback = callbacks.poll()) != null) {
+        queuedCallbacks.decrementAndGet();
+        callback.run();
+      }
+    } finally {
+      draining.set(false);
+      // A callback dispatched after the last poll found draining still set.
+      if (!callbacks.isEmpty()) {
+        scheduleDrain();
+      }
+    }
+  }
+
+  private static final class DefaultExecutor {
+    static final ExecutorService INSTANCE =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "ChipDeviceController callbacks");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+}
@@ -17,50 +17,874 @@
  */
 package chip.devicecontroller;
 
-/** Controller to interact with the CHIP device. */
-public class ChipDeviceController {
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
-  private long deviceControllerPtr;
-  private CompletionListener completionListener;
+/**
+ * Controller to interact with the CHIP device.
+ *
+ * <p>Operations are queued to the CHIP IO thread and return without waiting for the stack; their
+ * failures are reported through {@link CompletionListener#onError} or {@link
+ * DeviceSessionListener#onDeviceError}. The {@code send*} methods instead return a future that
+ * completes with the response to that particular request, so that several requests can be in
+ * flight at once; see {@link #setRequestWindow} to bound how many.
+ *
+ * <p>Listeners are never called on the IO thread, but through an executor; see {@link
+ * #setCallbackExecutor}.
+ *
+ * <p>A controller holds native sockets and sessions until it is closed. One that is dropped without
+ * being closed is eventually deleted once garbage collected, but only as a safety net: keep a
+ * reference to the controller for as long as its listeners are to be called, and close it.
+ */
+public class ChipDeviceController implements AutoCloseable {
+
+  /**
+   * Device ID under which requests sent over the {@link #beginConnectDevice} connection are
+   * tracked. This is the undefined node ID, which no device session can use.
+   */
+  private static final long CONNECTION_DEVICE_ID = -1;
+
+  /** UDP port CHIP devices listen on, unless told otherwise. */
+  public static final int DEFAULT_PORT = 11095;
+
+  // Latencies measured by the native layer, see readNativeLatencies.
+  private static final int NATIVE_SUBMIT_LATENCY = 0;
+  private static final int NATIVE_UPCALL_LATENCY = 1;
+  private static final int NATIVE_STACK_LOCK_WAIT = 2;
+  private static final int NATIVE_CONNECT_LATENCY = 3;
+
+  private static final int DEFAULT_MAX_QUEUED_CALLBACKS = 1024;
+
+  // The native layer counts retransmissions on one byte.
+  private static final int MAX_RETRANSMISSIONS = 0xFF;
+
+  // Calls into the native controller in progress, which close() waits for before deleting it. A
+  // call never waits for close(), since the IO thread makes some while holding the stack lock.
+  private final AtomicInteger nativeCalls = new AtomicInteger();
+  private volatile long deviceControllerPtr;
+  private final NativeCleaner.Cleanable cleanable;
+  private final MetricsRecorder metrics = new MetricsRecorder();
+  private volatile CallbackDispatcher callbackDispatcher =
+      new CallbackDispatcher(null, DEFAULT_MAX_QUEUED_CALLBACKS, metrics.callbacksDropped);
+  private final RequestTracker requestTracker =
+      new RequestTracker(metrics, completion -> callbackDispatcher.dispatchCompletion(completion));
+  private final AttributeCache attributeCache = new AttributeCache();
+  private final List<CompletionListener> completionListeners = new CopyOnWriteArrayList<>();
+  private final List<DeviceSessionListener> deviceSessionListeners = new CopyOnWriteArrayList<>();
+  private final List<MessageListener> messageListeners = new CopyOnWriteArrayList<>();
+  private volatile SessionStore sessionStore;
+
+  // Read by the native layer for every request it is handed.
+  private volatile int requestTimeoutMillis;
+  private volatile int maxRetransmissions;
 
   public ChipDeviceController() {
-    deviceControllerPtr = newDeviceController();
+    long ptr = newDeviceController();
+    deviceControllerPtr = ptr;
+    cleanable = NativeCleaner.register(this, () -> deleteDeviceController(ptr));
   }
 
+  /**
+   * Deletes the native controller, which closes its connection, device sessions and sockets. The
+   * requests still pending fail, and the controller cannot be used anymore. The calls made on other
+   * threads meanwhile either complete before the native controller is deleted, or throw {@link
+   * IllegalStateException}. Closing a closed controller does nothing.
+   */
+  @Override
+  public void close() {
+    synchronized (nativeCalls) {
+      if (deviceControllerPtr == 0) {
+        return;
+      }
+      deviceControllerPtr = 0;
+
+      // The commands queued by the calls in progress run before the native controller is deleted.
+      boolean interrupted = false;
+      while (nativeCalls.get() != 0) {
+        try {
+          nativeCalls.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      cleanable.clean();
+    }
+
+    for (CompletableFuture<String> future : requestTracker.removeAll()) {
+      future.completeExceptionally(new IllegalStateException("Controller closed"));
+    }
+  }
+
+  /**
+   * Returns the cache of the attribute values reported by the devices with an open device session,
+   * or read from them.
+   */
+  public AttributeCache getAttributeCache() {
+    return attributeCache;
+  }
+
+  /**
+   * Bounds the number of requests sent with the {@code send*} methods that are pending on each
+   * device, the {@link #beginConnectDevice} connection counting as one device.
+   *
+   * <p>Up to {@code maxInFlightRequests} requests are sent to a device without waiting for their
+   * responses. The requests beyond that are queued, and sent as responses arrive; once {@code
+   * maxQueuedRequests} requests are queued, the futures of the next ones complete right away with a
+   * {@link java.util.concurrent.RejectedExecutionException}. Both are unbounded by default.
+   *
+   * <p>Cluster commands are matched with their response through a transaction sequence number,
+   * which is one byte long: sending a 257th command to a device that has not answered the 256
+   * previous ones fails.
+   */
+  public void setRequestWindow(int maxInFlightRequests, int maxQueuedRequests) {
+    requestTracker.setWindow(maxInFlightRequests, maxQueuedRequests);
+  }
+
+  /**
+   * Sets how long to wait for the response to the requests sent from now on, and how many times to
+   * send cluster commands again when they get none. A request that gets no response in time fails
+   * with a {@link ChipDeviceControllerException} whose error code is {@link
+   * ChipDeviceControllerException#REQUEST_TIMEOUT}, reported like any other failure to send it.
+   * Requests never time out by default.
+   *
+   * <p>A cluster command is retransmitted up to {@code maxRetransmissions} times, waiting twice as
+   * long after each transmission, before it times out. Its response is matched through the
+   * transaction sequence number the command was sent with, so a duplicate response to a
+   * retransmitted command, or a response arriving after its command timed out, is delivered to the
+   * listeners as any other message rather than taken for the response to another request. Echo
+   * messages carry no such number and are never retransmitted.
+   *
+   * @param timeoutMillis time to wait for the response to the first transmission, or 0 to wait
+   *     forever and never retransmit
+   * @param maxRetransmissions number of retransmissions of a cluster command, from 0 to 255
+   * @throws IllegalArgumentException if {@code timeoutMillis} is negative or {@code
+   *     maxRetransmissions} is out of range
+   */
+  public void setRetransmissionPolicy(int timeoutMillis, int maxRetransmissions) {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("Invalid request timeout: " + timeoutMillis);
+    }
+    if (maxRetransmissions < 0 || maxRetransmissions > MAX_RETRANSMISSIONS) {
+      throw new IllegalArgumentException("Invalid retransmission count: " + maxRetransmissions);
+    }
+    this.requestTimeoutMillis = timeoutMillis;
+    this.maxRetransmissions = maxRetransmissions;
+  }
+
+  /** Returns a snapshot of the counters and latency histograms of this controller. */
+  public ControllerMetrics getMetrics() {
+    return metrics.snapshot(
+        readNativeLatency(NATIVE_CONNECT_LATENCY),
+        readNativeLatency(NATIVE_SUBMIT_LATENCY),
+        readNativeLatency(NATIVE_UPCALL_LATENCY),
+        readNativeLatency(NATIVE_STACK_LOCK_WAIT));
+  }
+
+  /**
+   * Sets the executor to call the listeners on, instead of the thread shared by all the
+   * controllers. Callbacks run one at a time and in order whatever the executor, and never on the
+   * IO thread: up to {@code maxQueuedCallbacks} of them wait for the executor, and the next ones
+   * are dropped, as counted by {@link ControllerMetrics#getCallbacksDropped}.
+   *
+   * <p>The futures returned by the {@code send*} methods are completed on the executor too, in order
+   * with the callbacks, so that the stages chained to them never run on the IO thread. Their
+   * completions are never dropped, but do take room in the queue. A future that fails before its
+   * request reaches the IO thread, or because the controller or the device session is closed, is
+   * completed on the calling thread instead.
+   */
+  public void setCallbackExecutor(Executor executor, int maxQueuedCallbacks) {
+    if (maxQueuedCallbacks <= 0) {
+      throw new IllegalArgumentException("Invalid callback queue size: " + maxQueuedCallbacks);
+    }
+    callbackDispatcher =
+        new CallbackDispatcher(executor, maxQueuedCallbacks, metrics.callbacksDropped);
+  }
+
+  public void setCallbackExecutor(Executor executor) {
+    setCallbackExecutor(executor, DEFAULT_MAX_QUEUED_CALLBACKS);
+  }
+
+  /**
+   * Sets the store the pairings with devices are saved to once established, and resumed from by
+   * {@link #beginConnectDevice}, which then skips the key exchange. A stored pairing that cannot be
+   * resumed is removed, so that the device is paired again. Failures of the store are reported
+   * through {@link CompletionListener#onError}. Pairings are only kept in memory by default.
+   *
+   * @param store the store, or null to stop using one
+   */
+  public void setSessionStore(SessionStore store) {
+    sessionStore = store;
+  }
+
+  public void addCompletionListener(CompletionListener listener) {
+    completionListeners.add(listener);
+  }
+
+  public void removeCompletionListener(CompletionListener listener) {
+    completionListeners.remove(listener);
+  }
+
+  public void addDeviceSessionListener(DeviceSessionListener listener) {
+    deviceSessionListeners.add(listener);
+  }
+
+  public void removeDeviceSessionListener(DeviceSessionListener listener) {
+    deviceSessionListeners.remove(listener);
+  }
+
+  public void addMessageListener(MessageListener listener) {
+    messageListeners.add(listener);
+  }
+
+  public void removeMessageListener(MessageListener listener) {
+    messageListeners.remove(listener);
+  }
+
+  /**
+   * Replaces all the completion listeners with the given one.
+   *
+   * @deprecated use {@link #addCompletionListener} and {@link #removeCompletionListener}, which
+   *     leave the other listeners alone
+   */
+  @Deprecated
   public void setCompletionListener(CompletionListener listener) {
-    completionListener = listener;
+    completionListeners.clear();
+    if (listener != null) {
+      completionListeners.add(listener);
+    }
+  }
+
+  /**
+   * Replaces all the device session listeners with the given one.
+   *
+   * @deprecated use {@link #addDeviceSessionListener} and {@link #removeDeviceSessionListener},
+   *     which leave the other listeners alone
+   */
+  @Deprecated
+  public void setDeviceSessionListener(DeviceSessionListener listener) {
+    deviceSessionListeners.clear();
+    if (listener != null) {
+      deviceSessionListeners.add(listener);
+    }
   }
 
   public void beginConnectDevice(String ipAddress) {
-    beginConnectDevice(deviceControllerPtr, ipAddress);
+    long ptr = acquireNative();
+    try {
+      beginConnectDevice(ptr, ipAddress);
+    } finally {
+      releaseNative();
+    }
   }
 
   public boolean isConnected() {
-    return isConnected(deviceControllerPtr);
+    long ptr = acquireNative();
+    try {
+      return isConnected(ptr);
+    } finally {
+      releaseNative();
+    }
   }
 
   public void beginSendMessage(String message) {
-    beginSendMessage(deviceControllerPtr, message);
+    long ptr = acquireNative();
+    try {
+      beginSendMessage(ptr, RequestTracker.NO_REQUEST_ID, message);
+    } finally {
+      releaseNative();
+    }
   }
 
   public void beginSendCommand(ChipCommandType command) {
-    beginSendCommand(deviceControllerPtr, command);
+    long ptr = acquireNative();
+    try {
+      beginSendCommand(ptr, RequestTracker.NO_REQUEST_ID, command);
+    } finally {
+      releaseNative();
+    }
+  }
+
+  /**
+   * Sends an echo message over the connection opened by {@link #beginConnectDevice}.
+   *
+   * @return a future completed with the response, or exceptionally if the message cannot be sent
+   */
+  public CompletableFuture<String> sendMessage(String message) {
+    return sendRequest(
+        CONNECTION_DEVICE_ID,
+        (ptr, requestId) -> beginSendMessage(ptr, requestId, message));
+  }
+
+  /**
+   * Sends a command over the connection opened by {@link #beginConnectDevice}.
+   *
+   * @return a future completed with the response, or exceptionally if the command cannot be sent
+   */
+  public CompletableFuture<String> sendCommand(ChipCommandType command) {
+    return sendRequest(
+        CONNECTION_DEVICE_ID,
+        (ptr, requestId) -> beginSendCommand(ptr, requestId, command));
+  }
+
+  /**
+   * Sends an encoded cluster command over the connection opened by {@link #beginConnectDevice}. The
+   * buffer can be reused as soon as this method returns.
+   *
+   * @return a future completed with the response, or exceptionally if the command cannot be sent
+   */
+  public CompletableFuture<String> sendCommand(CommandBuffer command) {
+    // A queued request is sent later on, once the buffer may hold another command.
+    byte[] data = Arrays.copyOf(command.data, command.length);
+    return sendRequest(
+        CONNECTION_DEVICE_ID,
+        (ptr, requestId) -> beginSendCommandBuffer(ptr, requestId, data, data.length));
   }
 
   public boolean disconnectDevice() {
-    return disconnectDevice(deviceControllerPtr);
+    failPendingRequests(CONNECTION_DEVICE_ID, "Device disconnected");
+    long ptr = acquireNative();
+    try {
+      return disconnectDevice(ptr);
+    } finally {
+      releaseNative();
+    }
+  }
+
+  /**
+   * Opens a secure session with the device with the given node ID. Several device sessions can be
+   * open at once, alongside the connection of {@link #beginConnectDevice}; they share the
+   * controller's IO thread, so switching between devices does not require reconnecting.
+   *
+   * <p>The session keys are derived from the pairing with the device held by the {@link
+   * #setSessionStore session store}, and the message indexes the session sends are reserved in the
+   * store ahead of use. Opening a session with a device that has no stored pairing fails through
+   * {@link DeviceSessionListener#onDeviceError}. At most {@link #setMaxDeviceSessions} sessions,
+   * 512 by default, can be open at once; opening one more fails the same way. A session whose
+   * connection the native stack expires, for instance after being idle for {@code
+   * CHIP_PEER_CONNECTION_TIMEOUT_MS} when rekeying is enabled, is closed as if by {@link
+   * #closeDeviceSession}: its pending requests fail, {@link #hasDeviceSession} returns false, and
+   * {@link DeviceSessionListener#onDeviceError} is called. Open it again to keep talking to the
+   * device.
+   */
+  public void openDeviceSession(long deviceId, String ipAddress) {
+    openDeviceSession(deviceId, ipAddress, DEFAULT_PORT);
+  }
+
+  /**
+   * Opens a secure session with the device with the given node ID, listening on the given UDP
+   * port.
+   */
+  public void openDeviceSession(long deviceId, String ipAddress, int port) {
+    openDeviceSession(deviceId, ipAddress, port, false);
+  }
+
+  /**
+   * Opens a session with the device with the given node ID without a pairing, for testing with
+   * devices that do not support rendezvous yet, such as chip-tool-server.
+   *
+   * <p>The session is NOT secure. Its keys are derived from a test secret that is public and the
+   * same for every device, and its message indexes start from 0 every time it is opened. Anyone on
+   * the network can read and forge its messages. Otherwise it behaves like a session opened with
+   * {@link #openDeviceSession(long, String, int)}.
+   */
+  public void openDeviceSessionWithoutSecurePairing(long deviceId, String ipAddress, int port) {
+    openDeviceSession(deviceId, ipAddress, port, true);
+  }
+
+  private void openDeviceSession(
+      long deviceId, String ipAddress, int port, boolean withoutSecurePairing) {
+    if (port <= 0 || port > 0xFFFF) {
+      throw new IllegalArgumentException("Invalid port: " + port);
+    }
+    long ptr = acquireNative();
+    try {
+      openDeviceSession(ptr, deviceId, ipAddress, port, withoutSecurePairing);
+    } finally {
+      releaseNative();
+    }
+  }
+
+  /**
+   * Sets how many device sessions can be open at once, 512 by default. Every 16 sessions, or
+   * {@code CHIP_CONFIG_PEER_CONNECTION_POOL_SIZE}, share a UDP socket of their own. The limit can
+   * only change while no device session is open.
+   *
+   * @throws IllegalArgumentException if {@code maxSessions} is not between 1 and 65535
+   * @throws ChipDeviceControllerException if a device session is open
+   */
+  public void setMaxDeviceSessions(int maxSessions) {
+    if (maxSessions <= 0 || maxSessions > 0xFFFF) {
+      throw new IllegalArgumentException("Invalid maximum number of sessions: " + maxSessions);
+    }
+    long ptr = acquireNative();
+    try {
+      setMaxDeviceSessions(ptr, maxSessions);
+    } finally {
+      releaseNative();
+    }
+  }
+
+  /**
+   * Opens a device session with every device of the registry whose address is known, as {@link
+   * #openDeviceSession(long, String, int)} does. The sessions are keyed from the pairings the
+   * registry holds when it is the {@link #setSessionStore session store} of this controller.
+   */
+  public void openDeviceSessions(DeviceRegistry registry) {
+    long ptr = acquireNative();
+    try {
+      registry.forEach(
+          device -> {
+            if (device.getAddress() != null) {
+              openDeviceSession(
+                  ptr,
+                  device.getNodeId(),
+                  device.getAddress().getHostAddress(),
+                  device.getPort(),
+                  false);
+            }
+          });
+    } finally {
+      releaseNative();
+    }
+  }
+
+  public boolean hasDeviceSession(long deviceId) {
+    long ptr = acquireNative();
+    try {
+      return hasDeviceSession(ptr, deviceId);
+    } finally {
+      releaseNative();
+    }
+  }
+
+  public void beginSendDeviceMessage(long deviceId, String message) {
+    long ptr = acquireNative();
+    try {
+      sendDeviceMessage(ptr, deviceId, RequestTracker.NO_REQUEST_ID, message);
+    } finally {
+      releaseNative();
+    }
+  }
+
+  public void beginSendDeviceCommand(long deviceId, ChipCommandType command) {
+    long ptr = acquireNative();
+    try {
+      sendDeviceCommand(ptr, deviceId, RequestTracker.NO_REQUEST_ID, command);
+    } finally {
+      releaseNative();
+    }
+  }
+
+  /**
+   * Sends the bytes of the message, up to the position of its buffer, to the device with the given
+   * node ID over its device session. The native buffer is sent as is and handed over to the stack,
+   * so the message cannot be used afterwards, even if sending fails.
+   */
+  public void beginSendDeviceMessage(long deviceId, MessageBuffer message) {
+    int length = message.buffer().position();
+    long ptr = acquireNative();
+    try {
+      sendDeviceMessageBuffer(ptr, deviceId, RequestTracker.NO_REQUEST_ID, message.take(), length);
+    } finally {
+      releaseNative();
+    }
+  }
+
+  /**
+   * Sends a message to the device with the given node ID over its device session.
+   *
+   * @return a future completed with the response, or exceptionally if the message cannot be sent
+   */
+  public CompletableFuture<String> sendDeviceMessage(long deviceId, String message) {
+    return sendRequest(
+        deviceId,
+        (ptr, requestId) -> sendDeviceMessage(ptr, deviceId, requestId, message));
+  }
+
+  /**
+   * Sends a command to the device with the given node ID over its device session.
+   *
+   * @return a future completed with the response, or exceptionally if the command cannot be sent
+   */
+  public CompletableFuture<String> sendDeviceCommand(long deviceId, ChipCommandType command) {
+    return sendRequest(
+        deviceId,
+        (ptr, requestId) -> sendDeviceCommand(ptr, deviceId, requestId, command));
+  }
+
+  /**
+   * Sends an encoded cluster command to the device with the given node ID over its device session.
+   * The buffer can be reused as soon as this method returns.
+   *
+   * @return a future completed with the response, or exceptionally if the command cannot be sent
+   */
+  public CompletableFuture<String> sendDeviceCommand(long deviceId, CommandBuffer command) {
+    // A queued request is sent later on, once the buffer may hold another command.
+    byte[] data = Arrays.copyOf(command.data, command.length);
+    return sendRequest(
+        deviceId,
+        (ptr, requestId) -> sendDeviceCommandBuffer(ptr, deviceId, requestId, data, data.length));
+  }
+
+  /**
+   * Sends all the commands of the batch to their devices in a single call into the native layer.
+   * The commands are encoded on the calling thread and handed to the IO thread together.
+   *
+   * @return one future per command, in the order the commands were added to the batch, each
+   *     completed with the response to its command
+   */
+  public List<CompletableFuture<String>> sendCommands(CommandBatch batch) {
+    int count = batch.size();
+    List<CompletableFuture<String>> futures = new ArrayList<>(count);
+
+    // The commands that fit in the window of their device are sent together; the others are sent
+    // one by one as the window allows.
+    long[] deviceIds = new long[count];
+    int[] endpoints = new int[count];
+    int[] commands = new int[count];
+    long[] requestIds = new long[count];
+    int[] indices = new int[count];
+    int sendCount = 0;
+
+    for (int i = 0; i < count; i++) {
+      long deviceId = batch.deviceIds[i];
+      int endpoint = batch.endpoints[i];
+      int command = batch.commands[i];
+      CompletableFuture<String> future = new CompletableFuture<>();
+      futures.add(future);
+
+      long requestId =
+          requestTracker.add(
+              deviceId,
+              future,
+              id ->
+                  submitNative(
+                      (ptr, queuedId) ->
+                          sendDeviceCommands(
+                              ptr,
+                              1,
+                              new long[] {deviceId},
+                              new int[] {endpoint},
+                              new int[] {command},
+                              new long[] {queuedId}),
+                      id));
+      if (requestId != RequestTracker.NO_REQUEST_ID) {
+        deviceIds[sendCount] = deviceId;
+        endpoints[sendCount] = endpoint;
+        commands[sendCount] = command;
+        requestIds[sendCount] = requestId;
+        indices[sendCount] = i;
+        sendCount++;
+      }
+    }
+
+    if (sendCount > 0) {
+      try {
+        long ptr = acquireNative();
+        try {
+          sendDeviceCommands(ptr, sendCount, deviceIds, endpoints, commands, requestIds);
+        } finally {
+          releaseNative();
+        }
+      } catch (Exception e) {
+        // Nothing was queued: the commands are submitted as a whole or not at all.
+        for (int i = 0; i < sendCount; i++) {
+          requestTracker.remove(deviceIds[i], requestIds[i]);
+          futures.get(indices[i]).completeExceptionally(e);
+        }
+      }
+    }
+
+    return futures;
+  }
+
+  public boolean closeDeviceSession(long deviceId) {
+    failPendingRequests(deviceId, "Device session closed");
+    long ptr = acquireNative();
+    try {
+      return closeDeviceSession(ptr, deviceId);
+    } finally {
+      releaseNative();
+    }
   }
 
   public void onConnectDeviceComplete() {
-    completionListener.onConnectDeviceComplete();
+    callbackDispatcher.dispatch(
+        () -> {
+          for (CompletionListener listener : completionListeners) {
+            listener.onConnectDeviceComplete();
+          }
+        });
   }
 
   public void onSendMessageComplete(String message) {
-    completionListener.onSendMessageComplete(message);
+    callbackDispatcher.dispatch(
+        () -> {
+          for (CompletionListener listener : completionListeners) {
+            listener.onSendMessageComplete(message);
+          }
+        });
   }
 
   public void onError(Throwable error) {
-    completionListener.onError(error);
+    callbackDispatcher.dispatch(
+        () -> {
+          for (CompletionListener listener : completionListeners) {
+            listener.onError(error);
+          }
+        });
+  }
+
+  /**
+   * Called by the IO thread with the messages received in one go, in the order they were received,
+   * along with the ID of the request each one responds to, or {@link RequestTracker#NO_REQUEST_ID}.
+   * Echo responses on the {@link #beginConnectDevice} connection come with the device ID -1. The
+   * arrays are reused for the next messages once this returns; the messages are released once
+   * consumed.
+   */
+  public void onDeviceMessages(
+      int count, long[] deviceIds, long[] requestIds, MessageBuffer[] messages) {
+    RuntimeException failure = null;
+    for (int i = 0; i < count; i++) {
+      MessageBuffer message = messages[i];
+      messages[i] = null;
+
+      // Keep going on failure, so that every message is released.
+      try {
+        if (deviceIds[i] == CONNECTION_DEVICE_ID) {
+          onEchoResponse(requestIds[i], decode(message.buffer()));
+          message.release();
+        } else {
+          onDeviceMessage(deviceIds[i], requestIds[i], message);
+        }
+      } catch (RuntimeException e) {
+        message.release();
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void onEchoResponse(long requestId, String message) {
+    CompletableFuture<String> future = requestTracker.complete(CONNECTION_DEVICE_ID, requestId);
+    if (future != null) {
+      callbackDispatcher.dispatchCompletion(() -> future.complete(message));
+    } else {
+      onSendMessageComplete(message);
+    }
+  }
+
+  private void onDeviceMessage(long deviceId, long requestId, MessageBuffer message) {
+    ByteBuffer payload = message.buffer();
+    attributeCache.update(deviceId, payload);
+
+    CompletableFuture<String> future = requestTracker.complete(deviceId, requestId);
+    if (future != null) {
+      String response = decode(payload);
+      message.release();
+      callbackDispatcher.dispatchCompletion(() -> future.complete(response));
+      return;
+    }
+
+    // Only decode the message as text if someone wants it that way.
+    String text = deviceSessionListeners.isEmpty() ? null : decode(payload);
+    if (text == null && messageListeners.isEmpty()) {
+      message.release();
+      return;
+    }
+
+    boolean dispatched =
+        callbackDispatcher.dispatch(
+            () -> {
+              try {
+                if (text != null) {
+                  for (DeviceSessionListener listener : deviceSessionListeners) {
+                    listener.onDeviceMessage(deviceId, text);
+                  }
+                }
+                for (MessageListener listener : messageListeners) {
+                  listener.onMessage(deviceId, payload.asReadOnlyBuffer().order(payload.order()));
+                }
+              } finally {
+                message.release();
+              }
+            });
+    if (!dispatched) {
+      message.release();
+    }
+  }
+
+  public void onDeviceError(long deviceId, Throwable error) {
+    callbackDispatcher.dispatch(
+        () -> {
+          for (DeviceSessionListener listener : deviceSessionListeners) {
+            listener.onDeviceError(deviceId, error);
+          }
+        });
+  }
+
+  // Called by the IO thread once the session with the device is closed.
+  private void onDeviceSessionExpired(long deviceId, Throwable error) {
+    List<CompletableFuture<String>> futures = requestTracker.removeAll(deviceId);
+    if (!futures.isEmpty()) {
+      callbackDispatcher.dispatchCompletion(
+          () -> {
+            for (CompletableFuture<String> future : futures) {
+              future.completeExceptionally(new IllegalStateException("Device session expired"));
+            }
+          });
+    }
+    onDeviceError(deviceId, error);
+  }
+
+  public void onRequestError(long deviceId, long requestId, Throwable error) {
+    if (error instanceof ChipDeviceControllerException
+        && ((ChipDeviceControllerException) error).errorCode
+            == ChipDeviceControllerException.REQUEST_TIMEOUT) {
+      metrics.requestsTimedOut.incrementAndGet();
+    }
+
+    CompletableFuture<String> future = requestTracker.remove(deviceId, requestId);
+    if (future != null) {
+      callbackDispatcher.dispatchCompletion(() -> future.completeExceptionally(error));
+    } else if (deviceId == CONNECTION_DEVICE_ID) {
+      onError(error);
+    } else {
+      onDeviceError(deviceId, error);
+    }
+  }
+
+  // Called by the IO thread, which resumes the pairing with the device if this returns one.
+  private byte[] loadSession(long deviceId) {
+    SessionStore store = sessionStore;
+    if (store == null) {
+      return null;
+    }
+    try {
+      return store.load(deviceId);
+    } catch (IOException | RuntimeException e) {
+      onError(e);
+      return null;
+    }
+  }
+
+  // Called by the IO thread once a pairing is established.
+  private boolean storeSession(long deviceId, byte[] session) {
+    SessionStore store = sessionStore;
+    if (store == null) {
+      return false;
+    }
+    try {
+      store.store(deviceId, session);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      onError(e);
+      return false;
+    }
+  }
+
+  // Called by the IO thread for a stored pairing that cannot be resumed.
+  private void removeSession(long deviceId) {
+    SessionStore store = sessionStore;
+    if (store == null) {
+      return;
+    }
+    try {
+      store.remove(deviceId);
+    } catch (IOException | RuntimeException e) {
+      onError(e);
+    }
+  }
+
+  private CompletableFuture<String> sendRequest(long deviceId, NativeRequestCall call) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    RequestTracker.NativeRequest request = requestId -> submitNative(call, requestId);
+
+    long requestId = requestTracker.add(deviceId, future, request);
+    if (requestId != RequestTracker.NO_REQUEST_ID) {
+      try {
+        request.submit(requestId);
+      } catch (Exception e) {
+        requestTracker.remove(deviceId, requestId);
+        future.completeExceptionally(e);
+      }
+    }
+
+    return future;
+  }
+
+  private static String decode(ByteBuffer message) {
+    return StandardCharsets.UTF_8.decode(message.duplicate()).toString();
+  }
+
+  private LatencyHistogram readNativeLatency(int latency) {
+    long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+    long ptr = acquireNative();
+    try {
+      readNativeLatencies(ptr, latency, counts);
+    } finally {
+      releaseNative();
+    }
+    return new LatencyHistogram(counts);
+  }
+
+  private void submitNative(NativeRequestCall call, long requestId) {
+    long ptr = acquireNative();
+    try {
+      call.submit(ptr, requestId);
+    } finally {
+      releaseNative();
+    }
+  }
+
+  /**
+   * Returns the native controller, which is not deleted before {@link #releaseNative} is called.
+   *
+   * @throws IllegalStateException if the controller is closed
+   */
+  private long acquireNative() {
+    nativeCalls.incrementAndGet();
+    long ptr = deviceControllerPtr;
+    if (ptr == 0) {
+      releaseNative();
+      throw new IllegalStateException("Controller closed");
+    }
+    return ptr;
+  }
+
+  private void releaseNative() {
+    if (nativeCalls.decrementAndGet() == 0 && deviceControllerPtr == 0) {
+      synchronized (nativeCalls) {
+        nativeCalls.notifyAll();
+      }
+    }
+  }
+
+  /** Queues a request to the given native controller under the given request ID. */
+  private interface NativeRequestCall {
+    void submit(long deviceControllerPtr, long requestId);
+  }
+
+  private void failPendingRequests(long deviceId, String reason) {
+    for (CompletableFuture<String> future : requestTracker.removeAll(deviceId)) {
+      future.completeExceptionally(new IllegalStateException(reason));
+    }
   }
 
   private native long newDeviceController();
@@ -69,26 +893,55 @@ public class ChipDeviceController {
 
   private native boolean isConnected(long deviceControllerPtr);
 
-  private native void beginSendMessage(long deviceControllerPtr, String message);
+  private native void beginSendMessage(long deviceControllerPtr, long requestId, String message);
+
+  private native void beginSendCommand(
+      long deviceControllerPtr, long requestId, ChipCommandType command);
 
-  private native void beginSendCommand(long deviceControllerPtr, ChipCommandType command);
+  private native void beginSendCommandBuffer(
+      long deviceControllerPtr, long requestId, byte[] command, int length);
 
   private native boolean disconnectDevice(long deviceControllerPtr);
 
-  private native void deleteDeviceController(long deviceControllerPtr);
+  private native void openDeviceSession(
+      long deviceControllerPtr,
+      long deviceId,
+      String ipAddress,
+      int port,
+      boolean withoutSecurePairing);
 
-  static {
-    System.loadLibrary("CHIPController");
-  }
+  private native void setMaxDeviceSessions(long deviceControllerPtr, int maxSessions);
 
-  @SuppressWarnings("deprecation")
-  protected void finalize() throws Throwable {
-    super.finalize();
+  private native boolean hasDeviceSession(long deviceControllerPtr, long deviceId);
 
-    if (deviceControllerPtr != 0) {
-      deleteDeviceController(deviceControllerPtr);
-      deviceControllerPtr = 0;
-    }
+  private native void sendDeviceMessage(
+      long deviceControllerPtr, long deviceId, long requestId, String message);
+
+  private native void sendDeviceCommand(
+      long deviceControllerPtr, long deviceId, long requestId, ChipCommandType command);
+
+  private native void sendDeviceCommandBuffer(
+      long deviceControllerPtr, long deviceId, long requestId, byte[] command, int length);
+
+  private native void sendDeviceMessageBuffer(
+      long deviceControllerPtr, long deviceId, long requestId, long bufferHandle, int length);
+
+  private native void sendDeviceCommands(
+      long deviceControllerPtr,
+      int count,
+      long[] deviceIds,
+      int[] endpoints,
+      int[] commands,
+      long[] requestIds);
+
+  private native boolean closeDeviceSession(long deviceControllerPtr, long deviceId);
+
+  private static native void deleteDeviceController(long deviceControllerPtr);
+
+  private native void readNativeLatencies(long deviceControllerPtr, int latency, long[] counts);
+
+  static {
+    System.loadLibrary("CHIPController");
   }
 
   /** Interface to listen for callbacks from CHIPDeviceController. */
@@ -103,4 +956,28 @@ public class ChipDeviceController {
     /** Notifies the listener of the error. */
     void onError(Throwable error);
   }
+
+  /** Interface to listen for messages from devices with an open device session. */
+  public interface DeviceSessionListener {
+
+    /** Notifies a message received from the device with the given node ID. */
+    void onDeviceMessage(long deviceId, String message);
+
+    /** Notifies the listener of an error on the session with the given node ID. */
+    void onDeviceError(long deviceId, Throwable error);
+  }
+
+  /**
+   * Interface to listen for messages from devices with an open device session, as they were
+   * received and without decoding them to text.
+   */
+  public interface MessageListener {
+
+    /**
+     * Notifies a message received from the device with the given node ID. The buffer maps the
+     * native packet buffer holding the message, from its position to its limit, and is only valid
+     * until this method returns.
+     */
+    void onMessage(long deviceId, ByteBuffer message);
+  }
 }
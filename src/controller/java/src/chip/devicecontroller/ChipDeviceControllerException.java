@@ -21,6 +21,9 @@ package chip.devicecontroller;
 public class ChipDeviceControllerException extends Exception {
   private static final long serialVersionUID = 1L;
 
+  /** Error code of a request that got no response, see CDC_JNI_ERROR_REQUEST_TIMEOUT. */
+  public static final int REQUEST_TIMEOUT = 10004;
+
   public int errorCode;
 
   public ChipDeviceControllerException() {}
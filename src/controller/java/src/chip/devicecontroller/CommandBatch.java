@@ -0,0 +1,77 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.util.Arrays;
+
+/**
+ * Commands to send to devices with an open device session, submitted together through {@link
+ * ChipDeviceController#sendCommands}.
+ *
+ * <p>A batch can be cleared and reused; it is not thread-safe.
+ */
+public final class CommandBatch {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  long[] deviceIds;
+  int[] endpoints;
+  int[] commands;
+  int size;
+
+  public CommandBatch() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public CommandBatch(int initialCapacity) {
+    if (initialCapacity <= 0) {
+      throw new IllegalArgumentException("initialCapacity must be positive");
+    }
+    deviceIds = new long[initialCapacity];
+    endpoints = new int[initialCapacity];
+    commands = new int[initialCapacity];
+  }
+
+  /** Adds a command to send to the given endpoint of the device with the given node ID. */
+  public CommandBatch add(long deviceId, int endpoint, ChipCommandType command) {
+    if (endpoint < 0 || endpoint > 0xFF) {
+      throw new IllegalArgumentException("Invalid endpoint: " + endpoint);
+    }
+
+    if (size == deviceIds.length) {
+      int capacity = size * 2;
+      deviceIds = Arrays.copyOf(deviceIds, capacity);
+      endpoints = Arrays.copyOf(endpoints, capacity);
+      commands = Arrays.copyOf(commands, capacity);
+    }
+
+    deviceIds[size] = deviceId;
+    endpoints[size] = endpoint;
+    commands[size] = command.getValue();
+    size++;
+    return this;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.nio.BufferOverflowException;
+
+/**
+ * Reusable buffer holding one encoded cluster command, as produced by the encoders in {@link
+ * chip.devicecontroller.clusters}.
+ *
+ * <p>The command is laid out like the ones produced by {@code src/app/encoder.cpp}: an APS frame
+ * followed by the ZCL header and the command payload, with integers in little-endian order. A
+ * buffer can be sent with {@link ChipDeviceController#sendDeviceCommand(long, CommandBuffer)} and
+ * reused as soon as that call returns. It is not thread-safe.
+ */
+public final class CommandBuffer {
+
+  private static final int DEFAULT_CAPACITY = 256;
+
+  // APS frame fields matching the ones encoded by src/app/encoder.cpp.
+  private static final int APS_PROFILE_ID = 0xFFFF;
+  private static final int APS_SOURCE_ENDPOINT = 1;
+
+  private static final int ZCL_FRAME_CONTROL_GLOBAL_CLIENT_TO_SERVER = 0x00;
+  private static final int ZCL_FRAME_CONTROL_CLUSTER_SPECIFIC_CLIENT_TO_SERVER = 0x01;
+
+  private static final int ZCL_READ_ATTRIBUTES_COMMAND_ID = 0x00;
+
+  final byte[] data;
+  int length;
+  private int sequenceNumber;
+
+  public CommandBuffer() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public CommandBuffer(int capacity) {
+    data = new byte[capacity];
+  }
+
+  /**
+   * Clears the buffer and writes the headers of a cluster-specific command sent from the client to
+   * the server, addressed to the given endpoint.
+   */
+  public CommandBuffer beginClusterCommand(int clusterId, int endpoint, int commandId) {
+    return begin(
+        clusterId, endpoint, ZCL_FRAME_CONTROL_CLUSTER_SPECIFIC_CLIENT_TO_SERVER, commandId);
+  }
+
+  /**
+   * Clears the buffer and encodes a Read Attributes command for the given attributes of a cluster
+   * on the given endpoint. The response feeds the controller's {@link AttributeCache}.
+   */
+  public CommandBuffer encodeReadAttributes(int clusterId, int endpoint, int... attributeIds) {
+    begin(
+        clusterId,
+        endpoint,
+        ZCL_FRAME_CONTROL_GLOBAL_CLIENT_TO_SERVER,
+        ZCL_READ_ATTRIBUTES_COMMAND_ID);
+    for (int attributeId : attributeIds) {
+      putUint16(attributeId);
+    }
+    return this;
+  }
+
+  private CommandBuffer begin(int clusterId, int endpoint, int frameControl, int commandId) {
+    length = 0;
+
+    // APS frame: control, profile, cluster, source and destination endpoints, options, group,
+    // sequence and radius.
+    putUint8(0);
+    putUint16(APS_PROFILE_ID);
+    putUint16(clusterId);
+    putUint8(APS_SOURCE_ENDPOINT);
+    putUint8(endpoint);
+    putUint16(0);
+    putUint16(0);
+    putUint8(0);
+    putUint8(0);
+
+    // ZCL header: frame control, transaction sequence number and command.
+    putUint8(frameControl);
+    putUint8(sequenceNumber);
+    putUint8(commandId);
+    sequenceNumber = (sequenceNumber + 1) & 0xFF;
+
+    return this;
+  }
+
+  public CommandBuffer putUint8(int value) {
+    checkRange(value, 0, 0xFF);
+    put(value, 1);
+    return this;
+  }
+
+  public CommandBuffer putUint16(int value) {
+    checkRange(value, 0, 0xFFFF);
+    put(value, 2);
+    return this;
+  }
+
+  public CommandBuffer putInt16(int value) {
+    checkRange(value, Short.MIN_VALUE, Short.MAX_VALUE);
+    put(value, 2);
+    return this;
+  }
+
+  public CommandBuffer putUint32(long value) {
+    checkRange(value, 0, 0xFFFFFFFFL);
+    put(value, 4);
+    return this;
+  }
+
+  /** Writes a ZCL string: a one-byte length followed by the given bytes. */
+  public CommandBuffer putString(byte[] value) {
+    checkRange(value.length, 0, 0xFE);
+    putUint8(value.length);
+    putBytes(value);
+    return this;
+  }
+
+  /** Writes the given bytes as is. */
+  public CommandBuffer putBytes(byte[] value) {
+    ensureRemaining(value.length);
+    System.arraycopy(value, 0, data, length, value.length);
+    length += value.length;
+    return this;
+  }
+
+  /** Returns the length of the encoded command. */
+  public int length() {
+    return length;
+  }
+
+  private void put(long value, int size) {
+    ensureRemaining(size);
+    for (int i = 0; i < size; i++) {
+      data[length++] = (byte) (value >>> (8 * i));
+    }
+  }
+
+  private void ensureRemaining(int size) {
+    if (data.length - length < size) {
+      throw new BufferOverflowException();
+    }
+  }
+
+  private static void checkRange(long value, long min, long max) {
+    if (value < min || value > max) {
+      throw new IllegalArgumentException("Value out of range: " + value);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of the counters and latency histograms of a {@link ChipDeviceController}, as returned
+ * by {@link ChipDeviceController#getMetrics}.
+ *
+ * <p>Request counters and latencies are kept per controller, and per device for the latencies; the
+ * {@link ChipDeviceController#beginConnectDevice} connection counts as the device with node ID -1.
+ * The other latencies are measured by the native layer, also for this controller only, although
+ * all the controllers share its IO thread.
+ */
+public final class ControllerMetrics {
+
+  private final long requestsSent;
+  private final long responsesReceived;
+  private final long requestsFailed;
+  private final long requestsTimedOut;
+  private final long requestsRejected;
+  private final long callbacksDropped;
+  private final LatencyHistogram requestLatency;
+  private final Map<Long, LatencyHistogram> deviceRequestLatencies;
+  private final LatencyHistogram connectLatency;
+  private final LatencyHistogram submitLatency;
+  private final LatencyHistogram upcallLatency;
+  private final LatencyHistogram stackLockWait;
+
+  ControllerMetrics(
+      long requestsSent,
+      long responsesReceived,
+      long requestsFailed,
+      long requestsTimedOut,
+      long requestsRejected,
+      long callbacksDropped,
+      LatencyHistogram requestLatency,
+      Map<Long, LatencyHistogram> deviceRequestLatencies,
+      LatencyHistogram connectLatency,
+      LatencyHistogram submitLatency,
+      LatencyHistogram upcallLatency,
+      LatencyHistogram stackLockWait) {
+    this.requestsSent = requestsSent;
+    this.responsesReceived = responsesReceived;
+    this.requestsFailed = requestsFailed;
+    this.requestsTimedOut = requestsTimedOut;
+    this.requestsRejected = requestsRejected;
+    this.callbacksDropped = callbacksDropped;
+    this.requestLatency = requestLatency;
+    this.deviceRequestLatencies = Collections.unmodifiableMap(deviceRequestLatencies);
+    this.connectLatency = connectLatency;
+    this.submitLatency = submitLatency;
+    this.upcallLatency = upcallLatency;
+    this.stackLockWait = stackLockWait;
+  }
+
+  /** Returns the number of requests handed to the native layer. */
+  public long getRequestsSent() {
+    return requestsSent;
+  }
+
+  /** Returns the number of responses matched with a request. */
+  public long getResponsesReceived() {
+    return responsesReceived;
+  }
+
+  /** Returns the number of requests that failed, timed out ones included. */
+  public long getRequestsFailed() {
+    return requestsFailed;
+  }
+
+  /** Returns the number of requests that failed for lack of a response. */
+  public long getRequestsTimedOut() {
+    return requestsTimedOut;
+  }
+
+  /** Returns the number of requests rejected because the queue of their device was full. */
+  public long getRequestsRejected() {
+    return requestsRejected;
+  }
+
+  /** Returns the number of listener callbacks dropped because the callback queue was full. */
+  public long getCallbacksDropped() {
+    return callbacksDropped;
+  }
+
+  /** Returns the time from sending a request to receiving its response, for all devices. */
+  public LatencyHistogram getRequestLatency() {
+    return requestLatency;
+  }
+
+  /**
+   * Returns the time from sending a request to receiving its response, by device node ID, for the
+   * devices that got requests.
+   */
+  public Map<Long, LatencyHistogram> getDeviceRequestLatencies() {
+    return deviceRequestLatencies;
+  }
+
+  /** Returns the time taken by the native stack to connect to a device, up to the key exchange. */
+  public LatencyHistogram getConnectLatency() {
+    return connectLatency;
+  }
+
+  /** Returns the time from queuing an operation to the IO thread running it. */
+  public LatencyHistogram getSubmitLatency() {
+    return submitLatency;
+  }
+
+  /** Returns the time spent in calls from the IO thread into Java, listeners included. */
+  public LatencyHistogram getUpcallLatency() {
+    return upcallLatency;
+  }
+
+  /** Returns the time calls on this controller spent waiting for the lock of the native stack. */
+  public LatencyHistogram getStackLockWait() {
+    return stackLockWait;
+  }
+}
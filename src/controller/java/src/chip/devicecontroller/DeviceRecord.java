@@ -0,0 +1,89 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.net.InetAddress;
+
+/**
+ * Commissioned device as kept in a {@link DeviceRegistry}: its node ID, where to reach it, and what
+ * its setup payload told about it. The pairing with the device is kept apart, see {@link
+ * DeviceRegistry#load}.
+ */
+public final class DeviceRecord {
+
+  private final long nodeId;
+  private final InetAddress address;
+  private final int port;
+  private final int vendorId;
+  private final int productId;
+  private final int discriminator;
+
+  /**
+   * @param address address of the device, or null if it is not known
+   * @param port UDP port the device listens on
+   * @param vendorId vendor ID from the setup payload, a 16-bit value
+   * @param productId product ID from the setup payload, a 16-bit value
+   * @param discriminator discriminator from the setup payload, a 12-bit value
+   */
+  public DeviceRecord(
+      long nodeId, InetAddress address, int port, int vendorId, int productId, int discriminator) {
+    if (port < 0 || port > 0xFFFF) {
+      throw new IllegalArgumentException("Invalid port: " + port);
+    }
+    if (vendorId < 0 || vendorId > 0xFFFF) {
+      throw new IllegalArgumentException("Invalid vendor ID: " + vendorId);
+    }
+    if (productId < 0 || productId > 0xFFFF) {
+      throw new IllegalArgumentException("Invalid product ID: " + productId);
+    }
+    if (discriminator < 0 || discriminator > 0xFFF) {
+      throw new IllegalArgumentException("Invalid discriminator: " + discriminator);
+    }
+    this.nodeId = nodeId;
+    this.address = address;
+    this.port = port;
+    this.vendorId = vendorId;
+    this.productId = productId;
+    this.discriminator = discriminator;
+  }
+
+  public long getNodeId() {
+    return nodeId;
+  }
+
+  /** Returns the address of the device, or null if it is not known. */
+  public InetAddress getAddress() {
+    return address;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public int getVendorId() {
+    return vendorId;
+  }
+
+  public int getProductId() {
+    return productId;
+  }
+
+  public int getDiscriminator() {
+    return discriminator;
+  }
+}
@@ -0,0 +1,440 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import javax.crypto.SecretKey;
+
+/**
+ * Persistent registry of the commissioned devices, kept in a file mapped in memory: opening it only
+ * reads the records through the mapping, and changing a device only writes its own record.
+ *
+ * <p>The file is a header followed by fixed-size slots, one per device, each with its own CRC. New
+ * devices take the first free slot, growing the file when there is none; removed devices free
+ * theirs. The index from node ID to slot is rebuilt in memory when the file is opened. Changes
+ * reach the file as the operating system writes the mapped pages back, and at the latest on {@link
+ * #flush} or {@link #close}. A record being written when the system crashes may be lost, but is
+ * never read back half-written.
+ *
+ * <p>The registry is also a {@link SessionStore}, keeping the pairing with each device in its
+ * record, encrypted with AES-GCM under a key supplied by the application, so that it can be given
+ * to {@link ChipDeviceController#setSessionStore}. Pairings are only decrypted when loaded. Unlike
+ * the other changes, storing or removing a pairing writes its record to the file before returning,
+ * since resuming a pairing from a stale record would reuse message indexes.
+ */
+public final class DeviceRegistry implements SessionStore, AutoCloseable {
+
+  // "CHIPDREG" in little-endian order.
+  private static final long MAGIC = 0x4745524450494843L;
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int HEADER_SIZE = 64;
+  private static final int HEADER_MAGIC = 0;
+  private static final int HEADER_VERSION = 8;
+  private static final int HEADER_SLOT_SIZE = 12;
+
+  // The CRC of a slot covers its bytes from SLOT_STATE to the end of its session.
+  private static final int SLOT_SIZE = 256;
+  private static final int SLOT_CRC = 0;
+  private static final int SLOT_STATE = 4;
+  private static final int SLOT_ADDRESS_LENGTH = 5;
+  private static final int SLOT_PORT = 6;
+  private static final int SLOT_NODE_ID = 8;
+  private static final int SLOT_VENDOR_ID = 16;
+  private static final int SLOT_PRODUCT_ID = 18;
+  private static final int SLOT_DISCRIMINATOR = 20;
+  private static final int SLOT_SESSION_LENGTH = 22;
+  private static final int SLOT_ADDRESS = 24;
+  private static final int SLOT_SESSION = 40;
+
+  // MappedByteBuffer.force(int, int), only available from JDK 13 on.
+  private static final MethodHandle FORCE_RANGE = findForceRange();
+
+  private static final byte STATE_FREE = 0;
+  private static final byte STATE_USED = 1;
+
+  private static final int MAX_ADDRESS_LENGTH = SLOT_SESSION - SLOT_ADDRESS;
+  private static final int MAX_SEALED_SESSION_LENGTH = SLOT_SIZE - SLOT_SESSION;
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+
+  /** Length of the longest pairing a record holds, more than any pairing of the native layer. */
+  public static final int MAX_SESSION_LENGTH =
+      MAX_SEALED_SESSION_LENGTH - SessionCipher.IV_LENGTH - SessionCipher.TAG_LENGTH;
+
+  private final Path file;
+  private final FileChannel channel;
+  private final SecretKey key;
+  private final SecureRandom random = new SecureRandom();
+  private final CRC32 crc = new CRC32();
+  private final Map<Long, Integer> slots = new HashMap<>();
+  private final BitSet usedSlots = new BitSet();
+  private MappedByteBuffer map;
+  private int capacity;
+  private boolean closed;
+
+  /**
+   * Opens the registry backed by the given file, creating it if it does not exist. Records that
+   * fail their CRC, as left by a crash, are dropped.
+   *
+   * @param key AES key the pairings are encrypted with
+   * @throws IOException if the file cannot be mapped, or is not a device registry
+   */
+  public DeviceRegistry(Path file, SecretKey key) throws IOException {
+    this.file = file;
+    this.key = key;
+
+    channel =
+        FileChannel.open(
+            file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    try {
+      long size = channel.size();
+      if (size == 0) {
+        map(INITIAL_CAPACITY);
+        map.putLong(HEADER_MAGIC, MAGIC);
+        map.putInt(HEADER_VERSION, FORMAT_VERSION);
+        map.putInt(HEADER_SLOT_SIZE, SLOT_SIZE);
+      } else {
+        if (size < HEADER_SIZE) {
+          throw new IOException("Not a device registry: " + file);
+        }
+        map((int) Math.min((size - HEADER_SIZE) / SLOT_SIZE, MAX_CAPACITY));
+        if (map.getLong(HEADER_MAGIC) != MAGIC
+            || map.getInt(HEADER_VERSION) != FORMAT_VERSION
+            || map.getInt(HEADER_SLOT_SIZE) != SLOT_SIZE) {
+          throw new IOException("Not a device registry: " + file);
+        }
+      }
+      index();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Returns the number of devices in the registry. */
+  public synchronized int size() {
+    checkOpen();
+    return slots.size();
+  }
+
+  /** Returns the device with the given node ID, or null if it is not in the registry. */
+  public synchronized DeviceRecord getDevice(long nodeId) {
+    checkOpen();
+    Integer slot = slots.get(nodeId);
+    return slot != null ? read(offset(slot)) : null;
+  }
+
+  /** Calls the action with every device in the registry, in the order of their records. */
+  public synchronized void forEach(Consumer<DeviceRecord> action) {
+    checkOpen();
+    for (int slot = usedSlots.nextSetBit(0); slot >= 0; slot = usedSlots.nextSetBit(slot + 1)) {
+      action.accept(read(offset(slot)));
+    }
+  }
+
+  /**
+   * Adds the device to the registry, or replaces the record of the device with the same node ID,
+   * keeping its pairing.
+   *
+   * @throws IOException if the file cannot grow to make room for the device
+   */
+  public synchronized void putDevice(DeviceRecord record) throws IOException {
+    checkOpen();
+    int offset = offset(slotFor(record.getNodeId()));
+
+    byte[] address = record.getAddress() != null ? record.getAddress().getAddress() : new byte[0];
+    ByteBuffer addressField = at(offset + SLOT_ADDRESS);
+    addressField.put(address);
+    addressField.put(new byte[MAX_ADDRESS_LENGTH - address.length]);
+
+    map.put(offset + SLOT_ADDRESS_LENGTH, (byte) address.length);
+    map.putShort(offset + SLOT_PORT, (short) record.getPort());
+    map.putShort(offset + SLOT_VENDOR_ID, (short) record.getVendorId());
+    map.putShort(offset + SLOT_PRODUCT_ID, (short) record.getProductId());
+    map.putShort(offset + SLOT_DISCRIMINATOR, (short) record.getDiscriminator());
+    updateCrc(offset);
+  }
+
+  /**
+   * Removes the device with the given node ID and its pairing from the registry.
+   *
+   * @return whether the device was in the registry
+   */
+  public synchronized boolean removeDevice(long nodeId) {
+    checkOpen();
+    Integer slot = slots.remove(nodeId);
+    if (slot == null) {
+      return false;
+    }
+
+    int offset = offset(slot);
+    map.put(offset + SLOT_STATE, STATE_FREE);
+    clearSession(offset);
+    usedSlots.clear(slot);
+    return true;
+  }
+
+  /**
+   * Returns the pairing with the device with the given node ID, or null if the device has none.
+   *
+   * @throws IOException if the pairing was not encrypted with the key of the registry
+   */
+  @Override
+  public synchronized byte[] load(long deviceId) throws IOException {
+    checkOpen();
+    Integer slot = slots.get(deviceId);
+    if (slot == null) {
+      return null;
+    }
+
+    int offset = offset(slot);
+    int sealedLength = map.getShort(offset + SLOT_SESSION_LENGTH) & 0xFFFF;
+    if (sealedLength == 0) {
+      return null;
+    }
+    byte[] sealed = new byte[sealedLength];
+    at(offset + SLOT_SESSION).get(sealed);
+    try {
+      return SessionCipher.open(key, sealed, 0, sealed.length, associatedData(deviceId));
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Cannot decrypt the pairing with device " + deviceId, e);
+    }
+  }
+
+  /**
+   * Stores the pairing with the device with the given node ID, adding the device to the registry
+   * with no address if it is not there yet.
+   *
+   * @throws IOException if the pairing is longer than {@link #MAX_SESSION_LENGTH}, or the file
+   *     cannot grow to make room for the device
+   */
+  @Override
+  public synchronized void store(long deviceId, byte[] session) throws IOException {
+    checkOpen();
+    if (session.length > MAX_SESSION_LENGTH) {
+      throw new IOException("Pairing too long for the device registry: " + session.length);
+    }
+
+    byte[] sealed;
+    try {
+      sealed = SessionCipher.seal(key, random, session, associatedData(deviceId));
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Cannot encrypt the pairing with device " + deviceId, e);
+    }
+
+    int offset = offset(slotFor(deviceId));
+    at(offset + SLOT_SESSION).put(sealed);
+    map.putShort(offset + SLOT_SESSION_LENGTH, (short) sealed.length);
+    updateCrc(offset);
+    force(offset);
+  }
+
+  /** Removes the pairing with the device with the given node ID, keeping the device. */
+  @Override
+  public synchronized void remove(long deviceId) {
+    checkOpen();
+    Integer slot = slots.get(deviceId);
+    if (slot != null) {
+      int offset = offset(slot);
+      clearSession(offset);
+      updateCrc(offset);
+      force(offset);
+    }
+  }
+
+  /** Writes the changes made so far to the file. */
+  public synchronized void flush() {
+    checkOpen();
+    map.force();
+  }
+
+  /** Writes the changes made so far to the file, and closes it. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    map.force();
+    channel.close();
+  }
+
+  /** Writes the slot at the given offset to the file, or the whole mapping before JDK 13. */
+  private void force(int offset) {
+    if (FORCE_RANGE == null) {
+      map.force();
+      return;
+    }
+    try {
+      MappedByteBuffer unused = (MappedByteBuffer) FORCE_RANGE.invokeExact(map, offset, SLOT_SIZE);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static MethodHandle findForceRange() {
+    try {
+      return MethodHandles.publicLookup()
+          .findVirtual(
+              MappedByteBuffer.class,
+              "force",
+              MethodType.methodType(MappedByteBuffer.class, int.class, int.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  private void map(int capacity) throws IOException {
+    map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+    map.order(ByteOrder.LITTLE_ENDIAN);
+    this.capacity = capacity;
+  }
+
+  private void index() {
+    for (int slot = 0; slot < capacity; slot++) {
+      int offset = offset(slot);
+      if (map.get(offset + SLOT_STATE) != STATE_USED) {
+        continue;
+      }
+
+      if (!isValid(offset) || slots.putIfAbsent(map.getLong(offset + SLOT_NODE_ID), slot) != null) {
+        map.put(offset + SLOT_STATE, STATE_FREE);
+        continue;
+      }
+      usedSlots.set(slot);
+    }
+  }
+
+  private boolean isValid(int offset) {
+    int addressLength = map.get(offset + SLOT_ADDRESS_LENGTH);
+    int sealedLength = map.getShort(offset + SLOT_SESSION_LENGTH) & 0xFFFF;
+    return (addressLength == 0 || addressLength == 4 || addressLength == 16)
+        && sealedLength <= MAX_SEALED_SESSION_LENGTH
+        && map.getInt(offset + SLOT_CRC) == crc(offset);
+  }
+
+  private int slotFor(long nodeId) throws IOException {
+    Integer slot = slots.get(nodeId);
+    if (slot != null) {
+      return slot;
+    }
+
+    int free = usedSlots.nextClearBit(0);
+    if (free >= capacity) {
+      if (capacity == MAX_CAPACITY) {
+        throw new IOException("Device registry full: " + file);
+      }
+      map((int) Math.min(Math.max(2L * capacity, INITIAL_CAPACITY), MAX_CAPACITY));
+    }
+
+    int offset = offset(free);
+    at(offset + SLOT_STATE).put(new byte[SLOT_SIZE - SLOT_STATE]);
+    map.putLong(offset + SLOT_NODE_ID, nodeId);
+    map.putShort(offset + SLOT_PORT, (short) ChipDeviceController.DEFAULT_PORT);
+    map.put(offset + SLOT_STATE, STATE_USED);
+    updateCrc(offset);
+
+    slots.put(nodeId, free);
+    usedSlots.set(free);
+    return free;
+  }
+
+  private DeviceRecord read(int offset) {
+    InetAddress address = null;
+    int addressLength = map.get(offset + SLOT_ADDRESS_LENGTH);
+    if (addressLength != 0) {
+      byte[] addressBytes = new byte[addressLength];
+      at(offset + SLOT_ADDRESS).get(addressBytes);
+      try {
+        address = InetAddress.getByAddress(addressBytes);
+      } catch (UnknownHostException e) {
+        // Only thrown for lengths that isValid rejects.
+        throw new IllegalStateException(e);
+      }
+    }
+
+    return new DeviceRecord(
+        map.getLong(offset + SLOT_NODE_ID),
+        address,
+        map.getShort(offset + SLOT_PORT) & 0xFFFF,
+        map.getShort(offset + SLOT_VENDOR_ID) & 0xFFFF,
+        map.getShort(offset + SLOT_PRODUCT_ID) & 0xFFFF,
+        map.getShort(offset + SLOT_DISCRIMINATOR) & 0xFFFF);
+  }
+
+  private void clearSession(int offset) {
+    at(offset + SLOT_SESSION).put(new byte[MAX_SEALED_SESSION_LENGTH]);
+    map.putShort(offset + SLOT_SESSION_LENGTH, (short) 0);
+  }
+
+  private void updateCrc(int offset) {
+    map.putInt(offset + SLOT_CRC, crc(offset));
+  }
+
+  private int crc(int offset) {
+    int sealedLength = map.getShort(offset + SLOT_SESSION_LENGTH) & 0xFFFF;
+    ByteBuffer covered = at(offset + SLOT_STATE);
+    covered.limit(offset + SLOT_SESSION + sealedLength);
+    crc.reset();
+    crc.update(covered);
+    return (int) crc.getValue();
+  }
+
+  private ByteBuffer at(int offset) {
+    ByteBuffer view = map.duplicate();
+    view.position(offset);
+    return view;
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Device registry closed");
+    }
+  }
+
+  private static int offset(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  // Binds each pairing to its device, so that it cannot be moved to the record of another one.
+  private static byte[] associatedData(long nodeId) {
+    return ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(nodeId).array();
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.SecretKey;
+
+/**
+ * {@link SessionStore} backed by a local file encrypted with AES-GCM under a key supplied by the
+ * application, typically kept in a platform key store. The pairings are kept in memory, so loading
+ * one does not touch the file; every change rewrites the whole file, replacing it atomically so
+ * that a crash leaves either the previous or the new pairings.
+ */
+public final class EncryptedFileSessionStore implements SessionStore {
+
+  private static final int FORMAT_VERSION = 1;
+
+  private final Path file;
+  private final SecretKey key;
+  private final SecureRandom random = new SecureRandom();
+  private final Map<Long, byte[]> sessions = new HashMap<>();
+
+  /**
+   * Opens the store backed by the given file, which starts empty if the file does not exist.
+   *
+   * @param key AES key the file is encrypted with
+   * @throws IOException if the file cannot be read, or was not written with the same key
+   */
+  public EncryptedFileSessionStore(Path file, SecretKey key) throws IOException {
+    this.file = file;
+    this.key = key;
+
+    byte[] contents;
+    try {
+      contents = Files.readAllBytes(file);
+    } catch (NoSuchFileException e) {
+      return;
+    }
+    read(decrypt(contents));
+  }
+
+  @Override
+  public synchronized byte[] load(long deviceId) {
+    byte[] session = sessions.get(deviceId);
+    return session != null ? session.clone() : null;
+  }
+
+  @Override
+  public synchronized void store(long deviceId, byte[] session) throws IOException {
+    byte[] previous = sessions.put(deviceId, session.clone());
+    try {
+      write();
+    } catch (IOException e) {
+      if (previous != null) {
+        sessions.put(deviceId, previous);
+      } else {
+        sessions.remove(deviceId);
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public synchronized void remove(long deviceId) throws IOException {
+    byte[] previous = sessions.remove(deviceId);
+    if (previous == null) {
+      return;
+    }
+    try {
+      write();
+    } catch (IOException e) {
+      sessions.put(deviceId, previous);
+      throw e;
+    }
+  }
+
+  private void read(byte[] plaintext) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plaintext))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        throw new IOException("Unsupported session store version in " + file);
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        long deviceId = in.readLong();
+        byte[] session = new byte[in.readUnsignedShort()];
+        in.readFully(session);
+        sessions.put(deviceId, session);
+      }
+    } finally {
+      Arrays.fill(plaintext, (byte) 0);
+    }
+  }
+
+  private void write() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(sessions.size());
+      for (Map.Entry<Long, byte[]> entry : sessions.entrySet()) {
+        out.writeLong(entry.getKey());
+        out.writeShort(entry.getValue().length);
+        out.write(entry.getValue());
+      }
+    }
+    byte[] plaintext = bytes.toByteArray();
+    ByteBuffer contents;
+    try {
+      contents = ByteBuffer.wrap(encrypt(plaintext));
+    } finally {
+      Arrays.fill(plaintext, (byte) 0);
+    }
+
+    // Temporary files are only readable by their owner where the file system supports it.
+    Path parent = file.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        while (contents.hasRemaining()) {
+          channel.write(contents);
+        }
+        channel.force(true);
+      }
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private byte[] encrypt(byte[] plaintext) throws IOException {
+    try {
+      return SessionCipher.seal(key, random, plaintext, null);
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Cannot encrypt the session store", e);
+    }
+  }
+
+  private byte[] decrypt(byte[] contents) throws IOException {
+    try {
+      return SessionCipher.open(key, contents, 0, contents.length, null);
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Cannot decrypt the session store " + file, e);
+    }
+  }
+}
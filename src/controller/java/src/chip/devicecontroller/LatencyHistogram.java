@@ -0,0 +1,138 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+/**
+ * Snapshot of a latency histogram, with durations in microseconds.
+ *
+ * <p>Durations below 32 us get a bucket each; above that, every power of two is split into 16
+ * buckets, so that a duration is known within 1/16 of its value, up to 2^40 us. The buckets match
+ * the ones of the native LatencyHistogram, so that both can be read the same way.
+ */
+public final class LatencyHistogram {
+
+  static final int BUCKET_COUNT = 592;
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final long MAX_MICROS = (1L << 40) - 1;
+
+  private final long[] counts;
+  private final long count;
+
+  LatencyHistogram(long[] counts) {
+    long count = 0;
+    for (long bucketCount : counts) {
+      count += bucketCount;
+    }
+
+    this.counts = counts;
+    this.count = count;
+  }
+
+  /** Returns the number of recorded durations. */
+  public long getCount() {
+    return count;
+  }
+
+  /** Returns the lowest recorded duration, rounded down to its bucket, or 0 if none. */
+  public long getMinMicros() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      if (counts[i] != 0) {
+        return lowestValue(i);
+      }
+    }
+    return 0;
+  }
+
+  /** Returns the highest recorded duration, rounded up to its bucket, or 0 if none. */
+  public long getMaxMicros() {
+    for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+      if (counts[i] != 0) {
+        return highestValue(i);
+      }
+    }
+    return 0;
+  }
+
+  /** Returns the mean of the recorded durations, taking the middle of their buckets, or 0. */
+  public double getMeanMicros() {
+    if (count == 0) {
+      return 0;
+    }
+
+    double sum = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      if (counts[i] != 0) {
+        sum += counts[i] * ((lowestValue(i) + highestValue(i)) / 2.0);
+      }
+    }
+    return sum / count;
+  }
+
+  /**
+   * Returns the duration that the given percentage of the recorded durations do not exceed,
+   * rounded up to its bucket, or 0 if none were recorded.
+   *
+   * @param percentile percentage between 0 and 100
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Invalid percentile: " + percentile);
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return highestValue(i);
+      }
+    }
+    return getMaxMicros();
+  }
+
+  static int bucketIndex(long micros) {
+    if (micros < 0) {
+      micros = 0;
+    } else if (micros > MAX_MICROS) {
+      micros = MAX_MICROS;
+    }
+    if (micros < (2 << SUB_BUCKET_BITS)) {
+      return (int) micros;
+    }
+
+    int shift = (63 - Long.numberOfLeadingZeros(micros)) - SUB_BUCKET_BITS;
+    return (shift << SUB_BUCKET_BITS) + (int) (micros >>> shift);
+  }
+
+  private static long lowestValue(int index) {
+    if (index < (2 << SUB_BUCKET_BITS)) {
+      return index;
+    }
+
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    return (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+  }
+
+  private static long highestValue(int index) {
+    return index == BUCKET_COUNT - 1 ? MAX_MICROS : lowestValue(index + 1) - 1;
+  }
+}
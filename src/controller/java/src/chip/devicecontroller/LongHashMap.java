@@ -0,0 +1,158 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+/**
+ * Hash map from device IDs to values, which unlike a {@code Map<Long, V>} does not box the keys,
+ * so that looking a device up on every request does not allocate.
+ *
+ * <p>Not thread-safe; values must not be null.
+ */
+final class LongHashMap<V> {
+
+  /** Receives the entries of the map, see {@link #forEach}. */
+  interface EntryConsumer<V> {
+    void accept(long key, V value);
+  }
+
+  private static final int MIN_CAPACITY = 16;
+
+  // Open addressing with linear probing: a null value marks a free slot.
+  private long[] keys = new long[MIN_CAPACITY];
+  private Object[] values = new Object[MIN_CAPACITY];
+  private int size;
+
+  int size() {
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  V get(long key) {
+    for (int i = slot(key); values[i] != null; i = next(i)) {
+      if (keys[i] == key) {
+        return (V) values[i];
+      }
+    }
+    return null;
+  }
+
+  /** Maps the key to the value, and returns the value it was mapped to before, if any. */
+  @SuppressWarnings("unchecked")
+  V put(long key, V value) {
+    if (value == null) {
+      throw new NullPointerException("value");
+    }
+
+    int i = slot(key);
+    for (; values[i] != null; i = next(i)) {
+      if (keys[i] == key) {
+        V previous = (V) values[i];
+        values[i] = value;
+        return previous;
+      }
+    }
+
+    keys[i] = key;
+    values[i] = value;
+    // Keep the table at most half full, so that the probes stay short.
+    if (++size > values.length / 2) {
+      resize(values.length * 2);
+    }
+    return null;
+  }
+
+  /** Removes the key, and returns the value it was mapped to, if any. */
+  @SuppressWarnings("unchecked")
+  V remove(long key) {
+    int i = slot(key);
+    for (; values[i] != null; i = next(i)) {
+      if (keys[i] == key) {
+        break;
+      }
+    }
+    if (values[i] == null) {
+      return null;
+    }
+
+    V removed = (V) values[i];
+    values[i] = null;
+    size--;
+
+    // Move the entries after the freed slot back, so that no probe sequence gets broken.
+    for (int j = next(i); values[j] != null; j = next(j)) {
+      int home = slot(keys[j]);
+      if (((j - home) & (values.length - 1)) >= ((j - i) & (values.length - 1))) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        values[j] = null;
+        i = j;
+      }
+    }
+    return removed;
+  }
+
+  /** Returns the keys of the map, in no particular order. */
+  long[] keys() {
+    long[] result = new long[size];
+    int count = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null) {
+        result[count++] = keys[i];
+      }
+    }
+    return result;
+  }
+
+  /** Passes every entry to the consumer, which must not modify the map. */
+  @SuppressWarnings("unchecked")
+  void forEach(EntryConsumer<? super V> consumer) {
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null) {
+        consumer.accept(keys[i], (V) values[i]);
+      }
+    }
+  }
+
+  private int slot(long key) {
+    // Fibonacci hashing, so that consecutive device IDs spread over the table.
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash >>> 32) & (values.length - 1);
+  }
+
+  private int next(int i) {
+    return (i + 1) & (values.length - 1);
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+
+    keys = new long[capacity];
+    values = new Object[capacity];
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int j = slot(oldKeys[i]);
+        while (values[j] != null) {
+          j = next(j);
+        }
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+}
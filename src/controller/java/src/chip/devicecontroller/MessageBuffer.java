@@ -0,0 +1,100 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Message held in a native packet buffer of the CHIP stack, read and written in place through a
+ * direct {@link ByteBuffer}, so that its bytes are never copied to or from the Java heap.
+ *
+ * <p>A buffer from {@link #allocate} is written from its start and sent with {@link
+ * ChipDeviceController#beginSendDeviceMessage(long, MessageBuffer)}, which sends the bytes up to
+ * the position of the {@link ByteBuffer} and takes the packet buffer over. A buffer that is not
+ * sent must be given back with {@link #release}. The byte buffer is little-endian, like the
+ * integers of cluster commands, and must not be used once the message is sent or released.
+ *
+ * <p>A buffer is not thread-safe.
+ */
+public final class MessageBuffer implements AutoCloseable {
+
+  private long bufferHandle;
+  private final ByteBuffer buffer;
+
+  // Called by the native layer, for buffers it allocated or messages it received.
+  MessageBuffer(long bufferHandle, ByteBuffer buffer) {
+    this.bufferHandle = bufferHandle;
+    this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Allocates a buffer for a message of up to {@code capacity} bytes from the packet buffers of the
+   * CHIP stack.
+   *
+   * @throws ChipDeviceControllerException if no packet buffer is available, or {@code capacity} is
+   *     larger than a packet buffer
+   */
+  public static MessageBuffer allocate(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    return allocateNative(capacity);
+  }
+
+  /** Returns the bytes of the message, mapped over the native buffer. */
+  public ByteBuffer buffer() {
+    checkValid();
+    return buffer;
+  }
+
+  /** Gives the native buffer back. Does nothing if the message was already sent or released. */
+  public void release() {
+    if (bufferHandle != 0) {
+      free(bufferHandle);
+      bufferHandle = 0;
+    }
+  }
+
+  @Override
+  public void close() {
+    release();
+  }
+
+  /** Hands the native buffer over to the caller, which becomes responsible for freeing it. */
+  long take() {
+    checkValid();
+    long handle = bufferHandle;
+    bufferHandle = 0;
+    return handle;
+  }
+
+  private void checkValid() {
+    if (bufferHandle == 0) {
+      throw new IllegalStateException("Message buffer already sent or released");
+    }
+  }
+
+  private static native MessageBuffer allocateNative(int capacity);
+
+  private static native void free(long bufferHandle);
+
+  static {
+    System.loadLibrary("CHIPController");
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the request and callback metrics of a controller, as reported by {@link
+ * ControllerMetrics}.
+ */
+final class MetricsRecorder {
+
+  final AtomicLong requestsSent = new AtomicLong();
+  final AtomicLong responsesReceived = new AtomicLong();
+  final AtomicLong requestsFailed = new AtomicLong();
+  final AtomicLong requestsTimedOut = new AtomicLong();
+  final AtomicLong requestsRejected = new AtomicLong();
+  final AtomicLong callbacksDropped = new AtomicLong();
+
+  private final LatencyRecorder requestLatency = new LatencyRecorder();
+  // Guarded by this.
+  private final LongHashMap<LatencyRecorder> deviceRequestLatencies = new LongHashMap<>();
+
+  /** Returns the recorder of the request latency of the given device, to pass to recordResponse. */
+  synchronized LatencyRecorder deviceRequestLatency(long deviceId) {
+    LatencyRecorder recorder = deviceRequestLatencies.get(deviceId);
+    if (recorder == null) {
+      recorder = new LatencyRecorder();
+      deviceRequestLatencies.put(deviceId, recorder);
+    }
+    return recorder;
+  }
+
+  /** Records the response to a request sent at the given {@link System#nanoTime} value. */
+  void recordResponse(LatencyRecorder deviceRequestLatency, long sendTimeNanos) {
+    requestLatency.recordSince(sendTimeNanos);
+    deviceRequestLatency.recordSince(sendTimeNanos);
+    responsesReceived.incrementAndGet();
+  }
+
+  ControllerMetrics snapshot(
+      LatencyHistogram connectLatency,
+      LatencyHistogram submitLatency,
+      LatencyHistogram upcallLatency,
+      LatencyHistogram stackLockWait) {
+    Map<Long, LatencyHistogram> deviceLatencies = new HashMap<>();
+    synchronized (this) {
+      deviceRequestLatencies.forEach(
+          (deviceId, recorder) -> deviceLatencies.put(deviceId, recorder.snapshot()));
+    }
+
+    return new ControllerMetrics(
+        requestsSent.get(),
+        responsesReceived.get(),
+        requestsFailed.get(),
+        requestsTimedOut.get(),
+        requestsRejected.get(),
+        callbacksDropped.get(),
+        requestLatency.snapshot(),
+        deviceLatencies,
+        connectLatency,
+        submitLatency,
+        upcallLatency,
+        stackLockWait);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Frees the native resources of objects that were never closed, once they become phantom
+ * reachable, on a daemon thread shared by all the objects. This is a safety net only: like {@code
+ * java.lang.ref.Cleaner}, which it stands in for until Java 9, it runs whenever the garbage
+ * collector gets to it, if ever.
+ */
+final class NativeCleaner {
+
+  private static final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+  // Keeps the registered cleanables reachable until they are cleaned.
+  private static final Set<Cleanable> cleanables = ConcurrentHashMap.newKeySet();
+
+  static {
+    Thread thread = new Thread(NativeCleaner::run, "ChipDeviceController cleaner");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private NativeCleaner() {}
+
+  /**
+   * Registers an action to run once {@code owner} becomes phantom reachable, unless it was run
+   * before through {@link Cleanable#clean}. The action must not refer to the owner, which would
+   * then never become phantom reachable.
+   */
+  static Cleanable register(Object owner, Runnable action) {
+    Cleanable cleanable = new Cleanable(owner, action);
+    cleanables.add(cleanable);
+    return cleanable;
+  }
+
+  private static void run() {
+    while (true) {
+      try {
+        ((Cleanable) queue.remove()).clean();
+      } catch (InterruptedException e) {
+        // Only stops with the process.
+      } catch (RuntimeException e) {
+        // An action failed; the other ones still have to run.
+      }
+    }
+  }
+
+  /** Action registered for an object. */
+  static final class Cleanable extends PhantomReference<Object> {
+
+    private final Runnable action;
+
+    private Cleanable(Object owner, Runnable action) {
+      super(owner, queue);
+      this.action = action;
+    }
+
+    /** Runs the action now, unless it already ran, and unregisters it. */
+    void clean() {
+      if (cleanables.remove(this)) {
+        clear();
+        action.run();
+      }
+    }
+  }
+}
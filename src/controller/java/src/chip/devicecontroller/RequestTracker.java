@@ -0,0 +1,238 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Tracks the requests waiting for a response, per device.
+ *
+ * <p>Each request gets a request ID, which the native layer hands back with the response to the
+ * request, or when sending the request fails. The native layer matches responses with requests
+ * through the ZCL transaction sequence number it gives each command, so that attribute reports and
+ * other unsolicited messages received meanwhile are never taken for a response.
+ *
+ * <p>At most {@code maxInFlightRequests} requests are in flight on a device at once. The requests
+ * beyond that window wait in a queue of at most {@code maxQueuedRequests} requests, and are sent as
+ * the requests in flight complete; the ones beyond the queue are rejected.
+ */
+final class RequestTracker {
+
+  /** Request ID meaning "no request", used for operations that were not issued by a request. */
+  static final long NO_REQUEST_ID = 0;
+
+  private final LongHashMap<DeviceRequests> devices = new LongHashMap<>();
+  private final MetricsRecorder metrics;
+  private final Executor completionExecutor;
+  private long nextRequestId = NO_REQUEST_ID + 1;
+  private int maxInFlightRequests = Integer.MAX_VALUE;
+  private int maxQueuedRequests = Integer.MAX_VALUE;
+
+  /**
+   * @param completionExecutor executor the futures of the queued requests that cannot be sent are
+   *     failed on, since sending them may happen on the IO thread
+   */
+  RequestTracker(MetricsRecorder metrics, Executor completionExecutor) {
+    this.metrics = metrics;
+    this.completionExecutor = completionExecutor;
+  }
+
+  synchronized void setWindow(int maxInFlightRequests, int maxQueuedRequests) {
+    if (maxInFlightRequests < 1 || maxQueuedRequests < 0) {
+      throw new IllegalArgumentException("Invalid request window");
+    }
+    this.maxInFlightRequests = maxInFlightRequests;
+    this.maxQueuedRequests = maxQueuedRequests;
+
+    devices.forEach((deviceId, requests) -> sendQueued(requests));
+  }
+
+  /**
+   * Registers a request to the given device.
+   *
+   * <p>If the window of the device has room, the request is counted as in flight and its request
+   * ID is returned: the caller must then send it, and call {@link #remove} if that fails.
+   * Otherwise the request is queued, to be sent later through {@code request}, or the future is
+   * completed with a {@link RejectedExecutionException} if the queue is full; {@link
+   * #NO_REQUEST_ID} is returned in both cases.
+   */
+  synchronized long add(long deviceId, CompletableFuture<String> future, NativeRequest request) {
+    DeviceRequests requests = devices.get(deviceId);
+    if (requests == null) {
+      requests = new DeviceRequests(metrics.deviceRequestLatency(deviceId));
+      devices.put(deviceId, requests);
+    }
+
+    PendingRequest pending = new PendingRequest(nextRequestId++, future, request);
+    if (requests.inFlight.size() < maxInFlightRequests) {
+      setInFlight(requests, pending);
+      return pending.requestId;
+    }
+
+    if (requests.queued.size() < maxQueuedRequests) {
+      requests.queued.add(pending);
+    } else {
+      removeIfIdle(deviceId, requests);
+      metrics.requestsRejected.incrementAndGet();
+      future.completeExceptionally(
+          new RejectedExecutionException("Too many requests pending on device " + deviceId));
+    }
+    return NO_REQUEST_ID;
+  }
+
+  /**
+   * Removes and returns the request with the given ID, after its response came, or null if it is no
+   * longer pending. The first queued request, if any, is sent in its place.
+   */
+  synchronized CompletableFuture<String> complete(long deviceId, long requestId) {
+    DeviceRequests requests = devices.get(deviceId);
+    if (requests == null || requestId == NO_REQUEST_ID) {
+      return null;
+    }
+
+    PendingRequest request = remove(requests.inFlight, requestId);
+    if (request == null) {
+      return null;
+    }
+
+    metrics.recordResponse(requests.latency, request.sendTimeNanos);
+    sendQueued(requests);
+    removeIfIdle(deviceId, requests);
+    return request.future;
+  }
+
+  /** Removes and returns the request with the given ID, or null if it is no longer pending. */
+  synchronized CompletableFuture<String> remove(long deviceId, long requestId) {
+    DeviceRequests requests = devices.get(deviceId);
+    if (requests == null) {
+      return null;
+    }
+
+    PendingRequest request = remove(requests.inFlight, requestId);
+    if (request != null) {
+      sendQueued(requests);
+    } else {
+      request = remove(requests.queued, requestId);
+    }
+
+    removeIfIdle(deviceId, requests);
+    if (request == null) {
+      return null;
+    }
+
+    metrics.requestsFailed.incrementAndGet();
+    return request.future;
+  }
+
+  /** Removes and returns all the requests pending on the given device, queued ones included. */
+  synchronized List<CompletableFuture<String>> removeAll(long deviceId) {
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+    DeviceRequests requests = devices.remove(deviceId);
+    if (requests != null) {
+      for (PendingRequest request : requests.inFlight) {
+        futures.add(request.future);
+      }
+      for (PendingRequest request : requests.queued) {
+        futures.add(request.future);
+      }
+    }
+
+    metrics.requestsFailed.addAndGet(futures.size());
+    return futures;
+  }
+
+  /** Removes and returns all the pending requests, on all the devices. */
+  synchronized List<CompletableFuture<String>> removeAll() {
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+    for (long deviceId : devices.keys()) {
+      futures.addAll(removeAll(deviceId));
+    }
+    return futures;
+  }
+
+  private void sendQueued(DeviceRequests requests) {
+    while (requests.inFlight.size() < maxInFlightRequests && !requests.queued.isEmpty()) {
+      PendingRequest request = requests.queued.poll();
+      setInFlight(requests, request);
+      try {
+        request.request.submit(request.requestId);
+      } catch (Exception e) {
+        requests.inFlight.remove(request);
+        metrics.requestsFailed.incrementAndGet();
+        completionExecutor.execute(() -> request.future.completeExceptionally(e));
+      }
+    }
+  }
+
+  private void setInFlight(DeviceRequests requests, PendingRequest request) {
+    request.sendTimeNanos = System.nanoTime();
+    requests.inFlight.add(request);
+    metrics.requestsSent.incrementAndGet();
+  }
+
+  private void removeIfIdle(long deviceId, DeviceRequests requests) {
+    if (requests.inFlight.isEmpty() && requests.queued.isEmpty()) {
+      devices.remove(deviceId);
+    }
+  }
+
+  private static PendingRequest remove(ArrayDeque<PendingRequest> requests, long requestId) {
+    for (Iterator<PendingRequest> it = requests.iterator(); it.hasNext(); ) {
+      PendingRequest request = it.next();
+      if (request.requestId == requestId) {
+        it.remove();
+        return request;
+      }
+    }
+    return null;
+  }
+
+  /** Queues a request to the native layer under the given request ID. */
+  interface NativeRequest {
+    void submit(long requestId);
+  }
+
+  private static final class DeviceRequests {
+    final ArrayDeque<PendingRequest> inFlight = new ArrayDeque<>();
+    final ArrayDeque<PendingRequest> queued = new ArrayDeque<>();
+    final LatencyRecorder latency;
+
+    DeviceRequests(LatencyRecorder latency) {
+      this.latency = latency;
+    }
+  }
+
+  private static final class PendingRequest {
+    final long requestId;
+    final CompletableFuture<String> future;
+    final NativeRequest request;
+    long sendTimeNanos;
+
+    PendingRequest(long requestId, CompletableFuture<String> future, NativeRequest request) {
+      this.requestId = requestId;
+      this.future = future;
+      this.request = request;
+    }
+  }
+}
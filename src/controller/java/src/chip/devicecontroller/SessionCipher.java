@@ -0,0 +1,85 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * AES-GCM encryption of the pairings kept at rest, as a random IV followed by the ciphertext and
+ * its tag.
+ */
+final class SessionCipher {
+
+  static final int IV_LENGTH = 12;
+  static final int TAG_LENGTH = 16;
+
+  private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+  private SessionCipher() {}
+
+  /** Returns the length of the output of {@link #seal} for a plaintext of the given length. */
+  static int sealedLength(int plaintextLength) {
+    return IV_LENGTH + plaintextLength + TAG_LENGTH;
+  }
+
+  /**
+   * Encrypts the plaintext, authenticating the additional data with it.
+   *
+   * @param aad additional data, or null
+   */
+  static byte[] seal(SecretKey key, SecureRandom random, byte[] plaintext, byte[] aad)
+      throws GeneralSecurityException {
+    byte[] iv = new byte[IV_LENGTH];
+    random.nextBytes(iv);
+
+    Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+    if (aad != null) {
+      cipher.updateAAD(aad);
+    }
+    byte[] sealed = Arrays.copyOf(iv, IV_LENGTH + cipher.getOutputSize(plaintext.length));
+    cipher.doFinal(plaintext, 0, plaintext.length, sealed, IV_LENGTH);
+    return sealed;
+  }
+
+  /**
+   * Decrypts the output of {@link #seal} found at the given offset, checking that it was sealed
+   * with the same key and additional data.
+   *
+   * @param aad additional data, or null
+   */
+  static byte[] open(SecretKey key, byte[] sealed, int offset, int length, byte[] aad)
+      throws GeneralSecurityException {
+    if (length < IV_LENGTH + TAG_LENGTH) {
+      throw new GeneralSecurityException("Truncated ciphertext");
+    }
+
+    Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+    cipher.init(
+        Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, sealed, offset, IV_LENGTH));
+    if (aad != null) {
+      cipher.updateAAD(aad);
+    }
+    return cipher.doFinal(sealed, offset + IV_LENGTH, length - IV_LENGTH);
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.io.IOException;
+
+/**
+ * Persistent store of the pairings a controller established with devices, keyed by device node
+ * ID, so that reconnecting to a paired device after a disconnect or a restart skips the key
+ * exchange. See {@link ChipDeviceController#setSessionStore}.
+ *
+ * <p>A stored pairing holds the secret the device sessions are derived from: implementations must
+ * keep it encrypted at rest, as {@link EncryptedFileSessionStore} does. The methods are called on
+ * the IO thread, so they must not block for long.
+ */
+public interface SessionStore {
+
+  /** Returns the pairing stored for the device with the given node ID, or null if there is none. */
+  byte[] load(long deviceId) throws IOException;
+
+  /** Stores the pairing with the device with the given node ID, replacing any previous one. */
+  void store(long deviceId, byte[] session) throws IOException;
+
+  /** Removes the pairing stored for the device with the given node ID, if any. */
+  void remove(long deviceId) throws IOException;
+}
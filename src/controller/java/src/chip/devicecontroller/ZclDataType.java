@@ -0,0 +1,119 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import java.nio.ByteBuffer;
+
+/** Sizes of the ZCL attribute data types, as encoded in attribute records. */
+final class ZclDataType {
+
+  static final int NO_DATA = 0x00;
+  static final int DATA8 = 0x08;
+  static final int DATA64 = 0x0F;
+  static final int BOOLEAN = 0x10;
+  static final int BITMAP8 = 0x18;
+  static final int BITMAP64 = 0x1F;
+  static final int UINT8 = 0x20;
+  static final int UINT64 = 0x27;
+  static final int INT8 = 0x28;
+  static final int INT64 = 0x2F;
+  static final int ENUM8 = 0x30;
+  static final int ENUM16 = 0x31;
+  static final int SEMI_FLOAT = 0x38;
+  static final int SINGLE_FLOAT = 0x39;
+  static final int DOUBLE_FLOAT = 0x3A;
+  static final int OCTET_STRING = 0x41;
+  static final int CHAR_STRING = 0x42;
+  static final int LONG_OCTET_STRING = 0x43;
+  static final int LONG_CHAR_STRING = 0x44;
+  static final int TIME_OF_DAY = 0xE0;
+  static final int DATE = 0xE1;
+  static final int UTC_TIME = 0xE2;
+  static final int CLUSTER_ID = 0xE8;
+  static final int ATTRIBUTE_ID = 0xE9;
+  static final int BACNET_OID = 0xEA;
+  static final int IEEE_ADDRESS = 0xF0;
+  static final int SECURITY_KEY = 0xF1;
+
+  private ZclDataType() {}
+
+  /**
+   * Returns the length in bytes of a value of the given type starting at {@code offset} in {@code
+   * data}, including any length prefix, or -1 if the type is not supported or the length prefix is
+   * missing.
+   */
+  static int valueLength(int type, ByteBuffer data, int offset) {
+    if (type >= DATA8 && type <= DATA64) {
+      return type - DATA8 + 1;
+    }
+    if (type >= BITMAP8 && type <= BITMAP64) {
+      return type - BITMAP8 + 1;
+    }
+    if (type >= UINT8 && type <= UINT64) {
+      return type - UINT8 + 1;
+    }
+    if (type >= INT8 && type <= INT64) {
+      return type - INT8 + 1;
+    }
+
+    switch (type) {
+      case NO_DATA:
+        return 0;
+      case BOOLEAN:
+      case ENUM8:
+        return 1;
+      case ENUM16:
+      case SEMI_FLOAT:
+      case CLUSTER_ID:
+      case ATTRIBUTE_ID:
+        return 2;
+      case SINGLE_FLOAT:
+      case TIME_OF_DAY:
+      case DATE:
+      case UTC_TIME:
+      case BACNET_OID:
+        return 4;
+      case DOUBLE_FLOAT:
+      case IEEE_ADDRESS:
+        return 8;
+      case SECURITY_KEY:
+        return 16;
+      case OCTET_STRING:
+      case CHAR_STRING:
+        {
+          if (offset >= data.limit()) {
+            return -1;
+          }
+          // 0xFF marks an invalid string, which has no content.
+          int length = data.get(offset) & 0xFF;
+          return 1 + (length == 0xFF ? 0 : length);
+        }
+      case LONG_OCTET_STRING:
+      case LONG_CHAR_STRING:
+        {
+          if (offset + 1 >= data.limit()) {
+            return -1;
+          }
+          int length = (data.get(offset) & 0xFF) | ((data.get(offset + 1) & 0xFF) << 8);
+          return 2 + (length == 0xFFFF ? 0 : length);
+        }
+      default:
+        return -1;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the Barrier Control cluster. */
+public final class BarrierControlCluster {
+
+  public static final int CLUSTER_ID = 0x0103;
+  public static final int BARRIER_CONTROL_GO_TO_PERCENT_COMMAND_ID = 0x00;
+  public static final int BARRIER_CONTROL_STOP_COMMAND_ID = 0x01;
+
+  private BarrierControlCluster() {}
+
+  /** Encodes the BarrierControlGoToPercent command for the given endpoint. */
+  public static void encodeBarrierControlGoToPercent(
+      CommandBuffer buffer, int endpoint, int percentOpen) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, BARRIER_CONTROL_GO_TO_PERCENT_COMMAND_ID);
+    buffer.putUint8(percentOpen);
+  }
+
+  /** Encodes the BarrierControlStop command for the given endpoint. */
+  public static void encodeBarrierControlStop(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, BARRIER_CONTROL_STOP_COMMAND_ID);
+  }
+}
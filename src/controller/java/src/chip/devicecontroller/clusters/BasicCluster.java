@@ -0,0 +1,47 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the Basic cluster. */
+public final class BasicCluster {
+
+  public static final int CLUSTER_ID = 0x0000;
+  public static final int RESET_TO_FACTORY_DEFAULTS_COMMAND_ID = 0x00;
+  public static final int GET_LOCALES_SUPPORTED_COMMAND_ID = 0x01;
+
+  private BasicCluster() {}
+
+  /** Encodes the ResetToFactoryDefaults command for the given endpoint. */
+  public static void encodeResetToFactoryDefaults(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, RESET_TO_FACTORY_DEFAULTS_COMMAND_ID);
+  }
+
+  /** Encodes the GetLocalesSupported command for the given endpoint. */
+  public static void encodeGetLocalesSupported(
+      CommandBuffer buffer, int endpoint, byte[] startLocale, int maxLocalesRequested) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_LOCALES_SUPPORTED_COMMAND_ID);
+    buffer.putString(startLocale);
+    buffer.putUint8(maxLocalesRequested);
+  }
+}
@@ -0,0 +1,329 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the Color Control cluster. */
+public final class ColorControlCluster {
+
+  public static final int CLUSTER_ID = 0x0300;
+  public static final int MOVE_TO_HUE_COMMAND_ID = 0x00;
+  public static final int MOVE_HUE_COMMAND_ID = 0x01;
+  public static final int STEP_HUE_COMMAND_ID = 0x02;
+  public static final int MOVE_TO_SATURATION_COMMAND_ID = 0x03;
+  public static final int MOVE_SATURATION_COMMAND_ID = 0x04;
+  public static final int STEP_SATURATION_COMMAND_ID = 0x05;
+  public static final int MOVE_TO_HUE_AND_SATURATION_COMMAND_ID = 0x06;
+  public static final int MOVE_TO_COLOR_COMMAND_ID = 0x07;
+  public static final int MOVE_COLOR_COMMAND_ID = 0x08;
+  public static final int STEP_COLOR_COMMAND_ID = 0x09;
+  public static final int MOVE_TO_COLOR_TEMPERATURE_COMMAND_ID = 0x0A;
+  public static final int ENHANCED_MOVE_TO_HUE_COMMAND_ID = 0x40;
+  public static final int ENHANCED_MOVE_HUE_COMMAND_ID = 0x41;
+  public static final int ENHANCED_STEP_HUE_COMMAND_ID = 0x42;
+  public static final int ENHANCED_MOVE_TO_HUE_AND_SATURATION_COMMAND_ID = 0x43;
+  public static final int COLOR_LOOP_SET_COMMAND_ID = 0x44;
+  public static final int STOP_MOVE_STEP_COMMAND_ID = 0x47;
+  public static final int MOVE_COLOR_TEMPERATURE_COMMAND_ID = 0x4B;
+  public static final int STEP_COLOR_TEMPERATURE_COMMAND_ID = 0x4C;
+
+  private ColorControlCluster() {}
+
+  /** Encodes the MoveToHue command for the given endpoint. */
+  public static void encodeMoveToHue(
+      CommandBuffer buffer,
+      int endpoint,
+      int hue,
+      int direction,
+      int transitionTime,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_TO_HUE_COMMAND_ID);
+    buffer.putUint8(hue);
+    buffer.putUint8(direction);
+    buffer.putUint16(transitionTime);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the MoveHue command for the given endpoint. */
+  public static void encodeMoveHue(
+      CommandBuffer buffer,
+      int endpoint,
+      int moveMode,
+      int rate,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_HUE_COMMAND_ID);
+    buffer.putUint8(moveMode);
+    buffer.putUint8(rate);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the StepHue command for the given endpoint. */
+  public static void encodeStepHue(
+      CommandBuffer buffer,
+      int endpoint,
+      int stepMode,
+      int stepSize,
+      int transitionTime,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STEP_HUE_COMMAND_ID);
+    buffer.putUint8(stepMode);
+    buffer.putUint8(stepSize);
+    buffer.putUint8(transitionTime);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the MoveToSaturation command for the given endpoint. */
+  public static void encodeMoveToSaturation(
+      CommandBuffer buffer,
+      int endpoint,
+      int saturation,
+      int transitionTime,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_TO_SATURATION_COMMAND_ID);
+    buffer.putUint8(saturation);
+    buffer.putUint16(transitionTime);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the MoveSaturation command for the given endpoint. */
+  public static void encodeMoveSaturation(
+      CommandBuffer buffer,
+      int endpoint,
+      int moveMode,
+      int rate,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_SATURATION_COMMAND_ID);
+    buffer.putUint8(moveMode);
+    buffer.putUint8(rate);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the StepSaturation command for the given endpoint. */
+  public static void encodeStepSaturation(
+      CommandBuffer buffer,
+      int endpoint,
+      int stepMode,
+      int stepSize,
+      int transitionTime,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STEP_SATURATION_COMMAND_ID);
+    buffer.putUint8(stepMode);
+    buffer.putUint8(stepSize);
+    buffer.putUint8(transitionTime);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the MoveToHueAndSaturation command for the given endpoint. */
+  public static void encodeMoveToHueAndSaturation(
+      CommandBuffer buffer,
+      int endpoint,
+      int hue,
+      int saturation,
+      int transitionTime,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_TO_HUE_AND_SATURATION_COMMAND_ID);
+    buffer.putUint8(hue);
+    buffer.putUint8(saturation);
+    buffer.putUint16(transitionTime);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the MoveToColor command for the given endpoint. */
+  public static void encodeMoveToColor(
+      CommandBuffer buffer,
+      int endpoint,
+      int colorX,
+      int colorY,
+      int transitionTime,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_TO_COLOR_COMMAND_ID);
+    buffer.putUint16(colorX);
+    buffer.putUint16(colorY);
+    buffer.putUint16(transitionTime);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the MoveColor command for the given endpoint. */
+  public static void encodeMoveColor(
+      CommandBuffer buffer,
+      int endpoint,
+      int rateX,
+      int rateY,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_COLOR_COMMAND_ID);
+    buffer.putInt16(rateX);
+    buffer.putInt16(rateY);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the StepColor command for the given endpoint. */
+  public static void encodeStepColor(
+      CommandBuffer buffer,
+      int endpoint,
+      int stepX,
+      int stepY,
+      int transitionTime,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STEP_COLOR_COMMAND_ID);
+    buffer.putInt16(stepX);
+    buffer.putInt16(stepY);
+    buffer.putUint16(transitionTime);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the MoveToColorTemperature command for the given endpoint. */
+  public static void encodeMoveToColorTemperature(
+      CommandBuffer buffer,
+      int endpoint,
+      int colorTemperature,
+      int transitionTime,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_TO_COLOR_TEMPERATURE_COMMAND_ID);
+    buffer.putUint16(colorTemperature);
+    buffer.putUint16(transitionTime);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the EnhancedMoveToHue command for the given endpoint. */
+  public static void encodeEnhancedMoveToHue(
+      CommandBuffer buffer, int endpoint, int enhancedHue, int direction, int transitionTime) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ENHANCED_MOVE_TO_HUE_COMMAND_ID);
+    buffer.putUint16(enhancedHue);
+    buffer.putUint8(direction);
+    buffer.putUint16(transitionTime);
+  }
+
+  /** Encodes the EnhancedMoveHue command for the given endpoint. */
+  public static void encodeEnhancedMoveHue(
+      CommandBuffer buffer, int endpoint, int moveMode, int rate) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ENHANCED_MOVE_HUE_COMMAND_ID);
+    buffer.putUint8(moveMode);
+    buffer.putUint16(rate);
+  }
+
+  /** Encodes the EnhancedStepHue command for the given endpoint. */
+  public static void encodeEnhancedStepHue(
+      CommandBuffer buffer, int endpoint, int stepMode, int stepSize, int transitionTime) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ENHANCED_STEP_HUE_COMMAND_ID);
+    buffer.putUint8(stepMode);
+    buffer.putUint16(stepSize);
+    buffer.putUint16(transitionTime);
+  }
+
+  /** Encodes the EnhancedMoveToHueAndSaturation command for the given endpoint. */
+  public static void encodeEnhancedMoveToHueAndSaturation(
+      CommandBuffer buffer, int endpoint, int enhancedHue, int saturation, int transitionTime) {
+    buffer.beginClusterCommand(
+        CLUSTER_ID, endpoint, ENHANCED_MOVE_TO_HUE_AND_SATURATION_COMMAND_ID);
+    buffer.putUint16(enhancedHue);
+    buffer.putUint8(saturation);
+    buffer.putUint16(transitionTime);
+  }
+
+  /** Encodes the ColorLoopSet command for the given endpoint. */
+  public static void encodeColorLoopSet(
+      CommandBuffer buffer,
+      int endpoint,
+      int updateFlags,
+      int action,
+      int direction,
+      int time,
+      int startHue) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, COLOR_LOOP_SET_COMMAND_ID);
+    buffer.putUint8(updateFlags);
+    buffer.putUint8(action);
+    buffer.putUint8(direction);
+    buffer.putUint16(time);
+    buffer.putUint16(startHue);
+  }
+
+  /** Encodes the StopMoveStep command for the given endpoint. */
+  public static void encodeStopMoveStep(
+      CommandBuffer buffer, int endpoint, int optionsMask, int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STOP_MOVE_STEP_COMMAND_ID);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the MoveColorTemperature command for the given endpoint. */
+  public static void encodeMoveColorTemperature(
+      CommandBuffer buffer,
+      int endpoint,
+      int moveMode,
+      int rate,
+      int colorTemperatureMinimum,
+      int colorTemperatureMaximum,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_COLOR_TEMPERATURE_COMMAND_ID);
+    buffer.putUint8(moveMode);
+    buffer.putUint16(rate);
+    buffer.putUint16(colorTemperatureMinimum);
+    buffer.putUint16(colorTemperatureMaximum);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+
+  /** Encodes the StepColorTemperature command for the given endpoint. */
+  public static void encodeStepColorTemperature(
+      CommandBuffer buffer,
+      int endpoint,
+      int stepMode,
+      int stepSize,
+      int transitionTime,
+      int colorTemperatureMinimum,
+      int colorTemperatureMaximum,
+      int optionsMask,
+      int optionsOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STEP_COLOR_TEMPERATURE_COMMAND_ID);
+    buffer.putUint8(stepMode);
+    buffer.putUint16(stepSize);
+    buffer.putUint16(transitionTime);
+    buffer.putUint16(colorTemperatureMinimum);
+    buffer.putUint16(colorTemperatureMaximum);
+    buffer.putUint8(optionsMask);
+    buffer.putUint8(optionsOverride);
+  }
+}
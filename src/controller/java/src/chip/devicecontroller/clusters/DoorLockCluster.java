@@ -0,0 +1,268 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the Door Lock cluster. */
+public final class DoorLockCluster {
+
+  public static final int CLUSTER_ID = 0x0101;
+  public static final int LOCK_DOOR_COMMAND_ID = 0x00;
+  public static final int UNLOCK_DOOR_COMMAND_ID = 0x01;
+  public static final int TOGGLE_COMMAND_ID = 0x02;
+  public static final int UNLOCK_WITH_TIMEOUT_COMMAND_ID = 0x03;
+  public static final int GET_LOG_RECORD_COMMAND_ID = 0x04;
+  public static final int SET_PIN_COMMAND_ID = 0x05;
+  public static final int GET_PIN_COMMAND_ID = 0x06;
+  public static final int CLEAR_PIN_COMMAND_ID = 0x07;
+  public static final int CLEAR_ALL_PINS_COMMAND_ID = 0x08;
+  public static final int SET_USER_STATUS_COMMAND_ID = 0x09;
+  public static final int GET_USER_STATUS_COMMAND_ID = 0x0A;
+  public static final int SET_WEEKDAY_SCHEDULE_COMMAND_ID = 0x0B;
+  public static final int GET_WEEKDAY_SCHEDULE_COMMAND_ID = 0x0C;
+  public static final int CLEAR_WEEKDAY_SCHEDULE_COMMAND_ID = 0x0D;
+  public static final int SET_YEARDAY_SCHEDULE_COMMAND_ID = 0x0E;
+  public static final int GET_YEARDAY_SCHEDULE_COMMAND_ID = 0x0F;
+  public static final int CLEAR_YEARDAY_SCHEDULE_COMMAND_ID = 0x10;
+  public static final int SET_HOLIDAY_SCHEDULE_COMMAND_ID = 0x11;
+  public static final int GET_HOLIDAY_SCHEDULE_COMMAND_ID = 0x12;
+  public static final int CLEAR_HOLIDAY_SCHEDULE_COMMAND_ID = 0x13;
+  public static final int SET_USER_TYPE_COMMAND_ID = 0x14;
+  public static final int GET_USER_TYPE_COMMAND_ID = 0x15;
+  public static final int SET_RFID_COMMAND_ID = 0x16;
+  public static final int GET_RFID_COMMAND_ID = 0x17;
+  public static final int CLEAR_RFID_COMMAND_ID = 0x18;
+  public static final int CLEAR_ALL_RFIDS_COMMAND_ID = 0x19;
+
+  private DoorLockCluster() {}
+
+  /** Encodes the LockDoor command for the given endpoint. */
+  public static void encodeLockDoor(CommandBuffer buffer, int endpoint, byte[] pin) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, LOCK_DOOR_COMMAND_ID);
+    buffer.putString(pin);
+  }
+
+  /** Encodes the UnlockDoor command for the given endpoint. */
+  public static void encodeUnlockDoor(CommandBuffer buffer, int endpoint, byte[] pin) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, UNLOCK_DOOR_COMMAND_ID);
+    buffer.putString(pin);
+  }
+
+  /** Encodes the Toggle command for the given endpoint. */
+  public static void encodeToggle(CommandBuffer buffer, int endpoint, byte[] pin) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, TOGGLE_COMMAND_ID);
+    buffer.putString(pin);
+  }
+
+  /** Encodes the UnlockWithTimeout command for the given endpoint. */
+  public static void encodeUnlockWithTimeout(
+      CommandBuffer buffer, int endpoint, int timeoutInSeconds, byte[] pin) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, UNLOCK_WITH_TIMEOUT_COMMAND_ID);
+    buffer.putUint16(timeoutInSeconds);
+    buffer.putString(pin);
+  }
+
+  /** Encodes the GetLogRecord command for the given endpoint. */
+  public static void encodeGetLogRecord(CommandBuffer buffer, int endpoint, int logIndex) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_LOG_RECORD_COMMAND_ID);
+    buffer.putUint16(logIndex);
+  }
+
+  /** Encodes the SetPin command for the given endpoint. */
+  public static void encodeSetPin(
+      CommandBuffer buffer, int endpoint, int userId, int userStatus, int userType, byte[] pin) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, SET_PIN_COMMAND_ID);
+    buffer.putUint16(userId);
+    buffer.putUint8(userStatus);
+    buffer.putUint8(userType);
+    buffer.putString(pin);
+  }
+
+  /** Encodes the GetPin command for the given endpoint. */
+  public static void encodeGetPin(CommandBuffer buffer, int endpoint, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_PIN_COMMAND_ID);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the ClearPin command for the given endpoint. */
+  public static void encodeClearPin(CommandBuffer buffer, int endpoint, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, CLEAR_PIN_COMMAND_ID);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the ClearAllPins command for the given endpoint. */
+  public static void encodeClearAllPins(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, CLEAR_ALL_PINS_COMMAND_ID);
+  }
+
+  /** Encodes the SetUserStatus command for the given endpoint. */
+  public static void encodeSetUserStatus(
+      CommandBuffer buffer, int endpoint, int userId, int userStatus) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, SET_USER_STATUS_COMMAND_ID);
+    buffer.putUint16(userId);
+    buffer.putUint8(userStatus);
+  }
+
+  /** Encodes the GetUserStatus command for the given endpoint. */
+  public static void encodeGetUserStatus(CommandBuffer buffer, int endpoint, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_USER_STATUS_COMMAND_ID);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the SetWeekdaySchedule command for the given endpoint. */
+  public static void encodeSetWeekdaySchedule(
+      CommandBuffer buffer,
+      int endpoint,
+      int scheduleId,
+      int userId,
+      int daysMask,
+      int startHour,
+      int startMinute,
+      int endHour,
+      int endMinute) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, SET_WEEKDAY_SCHEDULE_COMMAND_ID);
+    buffer.putUint8(scheduleId);
+    buffer.putUint16(userId);
+    buffer.putUint8(daysMask);
+    buffer.putUint8(startHour);
+    buffer.putUint8(startMinute);
+    buffer.putUint8(endHour);
+    buffer.putUint8(endMinute);
+  }
+
+  /** Encodes the GetWeekdaySchedule command for the given endpoint. */
+  public static void encodeGetWeekdaySchedule(
+      CommandBuffer buffer, int endpoint, int scheduleId, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_WEEKDAY_SCHEDULE_COMMAND_ID);
+    buffer.putUint8(scheduleId);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the ClearWeekdaySchedule command for the given endpoint. */
+  public static void encodeClearWeekdaySchedule(
+      CommandBuffer buffer, int endpoint, int scheduleId, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, CLEAR_WEEKDAY_SCHEDULE_COMMAND_ID);
+    buffer.putUint8(scheduleId);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the SetYeardaySchedule command for the given endpoint. */
+  public static void encodeSetYeardaySchedule(
+      CommandBuffer buffer,
+      int endpoint,
+      int scheduleId,
+      int userId,
+      long localStartTime,
+      long localEndTime) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, SET_YEARDAY_SCHEDULE_COMMAND_ID);
+    buffer.putUint8(scheduleId);
+    buffer.putUint16(userId);
+    buffer.putUint32(localStartTime);
+    buffer.putUint32(localEndTime);
+  }
+
+  /** Encodes the GetYeardaySchedule command for the given endpoint. */
+  public static void encodeGetYeardaySchedule(
+      CommandBuffer buffer, int endpoint, int scheduleId, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_YEARDAY_SCHEDULE_COMMAND_ID);
+    buffer.putUint8(scheduleId);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the ClearYeardaySchedule command for the given endpoint. */
+  public static void encodeClearYeardaySchedule(
+      CommandBuffer buffer, int endpoint, int scheduleId, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, CLEAR_YEARDAY_SCHEDULE_COMMAND_ID);
+    buffer.putUint8(scheduleId);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the SetHolidaySchedule command for the given endpoint. */
+  public static void encodeSetHolidaySchedule(
+      CommandBuffer buffer,
+      int endpoint,
+      int scheduleId,
+      long localStartTime,
+      long localEndTime,
+      int operatingModeDuringHoliday) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, SET_HOLIDAY_SCHEDULE_COMMAND_ID);
+    buffer.putUint8(scheduleId);
+    buffer.putUint32(localStartTime);
+    buffer.putUint32(localEndTime);
+    buffer.putUint8(operatingModeDuringHoliday);
+  }
+
+  /** Encodes the GetHolidaySchedule command for the given endpoint. */
+  public static void encodeGetHolidaySchedule(CommandBuffer buffer, int endpoint, int scheduleId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_HOLIDAY_SCHEDULE_COMMAND_ID);
+    buffer.putUint8(scheduleId);
+  }
+
+  /** Encodes the ClearHolidaySchedule command for the given endpoint. */
+  public static void encodeClearHolidaySchedule(
+      CommandBuffer buffer, int endpoint, int scheduleId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, CLEAR_HOLIDAY_SCHEDULE_COMMAND_ID);
+    buffer.putUint8(scheduleId);
+  }
+
+  /** Encodes the SetUserType command for the given endpoint. */
+  public static void encodeSetUserType(
+      CommandBuffer buffer, int endpoint, int userId, int userType) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, SET_USER_TYPE_COMMAND_ID);
+    buffer.putUint16(userId);
+    buffer.putUint8(userType);
+  }
+
+  /** Encodes the GetUserType command for the given endpoint. */
+  public static void encodeGetUserType(CommandBuffer buffer, int endpoint, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_USER_TYPE_COMMAND_ID);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the SetRfid command for the given endpoint. */
+  public static void encodeSetRfid(
+      CommandBuffer buffer, int endpoint, int userId, int userStatus, int userType, byte[] id) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, SET_RFID_COMMAND_ID);
+    buffer.putUint16(userId);
+    buffer.putUint8(userStatus);
+    buffer.putUint8(userType);
+    buffer.putString(id);
+  }
+
+  /** Encodes the GetRfid command for the given endpoint. */
+  public static void encodeGetRfid(CommandBuffer buffer, int endpoint, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_RFID_COMMAND_ID);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the ClearRfid command for the given endpoint. */
+  public static void encodeClearRfid(CommandBuffer buffer, int endpoint, int userId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, CLEAR_RFID_COMMAND_ID);
+    buffer.putUint16(userId);
+  }
+
+  /** Encodes the ClearAllRfids command for the given endpoint. */
+  public static void encodeClearAllRfids(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, CLEAR_ALL_RFIDS_COMMAND_ID);
+  }
+}
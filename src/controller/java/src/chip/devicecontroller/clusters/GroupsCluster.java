@@ -0,0 +1,79 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the Groups cluster. */
+public final class GroupsCluster {
+
+  public static final int CLUSTER_ID = 0x0004;
+  public static final int ADD_GROUP_COMMAND_ID = 0x00;
+  public static final int VIEW_GROUP_COMMAND_ID = 0x01;
+  public static final int GET_GROUP_MEMBERSHIP_COMMAND_ID = 0x02;
+  public static final int REMOVE_GROUP_COMMAND_ID = 0x03;
+  public static final int REMOVE_ALL_GROUPS_COMMAND_ID = 0x04;
+  public static final int ADD_GROUP_IF_IDENTIFYING_COMMAND_ID = 0x05;
+
+  private GroupsCluster() {}
+
+  /** Encodes the AddGroup command for the given endpoint. */
+  public static void encodeAddGroup(
+      CommandBuffer buffer, int endpoint, int groupId, byte[] groupName) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ADD_GROUP_COMMAND_ID);
+    buffer.putUint16(groupId);
+    buffer.putString(groupName);
+  }
+
+  /** Encodes the ViewGroup command for the given endpoint. */
+  public static void encodeViewGroup(CommandBuffer buffer, int endpoint, int groupId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, VIEW_GROUP_COMMAND_ID);
+    buffer.putUint16(groupId);
+  }
+
+  /** Encodes the GetGroupMembership command for the given endpoint. */
+  public static void encodeGetGroupMembership(
+      CommandBuffer buffer, int endpoint, int groupCount, byte[] groupList) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_GROUP_MEMBERSHIP_COMMAND_ID);
+    buffer.putUint8(groupCount);
+    buffer.putBytes(groupList);
+  }
+
+  /** Encodes the RemoveGroup command for the given endpoint. */
+  public static void encodeRemoveGroup(CommandBuffer buffer, int endpoint, int groupId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, REMOVE_GROUP_COMMAND_ID);
+    buffer.putUint16(groupId);
+  }
+
+  /** Encodes the RemoveAllGroups command for the given endpoint. */
+  public static void encodeRemoveAllGroups(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, REMOVE_ALL_GROUPS_COMMAND_ID);
+  }
+
+  /** Encodes the AddGroupIfIdentifying command for the given endpoint. */
+  public static void encodeAddGroupIfIdentifying(
+      CommandBuffer buffer, int endpoint, int groupId, byte[] groupName) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ADD_GROUP_IF_IDENTIFYING_COMMAND_ID);
+    buffer.putUint16(groupId);
+    buffer.putString(groupName);
+  }
+}
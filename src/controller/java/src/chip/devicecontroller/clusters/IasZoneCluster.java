@@ -0,0 +1,56 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the Ias Zone cluster. */
+public final class IasZoneCluster {
+
+  public static final int CLUSTER_ID = 0x0500;
+  public static final int ZONE_ENROLL_RESPONSE_COMMAND_ID = 0x00;
+  public static final int INITIATE_NORMAL_OPERATION_MODE_COMMAND_ID = 0x01;
+  public static final int INITIATE_TEST_MODE_COMMAND_ID = 0x02;
+
+  private IasZoneCluster() {}
+
+  /** Encodes the ZoneEnrollResponse command for the given endpoint. */
+  public static void encodeZoneEnrollResponse(
+      CommandBuffer buffer, int endpoint, int enrollResponseCode, int zoneId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ZONE_ENROLL_RESPONSE_COMMAND_ID);
+    buffer.putUint8(enrollResponseCode);
+    buffer.putUint8(zoneId);
+  }
+
+  /** Encodes the InitiateNormalOperationMode command for the given endpoint. */
+  public static void encodeInitiateNormalOperationMode(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, INITIATE_NORMAL_OPERATION_MODE_COMMAND_ID);
+  }
+
+  /** Encodes the InitiateTestMode command for the given endpoint. */
+  public static void encodeInitiateTestMode(
+      CommandBuffer buffer, int endpoint, int testModeDuration, int currentZoneSensitivityLevel) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, INITIATE_TEST_MODE_COMMAND_ID);
+    buffer.putUint8(testModeDuration);
+    buffer.putUint8(currentZoneSensitivityLevel);
+  }
+}
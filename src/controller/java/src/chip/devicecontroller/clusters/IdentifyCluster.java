@@ -0,0 +1,70 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the Identify cluster. */
+public final class IdentifyCluster {
+
+  public static final int CLUSTER_ID = 0x0003;
+  public static final int IDENTIFY_COMMAND_ID = 0x00;
+  public static final int IDENTIFY_QUERY_COMMAND_ID = 0x01;
+  public static final int E_Z_MODE_INVOKE_COMMAND_ID = 0x02;
+  public static final int UPDATE_COMMISSION_STATE_COMMAND_ID = 0x03;
+  public static final int TRIGGER_EFFECT_COMMAND_ID = 0x40;
+
+  private IdentifyCluster() {}
+
+  /** Encodes the Identify command for the given endpoint. */
+  public static void encodeIdentify(CommandBuffer buffer, int endpoint, int identifyTime) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, IDENTIFY_COMMAND_ID);
+    buffer.putUint16(identifyTime);
+  }
+
+  /** Encodes the IdentifyQuery command for the given endpoint. */
+  public static void encodeIdentifyQuery(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, IDENTIFY_QUERY_COMMAND_ID);
+  }
+
+  /** Encodes the EZModeInvoke command for the given endpoint. */
+  public static void encodeEZModeInvoke(CommandBuffer buffer, int endpoint, int action) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, E_Z_MODE_INVOKE_COMMAND_ID);
+    buffer.putUint8(action);
+  }
+
+  /** Encodes the UpdateCommissionState command for the given endpoint. */
+  public static void encodeUpdateCommissionState(
+      CommandBuffer buffer, int endpoint, int action, int commissionStateMask) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, UPDATE_COMMISSION_STATE_COMMAND_ID);
+    buffer.putUint8(action);
+    buffer.putUint8(commissionStateMask);
+  }
+
+  /** Encodes the TriggerEffect command for the given endpoint. */
+  public static void encodeTriggerEffect(
+      CommandBuffer buffer, int endpoint, int effectId, int effectVariant) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, TRIGGER_EFFECT_COMMAND_ID);
+    buffer.putUint8(effectId);
+    buffer.putUint8(effectVariant);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the Level Control cluster. */
+public final class LevelControlCluster {
+
+  public static final int CLUSTER_ID = 0x0008;
+  public static final int MOVE_TO_LEVEL_COMMAND_ID = 0x00;
+  public static final int MOVE_COMMAND_ID = 0x01;
+  public static final int STEP_COMMAND_ID = 0x02;
+  public static final int STOP_COMMAND_ID = 0x03;
+  public static final int MOVE_TO_LEVEL_WITH_ON_OFF_COMMAND_ID = 0x04;
+  public static final int MOVE_WITH_ON_OFF_COMMAND_ID = 0x05;
+  public static final int STEP_WITH_ON_OFF_COMMAND_ID = 0x06;
+  public static final int STOP_WITH_ON_OFF_COMMAND_ID = 0x07;
+
+  private LevelControlCluster() {}
+
+  /** Encodes the MoveToLevel command for the given endpoint. */
+  public static void encodeMoveToLevel(
+      CommandBuffer buffer,
+      int endpoint,
+      int level,
+      int transitionTime,
+      int optionMask,
+      int optionOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_TO_LEVEL_COMMAND_ID);
+    buffer.putUint8(level);
+    buffer.putUint16(transitionTime);
+    buffer.putUint8(optionMask);
+    buffer.putUint8(optionOverride);
+  }
+
+  /** Encodes the Move command for the given endpoint. */
+  public static void encodeMove(
+      CommandBuffer buffer,
+      int endpoint,
+      int moveMode,
+      int rate,
+      int optionMask,
+      int optionOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_COMMAND_ID);
+    buffer.putUint8(moveMode);
+    buffer.putUint8(rate);
+    buffer.putUint8(optionMask);
+    buffer.putUint8(optionOverride);
+  }
+
+  /** Encodes the Step command for the given endpoint. */
+  public static void encodeStep(
+      CommandBuffer buffer,
+      int endpoint,
+      int stepMode,
+      int stepSize,
+      int transitionTime,
+      int optionMask,
+      int optionOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STEP_COMMAND_ID);
+    buffer.putUint8(stepMode);
+    buffer.putUint8(stepSize);
+    buffer.putUint16(transitionTime);
+    buffer.putUint8(optionMask);
+    buffer.putUint8(optionOverride);
+  }
+
+  /** Encodes the Stop command for the given endpoint. */
+  public static void encodeStop(
+      CommandBuffer buffer, int endpoint, int optionMask, int optionOverride) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STOP_COMMAND_ID);
+    buffer.putUint8(optionMask);
+    buffer.putUint8(optionOverride);
+  }
+
+  /** Encodes the MoveToLevelWithOnOff command for the given endpoint. */
+  public static void encodeMoveToLevelWithOnOff(
+      CommandBuffer buffer, int endpoint, int level, int transitionTime) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_TO_LEVEL_WITH_ON_OFF_COMMAND_ID);
+    buffer.putUint8(level);
+    buffer.putUint16(transitionTime);
+  }
+
+  /** Encodes the MoveWithOnOff command for the given endpoint. */
+  public static void encodeMoveWithOnOff(
+      CommandBuffer buffer, int endpoint, int moveMode, int rate) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, MOVE_WITH_ON_OFF_COMMAND_ID);
+    buffer.putUint8(moveMode);
+    buffer.putUint8(rate);
+  }
+
+  /** Encodes the StepWithOnOff command for the given endpoint. */
+  public static void encodeStepWithOnOff(
+      CommandBuffer buffer, int endpoint, int stepMode, int stepSize, int transitionTime) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STEP_WITH_ON_OFF_COMMAND_ID);
+    buffer.putUint8(stepMode);
+    buffer.putUint8(stepSize);
+    buffer.putUint16(transitionTime);
+  }
+
+  /** Encodes the StopWithOnOff command for the given endpoint. */
+  public static void encodeStopWithOnOff(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STOP_WITH_ON_OFF_COMMAND_ID);
+  }
+}
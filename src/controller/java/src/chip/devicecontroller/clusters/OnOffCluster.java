@@ -0,0 +1,75 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the On Off cluster. */
+public final class OnOffCluster {
+
+  public static final int CLUSTER_ID = 0x0006;
+  public static final int OFF_COMMAND_ID = 0x00;
+  public static final int ON_COMMAND_ID = 0x01;
+  public static final int TOGGLE_COMMAND_ID = 0x02;
+  public static final int OFF_WITH_EFFECT_COMMAND_ID = 0x40;
+  public static final int ON_WITH_RECALL_GLOBAL_SCENE_COMMAND_ID = 0x41;
+  public static final int ON_WITH_TIMED_OFF_COMMAND_ID = 0x42;
+
+  private OnOffCluster() {}
+
+  /** Encodes the Off command for the given endpoint. */
+  public static void encodeOff(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, OFF_COMMAND_ID);
+  }
+
+  /** Encodes the On command for the given endpoint. */
+  public static void encodeOn(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ON_COMMAND_ID);
+  }
+
+  /** Encodes the Toggle command for the given endpoint. */
+  public static void encodeToggle(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, TOGGLE_COMMAND_ID);
+  }
+
+  /** Encodes the OffWithEffect command for the given endpoint. */
+  public static void encodeOffWithEffect(
+      CommandBuffer buffer, int endpoint, int effectId, int effectVariant) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, OFF_WITH_EFFECT_COMMAND_ID);
+    buffer.putUint8(effectId);
+    buffer.putUint8(effectVariant);
+  }
+
+  /** Encodes the OnWithRecallGlobalScene command for the given endpoint. */
+  public static void encodeOnWithRecallGlobalScene(CommandBuffer buffer, int endpoint) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ON_WITH_RECALL_GLOBAL_SCENE_COMMAND_ID);
+  }
+
+  /** Encodes the OnWithTimedOff command for the given endpoint. */
+  public static void encodeOnWithTimedOff(
+      CommandBuffer buffer, int endpoint, int onOffControl, int onTime, int offWaitTime) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ON_WITH_TIMED_OFF_COMMAND_ID);
+    buffer.putUint8(onOffControl);
+    buffer.putUint16(onTime);
+    buffer.putUint16(offWaitTime);
+  }
+}
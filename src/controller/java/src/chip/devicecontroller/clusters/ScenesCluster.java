@@ -0,0 +1,145 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+// DO NOT EDIT THIS FILE! This file is automatically-generated by
+// the 'scripts/gen_java_clusters.py' script.
+
+package chip.devicecontroller.clusters;
+
+import chip.devicecontroller.CommandBuffer;
+
+/** Encoders for the client-to-server commands of the Scenes cluster. */
+public final class ScenesCluster {
+
+  public static final int CLUSTER_ID = 0x0005;
+  public static final int ADD_SCENE_COMMAND_ID = 0x00;
+  public static final int VIEW_SCENE_COMMAND_ID = 0x01;
+  public static final int REMOVE_SCENE_COMMAND_ID = 0x02;
+  public static final int REMOVE_ALL_SCENES_COMMAND_ID = 0x03;
+  public static final int STORE_SCENE_COMMAND_ID = 0x04;
+  public static final int RECALL_SCENE_COMMAND_ID = 0x05;
+  public static final int GET_SCENE_MEMBERSHIP_COMMAND_ID = 0x06;
+  public static final int ENHANCED_ADD_SCENE_COMMAND_ID = 0x40;
+  public static final int ENHANCED_VIEW_SCENE_COMMAND_ID = 0x41;
+  public static final int COPY_SCENE_COMMAND_ID = 0x42;
+
+  private ScenesCluster() {}
+
+  /** Encodes the AddScene command for the given endpoint. */
+  public static void encodeAddScene(
+      CommandBuffer buffer,
+      int endpoint,
+      int groupId,
+      int sceneId,
+      int transitionTime,
+      byte[] sceneName,
+      byte[] extensionFieldSets) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ADD_SCENE_COMMAND_ID);
+    buffer.putUint16(groupId);
+    buffer.putUint8(sceneId);
+    buffer.putUint16(transitionTime);
+    buffer.putString(sceneName);
+    buffer.putBytes(extensionFieldSets);
+  }
+
+  /** Encodes the ViewScene command for the given endpoint. */
+  public static void encodeViewScene(CommandBuffer buffer, int endpoint, int groupId, int sceneId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, VIEW_SCENE_COMMAND_ID);
+    buffer.putUint16(groupId);
+    buffer.putUint8(sceneId);
+  }
+
+  /** Encodes the RemoveScene command for the given endpoint. */
+  public static void encodeRemoveScene(
+      CommandBuffer buffer, int endpoint, int groupId, int sceneId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, REMOVE_SCENE_COMMAND_ID);
+    buffer.putUint16(groupId);
+    buffer.putUint8(sceneId);
+  }
+
+  /** Encodes the RemoveAllScenes command for the given endpoint. */
+  public static void encodeRemoveAllScenes(CommandBuffer buffer, int endpoint, int groupId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, REMOVE_ALL_SCENES_COMMAND_ID);
+    buffer.putUint16(groupId);
+  }
+
+  /** Encodes the StoreScene command for the given endpoint. */
+  public static void encodeStoreScene(
+      CommandBuffer buffer, int endpoint, int groupId, int sceneId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, STORE_SCENE_COMMAND_ID);
+    buffer.putUint16(groupId);
+    buffer.putUint8(sceneId);
+  }
+
+  /** Encodes the RecallScene command for the given endpoint. */
+  public static void encodeRecallScene(
+      CommandBuffer buffer, int endpoint, int groupId, int sceneId, int transitionTime) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, RECALL_SCENE_COMMAND_ID);
+    buffer.putUint16(groupId);
+    buffer.putUint8(sceneId);
+    buffer.putUint16(transitionTime);
+  }
+
+  /** Encodes the GetSceneMembership command for the given endpoint. */
+  public static void encodeGetSceneMembership(CommandBuffer buffer, int endpoint, int groupId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, GET_SCENE_MEMBERSHIP_COMMAND_ID);
+    buffer.putUint16(groupId);
+  }
+
+  /** Encodes the EnhancedAddScene command for the given endpoint. */
+  public static void encodeEnhancedAddScene(
+      CommandBuffer buffer,
+      int endpoint,
+      int groupId,
+      int sceneId,
+      int transitionTime,
+      byte[] sceneName,
+      byte[] extensionFieldSets) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ENHANCED_ADD_SCENE_COMMAND_ID);
+    buffer.putUint16(groupId);
+    buffer.putUint8(sceneId);
+    buffer.putUint16(transitionTime);
+    buffer.putString(sceneName);
+    buffer.putBytes(extensionFieldSets);
+  }
+
+  /** Encodes the EnhancedViewScene command for the given endpoint. */
+  public static void encodeEnhancedViewScene(
+      CommandBuffer buffer, int endpoint, int groupId, int sceneId) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, ENHANCED_VIEW_SCENE_COMMAND_ID);
+    buffer.putUint16(groupId);
+    buffer.putUint8(sceneId);
+  }
+
+  /** Encodes the CopyScene command for the given endpoint. */
+  public static void encodeCopyScene(
+      CommandBuffer buffer,
+      int endpoint,
+      int mode,
+      int groupIdFrom,
+      int sceneIdFrom,
+      int groupIdTo,
+      int sceneIdTo) {
+    buffer.beginClusterCommand(CLUSTER_ID, endpoint, COPY_SCENE_COMMAND_ID);
+    buffer.putUint8(mode);
+    buffer.putUint16(groupIdFrom);
+    buffer.putUint8(sceneIdFrom);
+    buffer.putUint16(groupIdTo);
+    buffer.putUint8(sceneIdTo);
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller.discovery;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes the mDNS queries and decodes the responses, as in RFC 1035 and RFC 6762. Names are
+ * strings of dot-separated labels, where the dots and backslashes inside a label are escaped with
+ * a backslash.
+ */
+final class DnsMessage {
+
+  // Largest mDNS message, RFC 6762 section 17.
+  static final int MAX_LENGTH = 9000;
+
+  private static final int HEADER_LENGTH = 12;
+  private static final int FLAG_RESPONSE = 0x8000;
+
+  private static final int MAX_LABEL_LENGTH = 63;
+  private static final int MAX_NAME_LENGTH = 255;
+  private static final int POINTER_MASK = 0xC0;
+
+  /** Question of a query, for the records of the given name and type. */
+  static final class Question {
+    final String name;
+    final int type;
+
+    Question(String name, int type) {
+      this.name = name;
+      this.type = type;
+    }
+  }
+
+  private DnsMessage() {}
+
+  /**
+   * Writes a query with the given questions into the buffer, followed by as many of the known
+   * answers as fit. The responders do not send those again.
+   */
+  static void writeQuery(
+      ByteBuffer buffer, List<Question> questions, List<DnsRecord> knownAnswers) {
+    int start = buffer.position();
+    buffer.putShort((short) 0); // ID, always 0 in mDNS.
+    buffer.putShort((short) 0); // Flags.
+    buffer.putShort((short) questions.size());
+    buffer.putShort((short) 0); // Answers, counted below.
+    buffer.putShort((short) 0); // Authority records.
+    buffer.putShort((short) 0); // Additional records.
+
+    for (Question question : questions) {
+      buffer.put(encodeName(question.name));
+      buffer.putShort((short) question.type);
+      buffer.putShort((short) DnsRecord.CLASS_IN);
+    }
+
+    int answers = 0;
+    for (DnsRecord record : knownAnswers) {
+      byte[] name = encodeName(record.name);
+      if (buffer.remaining() < name.length + 10 + record.data.length) {
+        break;
+      }
+      buffer.put(name);
+      buffer.putShort((short) record.type);
+      buffer.putShort((short) DnsRecord.CLASS_IN);
+      buffer.putInt((int) record.ttlSeconds);
+      buffer.putShort((short) record.data.length);
+      buffer.put(record.data);
+      answers++;
+    }
+    buffer.putShort(start + 6, (short) answers);
+  }
+
+  /**
+   * Reads the records of the answer, authority and additional sections of a response, leaving out
+   * those of other types than A, AAAA, PTR, SRV and TXT. The message must begin at index 0 of the
+   * buffer. Returns an empty list for queries.
+   *
+   * @throws ProtocolException if the message is malformed
+   */
+  static List<DnsRecord> readResponse(ByteBuffer message) throws ProtocolException {
+    try {
+      if (message.remaining() < HEADER_LENGTH) {
+        throw new ProtocolException("Truncated DNS header");
+      }
+      int flags = message.getShort(2) & 0xFFFF;
+      if ((flags & FLAG_RESPONSE) == 0) {
+        return new ArrayList<>();
+      }
+      int questions = message.getShort(4) & 0xFFFF;
+      int records =
+          (message.getShort(6) & 0xFFFF)
+              + (message.getShort(8) & 0xFFFF)
+              + (message.getShort(10) & 0xFFFF);
+      message.position(HEADER_LENGTH);
+
+      for (int i = 0; i < questions; i++) {
+        readName(message);
+        message.position(message.position() + 4);
+      }
+
+      List<DnsRecord> result = new ArrayList<>();
+      for (int i = 0; i < records; i++) {
+        DnsRecord record = readRecord(message);
+        if (record != null) {
+          result.add(record);
+        }
+      }
+      return result;
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      ProtocolException exception = new ProtocolException("Malformed DNS message");
+      exception.initCause(e);
+      throw exception;
+    }
+  }
+
+  private static DnsRecord readRecord(ByteBuffer message) throws ProtocolException {
+    String name = readName(message);
+    int type = message.getShort() & 0xFFFF;
+    int recordClass = message.getShort() & 0xFFFF;
+    long ttlSeconds = message.getInt() & 0xFFFFFFFFL;
+    int length = message.getShort() & 0xFFFF;
+    int end = message.position() + length;
+    if (end > message.limit()) {
+      throw new ProtocolException("Truncated DNS record");
+    }
+
+    byte[] data;
+    switch (type) {
+      case DnsRecord.TYPE_A:
+      case DnsRecord.TYPE_AAAA:
+        if (length != (type == DnsRecord.TYPE_A ? 4 : 16)) {
+          throw new ProtocolException("Invalid address length " + length);
+        }
+        data = new byte[length];
+        message.get(data);
+        break;
+      case DnsRecord.TYPE_TXT:
+        data = new byte[length];
+        message.get(data);
+        break;
+      case DnsRecord.TYPE_PTR:
+        // The target may be compressed.
+        data = encodeName(readName(message));
+        break;
+      case DnsRecord.TYPE_SRV:
+        byte[] fixed = new byte[6]; // Priority, weight and port.
+        message.get(fixed);
+        byte[] target = encodeName(readName(message));
+        data = new byte[fixed.length + target.length];
+        System.arraycopy(fixed, 0, data, 0, fixed.length);
+        System.arraycopy(target, 0, data, fixed.length, target.length);
+        break;
+      default:
+        data = null;
+        break;
+    }
+    if (message.position() > end) {
+      throw new ProtocolException("DNS record data longer than the record");
+    }
+    message.position(end);
+
+    if (data == null || (recordClass & ~DnsRecord.CACHE_FLUSH) != DnsRecord.CLASS_IN) {
+      return null;
+    }
+    return new DnsRecord(name, type, (recordClass & DnsRecord.CACHE_FLUSH) != 0, ttlSeconds, data);
+  }
+
+  /**
+   * Reads a name at the position of the buffer, following the compression pointers, which are
+   * offsets from the start of the buffer. Leaves the position after the name.
+   */
+  static String readName(ByteBuffer buffer) {
+    StringBuilder name = new StringBuilder();
+    int position = buffer.position();
+    int end = -1;
+    // The length of the encoded name, counting the zero length ending it.
+    int nameLength = 1;
+    while (true) {
+      int length = buffer.get(position) & 0xFF;
+      if ((length & POINTER_MASK) == POINTER_MASK) {
+        int pointer = ((length & ~POINTER_MASK) << 8) | (buffer.get(position + 1) & 0xFF);
+        // Pointers must go back, which stops the loops.
+        if (pointer >= position) {
+          throw new IllegalArgumentException("Invalid name pointer");
+        }
+        if (end < 0) {
+          end = position + 2;
+        }
+        position = pointer;
+        continue;
+      }
+      if (length > MAX_LABEL_LENGTH) {
+        throw new IllegalArgumentException("Invalid label length " + length);
+      }
+      position++;
+      if (length == 0) {
+        break;
+      }
+
+      nameLength += length + 1;
+      if (nameLength > MAX_NAME_LENGTH) {
+        throw new IllegalArgumentException("Name too long");
+      }
+      byte[] label = new byte[length];
+      for (int i = 0; i < length; i++) {
+        label[i] = buffer.get(position + i);
+      }
+      position += length;
+
+      if (name.length() > 0) {
+        name.append('.');
+      }
+      for (char c : new String(label, StandardCharsets.UTF_8).toCharArray()) {
+        if (c == '.' || c == '\\') {
+          name.append('\\');
+        }
+        name.append(c);
+      }
+    }
+    buffer.position(end < 0 ? position : end);
+    return name.toString();
+  }
+
+  /** Encodes a name without compression. */
+  static byte[] encodeName(String name) {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    StringBuilder label = new StringBuilder();
+    for (int i = 0; i <= name.length(); i++) {
+      char c = i < name.length() ? name.charAt(i) : '.';
+      if (c == '\\' && i + 1 < name.length()) {
+        label.append(name.charAt(++i));
+      } else if (c == '.') {
+        if (label.length() > 0) {
+          byte[] bytes = label.toString().getBytes(StandardCharsets.UTF_8);
+          if (bytes.length > MAX_LABEL_LENGTH) {
+            throw new IllegalArgumentException("Label too long in " + name);
+          }
+          encoded.write(bytes.length);
+          encoded.write(bytes, 0, bytes.length);
+          label.setLength(0);
+        }
+      } else {
+        label.append(c);
+      }
+    }
+    encoded.write(0);
+    if (encoded.size() > MAX_NAME_LENGTH) {
+      throw new IllegalArgumentException("Name too long: " + name);
+    }
+    return encoded.toByteArray();
+  }
+}
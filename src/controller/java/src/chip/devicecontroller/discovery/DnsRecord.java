@@ -0,0 +1,130 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller.discovery;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resource record of a DNS message. Its data is kept uncompressed, as it is written in a message
+ * without name compression, so that records can be compared and sent back as known answers.
+ */
+final class DnsRecord {
+
+  static final int TYPE_A = 1;
+  static final int TYPE_PTR = 12;
+  static final int TYPE_TXT = 16;
+  static final int TYPE_AAAA = 28;
+  static final int TYPE_SRV = 33;
+
+  static final int CLASS_IN = 1;
+
+  // Top bit of the class of the records which replace the others of their name and type.
+  static final int CACHE_FLUSH = 0x8000;
+
+  final String name;
+  final int type;
+  final boolean cacheFlush;
+  final long ttlSeconds;
+  final byte[] data;
+
+  DnsRecord(String name, int type, boolean cacheFlush, long ttlSeconds, byte[] data) {
+    this.name = name;
+    this.type = type;
+    this.cacheFlush = cacheFlush;
+    this.ttlSeconds = ttlSeconds;
+    this.data = data;
+  }
+
+  DnsRecord withTtl(long ttlSeconds) {
+    return new DnsRecord(name, type, cacheFlush, ttlSeconds, data);
+  }
+
+  /** Returns whether the given record has the same name, type and data as this one. */
+  boolean sameAs(DnsRecord other) {
+    return type == other.type && sameName(name, other.name) && Arrays.equals(data, other.data);
+  }
+
+  /** Returns the name a PTR record points to, or the host name of a SRV record. */
+  String getTarget() {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    if (type == TYPE_SRV) {
+      buffer.position(6);
+    }
+    return DnsMessage.readName(buffer);
+  }
+
+  int getPort() {
+    return ((data[4] & 0xFF) << 8) | (data[5] & 0xFF);
+  }
+
+  InetAddress getAddress() {
+    try {
+      return InetAddress.getByAddress(data);
+    } catch (UnknownHostException e) {
+      // Only thrown for lengths other than those of A and AAAA records.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Returns the attributes of a TXT record, in order. Attributes without a value map to an empty
+   * array, and only the first of those with the same key is kept, as RFC 6763 says.
+   */
+  Map<String, byte[]> getAttributes() {
+    Map<String, byte[]> attributes = new LinkedHashMap<>();
+    int offset = 0;
+    while (offset < data.length) {
+      int length = data[offset++] & 0xFF;
+      int end = Math.min(offset + length, data.length);
+      int separator = offset;
+      while (separator < end && data[separator] != '=') {
+        separator++;
+      }
+      if (separator > offset) {
+        String key = new String(data, offset, separator - offset, StandardCharsets.UTF_8);
+        byte[] value = separator < end ? Arrays.copyOfRange(data, separator + 1, end) : new byte[0];
+        if (!attributes.containsKey(key)) {
+          attributes.put(key, value);
+        }
+      }
+      offset = end;
+    }
+    return attributes;
+  }
+
+  static boolean sameName(String name, String other) {
+    return name.equalsIgnoreCase(other);
+  }
+
+  /** Returns the key under which names are compared, which DNS does regardless of ASCII case. */
+  static String nameKey(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s type %d ttl %d", name, type, ttlSeconds);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller.discovery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records received from the responders, by name and type, each until its TTL expires, as in RFC
+ * 6762 section 10. Not thread-safe.
+ */
+final class DnsRecordCache {
+
+  // Records received this long ago are not flushed by a record of the same response.
+  private static final long CACHE_FLUSH_GRACE_MILLIS = 1000;
+
+  private static final class Entry {
+    final DnsRecord record;
+    final long receivedAtMillis;
+    final long expiresAtMillis;
+
+    Entry(DnsRecord record, long receivedAtMillis) {
+      this.record = record;
+      this.receivedAtMillis = receivedAtMillis;
+      this.expiresAtMillis = receivedAtMillis + TimeUnit.SECONDS.toMillis(record.ttlSeconds);
+    }
+
+    long remainingSeconds(long nowMillis) {
+      return TimeUnit.MILLISECONDS.toSeconds(expiresAtMillis - nowMillis);
+    }
+  }
+
+  private final Map<String, List<Entry>> entries = new HashMap<>();
+
+  /**
+   * Adds a record received at the given time. A record with a TTL of 0 says the record is gone,
+   * and one with the cache-flush bit replaces the others of its name and type received before.
+   */
+  void add(DnsRecord record, long nowMillis) {
+    String key = key(record.name, record.type);
+    List<Entry> recordEntries = entries.get(key);
+    if (recordEntries == null) {
+      if (record.ttlSeconds == 0) {
+        return;
+      }
+      recordEntries = new ArrayList<>();
+      entries.put(key, recordEntries);
+    }
+
+    Iterator<Entry> iterator = recordEntries.iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.record.sameAs(record)
+          || (record.cacheFlush
+              && nowMillis - entry.receivedAtMillis > CACHE_FLUSH_GRACE_MILLIS)) {
+        iterator.remove();
+      }
+    }
+    if (record.ttlSeconds != 0) {
+      recordEntries.add(new Entry(record, nowMillis));
+    }
+    if (recordEntries.isEmpty()) {
+      entries.remove(key);
+    }
+  }
+
+  /** Returns the records of the given name and type, with the TTL they have left. */
+  List<DnsRecord> get(String name, int type, long nowMillis) {
+    return get(name, type, nowMillis, 0);
+  }
+
+  /**
+   * Returns the records of the given name and type with more than half of their TTL left, which a
+   * query gives as known answers, with the TTL they have left.
+   */
+  List<DnsRecord> getKnownAnswers(String name, int type, long nowMillis) {
+    return get(name, type, nowMillis, 2);
+  }
+
+  /** Removes the records whose TTL has expired. */
+  void removeExpired(long nowMillis) {
+    Iterator<List<Entry>> listIterator = entries.values().iterator();
+    while (listIterator.hasNext()) {
+      List<Entry> recordEntries = listIterator.next();
+      Iterator<Entry> iterator = recordEntries.iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().expiresAtMillis <= nowMillis) {
+          iterator.remove();
+        }
+      }
+      if (recordEntries.isEmpty()) {
+        listIterator.remove();
+      }
+    }
+  }
+
+  private List<DnsRecord> get(String name, int type, long nowMillis, int ttlDivisor) {
+    List<DnsRecord> records = new ArrayList<>();
+    String key = key(name, type);
+    List<Entry> recordEntries = entries.get(key);
+    if (recordEntries == null) {
+      return records;
+    }
+
+    Iterator<Entry> iterator = recordEntries.iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      long remainingSeconds = entry.remainingSeconds(nowMillis);
+      if (remainingSeconds <= 0) {
+        iterator.remove();
+      } else if (ttlDivisor == 0 || remainingSeconds > entry.record.ttlSeconds / ttlDivisor) {
+        records.add(entry.record.withTtl(remainingSeconds));
+      }
+    }
+    if (recordEntries.isEmpty()) {
+      entries.remove(key);
+    }
+    return records;
+  }
+
+  private static String key(String name, int type) {
+    return DnsRecord.nameKey(name) + '/' + type;
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller.discovery;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Browses and resolves DNS-SD services over mDNS (RFC 6762 and RFC 6763), such as the {@code
+ * _meshcop._udp} services of Thread Border Agents, without relying on the platform.
+ *
+ * <p>Each call to {@link #browse} is a query round: it asks for the instances of a service type,
+ * giving the ones it still knows as known answers so that the responders do not send them again,
+ * asks for the records the responses left out, and returns the instances it can resolve once the
+ * round times out. The records received are cached until their TTL expires, so the instances
+ * resolved in a round are still returned by the next ones while their records live.
+ *
+ * <p>The browser joins an mDNS group on a network interface, and receives every response sent to
+ * it. It can also query a single responder at a unicast address, which then answers to the port of
+ * the browser, such as a responder on the loopback interface.
+ *
+ * <p>Rounds are serialized; the browser is safe to share between threads.
+ */
+public final class DnsSdBrowser implements AutoCloseable {
+
+  public static final InetSocketAddress MDNS_IPV4_GROUP =
+      new InetSocketAddress(mdnsGroupAddress("224.0.0.251"), 5353);
+  public static final InetSocketAddress MDNS_IPV6_GROUP =
+      new InetSocketAddress(mdnsGroupAddress("ff02::fb"), 5353);
+
+  public static final String MESHCOP_SERVICE_TYPE = "_meshcop._udp";
+
+  public static final long DEFAULT_TIMEOUT_MILLIS = 300;
+
+  private static final String DOMAIN = "local";
+
+  // Time-to-live of the multicast queries, RFC 6762 section 11.
+  private static final int MULTICAST_TTL = 255;
+
+  private final InetSocketAddress destination;
+  private final DatagramChannel channel;
+  private final Selector selector;
+  private final ByteBuffer sendBuffer = ByteBuffer.allocate(DnsMessage.MAX_LENGTH);
+  private final ByteBuffer receiveBuffer = ByteBuffer.allocate(DnsMessage.MAX_LENGTH);
+  private final DnsRecordCache cache = new DnsRecordCache();
+
+  /**
+   * Opens a browser sending its queries to the given destination: either an mDNS group, such as
+   * {@link #MDNS_IPV4_GROUP}, joined on the given network interface, or the unicast address of a
+   * responder, for which the interface is not used and may be null.
+   */
+  public DnsSdBrowser(InetSocketAddress destination, NetworkInterface networkInterface)
+      throws IOException {
+    this.destination = destination;
+    InetAddress address = destination.getAddress();
+    channel =
+        DatagramChannel.open(
+            address instanceof Inet4Address
+                ? StandardProtocolFamily.INET
+                : StandardProtocolFamily.INET6);
+    try {
+      if (address.isMulticastAddress()) {
+        // Responders answer queries from the mDNS port to the group, which other queriers on the
+        // host share.
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(new InetSocketAddress(destination.getPort()));
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, MULTICAST_TTL);
+        channel.join(address, networkInterface);
+      } else {
+        channel.bind(null);
+      }
+      channel.configureBlocking(false);
+      selector = Selector.open();
+      channel.register(selector, SelectionKey.OP_READ);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Runs a query round of {@link #DEFAULT_TIMEOUT_MILLIS}, see {@link #browse(String, long)}. */
+  public List<DnsSdService> browse(String serviceType) throws IOException {
+    return browse(serviceType, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Runs a query round for the instances of the given service type, such as {@link
+   * #MESHCOP_SERVICE_TYPE}, in the local domain, and returns those resolved once the round times
+   * out: those with a SRV record and an address, whether received in this round or cached from the
+   * previous ones.
+   */
+  public synchronized List<DnsSdService> browse(String serviceType, long timeoutMillis)
+      throws IOException {
+    String typeName = serviceType + '.' + DOMAIN;
+    long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    cache.removeExpired(now());
+
+    List<DnsMessage.Question> questions = new ArrayList<>();
+    questions.add(new DnsMessage.Question(typeName, DnsRecord.TYPE_PTR));
+    send(questions, cache.getKnownAnswers(typeName, DnsRecord.TYPE_PTR, now()));
+
+    // Names already asked again for the records the responses left out, once per round.
+    Set<String> askedNames = new HashSet<>();
+    long remainingNanos;
+    while ((remainingNanos = deadlineNanos - System.nanoTime()) > 0) {
+      if (!receive(remainingNanos)) {
+        continue;
+      }
+
+      questions.clear();
+      addMissingQuestions(typeName, askedNames, questions);
+      if (!questions.isEmpty()) {
+        send(questions, new ArrayList<DnsRecord>());
+      }
+    }
+
+    return resolve(serviceType, typeName);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      selector.close();
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void send(List<DnsMessage.Question> questions, List<DnsRecord> knownAnswers)
+      throws IOException {
+    sendBuffer.clear();
+    DnsMessage.writeQuery(sendBuffer, questions, knownAnswers);
+    sendBuffer.flip();
+    channel.send(sendBuffer, destination);
+  }
+
+  /**
+   * Waits up to the given time for responses, and caches the records of all those received.
+   * Returns whether any was.
+   */
+  private boolean receive(long timeoutNanos) throws IOException {
+    // A timeout of 0 would wait forever.
+    long timeoutMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+    if (selector.select(timeoutMillis) == 0) {
+      return false;
+    }
+    selector.selectedKeys().clear();
+
+    boolean received = false;
+    while (true) {
+      receiveBuffer.clear();
+      if (channel.receive(receiveBuffer) == null) {
+        return received;
+      }
+      receiveBuffer.flip();
+      try {
+        long nowMillis = now();
+        for (DnsRecord record : DnsMessage.readResponse(receiveBuffer)) {
+          cache.add(record, nowMillis);
+          received = true;
+        }
+      } catch (ProtocolException e) {
+        // Responses other than those asked for may come from any host; drop the malformed ones.
+      }
+    }
+  }
+
+  /**
+   * Adds the questions for the SRV and TXT records of the instances, and for the addresses of their
+   * hosts, which the responses left out and were not asked for in this round.
+   */
+  private void addMissingQuestions(
+      String typeName, Set<String> askedNames, List<DnsMessage.Question> questions) {
+    long nowMillis = now();
+    for (DnsRecord pointer : cache.get(typeName, DnsRecord.TYPE_PTR, nowMillis)) {
+      String instanceName = pointer.getTarget();
+      List<DnsRecord> services = cache.get(instanceName, DnsRecord.TYPE_SRV, nowMillis);
+      if (services.isEmpty() || cache.get(instanceName, DnsRecord.TYPE_TXT, nowMillis).isEmpty()) {
+        if (askedNames.add(DnsRecord.nameKey(instanceName))) {
+          questions.add(new DnsMessage.Question(instanceName, DnsRecord.TYPE_SRV));
+          questions.add(new DnsMessage.Question(instanceName, DnsRecord.TYPE_TXT));
+        }
+      }
+      for (DnsRecord service : services) {
+        String hostName = service.getTarget();
+        if (getAddresses(hostName, nowMillis).isEmpty()
+            && askedNames.add(DnsRecord.nameKey(hostName))) {
+          questions.add(new DnsMessage.Question(hostName, DnsRecord.TYPE_A));
+          questions.add(new DnsMessage.Question(hostName, DnsRecord.TYPE_AAAA));
+        }
+      }
+    }
+  }
+
+  private List<DnsSdService> resolve(String serviceType, String typeName) {
+    long nowMillis = now();
+    List<DnsSdService> resolved = new ArrayList<>();
+    for (DnsRecord pointer : cache.get(typeName, DnsRecord.TYPE_PTR, nowMillis)) {
+      String instanceName = pointer.getTarget();
+      List<DnsRecord> services = cache.get(instanceName, DnsRecord.TYPE_SRV, nowMillis);
+      if (services.isEmpty()) {
+        continue;
+      }
+      DnsRecord service = services.get(0);
+      String hostName = service.getTarget();
+      List<InetAddress> addresses = getAddresses(hostName, nowMillis);
+      if (addresses.isEmpty()) {
+        continue;
+      }
+
+      // The TXT record is mandatory, but the instance is usable without it.
+      List<DnsRecord> texts = cache.get(instanceName, DnsRecord.TYPE_TXT, nowMillis);
+      Map<String, byte[]> attributes =
+          texts.isEmpty() ? new LinkedHashMap<String, byte[]>() : texts.get(0).getAttributes();
+      resolved.add(
+          new DnsSdService(
+              firstLabel(instanceName),
+              serviceType,
+              hostName,
+              addresses,
+              service.getPort(),
+              attributes));
+    }
+    return resolved;
+  }
+
+  private List<InetAddress> getAddresses(String hostName, long nowMillis) {
+    List<InetAddress> addresses = new ArrayList<>();
+    for (DnsRecord record : cache.get(hostName, DnsRecord.TYPE_A, nowMillis)) {
+      addresses.add(record.getAddress());
+    }
+    for (DnsRecord record : cache.get(hostName, DnsRecord.TYPE_AAAA, nowMillis)) {
+      addresses.add(record.getAddress());
+    }
+    return addresses;
+  }
+
+  /** Returns the first label of a name, without its escapes. */
+  private static String firstLabel(String name) {
+    StringBuilder label = new StringBuilder();
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '\\' && i + 1 < name.length()) {
+        label.append(name.charAt(++i));
+      } else if (c == '.') {
+        break;
+      } else {
+        label.append(c);
+      }
+    }
+    return label.toString();
+  }
+
+  private static long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  private static InetAddress mdnsGroupAddress(String address) {
+    try {
+      return InetAddress.getByName(address);
+    } catch (IOException e) {
+      // Literal addresses are not looked up.
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller.discovery;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** Service instance resolved by a {@link DnsSdBrowser}. */
+public final class DnsSdService {
+
+  private final String instanceName;
+  private final String serviceType;
+  private final String hostName;
+  private final List<InetAddress> addresses;
+  private final int port;
+  private final Map<String, byte[]> attributes;
+
+  DnsSdService(
+      String instanceName,
+      String serviceType,
+      String hostName,
+      List<InetAddress> addresses,
+      int port,
+      Map<String, byte[]> attributes) {
+    this.instanceName = instanceName;
+    this.serviceType = serviceType;
+    this.hostName = hostName;
+    this.addresses = Collections.unmodifiableList(addresses);
+    this.port = port;
+    this.attributes = Collections.unmodifiableMap(attributes);
+  }
+
+  /** Returns the name of the instance, without its service type and domain. */
+  public String getInstanceName() {
+    return instanceName;
+  }
+
+  /** Returns the service type, such as {@code _meshcop._udp}. */
+  public String getServiceType() {
+    return serviceType;
+  }
+
+  public String getHostName() {
+    return hostName;
+  }
+
+  /** Returns the addresses of the host, of which there is at least one. */
+  public List<InetAddress> getAddresses() {
+    return addresses;
+  }
+
+  public InetAddress getHost() {
+    return addresses.get(0);
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  /**
+   * Returns the attributes of the TXT record of the instance, in their order in the record. Keys
+   * without a value map to an empty array.
+   */
+  public Map<String, byte[]> getAttributes() {
+    return attributes;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s.%s at %s (%s) port %d", instanceName, serviceType, hostName, addresses, port);
+  }
+}
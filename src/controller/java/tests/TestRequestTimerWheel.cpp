@@ -0,0 +1,588 @@
+/*
+ *
+ *    Copyright (c) 2020 Project CHIP Authors
+ *    All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ *    @file
+ *      This file implements a process to effect a functional test for
+ *      the RequestTimerWheel class of the Java device controller
+ *
+ */
+#include "TestControllerJni.h"
+
+#include <RequestTimerWheel.h>
+
+#include <support/CodeUtils.h>
+#include <support/TestUtils.h>
+
+#include <nlunit-test.h>
+
+#include <string.h>
+
+namespace {
+
+using namespace chip;
+using namespace chip::DeviceController;
+
+constexpr uint32_t kTickMS = RequestTimerWheel::GetTickMS();
+
+// The wheel never dereferences the controllers, so any distinct pointers do.
+ChipDeviceController * const kController1 = reinterpret_cast<ChipDeviceController *>(0x1000);
+ChipDeviceController * const kController2 = reinterpret_cast<ChipDeviceController *>(0x2000);
+
+constexpr NodeId kDevice1 = 1;
+constexpr NodeId kDevice2 = 2;
+
+// Requests that are not ZCL commands have no sequence number.
+constexpr int16_t kEcho = kNoSequenceNumber;
+
+// Sequence number of a ZCL command, the only requests retransmitted.
+constexpr int16_t kCommand = 1;
+
+// ZCL frame control values and command IDs of the frames below.
+constexpr uint8_t kClusterCommand          = 0x01;
+constexpr uint8_t kGlobalResponse          = 0x08;
+constexpr uint8_t kManufacturerCommand     = 0x05;
+constexpr uint8_t kOnCommandId             = 0x01;
+constexpr uint8_t kReportAttributesId      = 0x0A;
+constexpr uint8_t kDefaultResponseId       = 0x0B;
+constexpr uint16_t kSequenceNumberOffset   = 14;
+constexpr uint16_t kManufacturerCodeLength = 2;
+
+class TestDelegate : public RequestTimerWheel::Delegate
+{
+public:
+    CHIP_ERROR RetransmitRequest(const PendingRequest & request) override
+    {
+        mRetransmitCount++;
+        mLastRequestId = request.mRequestId;
+        mHadPayload    = request.mPayload != nullptr;
+        return mRetransmitError;
+    }
+
+    void ExpireRequest(const PendingRequest & request, CHIP_ERROR err) override
+    {
+        mExpireCount++;
+        mLastRequestId = request.mRequestId;
+        mLastError     = err;
+    }
+
+    int mRetransmitCount        = 0;
+    int mExpireCount            = 0;
+    uint64_t mLastRequestId     = 0;
+    bool mHadPayload            = false;
+    CHIP_ERROR mLastError       = CHIP_NO_ERROR;
+    CHIP_ERROR mRetransmitError = CHIP_NO_ERROR;
+};
+
+System::PacketBuffer * NewPayload()
+{
+    System::PacketBuffer * payload = System::PacketBuffer::New();
+
+    VerifyOrDie(payload != nullptr);
+    return payload;
+}
+
+System::PacketBuffer * NewMessage(const uint8_t * data, uint16_t length)
+{
+    System::PacketBuffer * message = NewPayload();
+
+    memcpy(message->Start(), data, length);
+    message->SetDataLength(length);
+    return message;
+}
+
+// A ZCL frame as encoded by src/app/encoder.cpp: an APS frame, then the ZCL header.
+System::PacketBuffer * NewZclFrame(uint8_t frameControl, uint8_t sequenceNumber, uint8_t commandId)
+{
+    uint8_t frame[] = {
+        0x00, 0xFF, 0xFF, 0x06, 0x00, 0x01, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, // APS frame
+        0x00, 0x00, 0x00, 0x00, 0x00,                                                 // ZCL header
+    };
+    uint16_t offset = kSequenceNumberOffset;
+
+    frame[offset - 1] = frameControl;
+    if ((frameControl & 0x04) != 0)
+    {
+        offset += kManufacturerCodeLength;
+    }
+    frame[offset]     = sequenceNumber;
+    frame[offset + 1] = commandId;
+
+    return NewMessage(frame, static_cast<uint16_t>(offset + 2));
+}
+
+// Completes the request the given message responds to, as the IO thread does when it receives the message.
+uint64_t Receive(RequestTimerWheel & wheel, ChipDeviceController * controller, NodeId deviceId, System::PacketBuffer * message)
+{
+    uint64_t requestId = wheel.Complete(controller, deviceId, message);
+
+    System::PacketBuffer::Free(message);
+    return requestId;
+}
+
+uint64_t ReceiveEcho(RequestTimerWheel & wheel, ChipDeviceController * controller, NodeId deviceId)
+{
+    static const uint8_t kEchoMessage[] = { 'e', 'c', 'h', 'o' };
+
+    return Receive(wheel, controller, deviceId, NewMessage(kEchoMessage, sizeof(kEchoMessage)));
+}
+
+uint64_t ReceiveResponse(RequestTimerWheel & wheel, NodeId deviceId, uint8_t sequenceNumber)
+{
+    return Receive(wheel, kController1, deviceId, NewZclFrame(kGlobalResponse, sequenceNumber, kDefaultResponseId));
+}
+
+uint64_t ReceiveReport(RequestTimerWheel & wheel, NodeId deviceId, uint8_t sequenceNumber)
+{
+    return Receive(wheel, kController1, deviceId, NewZclFrame(kGlobalResponse, sequenceNumber, kReportAttributesId));
+}
+
+// Numbers and tracks a ZCL command sent to the given device, returning its sequence number.
+int16_t AddCommand(RequestTimerWheel & wheel, NodeId deviceId, uint64_t requestId)
+{
+    System::PacketBuffer * command = NewZclFrame(kClusterCommand, 0, kOnCommandId);
+    int16_t sequenceNumber         = kNoSequenceNumber;
+
+    if (wheel.AssignSequenceNumber(kController1, deviceId, command, sequenceNumber) == CHIP_NO_ERROR &&
+        wheel.Add(kController1, deviceId, requestId, sequenceNumber, nullptr, 0, 0, 0) != CHIP_NO_ERROR)
+    {
+        sequenceNumber = kNoSequenceNumber;
+    }
+
+    System::PacketBuffer::Free(command);
+    return sequenceNumber;
+}
+
+void TestCompleteInSendOrder(nlTestSuite * inSuite, void * inContext)
+{
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+
+    wheel.SetDelegate(&delegate);
+
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 0);
+
+    // A response to a request without a deadline must not complete a later one with a deadline.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 1, kEcho, nullptr, 0, 0, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, !wheel.HasDeadlines());
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 2, kEcho, nullptr, 1000, 0, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.HasDeadlines());
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 3, kEcho, nullptr, 0, 0, 0) == CHIP_NO_ERROR);
+
+    // Requests of other devices and controllers are queued apart.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice2, 4, kEcho, nullptr, 1000, 0, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController2, kDevice1, 5, kEcho, nullptr, 0, 0, 0) == CHIP_NO_ERROR);
+
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 1);
+    NL_TEST_ASSERT(inSuite, wheel.HasDeadlines());
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController2, kDevice1) == 5);
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 2);
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice2) == 4);
+    NL_TEST_ASSERT(inSuite, !wheel.HasDeadlines());
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 3);
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 0);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+
+    // Completed requests are never reported.
+    wheel.Advance(10 * 1000);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 0 && delegate.mExpireCount == 0);
+}
+
+void TestAssignSequenceNumber(nlTestSuite * inSuite, void * inContext)
+{
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+    System::PacketBuffer * message;
+    int16_t sequenceNumber;
+    int16_t first;
+    bool unique = true;
+
+    wheel.SetDelegate(&delegate);
+
+    // The number is written into the command.
+    message = NewZclFrame(kClusterCommand, 0xEE, kOnCommandId);
+    NL_TEST_ASSERT(inSuite, wheel.AssignSequenceNumber(kController1, kDevice1, message, sequenceNumber) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, sequenceNumber != kNoSequenceNumber);
+    NL_TEST_ASSERT(inSuite, message->Start()[kSequenceNumberOffset] == sequenceNumber);
+    System::PacketBuffer::Free(message);
+
+    // After the manufacturer code, if there is one.
+    message = NewZclFrame(kManufacturerCommand, 0xEE, kOnCommandId);
+    NL_TEST_ASSERT(inSuite, wheel.AssignSequenceNumber(kController1, kDevice1, message, sequenceNumber) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, message->Start()[kSequenceNumberOffset + kManufacturerCodeLength] == sequenceNumber);
+    NL_TEST_ASSERT(inSuite, message->Start()[kSequenceNumberOffset] == 0);
+    System::PacketBuffer::Free(message);
+
+    // Echo messages are left alone.
+    message = NewMessage(reinterpret_cast<const uint8_t *>("echo message"), 12);
+    NL_TEST_ASSERT(inSuite, wheel.AssignSequenceNumber(kController1, kDevice1, message, sequenceNumber) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, sequenceNumber == kNoSequenceNumber);
+    NL_TEST_ASSERT(inSuite, memcmp(message->Start(), "echo message", 12) == 0);
+    System::PacketBuffer::Free(message);
+
+    // Every request in flight on a device has its own number, until they are all in use.
+    first = AddCommand(wheel, kDevice1, 1);
+    NL_TEST_ASSERT(inSuite, first != kNoSequenceNumber);
+    for (uint64_t requestId = 2; requestId <= 256; requestId++)
+    {
+        sequenceNumber = AddCommand(wheel, kDevice1, requestId);
+        unique         = unique && sequenceNumber != kNoSequenceNumber && sequenceNumber != first;
+    }
+    NL_TEST_ASSERT(inSuite, unique);
+    NL_TEST_ASSERT(inSuite, AddCommand(wheel, kDevice1, 257) == kNoSequenceNumber);
+
+    // Other devices have numbers of their own.
+    NL_TEST_ASSERT(inSuite, AddCommand(wheel, kDevice2, 258) != kNoSequenceNumber);
+
+    // A completed request gives its number back.
+    NL_TEST_ASSERT(inSuite, ReceiveResponse(wheel, kDevice1, static_cast<uint8_t>(first)) == 1);
+    NL_TEST_ASSERT(inSuite, AddCommand(wheel, kDevice1, 259) == first);
+
+    wheel.RemoveAll(kController1);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+}
+
+void TestCompleteBySequenceNumber(nlTestSuite * inSuite, void * inContext)
+{
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+    int16_t command1;
+    int16_t command2;
+
+    wheel.SetDelegate(&delegate);
+
+    command1 = AddCommand(wheel, kDevice1, 1);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 2, kEcho, nullptr, 0, 0, 0) == CHIP_NO_ERROR);
+    command2 = AddCommand(wheel, kDevice1, 3);
+    NL_TEST_ASSERT(inSuite, command1 != kNoSequenceNumber && command2 != kNoSequenceNumber);
+
+    // A report arriving between a command and its response completes nothing, whatever its number.
+    NL_TEST_ASSERT(inSuite, ReceiveReport(wheel, kDevice1, static_cast<uint8_t>(command1)) == 0);
+    NL_TEST_ASSERT(inSuite, ReceiveReport(wheel, kDevice1, static_cast<uint8_t>(command2)) == 0);
+
+    // Nor does a response to no request in flight, such as a late one.
+    NL_TEST_ASSERT(inSuite, ReceiveResponse(wheel, kDevice1, static_cast<uint8_t>(command2 + 1)) == 0);
+
+    // Nor does a command the device sends on its own, whatever its number.
+    NL_TEST_ASSERT(inSuite,
+                   Receive(wheel, kController1, kDevice1,
+                           NewZclFrame(kClusterCommand, static_cast<uint8_t>(command1), kOnCommandId)) == 0);
+
+    // Responses complete the command with their number, whatever the order.
+    NL_TEST_ASSERT(inSuite, ReceiveResponse(wheel, kDevice1, static_cast<uint8_t>(command2)) == 3);
+    NL_TEST_ASSERT(inSuite, ReceiveResponse(wheel, kDevice1, static_cast<uint8_t>(command2)) == 0);
+
+    // Echo responses complete the echo requests only.
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 2);
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 0);
+    NL_TEST_ASSERT(inSuite, !wheel.IsEmpty());
+
+    NL_TEST_ASSERT(inSuite, ReceiveResponse(wheel, kDevice2, static_cast<uint8_t>(command1)) == 0);
+    NL_TEST_ASSERT(inSuite, ReceiveResponse(wheel, kDevice1, static_cast<uint8_t>(command1)) == 1);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+}
+
+void TestExpire(nlTestSuite * inSuite, void * inContext)
+{
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+
+    wheel.SetDelegate(&delegate);
+
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 1, kEcho, nullptr, 0, 0, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 2, kEcho, nullptr, 2 * kTickMS, 0, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 3, kEcho, nullptr, 4 * kTickMS, 0, 0) == CHIP_NO_ERROR);
+
+    wheel.Advance(2 * kTickMS - 1);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 0);
+
+    wheel.Advance(2 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 1 && delegate.mLastRequestId == 2);
+    NL_TEST_ASSERT(inSuite, delegate.mLastError == CHIP_ERROR_TIMEOUT);
+
+    // The request without a deadline waits for ever, and is still the oldest one.
+    wheel.Advance(10 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 2 && delegate.mLastRequestId == 3);
+    NL_TEST_ASSERT(inSuite, !wheel.HasDeadlines());
+    NL_TEST_ASSERT(inSuite, !wheel.IsEmpty());
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 1);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+
+    // Once idle, the wheel restarts from the time of the next request.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 4, kEcho, nullptr, kTickMS, 0, 100 * kTickMS) == CHIP_NO_ERROR);
+    wheel.Advance(101 * kTickMS - 1);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 2);
+    wheel.Advance(101 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 3 && delegate.mLastRequestId == 4);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+}
+
+void TestRetransmit(nlTestSuite * inSuite, void * inContext)
+{
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+
+    wheel.SetDelegate(&delegate);
+
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 1, kCommand, NewPayload(), 2 * kTickMS, 2, 0) == CHIP_NO_ERROR);
+
+    // The timeout doubles on each retransmission: 2, then 4, then 8 ticks.
+    wheel.Advance(2 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 1 && delegate.mHadPayload);
+
+    wheel.Advance(6 * kTickMS - 1);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 1);
+    wheel.Advance(6 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 2);
+
+    wheel.Advance(14 * kTickMS - 1);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 0);
+    wheel.Advance(14 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 2);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 1 && delegate.mLastError == CHIP_ERROR_TIMEOUT);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+
+    // A request without a payload cannot be retransmitted.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 2, kEcho, nullptr, kTickMS, 2, 14 * kTickMS) == CHIP_NO_ERROR);
+    wheel.Advance(15 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 2 && delegate.mExpireCount == 2);
+
+    // Nor can a request without a deadline, whose payload is freed at once.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 3, kCommand, NewPayload(), 0, 2, 15 * kTickMS) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, !wheel.HasDeadlines());
+    NL_TEST_ASSERT(inSuite, ReceiveResponse(wheel, kDevice1, kCommand) == 3);
+
+    // Nor can a request that is not a ZCL command, whose duplicate responses could not be told apart.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 4, kEcho, NewPayload(), kTickMS, 2, 15 * kTickMS) == CHIP_NO_ERROR);
+    wheel.Advance(16 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 2 && delegate.mExpireCount == 3);
+
+    // A response completes a request being retransmitted, and its duplicates complete nothing.
+    NL_TEST_ASSERT(inSuite,
+                   wheel.Add(kController1, kDevice1, 5, kCommand, NewPayload(), kTickMS, 2, 16 * kTickMS) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 6, kEcho, nullptr, 0, 0, 16 * kTickMS) == CHIP_NO_ERROR);
+    wheel.Advance(17 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 3);
+    NL_TEST_ASSERT(inSuite, ReceiveResponse(wheel, kDevice1, kCommand) == 5);
+    NL_TEST_ASSERT(inSuite, ReceiveResponse(wheel, kDevice1, kCommand) == 0);
+    NL_TEST_ASSERT(inSuite, !wheel.HasDeadlines());
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 6);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+}
+
+void TestRetransmitFailure(nlTestSuite * inSuite, void * inContext)
+{
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+
+    wheel.SetDelegate(&delegate);
+    delegate.mRetransmitError = CHIP_ERROR_NO_MEMORY;
+
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 1, kCommand, NewPayload(), kTickMS, 3, 0) == CHIP_NO_ERROR);
+
+    wheel.Advance(kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 1);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 1 && delegate.mLastError == CHIP_ERROR_NO_MEMORY);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+}
+
+// Advances the wheel tick by tick, as the IO thread does, up to the given time.
+void AdvanceTo(RequestTimerWheel & wheel, uint64_t & nowMS, uint64_t endMS)
+{
+    while (nowMS < endMS)
+    {
+        nowMS += kTickMS;
+        wheel.Advance(nowMS);
+    }
+}
+
+void TestWrapAround(nlTestSuite * inSuite, void * inContext)
+{
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+    uint64_t nowMS = 0;
+
+    wheel.SetDelegate(&delegate);
+
+    // Deadlines more than a turn of the wheel away stay in their slot until their turn.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 1, kEcho, nullptr, 1300 * kTickMS, 0, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice2, 2, kEcho, nullptr, 700 * kTickMS, 0, 0) == CHIP_NO_ERROR);
+
+    AdvanceTo(wheel, nowMS, 699 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 0);
+    AdvanceTo(wheel, nowMS, 700 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 1 && delegate.mLastRequestId == 2);
+
+    AdvanceTo(wheel, nowMS, 1299 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 1);
+    AdvanceTo(wheel, nowMS, 1300 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 2 && delegate.mLastRequestId == 1);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+
+    // A late timer skipping several turns at once expires everything overdue, and nothing else.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 3, kEcho, nullptr, kTickMS, 0, nowMS) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 4, kEcho, nullptr, 900 * kTickMS, 0, nowMS) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 5, kEcho, nullptr, 3000 * kTickMS, 0, nowMS) == CHIP_NO_ERROR);
+
+    wheel.Advance(nowMS + 2000 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 4);
+    NL_TEST_ASSERT(inSuite, wheel.HasDeadlines());
+
+    wheel.Advance(nowMS + 3000 * kTickMS - 1);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 4);
+    wheel.Advance(nowMS + 3000 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 5 && delegate.mLastRequestId == 5);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+}
+
+void TestRetransmitWrapAround(nlTestSuite * inSuite, void * inContext)
+{
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+    uint64_t nowMS = 0;
+
+    wheel.SetDelegate(&delegate);
+
+    // The backoff takes the deadlines past a turn of the wheel: 200, then 400, then 800 ticks.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 1, kCommand, NewPayload(), 200 * kTickMS, 2, 0) == CHIP_NO_ERROR);
+
+    AdvanceTo(wheel, nowMS, 199 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 0);
+    AdvanceTo(wheel, nowMS, 200 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 1);
+
+    AdvanceTo(wheel, nowMS, 599 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 1);
+    AdvanceTo(wheel, nowMS, 600 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 2);
+
+    AdvanceTo(wheel, nowMS, 1399 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 0);
+    AdvanceTo(wheel, nowMS, 1400 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 2);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 1 && delegate.mLastRequestId == 1);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+}
+
+void TestRemoveAll(nlTestSuite * inSuite, void * inContext)
+{
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+
+    wheel.SetDelegate(&delegate);
+
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 1, kCommand, NewPayload(), kTickMS, 1, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 2, kEcho, nullptr, 0, 0, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice2, 3, kCommand, NewPayload(), kTickMS, 1, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController2, kDevice1, 4, kEcho, nullptr, kTickMS, 0, 0) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController2, kDevice2, 5, kEcho, nullptr, 0, 0, 0) == CHIP_NO_ERROR);
+
+    wheel.RemoveAll(kController1, kDevice1);
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 0);
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 6, kEcho, nullptr, 0, 0, 0) == CHIP_NO_ERROR);
+
+    wheel.RemoveAll(kController1);
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice1) == 0);
+    NL_TEST_ASSERT(inSuite, ReceiveEcho(wheel, kController1, kDevice2) == 0);
+    NL_TEST_ASSERT(inSuite, wheel.HasDeadlines());
+
+    // Removed requests are never reported.
+    wheel.Advance(10 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mRetransmitCount == 0);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 1 && delegate.mLastRequestId == 4);
+    NL_TEST_ASSERT(inSuite, !wheel.HasDeadlines());
+
+    wheel.RemoveAll(kController2);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty());
+
+    // The wheel frees the requests still in flight when destroyed.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController1, kDevice1, 7, kCommand, NewPayload(), kTickMS, 1, 0) == CHIP_NO_ERROR);
+}
+
+void TestManyDevices(nlTestSuite * inSuite, void * inContext)
+{
+    constexpr NodeId kDeviceCount       = 1000;
+    constexpr uint64_t kRequestsPerTurn = 3;
+
+    RequestTimerWheel wheel;
+    TestDelegate delegate;
+    bool ordered = true;
+
+    wheel.SetDelegate(&delegate);
+
+    // More devices and requests than a pool block holds, so that the pools and the hash table grow.
+    for (uint64_t turn = 0; turn < kRequestsPerTurn; turn++)
+    {
+        for (NodeId device = 1; device <= kDeviceCount; device++)
+        {
+            uint64_t requestId = device * kRequestsPerTurn + turn;
+            uint32_t timeoutMS = ((device + turn) % 2 == 0) ? 0 : 1000 * kTickMS;
+
+            NL_TEST_ASSERT(inSuite, wheel.Add(kController1, device, requestId, kEcho, nullptr, timeoutMS, 0, 0) == CHIP_NO_ERROR);
+        }
+    }
+
+    for (NodeId device = kDeviceCount; device >= 1; device--)
+    {
+        for (uint64_t turn = 0; turn < kRequestsPerTurn; turn++)
+        {
+            ordered = ordered && ReceiveEcho(wheel, kController1, device) == device * kRequestsPerTurn + turn;
+        }
+        ordered = ordered && ReceiveEcho(wheel, kController1, device) == 0;
+    }
+
+    NL_TEST_ASSERT(inSuite, ordered);
+    NL_TEST_ASSERT(inSuite, wheel.IsEmpty() && !wheel.HasDeadlines());
+
+    // The freed requests and queues are reused.
+    NL_TEST_ASSERT(inSuite, wheel.Add(kController2, kDevice1, 1, kEcho, nullptr, kTickMS, 0, 0) == CHIP_NO_ERROR);
+    wheel.Advance(1000 * kTickMS);
+    NL_TEST_ASSERT(inSuite, delegate.mExpireCount == 1 && delegate.mLastRequestId == 1);
+}
+
+} // namespace
+
+// clang-format off
+static const nlTest sTests[] =
+{
+    NL_TEST_DEF("CompleteInSendOrder", TestCompleteInSendOrder),
+    NL_TEST_DEF("AssignSequenceNumber", TestAssignSequenceNumber),
+    NL_TEST_DEF("CompleteBySequenceNumber", TestCompleteBySequenceNumber),
+    NL_TEST_DEF("Expire", TestExpire),
+    NL_TEST_DEF("Retransmit", TestRetransmit),
+    NL_TEST_DEF("RetransmitFailure", TestRetransmitFailure),
+    NL_TEST_DEF("WrapAround", TestWrapAround),
+    NL_TEST_DEF("RetransmitWrapAround", TestRetransmitWrapAround),
+    NL_TEST_DEF("RemoveAll", TestRemoveAll),
+    NL_TEST_DEF("ManyDevices", TestManyDevices),
+    NL_TEST_SENTINEL()
+};
+// clang-format on
+
+int TestRequestTimerWheel(void)
+{
+    nlTestSuite theSuite = { "ControllerJni-RequestTimerWheel", &sTests[0], NULL, NULL };
+    nlTestRunner(&theSuite, NULL);
+    return nlTestRunnerStats(&theSuite);
+}
+
+static void __attribute__((constructor)) TestRequestTimerWheelCtor(void)
+{
+    VerifyOrDie(RegisterUnitTests(&TestRequestTimerWheel) == CHIP_NO_ERROR);
+}
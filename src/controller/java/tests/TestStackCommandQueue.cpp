@@ -0,0 +1,257 @@
+/*
+ *
+ *    Copyright (c) 2020 Project CHIP Authors
+ *    All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ *    @file
+ *      This file implements a process to effect a functional test for
+ *      the StackCommandQueue class of the Java device controller
+ *
+ */
+#include "TestControllerJni.h"
+
+#include <StackCommandQueue.h>
+
+#include <support/CodeUtils.h>
+#include <support/TestUtils.h>
+
+#include <nlunit-test.h>
+
+#include <atomic>
+#include <pthread.h>
+
+namespace {
+
+using namespace chip;
+using namespace chip::DeviceController;
+
+constexpr int kProducerCount       = 4;
+constexpr int kCommandsPerProducer = 20000;
+constexpr int kProducerBatchSize   = 3;
+constexpr int kTotalCommandCount   = kProducerCount * kCommandsPerProducer;
+
+// Commands of the producers are numbered by producer in mDeviceId, and in the order they are pushed in mRequestId.
+StackCommand * NewCommand(int producer, int sequence)
+{
+    StackCommand * command = new StackCommand(StackCommand::kSendDeviceMessage, nullptr);
+
+    command->mDeviceId  = static_cast<NodeId>(producer);
+    command->mRequestId = static_cast<uint64_t>(sequence);
+    return command;
+}
+
+void TestPushToEmpty(nlTestSuite * inSuite, void * inContext)
+{
+    StackCommandQueue queue;
+    StackCommand * popped;
+
+    NL_TEST_ASSERT(inSuite, queue.PopAll() == nullptr);
+
+    // Only the push onto the empty queue has to wake the consumer up.
+    NL_TEST_ASSERT(inSuite, queue.Push(NewCommand(0, 0)));
+    NL_TEST_ASSERT(inSuite, !queue.Push(NewCommand(0, 1)));
+    NL_TEST_ASSERT(inSuite, !queue.Push(NewCommand(0, 2)));
+
+    popped = queue.PopAll();
+    NL_TEST_ASSERT(inSuite, queue.PopAll() == nullptr);
+
+    for (int sequence = 0; sequence < 3; sequence++)
+    {
+        NL_TEST_ASSERT(inSuite, popped != nullptr && popped->mRequestId == static_cast<uint64_t>(sequence));
+        if (popped == nullptr)
+        {
+            break;
+        }
+
+        StackCommand * next = popped->mNext;
+        delete popped;
+        popped = next;
+    }
+    NL_TEST_ASSERT(inSuite, popped == nullptr);
+
+    // Once drained, the queue is empty again.
+    NL_TEST_ASSERT(inSuite, queue.Push(NewCommand(0, 3)));
+    popped = queue.PopAll();
+    NL_TEST_ASSERT(inSuite, popped != nullptr && popped->mRequestId == 3 && popped->mNext == nullptr);
+    delete popped;
+}
+
+void TestPushBatch(nlTestSuite * inSuite, void * inContext)
+{
+    StackCommandQueue queue;
+    StackCommand * oldest = NewCommand(0, 1);
+    StackCommand * middle = NewCommand(0, 2);
+    StackCommand * newest = NewCommand(0, 3);
+    StackCommand * popped;
+
+    // A batch is linked from its newest command down to its oldest one.
+    newest->mNext = middle;
+    middle->mNext = oldest;
+
+    NL_TEST_ASSERT(inSuite, queue.Push(NewCommand(0, 0)));
+    NL_TEST_ASSERT(inSuite, !queue.Push(newest, oldest));
+    NL_TEST_ASSERT(inSuite, !queue.Push(NewCommand(0, 4)));
+
+    popped = queue.PopAll();
+    for (int sequence = 0; sequence < 5; sequence++)
+    {
+        NL_TEST_ASSERT(inSuite, popped != nullptr && popped->mRequestId == static_cast<uint64_t>(sequence));
+        if (popped == nullptr)
+        {
+            break;
+        }
+
+        StackCommand * next = popped->mNext;
+        delete popped;
+        popped = next;
+    }
+    NL_TEST_ASSERT(inSuite, popped == nullptr);
+}
+
+struct ProducerState
+{
+    StackCommandQueue * mQueue;
+    std::atomic<bool> * mStart;
+    int mProducer;
+    int mWakeUps;
+};
+
+void * ProducerMain(void * arg)
+{
+    ProducerState * state = static_cast<ProducerState *>(arg);
+
+    while (!state->mStart->load())
+    {
+    }
+
+    // Alternate single commands and batches, as the send and batched send methods do.
+    for (int sequence = 0, pushes = 0; sequence < kCommandsPerProducer; pushes++)
+    {
+        StackCommand * oldest = NewCommand(state->mProducer, sequence++);
+        StackCommand * newest = oldest;
+
+        for (int i = 1; (pushes % 2) != 0 && i < kProducerBatchSize && sequence < kCommandsPerProducer; i++)
+        {
+            StackCommand * command = NewCommand(state->mProducer, sequence++);
+            command->mNext         = newest;
+            newest                 = command;
+        }
+
+        if (state->mQueue->Push(newest, oldest))
+        {
+            state->mWakeUps++;
+        }
+    }
+
+    return nullptr;
+}
+
+void TestMultipleProducers(nlTestSuite * inSuite, void * inContext)
+{
+    StackCommandQueue queue;
+    std::atomic<bool> start(false);
+    ProducerState producers[kProducerCount];
+    pthread_t threads[kProducerCount];
+    int nextSequence[kProducerCount] = {};
+    int received                     = 0;
+    int nonEmptyPops                 = 0;
+    int wakeUps                      = 0;
+    bool ordered                     = true;
+
+    for (int i = 0; i < kProducerCount; i++)
+    {
+        producers[i] = { &queue, &start, i, 0 };
+        VerifyOrDie(pthread_create(&threads[i], nullptr, ProducerMain, &producers[i]) == 0);
+    }
+
+    start.store(true);
+
+    // Consume while the producers push, as the IO thread does.
+    while (received < kTotalCommandCount)
+    {
+        StackCommand * command = queue.PopAll();
+
+        if (command != nullptr)
+        {
+            nonEmptyPops++;
+        }
+
+        while (command != nullptr)
+        {
+            StackCommand * next = command->mNext;
+            int producer        = static_cast<int>(command->mDeviceId);
+
+            // The commands of each producer come out in the order it pushed them.
+            if (producer < 0 || producer >= kProducerCount ||
+                command->mRequestId != static_cast<uint64_t>(nextSequence[producer]))
+            {
+                ordered = false;
+            }
+            else
+            {
+                nextSequence[producer]++;
+            }
+
+            received++;
+            delete command;
+            command = next;
+        }
+    }
+
+    for (int i = 0; i < kProducerCount; i++)
+    {
+        VerifyOrDie(pthread_join(threads[i], nullptr) == 0);
+        wakeUps += producers[i].mWakeUps;
+    }
+
+    NL_TEST_ASSERT(inSuite, ordered);
+    NL_TEST_ASSERT(inSuite, received == kTotalCommandCount);
+    NL_TEST_ASSERT(inSuite, queue.PopAll() == nullptr);
+
+    for (int i = 0; i < kProducerCount; i++)
+    {
+        NL_TEST_ASSERT(inSuite, nextSequence[i] == kCommandsPerProducer);
+    }
+
+    // Every push onto the empty queue is followed by exactly one PopAll() that empties it, so
+    // the consumer is woken up once per batch it takes, and never misses one.
+    NL_TEST_ASSERT(inSuite, wakeUps == nonEmptyPops);
+}
+
+} // namespace
+
+// clang-format off
+static const nlTest sTests[] =
+{
+    NL_TEST_DEF("PushToEmpty", TestPushToEmpty),
+    NL_TEST_DEF("PushBatch", TestPushBatch),
+    NL_TEST_DEF("MultipleProducers", TestMultipleProducers),
+    NL_TEST_SENTINEL()
+};
+// clang-format on
+
+int TestStackCommandQueue(void)
+{
+    nlTestSuite theSuite = { "ControllerJni-StackCommandQueue", &sTests[0], NULL, NULL };
+    nlTestRunner(&theSuite, NULL);
+    return nlTestRunnerStats(&theSuite);
+}
+
+static void __attribute__((constructor)) TestStackCommandQueueCtor(void)
+{
+    VerifyOrDie(RegisterUnitTests(&TestStackCommandQueue) == CHIP_NO_ERROR);
+}
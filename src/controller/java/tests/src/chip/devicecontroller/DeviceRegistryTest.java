@@ -0,0 +1,329 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeviceRegistryTest {
+
+  // Layout of the registry file, which the tests edit to damage records as a crash or an attacker
+  // would. It is that of format version 1, see DeviceRegistry.
+  private static final int HEADER_SIZE = 64;
+  private static final int SLOT_SIZE = 256;
+  private static final int SLOT_CRC = 0;
+  private static final int SLOT_STATE = 4;
+  private static final int SLOT_SESSION_LENGTH = 22;
+  private static final int SLOT_ADDRESS = 24;
+  private static final int SLOT_SESSION = 40;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private static final SecretKey KEY = key((byte) 1);
+
+  private Path file;
+
+  @Before
+  public void createFile() throws IOException {
+    file = Files.createTempFile("DeviceRegistryTest", ".reg");
+    Files.delete(file);
+  }
+
+  @After
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void reopenKeepsDevices() throws IOException {
+    DeviceRecord ipv4 =
+        new DeviceRecord(1, InetAddress.getByName("192.168.1.10"), 11097, 0xFFF1, 0x8001, 0xF00);
+    DeviceRecord ipv6 = new DeviceRecord(2, InetAddress.getByName("fe80::1"), 5540, 1, 2, 3);
+    DeviceRecord noAddress = new DeviceRecord(-1L, null, 0, 0, 0, 0);
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      registry.putDevice(ipv4);
+      registry.putDevice(ipv6);
+      registry.putDevice(noAddress);
+    }
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      assertEquals(3, registry.size());
+      assertRecordEquals(ipv4, registry.getDevice(1));
+      assertRecordEquals(ipv6, registry.getDevice(2));
+      assertRecordEquals(noAddress, registry.getDevice(-1L));
+      assertNull(registry.getDevice(3));
+
+      List<Long> nodeIds = new ArrayList<>();
+      registry.forEach(record -> nodeIds.add(record.getNodeId()));
+      assertEquals(3, nodeIds.size());
+      assertEquals(1L, (long) nodeIds.get(0));
+      assertEquals(2L, (long) nodeIds.get(1));
+      assertEquals(-1L, (long) nodeIds.get(2));
+    }
+  }
+
+  @Test
+  public void reopenAfterRemoveDevice() throws IOException {
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      registry.putDevice(device(1));
+      registry.putDevice(device(2));
+      registry.store(1, new byte[] {1, 2, 3});
+      assertTrue(registry.removeDevice(1));
+      assertFalse(registry.removeDevice(1));
+    }
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      assertEquals(1, registry.size());
+      assertNull(registry.getDevice(1));
+      assertNull(registry.load(1));
+      assertRecordEquals(device(2), registry.getDevice(2));
+
+      // The freed record is taken again, without growing the file.
+      long length = Files.size(file);
+      registry.putDevice(device(3));
+      assertEquals(length, Files.size(file));
+      assertRecordEquals(device(3), registry.getDevice(3));
+    }
+  }
+
+  @Test
+  public void reopenAfterStore() throws IOException {
+    byte[] pairing = pairing(100);
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      registry.putDevice(device(1));
+      registry.store(1, pairing);
+      // Storing for an unknown device adds it with no address.
+      registry.store(2, pairing(10));
+      // Replacing the device keeps its pairing.
+      registry.putDevice(device(1));
+    }
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      assertArrayEquals(pairing, registry.load(1));
+      assertArrayEquals(pairing(10), registry.load(2));
+      assertNull(registry.getDevice(2).getAddress());
+      assertEquals(ChipDeviceController.DEFAULT_PORT, registry.getDevice(2).getPort());
+
+      registry.remove(1);
+    }
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      assertNull(registry.load(1));
+      assertRecordEquals(device(1), registry.getDevice(1));
+      assertArrayEquals(pairing(10), registry.load(2));
+    }
+  }
+
+  @Test
+  public void storeRejectsPairingTooLong() throws IOException {
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      registry.store(1, pairing(DeviceRegistry.MAX_SESSION_LENGTH));
+      assertThrows(
+          IOException.class,
+          () -> registry.store(1, pairing(DeviceRegistry.MAX_SESSION_LENGTH + 1)));
+      assertArrayEquals(pairing(DeviceRegistry.MAX_SESSION_LENGTH), registry.load(1));
+    }
+  }
+
+  @Test
+  public void corruptedRecordIsDropped() throws IOException {
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      registry.putDevice(device(1));
+      registry.putDevice(device(2));
+      registry.store(2, pairing(32));
+    }
+
+    // Flip a bit of the address of the first device, as a write torn by a crash would.
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      long position = slotOffset(0) + SLOT_ADDRESS;
+      raf.seek(position);
+      int b = raf.read();
+      raf.seek(position);
+      raf.write(b ^ 0x01);
+    }
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      assertEquals(1, registry.size());
+      assertNull(registry.getDevice(1));
+      assertNull(registry.load(1));
+      assertRecordEquals(device(2), registry.getDevice(2));
+      assertArrayEquals(pairing(32), registry.load(2));
+
+      registry.putDevice(device(1));
+    }
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      assertEquals(2, registry.size());
+      assertRecordEquals(device(1), registry.getDevice(1));
+    }
+  }
+
+  @Test
+  public void growsPastInitialCapacity() throws IOException {
+    int count = INITIAL_CAPACITY + 1;
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      assertEquals(HEADER_SIZE + (long) INITIAL_CAPACITY * SLOT_SIZE, Files.size(file));
+      for (int nodeId = 0; nodeId < count; nodeId++) {
+        registry.putDevice(device(nodeId));
+      }
+      registry.store(count - 1, pairing(20));
+      assertTrue(Files.size(file) > HEADER_SIZE + (long) INITIAL_CAPACITY * SLOT_SIZE);
+    }
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      assertEquals(count, registry.size());
+      for (int nodeId = 0; nodeId < count; nodeId++) {
+        assertRecordEquals(device(nodeId), registry.getDevice(nodeId));
+      }
+      assertArrayEquals(pairing(20), registry.load(count - 1));
+    }
+  }
+
+  @Test
+  public void pairingSealedForAnotherDeviceFailsToLoad() throws IOException {
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      registry.store(1, pairing(48));
+      registry.store(2, pairing(16));
+    }
+
+    // Move the pairing of the first device into the record of the second one, with a valid CRC, so
+    // that only the encryption tells them apart.
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      byte[] first = readSlot(raf, 0);
+      byte[] second = readSlot(raf, 1);
+      int sealedLength =
+          ByteBuffer.wrap(first).order(ByteOrder.LITTLE_ENDIAN).getShort(SLOT_SESSION_LENGTH);
+
+      System.arraycopy(first, SLOT_SESSION_LENGTH, second, SLOT_SESSION_LENGTH, 2);
+      System.arraycopy(first, SLOT_SESSION, second, SLOT_SESSION, SLOT_SIZE - SLOT_SESSION);
+      CRC32 crc = new CRC32();
+      crc.update(second, SLOT_STATE, SLOT_SESSION + sealedLength - SLOT_STATE);
+      ByteBuffer.wrap(second).order(ByteOrder.LITTLE_ENDIAN).putInt(SLOT_CRC, (int) crc.getValue());
+
+      raf.seek(slotOffset(1));
+      raf.write(second);
+    }
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      assertEquals(2, registry.size());
+      assertArrayEquals(pairing(48), registry.load(1));
+      assertThrows(IOException.class, () -> registry.load(2));
+    }
+  }
+
+  @Test
+  public void pairingFailsToLoadUnderAnotherKey() throws IOException {
+    try (DeviceRegistry registry = new DeviceRegistry(file, KEY)) {
+      registry.store(1, pairing(16));
+    }
+
+    try (DeviceRegistry registry = new DeviceRegistry(file, key((byte) 2))) {
+      assertNotNull(registry.getDevice(1));
+      assertThrows(IOException.class, () -> registry.load(1));
+    }
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws IOException {
+    Files.write(file, new byte[HEADER_SIZE + SLOT_SIZE]);
+    assertThrows(IOException.class, () -> new DeviceRegistry(file, KEY));
+
+    Files.write(file, new byte[] {1, 2, 3});
+    assertThrows(IOException.class, () -> new DeviceRegistry(file, KEY));
+  }
+
+  @Test
+  public void closedRegistryThrows() throws IOException {
+    DeviceRegistry registry = new DeviceRegistry(file, KEY);
+    registry.close();
+    registry.close();
+    assertThrows(IllegalStateException.class, () -> registry.getDevice(1));
+    assertThrows(IllegalStateException.class, () -> registry.store(1, pairing(1)));
+  }
+
+  private static DeviceRecord device(long nodeId) throws IOException {
+    byte[] address = {10, 0, (byte) (nodeId >> 8), (byte) nodeId};
+    return new DeviceRecord(
+        nodeId,
+        InetAddress.getByAddress(address),
+        5540,
+        (int) (nodeId & 0xFFFF),
+        0x8000,
+        (int) (nodeId & 0xFFF));
+  }
+
+  private static byte[] pairing(int length) {
+    byte[] pairing = new byte[length];
+    for (int i = 0; i < length; i++) {
+      pairing[i] = (byte) (i * 31 + length);
+    }
+    return pairing;
+  }
+
+  private static SecretKey key(byte seed) {
+    byte[] key = new byte[16];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = (byte) (seed + i);
+    }
+    return new SecretKeySpec(key, "AES");
+  }
+
+  private static long slotOffset(int slot) {
+    return HEADER_SIZE + (long) slot * SLOT_SIZE;
+  }
+
+  private static byte[] readSlot(RandomAccessFile raf, int slot) throws IOException {
+    byte[] bytes = new byte[SLOT_SIZE];
+    raf.seek(slotOffset(slot));
+    raf.readFully(bytes);
+    return bytes;
+  }
+
+  private static void assertRecordEquals(DeviceRecord expected, DeviceRecord actual) {
+    assertNotNull(actual);
+    assertEquals(expected.getNodeId(), actual.getNodeId());
+    assertEquals(expected.getAddress(), actual.getAddress());
+    assertEquals(expected.getPort(), actual.getPort());
+    assertEquals(expected.getVendorId(), actual.getVendorId());
+    assertEquals(expected.getProductId(), actual.getProductId());
+    assertEquals(expected.getDiscriminator(), actual.getDiscriminator());
+  }
+}
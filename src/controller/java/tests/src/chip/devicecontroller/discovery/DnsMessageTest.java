@@ -0,0 +1,464 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.devicecontroller.discovery;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class DnsMessageTest {
+
+  private static final int HEADER_LENGTH = 12;
+  private static final int FLAG_RESPONSE = 0x8000;
+
+  private static final String TYPE_NAME = "_chip._udp.local";
+  private static final String INSTANCE_NAME = "dev1._chip._udp.local";
+
+  @Test
+  public void readsCompressedNames() throws Exception {
+    Message message = new Message(FLAG_RESPONSE, 0, 3);
+
+    // PTR _chip._udp.local -> dev1 + pointer to _chip._udp.local.
+    int typeName = message.position();
+    message.labels("_chip", "_udp", "local").end();
+    int local = typeName + 1 + "_chip".length() + 1 + "_udp".length();
+    message.recordHeader(DnsRecord.TYPE_PTR, DnsRecord.CLASS_IN, 4500);
+    int ptrData = message.beginData();
+    int instanceName = message.position();
+    message.labels("dev1").pointer(typeName);
+    message.endData(ptrData);
+
+    // SRV pointer to dev1._chip._udp.local -> host + pointer to local.
+    message.pointer(instanceName);
+    message.recordHeader(DnsRecord.TYPE_SRV, DnsRecord.CLASS_IN | DnsRecord.CACHE_FLUSH, 120);
+    int srvData = message.beginData();
+    message.u16(0).u16(0).u16(11097);
+    int hostName = message.position();
+    message.labels("host").pointer(local);
+    message.endData(srvData);
+
+    // A pointer to host.local.
+    message.pointer(hostName);
+    message.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN | DnsRecord.CACHE_FLUSH, 120);
+    int aData = message.beginData();
+    message.bytes(new byte[] {(byte) 192, (byte) 168, 1, 10});
+    message.endData(aData);
+
+    List<DnsRecord> records = DnsMessage.readResponse(message.buffer());
+    assertEquals(3, records.size());
+
+    DnsRecord pointer = records.get(0);
+    assertEquals(TYPE_NAME, pointer.name);
+    assertEquals(DnsRecord.TYPE_PTR, pointer.type);
+    assertFalse(pointer.cacheFlush);
+    assertEquals(4500, pointer.ttlSeconds);
+    assertEquals(INSTANCE_NAME, pointer.getTarget());
+    // The data is kept uncompressed, to be sent back as a known answer.
+    assertArrayEquals(DnsMessage.encodeName(INSTANCE_NAME), pointer.data);
+
+    DnsRecord service = records.get(1);
+    assertEquals(INSTANCE_NAME, service.name);
+    assertEquals(DnsRecord.TYPE_SRV, service.type);
+    assertTrue(service.cacheFlush);
+    assertEquals("host.local", service.getTarget());
+    assertEquals(11097, service.getPort());
+
+    DnsRecord address = records.get(2);
+    assertEquals("host.local", address.name);
+    assertEquals(InetAddress.getByName("192.168.1.10"), address.getAddress());
+  }
+
+  @Test
+  public void skipsQuestionsAndOtherRecords() throws Exception {
+    Message message = new Message(FLAG_RESPONSE, 1, 3);
+    message.labels("_chip", "_udp", "local").end().u16(DnsRecord.TYPE_PTR).u16(DnsRecord.CLASS_IN);
+
+    // Another type, another class, then a record that is kept.
+    message.labels("host", "local").end();
+    message.recordHeader(47, DnsRecord.CLASS_IN, 120);
+    message.endData(message.beginData());
+    message.labels("host", "local").end();
+    message.recordHeader(DnsRecord.TYPE_A, 3, 120);
+    int chaosData = message.beginData();
+    message.bytes(new byte[4]);
+    message.endData(chaosData);
+    message.labels("host", "local").end();
+    message.recordHeader(DnsRecord.TYPE_TXT, DnsRecord.CLASS_IN, 4500);
+    int txtData = message.beginData();
+    message.bytes(new byte[] {3, 'a', '=', 'b'});
+    message.endData(txtData);
+
+    List<DnsRecord> records = DnsMessage.readResponse(message.buffer());
+    assertEquals(1, records.size());
+    assertEquals(DnsRecord.TYPE_TXT, records.get(0).type);
+    assertArrayEquals(
+        "b".getBytes(StandardCharsets.UTF_8), records.get(0).getAttributes().get("a"));
+
+    // Queries have no records to read.
+    Message query = new Message(0, 0, 1);
+    query.labels("host", "local").end();
+    query.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    int queryData = query.beginData();
+    query.bytes(new byte[4]);
+    query.endData(queryData);
+    assertTrue(DnsMessage.readResponse(query.buffer()).isEmpty());
+  }
+
+  @Test
+  public void rejectsForwardPointer() {
+    Message message = new Message(FLAG_RESPONSE, 0, 1);
+    int name = message.position();
+    message.pointer(name + 2).labels("host").end();
+    message.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    message.endData(message.beginData());
+
+    assertMalformed(message);
+  }
+
+  @Test
+  public void rejectsSelfPointer() {
+    Message message = new Message(FLAG_RESPONSE, 0, 1);
+    message.pointer(message.position());
+    message.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    message.endData(message.beginData());
+
+    assertMalformed(message);
+  }
+
+  @Test
+  public void rejectsLoopThroughData() {
+    // The name of the PTR record points to its target, which points back to the name: following
+    // both would never end, which rejecting pointers that do not go back prevents.
+    Message message = new Message(FLAG_RESPONSE, 0, 1);
+    int name = message.position();
+    int target = name + 2 + 10;
+    message.pointer(target);
+    message.recordHeader(DnsRecord.TYPE_PTR, DnsRecord.CLASS_IN, 120);
+    int data = message.beginData();
+    message.pointer(name);
+    message.endData(data);
+
+    assertMalformed(message);
+  }
+
+  @Test
+  public void rejectsLabelTooLong() {
+    Message message = new Message(FLAG_RESPONSE, 0, 1);
+    message.label(new byte[64]).end();
+    message.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    message.endData(message.beginData());
+    assertMalformed(message);
+
+    // Label lengths with only the second top bit set are reserved.
+    Message reserved = new Message(FLAG_RESPONSE, 0, 1);
+    reserved.u8(0x80).u8(0).end();
+    reserved.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    reserved.endData(reserved.beginData());
+    assertMalformed(reserved);
+
+    assertThrows(IllegalArgumentException.class, () -> DnsMessage.encodeName(repeat('a', 64)));
+  }
+
+  @Test
+  public void rejectsNameTooLong() throws Exception {
+    // Three labels of 63 bytes and one of 61 take 255 bytes with the lengths and the final 0, the
+    // longest name allowed.
+    String longest = repeat('a', 63) + '.' + repeat('b', 63) + '.' + repeat('c', 63) + '.';
+    assertEquals(255, DnsMessage.encodeName(longest + repeat('d', 61)).length);
+    assertThrows(
+        IllegalArgumentException.class, () -> DnsMessage.encodeName(longest + repeat('d', 62)));
+
+    assertEquals(longest + repeat('d', 61), readAddressName(longest + repeat('d', 61)));
+    assertThrows(ProtocolException.class, () -> readAddressName(longest + repeat('d', 62)));
+
+    // A name can also grow too long through a pointer to another one.
+    Message message = new Message(FLAG_RESPONSE, 0, 2);
+    int first = message.position();
+    message.label(repeat('a', 63)).label(repeat('b', 63)).label(repeat('c', 63)).end();
+    message.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    int firstData = message.beginData();
+    message.bytes(new byte[4]);
+    message.endData(firstData);
+    message.label(repeat('d', 63)).pointer(first);
+    message.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    int secondData = message.beginData();
+    message.bytes(new byte[4]);
+    message.endData(secondData);
+    assertMalformed(message);
+  }
+
+  @Test
+  public void rejectsTruncatedMessages() {
+    assertMalformed(ByteBuffer.wrap(new byte[HEADER_LENGTH - 1]));
+
+    // A record whose data goes past the end of the message.
+    Message truncatedData = new Message(FLAG_RESPONSE, 0, 1);
+    truncatedData.labels("host", "local").end();
+    truncatedData.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    truncatedData.u16(4).bytes(new byte[2]);
+    assertMalformed(truncatedData);
+
+    // A record cut in its fixed fields, and a name without its final 0.
+    Message truncatedRecord = new Message(FLAG_RESPONSE, 0, 1);
+    truncatedRecord.labels("host", "local").end().u16(DnsRecord.TYPE_A).u16(DnsRecord.CLASS_IN);
+    assertMalformed(truncatedRecord);
+    Message truncatedName = new Message(FLAG_RESPONSE, 0, 1);
+    truncatedName.labels("host", "local");
+    assertMalformed(truncatedName);
+
+    // More records than the message holds.
+    Message missingRecord = new Message(FLAG_RESPONSE, 0, 2);
+    missingRecord.labels("host", "local").end();
+    missingRecord.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    int data = missingRecord.beginData();
+    missingRecord.bytes(new byte[4]);
+    missingRecord.endData(data);
+    assertMalformed(missingRecord);
+  }
+
+  @Test
+  public void rejectsDataLongerThanRecord() {
+    // The address of an A record has to fill its data exactly.
+    Message address = new Message(FLAG_RESPONSE, 0, 1);
+    address.labels("host", "local").end();
+    address.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    int addressData = address.beginData();
+    address.bytes(new byte[16]);
+    address.endData(addressData);
+    assertMalformed(address);
+
+    // The target of a PTR record running past the data into the next record.
+    Message pointer = new Message(FLAG_RESPONSE, 0, 1);
+    pointer.labels("_chip", "_udp", "local").end();
+    pointer.recordHeader(DnsRecord.TYPE_PTR, DnsRecord.CLASS_IN, 120);
+    pointer.u16(2).labels("dev1").end();
+    assertMalformed(pointer);
+
+    // A SRV record too short for its port.
+    Message service = new Message(FLAG_RESPONSE, 0, 1);
+    service.labels("dev1", "_chip", "_udp", "local").end();
+    service.recordHeader(DnsRecord.TYPE_SRV, DnsRecord.CLASS_IN, 120);
+    service.u16(4).u16(0).u16(0).u16(11097).labels("host", "local").end();
+    assertMalformed(service);
+  }
+
+  @Test
+  public void escapesDotsInLabels() throws Exception {
+    String name = "My\\.Device\\\\1." + TYPE_NAME;
+    byte[] encoded = DnsMessage.encodeName(name);
+    assertEquals(11, encoded[0]);
+    assertEquals("My.Device\\1", new String(encoded, 1, 11, StandardCharsets.UTF_8));
+    assertEquals(name, DnsMessage.readName(ByteBuffer.wrap(encoded)));
+  }
+
+  @Test
+  public void knownAnswersRoundTrip() throws Exception {
+    Message response = new Message(FLAG_RESPONSE, 0, 1);
+    response.labels("_chip", "_udp", "local").end();
+    response.recordHeader(DnsRecord.TYPE_PTR, DnsRecord.CLASS_IN, 4500);
+    int data = response.beginData();
+    response.labels("dev1", "_chip", "_udp", "local").end();
+    response.endData(data);
+
+    long receivedAtMillis = 1000000;
+    DnsRecordCache cache = new DnsRecordCache();
+    for (DnsRecord record : DnsMessage.readResponse(response.buffer())) {
+      cache.add(record, receivedAtMillis);
+    }
+
+    // With more than half of its TTL left, the record goes back as a known answer, with the TTL it
+    // has left.
+    long nowMillis = receivedAtMillis + TimeUnit.SECONDS.toMillis(1000);
+    List<DnsRecord> knownAnswers = cache.getKnownAnswers(TYPE_NAME, DnsRecord.TYPE_PTR, nowMillis);
+    assertEquals(1, knownAnswers.size());
+
+    ByteBuffer query = ByteBuffer.allocate(DnsMessage.MAX_LENGTH);
+    DnsMessage.writeQuery(
+        query,
+        Collections.singletonList(new DnsMessage.Question(TYPE_NAME, DnsRecord.TYPE_PTR)),
+        knownAnswers);
+    query.flip();
+    assertEquals(0, query.getShort(2));
+    assertEquals(1, query.getShort(4));
+    assertEquals(1, query.getShort(6));
+    // The query is not a response: make it one to read its answers back.
+    assertTrue(DnsMessage.readResponse(query.duplicate()).isEmpty());
+    query.putShort(2, (short) FLAG_RESPONSE);
+
+    List<DnsRecord> answers = DnsMessage.readResponse(query);
+    assertEquals(1, answers.size());
+    assertTrue(answers.get(0).sameAs(knownAnswers.get(0)));
+    assertEquals(INSTANCE_NAME, answers.get(0).getTarget());
+    assertEquals(3500, answers.get(0).ttlSeconds);
+
+    // Re-adding the answer refreshes the record rather than adding another one.
+    cache.add(answers.get(0), nowMillis);
+    assertEquals(1, cache.get(TYPE_NAME, DnsRecord.TYPE_PTR, nowMillis).size());
+
+    // Past half of its TTL, the record is no longer a known answer, so that the responders send
+    // it again before it expires.
+    long laterMillis = nowMillis + TimeUnit.SECONDS.toMillis(1800);
+    assertTrue(cache.getKnownAnswers(TYPE_NAME, DnsRecord.TYPE_PTR, laterMillis).isEmpty());
+    assertEquals(1, cache.get(TYPE_NAME, DnsRecord.TYPE_PTR, laterMillis).size());
+  }
+
+  @Test
+  public void leavesOutKnownAnswersThatDoNotFit() throws Exception {
+    DnsRecord first = pointerRecord("a." + TYPE_NAME);
+    DnsRecord second = pointerRecord("b." + TYPE_NAME);
+    List<DnsMessage.Question> questions =
+        Collections.singletonList(new DnsMessage.Question(TYPE_NAME, DnsRecord.TYPE_PTR));
+    int questionLength = DnsMessage.encodeName(TYPE_NAME).length + 4;
+    int answerLength = DnsMessage.encodeName(TYPE_NAME).length + 10 + first.data.length;
+
+    ByteBuffer query = ByteBuffer.allocate(HEADER_LENGTH + questionLength + answerLength + 1);
+    DnsMessage.writeQuery(query, questions, Arrays.asList(first, second));
+    query.flip();
+    assertEquals(HEADER_LENGTH + questionLength + answerLength, query.remaining());
+    assertEquals(1, query.getShort(6));
+
+    query.putShort(2, (short) FLAG_RESPONSE);
+    List<DnsRecord> answers = DnsMessage.readResponse(query);
+    assertEquals(1, answers.size());
+    assertTrue(answers.get(0).sameAs(first));
+  }
+
+  private static DnsRecord pointerRecord(String target) {
+    return new DnsRecord(TYPE_NAME, DnsRecord.TYPE_PTR, false, 4500, DnsMessage.encodeName(target));
+  }
+
+  private static String readAddressName(String name) throws ProtocolException {
+    // Written label by label, so that the checks of the encoder do not stand in the way.
+    Message exact = new Message(FLAG_RESPONSE, 0, 1);
+    for (String label : name.split("\\.")) {
+      exact.label(label);
+    }
+    exact.end();
+    exact.recordHeader(DnsRecord.TYPE_A, DnsRecord.CLASS_IN, 120);
+    int data = exact.beginData();
+    exact.bytes(new byte[4]);
+    exact.endData(data);
+    return DnsMessage.readResponse(exact.buffer()).get(0).name;
+  }
+
+  private static void assertMalformed(Message message) {
+    assertMalformed(message.buffer());
+  }
+
+  private static void assertMalformed(ByteBuffer message) {
+    assertThrows(ProtocolException.class, () -> DnsMessage.readResponse(message));
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  /** Writes DNS messages byte by byte, so that they can be as malformed as the tests need. */
+  private static final class Message {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    Message(int flags, int questions, int records) {
+      u16(0).u16(flags).u16(questions).u16(records).u16(0).u16(0);
+    }
+
+    int position() {
+      return bytes.size();
+    }
+
+    Message u8(int value) {
+      bytes.write(value);
+      return this;
+    }
+
+    Message u16(int value) {
+      return u8(value >> 8).u8(value);
+    }
+
+    Message u32(long value) {
+      return u16((int) (value >> 16)).u16((int) value);
+    }
+
+    Message bytes(byte[] value) {
+      bytes.write(value, 0, value.length);
+      return this;
+    }
+
+    Message label(byte[] label) {
+      return u8(label.length).bytes(label);
+    }
+
+    Message label(String label) {
+      return label(label.getBytes(StandardCharsets.UTF_8));
+    }
+
+    Message labels(String... labels) {
+      for (String label : labels) {
+        label(label);
+      }
+      return this;
+    }
+
+    Message end() {
+      return u8(0);
+    }
+
+    Message pointer(int offset) {
+      return u16(0xC000 | offset);
+    }
+
+    /** Writes the type, class and TTL of a record, after its name. */
+    Message recordHeader(int type, int recordClass, long ttlSeconds) {
+      return u16(type).u16(recordClass).u32(ttlSeconds);
+    }
+
+    /** Writes a placeholder for the data length, and returns where the data starts. */
+    int beginData() {
+      u16(0);
+      return position();
+    }
+
+    /** Sets the data length of the record whose data started at the given position. */
+    void endData(int start) {
+      byte[] written = bytes.toByteArray();
+      int length = written.length - start;
+      written[start - 2] = (byte) (length >> 8);
+      written[start - 1] = (byte) length;
+      bytes.reset();
+      bytes.write(written, 0, written.length);
+    }
+
+    ByteBuffer buffer() {
+      return ByteBuffer.wrap(bytes.toByteArray());
+    }
+  }
+}
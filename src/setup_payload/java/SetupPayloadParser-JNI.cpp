@@ -1,6 +1,9 @@
 #include "ManualSetupPayloadParser.h"
 #include "QRCodeSetupPayloadParser.h"
 
+#include <support/CodeUtils.h>
+
+#include <string>
 #include <vector>
 
 #include <jni.h>
@@ -9,115 +12,309 @@ using namespace chip;
 
 #define JNI_METHOD(RETURN, METHOD_NAME) extern "C" JNIEXPORT RETURN JNICALL Java_chip_setuppayload_SetupPayloadParser_##METHOD_NAME
 
-static jobject TransformSetupPayload(JNIEnv * env, SetupPayload & payload);
+#define SPP_JNI_ERROR_MIN 11000
+#define SPP_JNI_ERROR_MAX 11999
 
-JNI_METHOD(jobject, fetchPayloadFromQrCode)(JNIEnv * env, jobject self, jstring qrCodeObj)
+#define _SPP_JNI_ERROR(e) (SPP_JNI_ERROR_MIN + (e))
+
+#define SPP_JNI_ERROR_EXCEPTION_THROWN _SPP_JNI_ERROR(0)
+#define SPP_JNI_ERROR_TYPE_NOT_FOUND _SPP_JNI_ERROR(1)
+#define SPP_JNI_ERROR_METHOD_NOT_FOUND _SPP_JNI_ERROR(2)
+#define SPP_JNI_ERROR_FIELD_NOT_FOUND _SPP_JNI_ERROR(3)
+
+#define OPTIONAL_QR_CODE_INFO_TYPE_SIG "Lchip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType;"
+
+static CHIP_ERROR GetClassRef(JNIEnv * env, const char * clsType, jclass & outCls);
+static CHIP_ERROR GetFieldID(JNIEnv * env, jclass cls, const char * name, const char * sig, jfieldID & outFieldID);
+static CHIP_ERROR GetOptionalInfoTypeRef(JNIEnv * env, jclass typeCls, const char * name, optionalQRCodeInfoType type);
+static CHIP_ERROR J2N_String(JNIEnv * env, jstring stringObj, std::string & outString);
+static CHIP_ERROR N2J_SetupPayload(JNIEnv * env, SetupPayload & payload, jobject & outPayload);
+static CHIP_ERROR N2J_OptionalQRCodeInfo(JNIEnv * env, const OptionalQRCodeInfo & info, jobject & outInfo);
+
+// Classes, methods and fields used on every parse, looked up once when the library is loaded.
+static jclass sSetupPayloadCls                    = NULL;
+static jclass sOptionalQRCodeInfoCls              = NULL;
+static jmethodID sSetupPayloadConstructorID       = NULL;
+static jmethodID sOptionalQRCodeInfoConstructorID = NULL;
+static jmethodID sAddOptionalQRCodeInfoMethodID   = NULL;
+static jfieldID sVersionFieldID                   = NULL;
+static jfieldID sVendorIdFieldID                  = NULL;
+static jfieldID sProductIdFieldID                 = NULL;
+static jfieldID sRequiresCustomFlowFieldID        = NULL;
+static jfieldID sRendezvousInformationFieldID     = NULL;
+static jfieldID sDiscriminatorFieldID             = NULL;
+static jfieldID sSetupPinCodeFieldID              = NULL;
+static jfieldID sOptionalInfoTagFieldID           = NULL;
+static jfieldID sOptionalInfoTypeFieldID          = NULL;
+static jfieldID sOptionalInfoDataFieldID          = NULL;
+static jfieldID sOptionalInfoInt32FieldID         = NULL;
+static jobject sOptionalInfoTypes[optionalQRCodeInfoTypeUInt64 + 1];
+
+jint JNI_OnLoad(JavaVM * jvm, void * reserved)
 {
-    CHIP_ERROR err;
-    const char * qrString                      = NULL;
-    QRCodeSetupPayloadParser * qrPayloadParser = NULL;
-    SetupPayload payload;
+    CHIP_ERROR err   = CHIP_NO_ERROR;
+    JNIEnv * env     = NULL;
+    jclass enumClass = NULL;
+
+    VerifyOrExit(jvm->GetEnv((void **) &env, JNI_VERSION_1_6) == JNI_OK, err = SPP_JNI_ERROR_EXCEPTION_THROWN);
 
-    qrString        = env->GetStringUTFChars(qrCodeObj, 0);
-    qrPayloadParser = new QRCodeSetupPayloadParser(qrString);
+    err = GetClassRef(env, "chip/setuppayload/SetupPayload", sSetupPayloadCls);
+    SuccessOrExit(err);
+    err = GetClassRef(env, "chip/setuppayload/OptionalQRCodeInfo", sOptionalQRCodeInfoCls);
+    SuccessOrExit(err);
 
-    err = qrPayloadParser->populatePayload(payload);
+    sSetupPayloadConstructorID = env->GetMethodID(sSetupPayloadCls, "<init>", "()V");
+    VerifyOrExit(sSetupPayloadConstructorID != NULL, err = SPP_JNI_ERROR_METHOD_NOT_FOUND);
+    sOptionalQRCodeInfoConstructorID = env->GetMethodID(sOptionalQRCodeInfoCls, "<init>", "()V");
+    VerifyOrExit(sOptionalQRCodeInfoConstructorID != NULL, err = SPP_JNI_ERROR_METHOD_NOT_FOUND);
+    sAddOptionalQRCodeInfoMethodID =
+        env->GetMethodID(sSetupPayloadCls, "addOptionalQRCodeInfo", "(Lchip/setuppayload/OptionalQRCodeInfo;)V");
+    VerifyOrExit(sAddOptionalQRCodeInfoMethodID != NULL, err = SPP_JNI_ERROR_METHOD_NOT_FOUND);
 
-    return TransformSetupPayload(env, payload);
+    err = GetFieldID(env, sSetupPayloadCls, "version", "I", sVersionFieldID);
+    SuccessOrExit(err);
+    err = GetFieldID(env, sSetupPayloadCls, "vendorId", "I", sVendorIdFieldID);
+    SuccessOrExit(err);
+    err = GetFieldID(env, sSetupPayloadCls, "productId", "I", sProductIdFieldID);
+    SuccessOrExit(err);
+    err = GetFieldID(env, sSetupPayloadCls, "requiresCustomFlow", "Z", sRequiresCustomFlowFieldID);
+    SuccessOrExit(err);
+    err = GetFieldID(env, sSetupPayloadCls, "rendezvousInformation", "I", sRendezvousInformationFieldID);
+    SuccessOrExit(err);
+    err = GetFieldID(env, sSetupPayloadCls, "discriminator", "I", sDiscriminatorFieldID);
+    SuccessOrExit(err);
+    err = GetFieldID(env, sSetupPayloadCls, "setupPinCode", "J", sSetupPinCodeFieldID);
+    SuccessOrExit(err);
+
+    err = GetFieldID(env, sOptionalQRCodeInfoCls, "tag", "I", sOptionalInfoTagFieldID);
+    SuccessOrExit(err);
+    err = GetFieldID(env, sOptionalQRCodeInfoCls, "type", OPTIONAL_QR_CODE_INFO_TYPE_SIG, sOptionalInfoTypeFieldID);
+    SuccessOrExit(err);
+    err = GetFieldID(env, sOptionalQRCodeInfoCls, "data", "Ljava/lang/String;", sOptionalInfoDataFieldID);
+    SuccessOrExit(err);
+    err = GetFieldID(env, sOptionalQRCodeInfoCls, "int32", "I", sOptionalInfoInt32FieldID);
+    SuccessOrExit(err);
+
+    // The enum constants, indexed by optionalQRCodeInfoType.
+    enumClass = env->FindClass("chip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType");
+    VerifyOrExit(enumClass != NULL, err = SPP_JNI_ERROR_TYPE_NOT_FOUND);
+    err = GetOptionalInfoTypeRef(env, enumClass, "TYPE_UNKNOWN", optionalQRCodeInfoTypeUnknown);
+    SuccessOrExit(err);
+    err = GetOptionalInfoTypeRef(env, enumClass, "TYPE_STRING", optionalQRCodeInfoTypeString);
+    SuccessOrExit(err);
+    err = GetOptionalInfoTypeRef(env, enumClass, "TYPE_INT32", optionalQRCodeInfoTypeInt32);
+    SuccessOrExit(err);
+    err = GetOptionalInfoTypeRef(env, enumClass, "TYPE_INT64", optionalQRCodeInfoTypeInt64);
+    SuccessOrExit(err);
+    err = GetOptionalInfoTypeRef(env, enumClass, "TYPE_UINT32", optionalQRCodeInfoTypeUInt32);
+    SuccessOrExit(err);
+    err = GetOptionalInfoTypeRef(env, enumClass, "TYPE_UINT64", optionalQRCodeInfoTypeUInt64);
+    SuccessOrExit(err);
+
+exit:
+    if (env != NULL)
+    {
+        env->DeleteLocalRef(enumClass);
+    }
+    return (err == CHIP_NO_ERROR) ? JNI_VERSION_1_6 : JNI_ERR;
 }
 
-JNI_METHOD(jobject, fetchPayloadFromManualEntryCode)(JNIEnv * env, jobject self, jstring entryCode)
+JNI_METHOD(jobject, fetchPayloadFromQrCode)(JNIEnv * env, jobject self, jstring qrCodeObj)
 {
-    CHIP_ERROR err;
-    const char * entryCodeString                        = NULL;
-    ManualSetupPayloadParser * manualSetupPayloadParser = NULL;
+    std::string qrCode;
     SetupPayload payload;
+    jobject payloadObj = NULL;
 
-    entryCodeString          = env->GetStringUTFChars(entryCode, 0);
-    manualSetupPayloadParser = new ManualSetupPayloadParser(entryCodeString);
-
-    err = manualSetupPayloadParser->populatePayload(payload);
+    // As before, the fields parsed are returned even if the code is invalid.
+    if (J2N_String(env, qrCodeObj, qrCode) == CHIP_NO_ERROR)
+    {
+        QRCodeSetupPayloadParser(qrCode).populatePayload(payload);
+    }
+    N2J_SetupPayload(env, payload, payloadObj);
 
-    return TransformSetupPayload(env, payload);
+    return payloadObj;
 }
 
-jobject TransformSetupPayload(JNIEnv * env, SetupPayload & payload)
+JNI_METHOD(jobject, fetchPayloadFromManualEntryCode)(JNIEnv * env, jobject self, jstring entryCodeObj)
 {
-    jclass setupPayloadClass = env->FindClass("chip/setuppayload/SetupPayload");
-    jmethodID setupConstr    = env->GetMethodID(setupPayloadClass, "<init>", "()V");
-    jobject setupPayload     = env->NewObject(setupPayloadClass, setupConstr);
-
-    jfieldID version            = env->GetFieldID(setupPayloadClass, "version", "I");
-    jfieldID vendorId           = env->GetFieldID(setupPayloadClass, "vendorId", "I");
-    jfieldID productId          = env->GetFieldID(setupPayloadClass, "productId", "I");
-    jfieldID requiresCustomFlow = env->GetFieldID(setupPayloadClass, "requiresCustomFlow", "Z");
-    jfieldID discriminator      = env->GetFieldID(setupPayloadClass, "discriminator", "I");
-    jfieldID setUpPinCode       = env->GetFieldID(setupPayloadClass, "setupPinCode", "J");
-
-    env->SetIntField(setupPayload, version, payload.version);
-    env->SetIntField(setupPayload, vendorId, payload.vendorID);
-    env->SetIntField(setupPayload, productId, payload.productID);
-    env->SetBooleanField(setupPayload, requiresCustomFlow, payload.requiresCustomFlow);
-    env->SetIntField(setupPayload, discriminator, payload.discriminator);
-    env->SetLongField(setupPayload, setUpPinCode, payload.setUpPINCode);
-
-    jmethodID addOptionalInfoMid =
-        env->GetMethodID(setupPayloadClass, "addOptionalQRCodeInfo", "(Lchip/setuppayload/OptionalQRCodeInfo;)V");
-
-    std::vector<OptionalQRCodeInfo> optional_info = payload.getAllOptionalVendorData();
-    for (OptionalQRCodeInfo & info : optional_info)
+    std::string entryCode;
+    SetupPayload payload;
+    jobject payloadObj = NULL;
+
+    if (J2N_String(env, entryCodeObj, entryCode) == CHIP_NO_ERROR)
     {
+        ManualSetupPayloadParser(entryCode).populatePayload(payload);
+    }
+    N2J_SetupPayload(env, payload, payloadObj);
 
-        jclass optionalInfoClass = env->FindClass("chip/setuppayload/OptionalQRCodeInfo");
-        jobject optionalInfo     = env->AllocObject(optionalInfoClass);
-        jfieldID tag             = env->GetFieldID(optionalInfoClass, "tag", "I");
-        jfieldID type = env->GetFieldID(optionalInfoClass, "type", "Lchip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType;");
-        jfieldID data = env->GetFieldID(optionalInfoClass, "data", "Ljava/lang/String;");
-        jfieldID int32 = env->GetFieldID(optionalInfoClass, "int32", "I");
+    return payloadObj;
+}
 
-        env->SetIntField(optionalInfo, tag, info.tag);
+JNI_METHOD(void, fetchPayloadsFromQrCodes)
+(JNIEnv * env, jobject self, jobjectArray qrCodesObj, jobjectArray payloadsObj, jintArray errorCodesObj)
+{
+    jsize count = env->GetArrayLength(qrCodesObj);
+    std::vector<jint> errorCodes(count, CHIP_NO_ERROR);
+    std::string qrCode;
+
+    for (jsize i = 0; i < count; i++)
+    {
+        SetupPayload payload;
+        CHIP_ERROR err     = CHIP_NO_ERROR;
+        jobject payloadObj = NULL;
+        jstring qrCodeObj  = (jstring) env->GetObjectArrayElement(qrCodesObj, i);
+
+        err = J2N_String(env, qrCodeObj, qrCode);
+        if (err == CHIP_NO_ERROR)
+        {
+            err = QRCodeSetupPayloadParser(qrCode).populatePayload(payload);
+        }
+        if (err == CHIP_NO_ERROR)
+        {
+            err = N2J_SetupPayload(env, payload, payloadObj);
+        }
+        if (err == CHIP_NO_ERROR)
+        {
+            env->SetObjectArrayElement(payloadsObj, i, payloadObj);
+        }
+        errorCodes[i] = err;
 
-        jclass enumClass  = env->FindClass("chip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType");
-        jfieldID enumType = nullptr;
+        // A batch can be larger than the local reference table.
+        env->DeleteLocalRef(payloadObj);
+        env->DeleteLocalRef(qrCodeObj);
 
-        switch (info.tag)
+        // Stop on a Java exception, such as an OutOfMemoryError, leaving it to the caller.
+        if (env->ExceptionCheck())
         {
-        case optionalQRCodeInfoTypeUnknown:
-            enumType =
-                env->GetStaticFieldID(enumClass, "TYPE_UNKNOWN", "Lchip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType;");
-            break;
-        case optionalQRCodeInfoTypeString:
-            enumType =
-                env->GetStaticFieldID(enumClass, "TYPE_STRING", "Lchip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType;");
-            break;
-        case optionalQRCodeInfoTypeInt32:
-            enumType =
-                env->GetStaticFieldID(enumClass, "TYPE_INT32", "Lchip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType;");
-            break;
-        case optionalQRCodeInfoTypeInt64:
-            enumType =
-                env->GetStaticFieldID(enumClass, "TYPE_INT64", "Lchip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType;");
-            break;
-        case optionalQRCodeInfoTypeUInt32:
-            enumType =
-                env->GetStaticFieldID(enumClass, "TYPE_UINT32", "Lchip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType;");
-            break;
-        case optionalQRCodeInfoTypeUInt64:
-            enumType =
-                env->GetStaticFieldID(enumClass, "TYPE_UINT64", "Lchip/setuppayload/OptionalQRCodeInfo$OptionalQRCodeInfoType;");
-            break;
-        default:
-            break;
+            return;
         }
+    }
+
+    env->SetIntArrayRegion(errorCodesObj, 0, count, errorCodes.data());
+}
+
+CHIP_ERROR J2N_String(JNIEnv * env, jstring stringObj, std::string & outString)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+    jsize length   = 0;
+
+    VerifyOrExit(stringObj != NULL, err = CHIP_ERROR_INVALID_ARGUMENT);
+
+    // Copies the characters into the string given, which a batch reuses, rather than pinning them.
+    length = env->GetStringLength(stringObj);
+    outString.resize(env->GetStringUTFLength(stringObj));
+    env->GetStringUTFRegion(stringObj, 0, length, &outString[0]);
+    VerifyOrExit(!env->ExceptionCheck(), err = SPP_JNI_ERROR_EXCEPTION_THROWN);
+
+exit:
+    return err;
+}
+
+CHIP_ERROR N2J_SetupPayload(JNIEnv * env, SetupPayload & payload, jobject & outPayload)
+{
+    CHIP_ERROR err     = CHIP_NO_ERROR;
+    jobject payloadObj = NULL;
+    jobject infoObj    = NULL;
+
+    payloadObj = env->NewObject(sSetupPayloadCls, sSetupPayloadConstructorID);
+    VerifyOrExit(payloadObj != NULL, err = SPP_JNI_ERROR_EXCEPTION_THROWN);
+
+    env->SetIntField(payloadObj, sVersionFieldID, payload.version);
+    env->SetIntField(payloadObj, sVendorIdFieldID, payload.vendorID);
+    env->SetIntField(payloadObj, sProductIdFieldID, payload.productID);
+    env->SetBooleanField(payloadObj, sRequiresCustomFlowFieldID, payload.requiresCustomFlow);
+    env->SetIntField(payloadObj, sRendezvousInformationFieldID, static_cast<jint>(payload.rendezvousInformation));
+    env->SetIntField(payloadObj, sDiscriminatorFieldID, payload.discriminator);
+    env->SetLongField(payloadObj, sSetupPinCodeFieldID, payload.setUpPINCode);
 
-        jobject enumObj = env->GetStaticObjectField(enumClass, enumType);
-        env->SetObjectField(optionalInfo, type, enumObj);
+    for (const OptionalQRCodeInfo & info : payload.getAllOptionalVendorData())
+    {
+        err = N2J_OptionalQRCodeInfo(env, info, infoObj);
+        SuccessOrExit(err);
 
-        env->SetObjectField(optionalInfo, data, env->NewStringUTF(info.data.c_str()));
-        env->SetIntField(optionalInfo, int32, info.int32);
+        env->CallVoidMethod(payloadObj, sAddOptionalQRCodeInfoMethodID, infoObj);
+        VerifyOrExit(!env->ExceptionCheck(), err = SPP_JNI_ERROR_EXCEPTION_THROWN);
 
-        env->CallVoidMethod(setupPayload, addOptionalInfoMid, optionalInfo);
+        env->DeleteLocalRef(infoObj);
+        infoObj = NULL;
     }
 
-    return setupPayload;
+    outPayload = payloadObj;
+    payloadObj = NULL;
+
+exit:
+    env->DeleteLocalRef(infoObj);
+    env->DeleteLocalRef(payloadObj);
+    return err;
+}
+
+CHIP_ERROR N2J_OptionalQRCodeInfo(JNIEnv * env, const OptionalQRCodeInfo & info, jobject & outInfo)
+{
+    CHIP_ERROR err  = CHIP_NO_ERROR;
+    jobject infoObj = NULL;
+    jstring dataObj = NULL;
+
+    VerifyOrExit(info.type >= optionalQRCodeInfoTypeUnknown && info.type <= optionalQRCodeInfoTypeUInt64,
+                 err = CHIP_ERROR_INVALID_ARGUMENT);
+
+    infoObj = env->NewObject(sOptionalQRCodeInfoCls, sOptionalQRCodeInfoConstructorID);
+    VerifyOrExit(infoObj != NULL, err = SPP_JNI_ERROR_EXCEPTION_THROWN);
+
+    dataObj = env->NewStringUTF(info.data.c_str());
+    VerifyOrExit(dataObj != NULL, err = SPP_JNI_ERROR_EXCEPTION_THROWN);
+
+    env->SetIntField(infoObj, sOptionalInfoTagFieldID, info.tag);
+    env->SetObjectField(infoObj, sOptionalInfoTypeFieldID, sOptionalInfoTypes[info.type]);
+    env->SetObjectField(infoObj, sOptionalInfoDataFieldID, dataObj);
+    env->SetIntField(infoObj, sOptionalInfoInt32FieldID, info.int32);
+
+    outInfo = infoObj;
+    infoObj = NULL;
+
+exit:
+    env->DeleteLocalRef(dataObj);
+    env->DeleteLocalRef(infoObj);
+    return err;
+}
+
+CHIP_ERROR GetClassRef(JNIEnv * env, const char * clsType, jclass & outCls)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+    jclass cls     = NULL;
+
+    cls = env->FindClass(clsType);
+    VerifyOrExit(cls != NULL, err = SPP_JNI_ERROR_TYPE_NOT_FOUND);
+
+    outCls = (jclass) env->NewGlobalRef((jobject) cls);
+    VerifyOrExit(outCls != NULL, err = SPP_JNI_ERROR_TYPE_NOT_FOUND);
+
+exit:
+    env->DeleteLocalRef(cls);
+    return err;
+}
+
+CHIP_ERROR GetFieldID(JNIEnv * env, jclass cls, const char * name, const char * sig, jfieldID & outFieldID)
+{
+    outFieldID = env->GetFieldID(cls, name, sig);
+    return (outFieldID != NULL) ? CHIP_NO_ERROR : SPP_JNI_ERROR_FIELD_NOT_FOUND;
+}
+
+CHIP_ERROR GetOptionalInfoTypeRef(JNIEnv * env, jclass typeCls, const char * name, optionalQRCodeInfoType type)
+{
+    CHIP_ERROR err   = CHIP_NO_ERROR;
+    jfieldID fieldID = NULL;
+    jobject value    = NULL;
+
+    fieldID = env->GetStaticFieldID(typeCls, name, OPTIONAL_QR_CODE_INFO_TYPE_SIG);
+    VerifyOrExit(fieldID != NULL, err = SPP_JNI_ERROR_FIELD_NOT_FOUND);
+
+    value = env->GetStaticObjectField(typeCls, fieldID);
+    VerifyOrExit(value != NULL, err = SPP_JNI_ERROR_FIELD_NOT_FOUND);
+
+    sOptionalInfoTypes[type] = env->NewGlobalRef(value);
+    VerifyOrExit(sOptionalInfoTypes[type] != NULL, err = SPP_JNI_ERROR_EXCEPTION_THROWN);
+
+exit:
+    env->DeleteLocalRef(value);
+    return err;
 }
@@ -0,0 +1,125 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.setuppayload.benchmarks;
+
+import chip.setuppayload.InvalidSetupCodeException;
+import chip.setuppayload.SetupCodeParser;
+import chip.setuppayload.SetupPayload;
+import chip.setuppayload.SetupPayloadParser;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the parsing of setup codes by {@link SetupCodeParser}, in Java, with {@link
+ * SetupPayloadParser}, which goes through JNI into the C++ parsers.
+ *
+ * <p>The QR code benchmarks run for each QR code, and the manual entry code ones for each manual
+ * entry code. Each thread has its own parsers. Run with the GC profiler ({@code -prof gc}) to
+ * compare the allocations per code; {@link SetupCodeParserBenchmarkMain} adds it.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SetupCodeParserBenchmark {
+
+  /** Parsers of one thread, with the payload they reuse. */
+  @State(Scope.Thread)
+  public static class Parsers {
+    SetupCodeParser parser;
+    SetupPayload payload;
+    SetupPayloadParser nativeParser;
+
+    @Setup(Level.Trial)
+    public void createParsers() {
+      parser = new SetupCodeParser();
+      payload = new SetupPayload();
+      nativeParser = new SetupPayloadParser();
+    }
+  }
+
+  /**
+   * QR codes without optional data, with one vendor integer, and with three vendor strings, as the
+   * C++ generator encodes them.
+   */
+  @State(Scope.Benchmark)
+  public static class QrCode {
+    @Param({
+      "CH:*5O-8L0TVZ81Z7B4",
+      "CH:JM+RCU1.L7 65M7UWJ700HDLHNZQNJIL1 +73T83-7CK7848",
+      "CH:W4 MJYLQ Q4N2YLGSM0004R52.H4T8LA8RW74E7.+7-MF1.HNA8+M8-"
+          + "+7LQ7.T6BU1YL78K7CT8+D7PW7OX5NDK3C20S3"
+    })
+    public String qrCode;
+  }
+
+  /** Short and long manual entry codes. */
+  @State(Scope.Benchmark)
+  public static class ManualEntryCode {
+    @Param({"26592911080", "064757341143132260888"})
+    public String manualEntryCode;
+  }
+
+  @Benchmark
+  public SetupPayload parseQrCode(Parsers parsers, QrCode code) throws InvalidSetupCodeException {
+    return parsers.parser.parseQrCode(code.qrCode);
+  }
+
+  /** Parses into the same payload every time, only allocating for the optional data. */
+  @Benchmark
+  public SetupPayload parseQrCodeReusingPayload(Parsers parsers, QrCode code)
+      throws InvalidSetupCodeException {
+    parsers.parser.parseQrCode(code.qrCode, parsers.payload);
+    return parsers.payload;
+  }
+
+  @Benchmark
+  public SetupPayload parseQrCodeNative(Parsers parsers, QrCode code) {
+    return parsers.nativeParser.parseQrCode(code.qrCode);
+  }
+
+  @Benchmark
+  public SetupPayload parseManualEntryCode(Parsers parsers, ManualEntryCode code)
+      throws InvalidSetupCodeException {
+    return parsers.parser.parseManualEntryCode(code.manualEntryCode);
+  }
+
+  @Benchmark
+  public SetupPayload parseManualEntryCodeReusingPayload(Parsers parsers, ManualEntryCode code)
+      throws InvalidSetupCodeException {
+    parsers.parser.parseManualEntryCode(code.manualEntryCode, parsers.payload);
+    return parsers.payload;
+  }
+
+  @Benchmark
+  public SetupPayload parseManualEntryCodeNative(Parsers parsers, ManualEntryCode code) {
+    return parsers.nativeParser.parseManualEntryCode(code.manualEntryCode);
+  }
+}
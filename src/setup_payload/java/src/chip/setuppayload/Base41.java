@@ -0,0 +1,102 @@
+package chip.setuppayload;
+
+import java.util.Arrays;
+
+/**
+ * Base41 encoding of the QR codes, as in src/setup_payload/Base41.cpp: every 2 bytes, taken as a
+ * little-endian 16-bit value, are encoded as 3 characters, least significant first, and a last odd
+ * byte as 2 characters at most.
+ */
+final class Base41 {
+
+  private static final int RADIX = 41;
+  private static final int CHUNK_LENGTH = 3;
+
+  private static final char[] CODES = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ *+-.".toCharArray();
+
+  // Values of the characters from ' ' to 'Z', -1 for the invalid ones.
+  private static final byte[] DECODES = new byte['Z' - ' ' + 1];
+
+  static {
+    Arrays.fill(DECODES, (byte) -1);
+    for (int i = 0; i < CODES.length; i++) {
+      DECODES[CODES[i] - ' '] = (byte) i;
+    }
+  }
+
+  private Base41() {}
+
+  /** Appends the encoding of the first {@code length} bytes of {@code bytes} to {@code out}. */
+  static void encode(byte[] bytes, int length, StringBuilder out) {
+    int i = 0;
+    for (; length - i >= 2; i += 2) {
+      int value = (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8;
+      // The last chunk takes 2 characters when it can, as the decoder still reads 2 bytes from them
+      // if the value does not fit in one byte.
+      int chunkLength = CHUNK_LENGTH;
+      if (i + 2 == length && value > 0xFF && value < RADIX * RADIX) {
+        chunkLength--;
+      }
+      for (int j = 0; j < chunkLength; j++) {
+        out.append(CODES[value % RADIX]);
+        value /= RADIX;
+      }
+    }
+
+    if (i < length) {
+      int value = bytes[i] & 0xFF;
+      do {
+        out.append(CODES[value % RADIX]);
+        value /= RADIX;
+      } while (value != 0);
+    }
+  }
+
+  /** Returns the largest number of bytes the given number of characters can decode to. */
+  static int maxDecodedLength(int length) {
+    return (length + CHUNK_LENGTH - 1) / CHUNK_LENGTH * 2;
+  }
+
+  /**
+   * Decodes the characters of {@code base41} from {@code start} to {@code end} into {@code out},
+   * which must hold {@link #maxDecodedLength} bytes, and returns the number of bytes decoded, or -1
+   * if a character is not in the alphabet.
+   */
+  static int decode(CharSequence base41, int start, int end, byte[] out) {
+    int length = 0;
+    int i = start;
+    for (; end - i >= CHUNK_LENGTH; i += CHUNK_LENGTH) {
+      int value = 0;
+      for (int j = i + CHUNK_LENGTH - 1; j >= i; j--) {
+        int digit = decodeChar(base41.charAt(j));
+        if (digit < 0) {
+          return -1;
+        }
+        value = value * RADIX + digit;
+      }
+      // Chunks above 0xFFFF wrap around, as in the 16-bit value of the C++ decoder.
+      out[length++] = (byte) value;
+      out[length++] = (byte) (value >> 8);
+    }
+
+    if (i < end) {
+      int value = 0;
+      for (int j = end - 1; j >= i; j--) {
+        int digit = decodeChar(base41.charAt(j));
+        if (digit < 0) {
+          return -1;
+        }
+        value = value * RADIX + digit;
+      }
+      out[length++] = (byte) value;
+      if ((value >> 8) != 0) {
+        out[length++] = (byte) (value >> 8);
+      }
+    }
+    return length;
+  }
+
+  private static int decodeChar(char c) {
+    return c < ' ' || c > 'Z' ? -1 : DECODES[c - ' '];
+  }
+}
@@ -0,0 +1,264 @@
+package chip.setuppayload;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the setup codes of many devices across threads, straight into a file.
+ *
+ * <p>The codes of each device are written as one line of ASCII, in the order of the devices. Each
+ * thread encodes a chunk of devices into its own buffer, then writes it where the chunks before it
+ * end, so the memory used depends on the number of threads and the chunk size but not on the
+ * number of devices.
+ */
+public final class BulkSetupCodeGenerator {
+
+  /** Fills in the payloads of the devices to generate the codes of. */
+  public interface PayloadSource {
+    /**
+     * Fills in the payload of the device at the given index, from 0. It is called from several
+     * threads at once, each with its own payload, which is reset to its default values before each
+     * device.
+     */
+    void fill(long index, SetupPayload payload);
+  }
+
+  /** The codes on the line of each device. */
+  public enum Output {
+    /** The QR code. */
+    QR_CODE,
+    /**
+     * The manual entry code, which only holds 4 bits of the discriminator: {@link
+     * BulkSetupCodeGenerator#generate} fails if a device has a discriminator above 15.
+     */
+    MANUAL_ENTRY_CODE,
+    /**
+     * The QR code and the manual entry code, separated by a comma. As with {@link
+     * #MANUAL_ENTRY_CODE}, a device with a discriminator above 15 fails the whole run, even though
+     * its QR code could hold it: use {@link #QR_CODE} for such devices.
+     */
+    QR_CODE_AND_MANUAL_ENTRY_CODE
+  }
+
+  public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+  private static final int INITIAL_BUFFER_CAPACITY = 64 * 1024;
+
+  private final Output output;
+  private final int threadCount;
+  private final int chunkSize;
+
+  /** Creates a generator using a thread per processor. */
+  public BulkSetupCodeGenerator(Output output) {
+    this(output, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates a generator using the given number of threads, the calling one included, each encoding
+   * {@code chunkSize} devices before writing them.
+   */
+  public BulkSetupCodeGenerator(Output output, int threadCount, int chunkSize) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("Invalid threadCount: " + threadCount);
+    }
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("Invalid chunkSize: " + chunkSize);
+    }
+    this.output = output;
+    this.threadCount = threadCount;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Writes the codes of {@code count} devices to the channel from its current position, and moves
+   * the position past them.
+   *
+   * @return the number of bytes written
+   * @throws IllegalArgumentException if a payload cannot be encoded, as {@link SetupCodeGenerator}
+   *     would throw, such as one with a discriminator above 15 when the output has manual entry
+   *     codes; the codes of the devices before it may have been written
+   */
+  public long generate(PayloadSource source, long count, FileChannel channel) throws IOException {
+    if (count < 0) {
+      throw new IllegalArgumentException("Invalid count: " + count);
+    }
+
+    Run run = new Run(source, count, channel, channel.position());
+    Thread[] threads = new Thread[threadCount - 1];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(run::work, "BulkSetupCodeGenerator-" + (i + 1));
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+    run.work();
+
+    boolean interrupted = false;
+    for (Thread thread : threads) {
+      while (true) {
+        try {
+          thread.join();
+          break;
+        } catch (InterruptedException e) {
+          // Stop the other threads, but wait for them so that none writes after we return.
+          interrupted = true;
+          run.fail(e);
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    run.throwFailure();
+    channel.position(run.start + run.nextPosition);
+    return run.nextPosition;
+  }
+
+  /** State of one call to {@link #generate}, shared by its threads. */
+  private final class Run {
+
+    final PayloadSource source;
+    final long count;
+    final FileChannel channel;
+    final long start;
+    final AtomicLong nextChunk = new AtomicLong();
+
+    // Guarded by this: the chunks given a position so far, and where the next one goes.
+    long placedChunks;
+    long nextPosition;
+    Throwable failure;
+
+    Run(PayloadSource source, long count, FileChannel channel, long start) {
+      this.source = source;
+      this.count = count;
+      this.channel = channel;
+      this.start = start;
+    }
+
+    void work() {
+      SetupCodeGenerator generator = new SetupCodeGenerator();
+      SetupPayload payload = new SetupPayload();
+      ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_CAPACITY);
+      try {
+        while (!hasFailed()) {
+          long chunk = nextChunk.getAndIncrement();
+          long first = chunk * chunkSize;
+          if (first >= count) {
+            return;
+          }
+
+          buffer.clear();
+          long end = Math.min(count, first + chunkSize);
+          for (long index = first; index < end; index++) {
+            reset(payload);
+            source.fill(index, payload);
+            buffer = encode(generator, payload, buffer);
+          }
+          buffer.flip();
+
+          long position = reserve(chunk, buffer.remaining());
+          if (position < 0) {
+            return;
+          }
+          position += start;
+          while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+          }
+        }
+      } catch (Throwable e) {
+        fail(e);
+      }
+    }
+
+    /**
+     * Waits for the chunks before the given one to be placed, and returns the position of this one
+     * relative to the start, or -1 if a thread failed in the meantime.
+     */
+    synchronized long reserve(long chunk, int length) throws InterruptedException {
+      while (placedChunks != chunk && failure == null) {
+        wait();
+      }
+      if (failure != null) {
+        return -1;
+      }
+      long position = nextPosition;
+      nextPosition += length;
+      placedChunks++;
+      notifyAll();
+      return position;
+    }
+
+    synchronized boolean hasFailed() {
+      return failure != null;
+    }
+
+    synchronized void fail(Throwable e) {
+      if (failure == null) {
+        failure = e;
+      }
+      notifyAll();
+    }
+
+    synchronized void throwFailure() throws IOException {
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      } else if (failure != null) {
+        InterruptedIOException e = new InterruptedIOException("Interrupted generating setup codes");
+        e.initCause(failure);
+        throw e;
+      }
+    }
+  }
+
+  private ByteBuffer encode(SetupCodeGenerator generator, SetupPayload payload, ByteBuffer buffer) {
+    // The QR code must be copied out before the manual entry code reuses the generator's builder.
+    switch (output) {
+      case QR_CODE:
+        buffer = put(buffer, generator.encodeQrCode(payload));
+        break;
+      case MANUAL_ENTRY_CODE:
+        buffer = put(buffer, generator.encodeManualEntryCode(payload));
+        break;
+      case QR_CODE_AND_MANUAL_ENTRY_CODE:
+        buffer = put(buffer, generator.encodeQrCode(payload));
+        buffer = put(buffer, ",");
+        buffer = put(buffer, generator.encodeManualEntryCode(payload));
+        break;
+    }
+    return put(buffer, "\n");
+  }
+
+  /** Puts the characters, all ASCII, into the buffer, or into a larger copy returned if full. */
+  private static ByteBuffer put(ByteBuffer buffer, CharSequence chars) {
+    int length = chars.length();
+    if (buffer.remaining() < length) {
+      ByteBuffer larger =
+          ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + length));
+      buffer.flip();
+      larger.put(buffer);
+      buffer = larger;
+    }
+    for (int i = 0; i < length; i++) {
+      buffer.put((byte) chars.charAt(i));
+    }
+    return buffer;
+  }
+
+  private static void reset(SetupPayload payload) {
+    payload.version = 0;
+    payload.vendorId = 0;
+    payload.productId = 0;
+    payload.requiresCustomFlow = false;
+    payload.rendezvousInformation = 0;
+    payload.discriminator = 0;
+    payload.setupPinCode = 0;
+    payload.optionalQRCodeInfo.clear();
+  }
+}
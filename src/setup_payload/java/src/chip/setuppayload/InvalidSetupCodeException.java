@@ -0,0 +1,10 @@
+package chip.setuppayload;
+
+/** Exception thrown when a QR code or manual entry code cannot be parsed. */
+public class InvalidSetupCodeException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  public InvalidSetupCodeException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,305 @@
+package chip.setuppayload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates the QR codes and manual entry codes of setup payloads in Java, as
+ * QRCodeSetupPayloadGenerator and ManualSetupPayloadGenerator do in src/setup_payload.
+ *
+ * <p>A generator reuses its buffers from one code to the next. It is not thread-safe: use one per
+ * thread, or {@link BulkSetupCodeGenerator} to generate the codes of many devices.
+ */
+public final class SetupCodeGenerator {
+
+  private static final String QR_CODE_PREFIX = "CH:";
+
+  private static final int VERSION_BITS = 3;
+  private static final int VENDOR_ID_BITS = 16;
+  private static final int PRODUCT_ID_BITS = 16;
+  private static final int CUSTOM_FLOW_REQUIRED_BITS = 1;
+  private static final int RENDEZVOUS_INFO_BITS = 8;
+  private static final int PAYLOAD_DISCRIMINATOR_BITS = 12;
+  private static final int MANUAL_SETUP_DISCRIMINATOR_BITS = 4;
+  private static final int SETUP_PIN_CODE_BITS = 27;
+  private static final int PADDING_BITS = 5;
+
+  private static final int TOTAL_PAYLOAD_DATA_BYTES =
+      (VERSION_BITS
+              + VENDOR_ID_BITS
+              + PRODUCT_ID_BITS
+              + CUSTOM_FLOW_REQUIRED_BITS
+              + RENDEZVOUS_INFO_BITS
+              + PAYLOAD_DISCRIMINATOR_BITS
+              + SETUP_PIN_CODE_BITS
+              + PADDING_BITS)
+          / 8;
+
+  private static final int MANUAL_SETUP_SHORT_CODE_LENGTH = 10;
+  private static final int MANUAL_SETUP_VENDOR_ID_LENGTH = 5;
+  private static final int MANUAL_SETUP_PRODUCT_ID_LENGTH = 5;
+
+  // RendezvousInformationFlags::kAllMask.
+  private static final int RENDEZVOUS_INFO_ALL_MASK = 0x0F;
+
+  private static final int VENDOR_TAG_LIMIT = 1 << 7;
+
+  // The optional data goes in a structure from 4 elements on, where its tags are shorter.
+  private static final int MIN_STRUCTURE_ELEMENTS = 4;
+
+  // Control bytes of TLV elements: the tag control in the upper 3 bits, the type in the lower 5.
+  private static final int TAG_CONTEXT_SPECIFIC = 0x20;
+  private static final int TAG_IMPLICIT_PROFILE_2_BYTES = 0x80;
+  private static final int TYPE_INT8 = 0x00;
+  private static final int TYPE_INT16 = 0x01;
+  private static final int TYPE_INT32 = 0x02;
+  private static final int TYPE_UTF8_STRING_1 = 0x0C;
+  private static final int TYPE_UTF8_STRING_2 = 0x0D;
+  private static final int TYPE_UTF8_STRING_4 = 0x0E;
+  private static final int TYPE_STRUCTURE = 0x15;
+  private static final int TYPE_END_OF_CONTAINER = 0x18;
+
+  private final OptionalQRCodeInfo[] optionalDataByTag = new OptionalQRCodeInfo[VENDOR_TAG_LIMIT];
+  private final StringBuilder code = new StringBuilder();
+  private byte[] buffer = new byte[64];
+  private int length;
+
+  /**
+   * Returns the QR code of the payload, with its optional vendor data.
+   *
+   * @throws IllegalArgumentException if a field of the payload is out of range, or if its optional
+   *     data has a tag above 127 or a type other than a string or a 32-bit integer
+   */
+  public String generateQrCode(SetupPayload payload) {
+    return encodeQrCode(payload).toString();
+  }
+
+  /**
+   * Returns the manual entry code of the payload: the long one, with the vendor and product IDs, if
+   * it requires a custom flow.
+   *
+   * @throws IllegalArgumentException if the discriminator does not fit in 4 bits, or if the setup
+   *     PIN code is 0 or does not fit in 27 bits
+   */
+  public String generateManualEntryCode(SetupPayload payload) {
+    return encodeManualEntryCode(payload).toString();
+  }
+
+  /**
+   * Returns a random setup PIN code for a payload: a non-zero value of 27 bits. Give it a {@link
+   * java.security.SecureRandom} for devices to ship.
+   */
+  public static long randomSetupPinCode(Random random) {
+    return 1 + random.nextInt((1 << SETUP_PIN_CODE_BITS) - 1);
+  }
+
+  /** Encodes the QR code of the payload into the builder returned, valid until the next call. */
+  CharSequence encodeQrCode(SetupPayload payload) {
+    checkRange(payload.version, VERSION_BITS, "version");
+    checkRange(payload.vendorId, VENDOR_ID_BITS, "vendorId");
+    checkRange(payload.productId, PRODUCT_ID_BITS, "productId");
+    checkRange(payload.discriminator, PAYLOAD_DISCRIMINATOR_BITS, "discriminator");
+    checkSetupPinCode(payload.setupPinCode);
+    if (payload.rendezvousInformation < 0
+        || payload.rendezvousInformation > RENDEZVOUS_INFO_ALL_MASK) {
+      throw new IllegalArgumentException(
+          "Invalid rendezvousInformation: " + payload.rendezvousInformation);
+    }
+    if (payload.version == 0
+        && payload.rendezvousInformation == 0
+        && payload.discriminator == 0
+        && payload.setupPinCode == 0) {
+      throw new IllegalArgumentException("Empty payload");
+    }
+
+    length = TOTAL_PAYLOAD_DATA_BYTES;
+    Arrays.fill(buffer, 0, length, (byte) 0);
+    int offset = 0;
+    offset = writeBits(offset, payload.version, VERSION_BITS);
+    offset = writeBits(offset, payload.vendorId, VENDOR_ID_BITS);
+    offset = writeBits(offset, payload.productId, PRODUCT_ID_BITS);
+    offset = writeBits(offset, payload.requiresCustomFlow ? 1 : 0, CUSTOM_FLOW_REQUIRED_BITS);
+    offset = writeBits(offset, payload.rendezvousInformation, RENDEZVOUS_INFO_BITS);
+    offset = writeBits(offset, payload.discriminator, PAYLOAD_DISCRIMINATOR_BITS);
+    writeBits(offset, (int) payload.setupPinCode, SETUP_PIN_CODE_BITS);
+    writeOptionalData(payload.optionalQRCodeInfo);
+
+    code.setLength(0);
+    code.append(QR_CODE_PREFIX);
+    Base41.encode(buffer, length, code);
+    return code;
+  }
+
+  /** Encodes the manual entry code of the payload into the builder returned, as above. */
+  CharSequence encodeManualEntryCode(SetupPayload payload) {
+    checkRange(payload.discriminator, MANUAL_SETUP_DISCRIMINATOR_BITS, "discriminator");
+    checkSetupPinCode(payload.setupPinCode);
+    if (payload.setupPinCode == 0) {
+      throw new IllegalArgumentException("Invalid setupPinCode: 0");
+    }
+
+    long shortCode =
+        (payload.requiresCustomFlow ? 1 : 0)
+            | payload.discriminator << 1
+            | payload.setupPinCode << (1 + MANUAL_SETUP_DISCRIMINATOR_BITS);
+    code.setLength(0);
+    appendDigits(shortCode, MANUAL_SETUP_SHORT_CODE_LENGTH);
+    if (payload.requiresCustomFlow) {
+      checkRange(payload.vendorId, VENDOR_ID_BITS, "vendorId");
+      checkRange(payload.productId, PRODUCT_ID_BITS, "productId");
+      appendDigits(payload.vendorId, MANUAL_SETUP_VENDOR_ID_LENGTH);
+      appendDigits(payload.productId, MANUAL_SETUP_PRODUCT_ID_LENGTH);
+    }
+    code.append(Verhoeff10.computeCheckChar(code, 0, code.length()));
+    return code;
+  }
+
+  /** Writes the optional data as TLV after the fields, ordered by tag as in the C++ map. */
+  private void writeOptionalData(Map<Integer, OptionalQRCodeInfo> optionalData) {
+    if (optionalData.isEmpty()) {
+      return;
+    }
+
+    try {
+      int count = 0;
+      for (OptionalQRCodeInfo info : optionalData.values()) {
+        if (info.tag < 0 || info.tag >= VENDOR_TAG_LIMIT) {
+          throw new IllegalArgumentException("Invalid optional data tag: " + info.tag);
+        }
+        if (optionalDataByTag[info.tag] == null) {
+          count++;
+        }
+        optionalDataByTag[info.tag] = info;
+      }
+
+      boolean inStructure = count >= MIN_STRUCTURE_ELEMENTS;
+      if (inStructure) {
+        // Tag 0 of the implicit profile, kTag_QRCodeExensionDescriptor.
+        writeElementHead(TYPE_STRUCTURE, 0, false);
+      }
+      for (int tag = 0; tag < VENDOR_TAG_LIMIT; tag++) {
+        OptionalQRCodeInfo info = optionalDataByTag[tag];
+        if (info == null) {
+          continue;
+        }
+        if (info.type == OptionalQRCodeInfo.OptionalQRCodeInfoType.TYPE_STRING) {
+          writeString(tag, info.data, inStructure);
+        } else if (info.type == OptionalQRCodeInfo.OptionalQRCodeInfoType.TYPE_INT32) {
+          writeInt(tag, info.int32, inStructure);
+        } else {
+          throw new IllegalArgumentException(
+              "Invalid type of optional data " + tag + ": " + info.type);
+        }
+      }
+      if (inStructure) {
+        ensureCapacity(1);
+        buffer[length++] = TYPE_END_OF_CONTAINER;
+      }
+    } finally {
+      Arrays.fill(optionalDataByTag, null);
+    }
+  }
+
+  private void writeInt(int tag, int value, boolean inStructure) {
+    // The smallest signed type holding the value, as TLVWriter::Put() picks.
+    int size;
+    int type;
+    if (value == (byte) value) {
+      size = 1;
+      type = TYPE_INT8;
+    } else if (value == (short) value) {
+      size = 2;
+      type = TYPE_INT16;
+    } else {
+      size = 4;
+      type = TYPE_INT32;
+    }
+    writeElementHead(type, tag, inStructure);
+    writeLittleEndian(value, size);
+  }
+
+  private void writeString(int tag, String value, boolean inStructure) {
+    // The C++ generator writes the data as a C string, up to its first NUL character.
+    int end = value.indexOf('\0');
+    byte[] bytes =
+        (end < 0 ? value : value.substring(0, end)).getBytes(StandardCharsets.UTF_8);
+    if (bytes.length <= 0xFF) {
+      writeElementHead(TYPE_UTF8_STRING_1, tag, inStructure);
+      writeLittleEndian(bytes.length, 1);
+    } else if (bytes.length <= 0xFFFF) {
+      writeElementHead(TYPE_UTF8_STRING_2, tag, inStructure);
+      writeLittleEndian(bytes.length, 2);
+    } else {
+      writeElementHead(TYPE_UTF8_STRING_4, tag, inStructure);
+      writeLittleEndian(bytes.length, 4);
+    }
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, length, bytes.length);
+    length += bytes.length;
+  }
+
+  /**
+   * Writes the control byte and the tag of an element: a context-specific tag in the structure, or
+   * a tag of the implicit profile, kChipProtocol_ServiceProvisioning, outside of it.
+   */
+  private void writeElementHead(int type, int tag, boolean inStructure) {
+    if (inStructure) {
+      ensureCapacity(2);
+      buffer[length++] = (byte) (TAG_CONTEXT_SPECIFIC | type);
+      buffer[length++] = (byte) tag;
+    } else {
+      ensureCapacity(3);
+      buffer[length++] = (byte) (TAG_IMPLICIT_PROFILE_2_BYTES | type);
+      writeLittleEndian(tag, 2);
+    }
+  }
+
+  private void writeLittleEndian(int value, int size) {
+    ensureCapacity(size);
+    for (int i = 0; i < size; i++) {
+      buffer[length++] = (byte) (value >>> (8 * i));
+    }
+  }
+
+  private void ensureCapacity(int size) {
+    if (buffer.length - length < size) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + size));
+    }
+  }
+
+  /** Writes the given number of bits of the value from the given bit offset, LSB first. */
+  private int writeBits(int offset, int value, int count) {
+    for (int i = 0; i < count; i++) {
+      if ((value & (1 << i)) != 0) {
+        int bit = offset + i;
+        buffer[bit / 8] |= (byte) (1 << (bit % 8));
+      }
+    }
+    return offset + count;
+  }
+
+  private void appendDigits(long value, int count) {
+    int start = code.length();
+    for (int i = 0; i < count; i++) {
+      code.append('0');
+    }
+    for (int i = code.length() - 1; i >= start; i--) {
+      code.setCharAt(i, (char) ('0' + value % 10));
+      value /= 10;
+    }
+  }
+
+  private static void checkRange(int value, int bits, String name) {
+    if (value < 0 || value >= 1 << bits) {
+      throw new IllegalArgumentException("Invalid " + name + ": " + value);
+    }
+  }
+
+  private static void checkSetupPinCode(long setupPinCode) {
+    if (setupPinCode < 0 || setupPinCode >= 1 << SETUP_PIN_CODE_BITS) {
+      throw new IllegalArgumentException("Invalid setupPinCode: " + setupPinCode);
+    }
+  }
+}
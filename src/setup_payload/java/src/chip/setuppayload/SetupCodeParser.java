@@ -0,0 +1,265 @@
+package chip.setuppayload;
+
+import java.util.Map;
+
+/**
+ * Parses QR codes and manual entry codes in Java, giving the same {@link SetupPayload} as {@link
+ * SetupPayloadParser} for valid codes without loading its native library.
+ *
+ * <p>A parser decodes into its own buffer, and can fill a payload given by the caller, so that
+ * parsing many codes only allocates for their optional data. It is not thread-safe: use one per
+ * thread.
+ */
+public final class SetupCodeParser {
+
+  private static final String QR_CODE_PREFIX = "CH:";
+  private static final char QR_CODE_DELIMITER = '%';
+
+  private static final int VERSION_BITS = 3;
+  private static final int VENDOR_ID_BITS = 16;
+  private static final int PRODUCT_ID_BITS = 16;
+  private static final int CUSTOM_FLOW_REQUIRED_BITS = 1;
+  private static final int RENDEZVOUS_INFO_BITS = 8;
+  private static final int PAYLOAD_DISCRIMINATOR_BITS = 12;
+  private static final int MANUAL_SETUP_DISCRIMINATOR_BITS = 4;
+  private static final int SETUP_PIN_CODE_BITS = 27;
+  private static final int PADDING_BITS = 5;
+
+  // The optional data follows the fields, from the first byte after them.
+  private static final int TOTAL_PAYLOAD_DATA_BITS =
+      VERSION_BITS
+          + VENDOR_ID_BITS
+          + PRODUCT_ID_BITS
+          + CUSTOM_FLOW_REQUIRED_BITS
+          + RENDEZVOUS_INFO_BITS
+          + PAYLOAD_DISCRIMINATOR_BITS
+          + SETUP_PIN_CODE_BITS
+          + PADDING_BITS;
+  private static final int TOTAL_PAYLOAD_DATA_BYTES = TOTAL_PAYLOAD_DATA_BITS / 8;
+
+  private static final int MANUAL_SETUP_SHORT_CODE_LENGTH = 10;
+  private static final int MANUAL_SETUP_LONG_CODE_LENGTH = 20;
+  private static final int MANUAL_SETUP_VENDOR_ID_LENGTH = 5;
+  private static final int MANUAL_SETUP_PRODUCT_ID_LENGTH = 5;
+
+  // Tags of the vendor data are 7-bit, those above are CHIP's.
+  private static final int VENDOR_TAG_LIMIT = 1 << 7;
+  private static final int SERIAL_NUMBER_TAG = 128;
+
+  // kChipProtocol_ServiceProvisioning, the implicit profile of the optional data.
+  private static final long SERVICE_PROVISIONING_PROFILE_ID = 0x0000000FL;
+  private static final long EXTENSION_DESCRIPTOR_TAG = SERVICE_PROVISIONING_PROFILE_ID << 32;
+
+  private final TlvReader tlvReader = new TlvReader(SERVICE_PROVISIONING_PROFILE_ID);
+  private byte[] buffer = new byte[64];
+
+  /** Returns {@link SetupPayload} parsed from the QR code string. */
+  public SetupPayload parseQrCode(CharSequence qrCode) throws InvalidSetupCodeException {
+    SetupPayload payload = new SetupPayload();
+    parseQrCode(qrCode, payload);
+    return payload;
+  }
+
+  /**
+   * Parses the QR code string into the given payload, replacing its optional data. The payload is
+   * left partly filled when the code is invalid.
+   */
+  public void parseQrCode(CharSequence qrCode, SetupPayload payload)
+      throws InvalidSetupCodeException {
+    // The payload is the first segment between delimiters starting with the prefix.
+    int start = 0;
+    int end;
+    while (true) {
+      end = indexOf(qrCode, QR_CODE_DELIMITER, start);
+      if (end - start > QR_CODE_PREFIX.length() && startsWithPrefix(qrCode, start)) {
+        start += QR_CODE_PREFIX.length();
+        break;
+      }
+      if (end == qrCode.length()) {
+        throw new InvalidSetupCodeException("No CHIP payload in the QR code");
+      }
+      start = end + 1;
+    }
+
+    int maxLength = Base41.maxDecodedLength(end - start);
+    if (buffer.length < maxLength) {
+      buffer = new byte[maxLength];
+    }
+    int length = Base41.decode(qrCode, start, end, buffer);
+    if (length < 0) {
+      throw new InvalidSetupCodeException("Invalid Base41 character in the QR code");
+    }
+    if (length < TOTAL_PAYLOAD_DATA_BYTES) {
+      throw new InvalidSetupCodeException("QR code too short");
+    }
+
+    int offset = 0;
+    payload.version = readBits(offset, VERSION_BITS);
+    offset += VERSION_BITS;
+    payload.vendorId = readBits(offset, VENDOR_ID_BITS);
+    offset += VENDOR_ID_BITS;
+    payload.productId = readBits(offset, PRODUCT_ID_BITS);
+    offset += PRODUCT_ID_BITS;
+    payload.requiresCustomFlow = readBits(offset, CUSTOM_FLOW_REQUIRED_BITS) != 0;
+    offset += CUSTOM_FLOW_REQUIRED_BITS;
+    payload.rendezvousInformation = readBits(offset, RENDEZVOUS_INFO_BITS);
+    offset += RENDEZVOUS_INFO_BITS;
+    payload.discriminator = readBits(offset, PAYLOAD_DISCRIMINATOR_BITS);
+    offset += PAYLOAD_DISCRIMINATOR_BITS;
+    payload.setupPinCode = readBits(offset, SETUP_PIN_CODE_BITS);
+
+    payload.optionalQRCodeInfo.clear();
+    if (length > TOTAL_PAYLOAD_DATA_BYTES) {
+      parseOptionalData(length, payload.optionalQRCodeInfo);
+    }
+  }
+
+  /** Returns {@link SetupPayload} parsed from the manual entry code string. */
+  public SetupPayload parseManualEntryCode(CharSequence entryCode)
+      throws InvalidSetupCodeException {
+    SetupPayload payload = new SetupPayload();
+    parseManualEntryCode(entryCode, payload);
+    return payload;
+  }
+
+  /**
+   * Parses the manual entry code string into the given payload. The version and rendezvous
+   * information are not in those codes, and are left as they are, as well as the optional data.
+   * The payload is left partly filled when the code is invalid.
+   */
+  public void parseManualEntryCode(CharSequence entryCode, SetupPayload payload)
+      throws InvalidSetupCodeException {
+    int length = entryCode.length() - 1;
+    if (length < 1) {
+      throw new InvalidSetupCodeException("Manual entry code too short");
+    }
+    if (Verhoeff10.computeCheckChar(entryCode, 0, length) != entryCode.charAt(length)) {
+      throw new InvalidSetupCodeException("Invalid check digit in the manual entry code");
+    }
+    if (length < MANUAL_SETUP_SHORT_CODE_LENGTH) {
+      throw new InvalidSetupCodeException("Manual entry code too short");
+    }
+
+    long shortCode = readDigits(entryCode, 0, MANUAL_SETUP_SHORT_CODE_LENGTH);
+    boolean isLongCode = (shortCode & 1) == 1;
+    if (length
+        != (isLongCode ? MANUAL_SETUP_LONG_CODE_LENGTH : MANUAL_SETUP_SHORT_CODE_LENGTH)) {
+      throw new InvalidSetupCodeException("Invalid manual entry code length");
+    }
+
+    // The C++ parser reads the fields from the lower 32 bits of the short code.
+    int shortCodeBits = (int) shortCode;
+    int discriminator =
+        (shortCodeBits >>> 1) & ((1 << MANUAL_SETUP_DISCRIMINATOR_BITS) - 1);
+    int setupPinCode =
+        (shortCodeBits >>> (1 + MANUAL_SETUP_DISCRIMINATOR_BITS))
+            & ((1 << SETUP_PIN_CODE_BITS) - 1);
+    if (setupPinCode == 0) {
+      throw new InvalidSetupCodeException("Setup PIN code is 0");
+    }
+
+    if (isLongCode) {
+      int offset = MANUAL_SETUP_SHORT_CODE_LENGTH;
+      // Truncated to 16 bits, as in C++.
+      payload.vendorId =
+          (int) readDigits(entryCode, offset, MANUAL_SETUP_VENDOR_ID_LENGTH) & 0xFFFF;
+      offset += MANUAL_SETUP_VENDOR_ID_LENGTH;
+      payload.productId =
+          (int) readDigits(entryCode, offset, MANUAL_SETUP_PRODUCT_ID_LENGTH) & 0xFFFF;
+    }
+    payload.requiresCustomFlow = isLongCode;
+    payload.setupPinCode = setupPinCode;
+    payload.discriminator = discriminator;
+  }
+
+  private void parseOptionalData(int length, Map<Integer, OptionalQRCodeInfo> optionalData)
+      throws InvalidSetupCodeException {
+    TlvReader reader = tlvReader;
+    reader.init(buffer, TOTAL_PAYLOAD_DATA_BYTES, length - TOTAL_PAYLOAD_DATA_BYTES);
+    if (!reader.next()) {
+      throw new InvalidSetupCodeException("Empty optional data");
+    }
+
+    if (reader.getElementType() == TlvReader.TYPE_STRUCTURE) {
+      if (reader.getTag() != EXTENSION_DESCRIPTOR_TAG) {
+        throw new InvalidSetupCodeException("Invalid optional data structure tag");
+      }
+      reader.enterContainer();
+      if (!reader.next()) {
+        throw new InvalidSetupCodeException("Empty optional data structure");
+      }
+    }
+
+    do {
+      boolean isString = reader.isUtf8String();
+      if (!isString && !reader.isInteger()) {
+        continue;
+      }
+
+      // As in C++, only the lower 8 bits of the tag number are kept.
+      int tag = (int) reader.getTag() & 0xFF;
+      if (tag >= VENDOR_TAG_LIMIT) {
+        // CHIP data, such as the serial number, is checked but not returned, as in C++.
+        if (!isString && tag != SERIAL_NUMBER_TAG) {
+          throw new InvalidSetupCodeException("Invalid type of optional data " + tag);
+        }
+        continue;
+      }
+
+      OptionalQRCodeInfo info = new OptionalQRCodeInfo();
+      info.tag = tag;
+      if (isString) {
+        info.type = OptionalQRCodeInfo.OptionalQRCodeInfoType.TYPE_STRING;
+        info.data = reader.getString();
+      } else {
+        info.type = OptionalQRCodeInfo.OptionalQRCodeInfoType.TYPE_INT32;
+        info.data = "";
+        info.int32 = (int) reader.getLong();
+      }
+      optionalData.put(tag, info);
+    } while (reader.next());
+  }
+
+  /** Reads the given number of bits from the given bit offset, least significant bit first. */
+  private int readBits(int offset, int count) {
+    int value = 0;
+    for (int i = 0; i < count; i++) {
+      int bit = offset + i;
+      if ((buffer[bit / 8] & (1 << (bit % 8))) != 0) {
+        value |= 1 << i;
+      }
+    }
+    return value;
+  }
+
+  private static long readDigits(CharSequence digits, int start, int count)
+      throws InvalidSetupCodeException {
+    long value = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = digits.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new InvalidSetupCodeException("Invalid character in the manual entry code");
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static int indexOf(CharSequence string, char c, int from) {
+    for (int i = from; i < string.length(); i++) {
+      if (string.charAt(i) == c) {
+        return i;
+      }
+    }
+    return string.length();
+  }
+
+  private static boolean startsWithPrefix(CharSequence string, int start) {
+    for (int i = 0; i < QR_CODE_PREFIX.length(); i++) {
+      if (string.charAt(start + i) != QR_CODE_PREFIX.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
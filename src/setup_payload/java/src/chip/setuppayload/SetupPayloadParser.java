@@ -13,10 +13,24 @@ public class SetupPayloadParser {
     return fetchPayloadFromManualEntryCode(entryCodeString);
   }
 
+  /**
+   * Returns the payloads parsed from the QR code strings, with an error code for each invalid or
+   * null one. All the codes are parsed in a single native call.
+   */
+  public SetupPayloadResults parseQrCodes(String[] qrCodeStrings) {
+    SetupPayload[] payloads = new SetupPayload[qrCodeStrings.length];
+    int[] errorCodes = new int[qrCodeStrings.length];
+    fetchPayloadsFromQrCodes(qrCodeStrings, payloads, errorCodes);
+    return new SetupPayloadResults(payloads, errorCodes);
+  }
+
   private native SetupPayload fetchPayloadFromQrCode(String qrCodeString);
 
   private native SetupPayload fetchPayloadFromManualEntryCode(String entryCodeString);
 
+  private native void fetchPayloadsFromQrCodes(
+      String[] qrCodeStrings, SetupPayload[] payloads, int[] errorCodes);
+
   static {
     System.loadLibrary("SetupPayloadParser");
   }
@@ -0,0 +1,35 @@
+package chip.setuppayload;
+
+/**
+ * Results of parsing several codes at once with {@link SetupPayloadParser#parseQrCodes}, in the
+ * order of the codes.
+ */
+public final class SetupPayloadResults {
+  private final SetupPayload[] payloads;
+  private final int[] errorCodes;
+
+  SetupPayloadResults(SetupPayload[] payloads, int[] errorCodes) {
+    this.payloads = payloads;
+    this.errorCodes = errorCodes;
+  }
+
+  /** Returns the number of codes parsed. */
+  public int size() {
+    return payloads.length;
+  }
+
+  /** Returns whether the code at the given index was parsed successfully. */
+  public boolean isValid(int index) {
+    return errorCodes[index] == 0;
+  }
+
+  /** Returns the payload of the code at the given index, or null if it is invalid. */
+  public SetupPayload getPayload(int index) {
+    return payloads[index];
+  }
+
+  /** Returns the CHIP error code of the code at the given index, 0 if it is valid. */
+  public int getErrorCode(int index) {
+    return errorCodes[index];
+  }
+}
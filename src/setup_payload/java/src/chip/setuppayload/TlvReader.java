@@ -0,0 +1,271 @@
+package chip.setuppayload;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of the CHIP TLV encoding, as in src/lib/core/CHIPTLVReader.cpp, with only what the
+ * optional data of the QR codes needs: it reads the elements of the top level, or of one container
+ * entered from it, skipping the contents of the other containers.
+ */
+final class TlvReader {
+
+  static final int TYPE_INT8 = 0x00;
+  static final int TYPE_INT64 = 0x03;
+  static final int TYPE_UINT8 = 0x04;
+  static final int TYPE_UINT64 = 0x07;
+  static final int TYPE_UTF8_STRING_1 = 0x0C;
+  static final int TYPE_UTF8_STRING_8 = 0x0F;
+  static final int TYPE_BYTE_STRING_8 = 0x13;
+  static final int TYPE_STRUCTURE = 0x15;
+  static final int TYPE_ARRAY = 0x16;
+  static final int TYPE_PATH = 0x17;
+  static final int TYPE_END_OF_CONTAINER = 0x18;
+
+  /** Marker of the tags outside of any profile, in the upper 32 bits of a tag. */
+  static final long SPECIAL_TAG_MARKER = 0xFFFFFFFF00000000L;
+
+  private static final long ANONYMOUS_TAG = SPECIAL_TAG_MARKER | 0xFFFFFFFFL;
+
+  /** Container types of the top level, and of the containers nested in a skipped one. */
+  private static final int CONTAINER_NONE = -1;
+  private static final int CONTAINER_UNKNOWN = -2;
+
+  private static final int TYPE_MASK = 0x1F;
+  private static final int TAG_CONTROL_SHIFT = 5;
+
+  private final long implicitProfileId;
+
+  private byte[] buffer;
+  private int position;
+  private int end;
+  private int containerType;
+
+  private int elementType;
+  private long tag;
+  private long value;
+  private int valueOffset;
+
+  TlvReader(long implicitProfileId) {
+    this.implicitProfileId = implicitProfileId;
+  }
+
+  /** Starts reading the given bytes, at the top level. */
+  void init(byte[] buffer, int offset, int length) {
+    this.buffer = buffer;
+    position = offset;
+    end = offset + length;
+    containerType = CONTAINER_NONE;
+    elementType = -1;
+  }
+
+  /**
+   * Moves to the next element, after the contents of the current one if it is a container. Returns
+   * false at the end of the data or of the container entered; like the C++ reader, a container
+   * truncated by the end of the data ends there.
+   */
+  boolean next() throws InvalidSetupCodeException {
+    if (isContainer()) {
+      skipContainer();
+    }
+
+    if (position == end) {
+      elementType = -1;
+      return false;
+    }
+
+    readElement();
+    verifyElement(containerType);
+    if (elementType == TYPE_END_OF_CONTAINER) {
+      elementType = -1;
+      return false;
+    }
+    return true;
+  }
+
+  /** Moves into the container the reader is on, before its first element. */
+  void enterContainer() throws InvalidSetupCodeException {
+    if (!isContainer() || containerType != CONTAINER_NONE) {
+      throw new InvalidSetupCodeException("Not on a TLV container");
+    }
+    containerType = elementType;
+    elementType = -1;
+  }
+
+  int getElementType() {
+    return elementType;
+  }
+
+  /** Returns the tag of the element, with its profile ID in the upper 32 bits as in C++. */
+  long getTag() {
+    return tag;
+  }
+
+  boolean isInteger() {
+    return elementType >= TYPE_INT8 && elementType <= TYPE_UINT64;
+  }
+
+  boolean isUtf8String() {
+    return elementType >= TYPE_UTF8_STRING_1 && elementType <= TYPE_UTF8_STRING_8;
+  }
+
+  /** Returns the value of an integer element, signed ones being sign-extended. */
+  long getLong() {
+    return value;
+  }
+
+  /** Returns the value of a string element, up to its first NUL character, as C strings do. */
+  String getString() {
+    int length = (int) value;
+    int stringEnd = valueOffset;
+    while (stringEnd < valueOffset + length && buffer[stringEnd] != 0) {
+      stringEnd++;
+    }
+    return new String(buffer, valueOffset, stringEnd - valueOffset, StandardCharsets.UTF_8);
+  }
+
+  private boolean isContainer() {
+    return elementType >= TYPE_STRUCTURE && elementType <= TYPE_PATH;
+  }
+
+  /**
+   * Skips the contents of the container the reader is on. As in TLVReader::SkipToEndOfContainer(),
+   * the elements of the containers nested two levels down or more are checked against no container
+   * type.
+   */
+  private void skipContainer() throws InvalidSetupCodeException {
+    int outerType = elementType;
+    int type = outerType;
+    int depth = 0;
+    while (position != end) {
+      readElement();
+      verifyElement(type);
+      if (elementType == TYPE_END_OF_CONTAINER) {
+        if (depth == 0) {
+          break;
+        }
+        depth--;
+        type = depth == 0 ? outerType : CONTAINER_UNKNOWN;
+      } else if (isContainer()) {
+        depth++;
+        type = elementType;
+      }
+    }
+    elementType = -1;
+  }
+
+  /** Checks the tag of the element read against the type of the container holding it. */
+  private void verifyElement(int type) throws InvalidSetupCodeException {
+    if (elementType == TYPE_END_OF_CONTAINER) {
+      if (type == CONTAINER_NONE || tag != ANONYMOUS_TAG) {
+        throw new InvalidSetupCodeException("Unexpected end of TLV container");
+      }
+      return;
+    }
+
+    boolean valid;
+    switch (type) {
+      case CONTAINER_NONE:
+        valid = !isContextTag();
+        break;
+      case TYPE_STRUCTURE:
+        valid = tag != ANONYMOUS_TAG;
+        break;
+      case TYPE_ARRAY:
+        valid = tag == ANONYMOUS_TAG;
+        break;
+      default:
+        valid = true;
+        break;
+    }
+    if (!valid) {
+      throw new InvalidSetupCodeException("Invalid TLV tag in its container");
+    }
+  }
+
+  private boolean isContextTag() {
+    return (tag & SPECIAL_TAG_MARKER) == SPECIAL_TAG_MARKER && (tag & 0xFFFFFFFFL) < 256;
+  }
+
+  private void readElement() throws InvalidSetupCodeException {
+    int control = (int) readUnsigned(1);
+    int type = control & TYPE_MASK;
+    if (type > TYPE_END_OF_CONTAINER) {
+      throw new InvalidSetupCodeException("Invalid TLV element type " + type);
+    }
+    elementType = type;
+    tag = readTag(control >>> TAG_CONTROL_SHIFT);
+
+    valueOffset = position;
+    value = 0;
+    if (type <= TYPE_UINT64) {
+      int size = 1 << (type & 0x03);
+      value = readUnsigned(size);
+      if (type <= TYPE_INT64) {
+        // Sign-extends the value from its size.
+        int shift = 64 - 8 * size;
+        value = (value << shift) >> shift;
+      }
+    } else if (type == 0x0A || type == 0x0B) {
+      // Floating point numbers, of 4 and 8 bytes.
+      skip(type == 0x0A ? 4 : 8);
+    } else if (type >= TYPE_UTF8_STRING_1 && type <= TYPE_BYTE_STRING_8) {
+      // The C++ reader only keeps the low 32 bits of the length.
+      long length = readUnsigned(1 << (type & 0x03)) & 0xFFFFFFFFL;
+      if (length > end - position) {
+        throw new InvalidSetupCodeException("Truncated TLV string");
+      }
+      value = length;
+      valueOffset = position;
+      position += (int) length;
+    }
+  }
+
+  private long readTag(int tagControl) throws InvalidSetupCodeException {
+    switch (tagControl) {
+      case 0: // Anonymous.
+        return ANONYMOUS_TAG;
+      case 1: // Context-specific.
+        return SPECIAL_TAG_MARKER | readUnsigned(1);
+      case 2: // Common profile, 2 bytes.
+        return readUnsigned(2);
+      case 3: // Common profile, 4 bytes.
+        return readUnsigned(4);
+      case 4: // Implicit profile, 2 bytes.
+        return (implicitProfileId << 32) | readUnsigned(2);
+      case 5: // Implicit profile, 4 bytes.
+        return (implicitProfileId << 32) | readUnsigned(4);
+      case 6: // Fully qualified, 6 bytes: vendor ID, profile number and tag number.
+        {
+          long profileId = readUnsigned(2) << 16;
+          profileId |= readUnsigned(2);
+          return (profileId << 32) | readUnsigned(2);
+        }
+      default: // Fully qualified, 8 bytes.
+        {
+          long profileId = readUnsigned(2) << 16;
+          profileId |= readUnsigned(2);
+          return (profileId << 32) | readUnsigned(4);
+        }
+    }
+  }
+
+  /** Reads a little-endian value of the given size; those of 8 bytes may come out negative. */
+  private long readUnsigned(int size) throws InvalidSetupCodeException {
+    if (size > end - position) {
+      throw new InvalidSetupCodeException("Truncated TLV element");
+    }
+    long result = 0;
+    for (int i = 0; i < size; i++) {
+      result |= (buffer[position + i] & 0xFFL) << (8 * i);
+    }
+    position += size;
+    return result;
+  }
+
+  private void skip(int size) throws InvalidSetupCodeException {
+    if (size > end - position) {
+      throw new InvalidSetupCodeException("Truncated TLV element");
+    }
+    position += size;
+  }
+}
@@ -0,0 +1,63 @@
+package chip.setuppayload;
+
+/**
+ * Verhoeff check digits of decimal strings, as in src/lib/support/verhoeff, which the manual entry
+ * codes end with.
+ */
+final class Verhoeff10 {
+
+  private static final int BASE = 10;
+
+  // Multiplication in the dihedral group of the pentagon.
+  private static final byte[] MULTIPLY = {
+    0, 1, 2, 3, 4, 5, 6, 7, 8, 9,
+    1, 2, 3, 4, 0, 6, 7, 8, 9, 5,
+    2, 3, 4, 0, 1, 7, 8, 9, 5, 6,
+    3, 4, 0, 1, 2, 8, 9, 5, 6, 7,
+    4, 0, 1, 2, 3, 9, 5, 6, 7, 8,
+    5, 9, 8, 7, 6, 0, 4, 3, 2, 1,
+    6, 5, 9, 8, 7, 1, 0, 4, 3, 2,
+    7, 6, 5, 9, 8, 2, 1, 0, 4, 3,
+    8, 7, 6, 5, 9, 3, 2, 1, 0, 4,
+    9, 8, 7, 6, 5, 4, 3, 2, 1, 0,
+  };
+
+  private static final byte[] PERMUTATION = {1, 5, 7, 6, 2, 8, 3, 0, 9, 4};
+
+  // The permutation is of order 8: PERMUTATIONS[i][v] is v permuted i times.
+  private static final int PERMUTATION_ORDER = 8;
+  private static final byte[][] PERMUTATIONS = new byte[PERMUTATION_ORDER][BASE];
+
+  static {
+    for (int v = 0; v < BASE; v++) {
+      PERMUTATIONS[0][v] = (byte) v;
+    }
+    for (int i = 1; i < PERMUTATION_ORDER; i++) {
+      for (int v = 0; v < BASE; v++) {
+        PERMUTATIONS[i][v] = PERMUTATION[PERMUTATIONS[i - 1][v]];
+      }
+    }
+  }
+
+  private Verhoeff10() {}
+
+  /**
+   * Returns the check digit of the characters of {@code digits} from {@code start} to {@code end},
+   * or 0 if one of them is not a digit.
+   */
+  static char computeCheckChar(CharSequence digits, int start, int end) {
+    int c = 0;
+    for (int i = 1; i <= end - start; i++) {
+      int value = digits.charAt(end - i) - '0';
+      if (value < 0 || value >= BASE) {
+        return 0;
+      }
+      c = MULTIPLY[c * BASE + PERMUTATIONS[i % PERMUTATION_ORDER][value]];
+    }
+    // Inverse in the dihedral group of the pentagon.
+    if (c > 0 && c < BASE / 2) {
+      c = BASE / 2 - c;
+    }
+    return (char) ('0' + c);
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.setuppayload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class Base41Test {
+
+  @Test
+  public void encodesAsTheNativeEncoder() {
+    // Vector of TestQRCode.cpp.
+    assertEquals("GHF.KGL+48-G5LGK35", encode("Hello World!".getBytes(StandardCharsets.US_ASCII)));
+    assertArrayEquals(
+        "Hello World!".getBytes(StandardCharsets.US_ASCII), decode("GHF.KGL+48-G5LGK35"));
+  }
+
+  @Test
+  public void encodesLastBytesInFewestCharacters() {
+    assertEquals("", encode(new byte[0]));
+    assertEquals("0", encode(new byte[] {0}));
+    // 255 = 6 * 41 + 9, least significant first.
+    assertEquals("96", encode(new byte[] {(byte) 0xFF}));
+    assertArrayEquals(new byte[] {(byte) 0xFF}, decode("96"));
+
+    // A last pair of bytes worth less than 41 * 41 takes 2 characters, and still decodes to 2
+    // bytes since its value does not fit in one.
+    assertEquals("A6", encode(new byte[] {0x00, 0x01}));
+    assertArrayEquals(new byte[] {0x00, 0x01}, decode("A6"));
+    // Worth less than 256, it takes 3 characters, as 2 would decode to a single byte.
+    assertEquals("600", encode(new byte[] {0x06, 0x00}));
+    assertArrayEquals(new byte[] {0x06, 0x00}, decode("600"));
+    // Only the last pair of bytes is shortened.
+    assertEquals("A60A6", encode(new byte[] {0x00, 0x01, 0x00, 0x01}));
+    assertArrayEquals(new byte[] {0x00, 0x01, 0x00, 0x01}, decode("A60A6"));
+  }
+
+  @Test
+  public void decodesWhatItEncodes() {
+    Random random = new Random(41);
+    for (int length = 0; length < 64; length++) {
+      for (int i = 0; i < 100; i++) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        assertArrayEquals(bytes, decode(encode(bytes)));
+      }
+    }
+  }
+
+  @Test
+  public void wrapsChunksAbove16Bits() {
+    // "...." is 40 * (1 + 41 + 41 * 41) = 68920, above 0xFFFF: the C++ decoder keeps its low 16
+    // bits.
+    int wrapped = 68920 & 0xFFFF;
+    assertArrayEquals(new byte[] {(byte) wrapped, (byte) (wrapped >> 8)}, decode("..."));
+  }
+
+  @Test
+  public void rejectsCharactersOutOfTheAlphabet() {
+    for (String invalid : new String[] {"a00", "0a0", "00a", "0/", "[", "\u0000", "\u00c9", "#"}) {
+      byte[] out = new byte[Base41.maxDecodedLength(invalid.length())];
+      assertEquals(invalid, -1, Base41.decode(invalid, 0, invalid.length(), out));
+    }
+  }
+
+  @Test
+  public void decodesRange() {
+    byte[] out = new byte[Base41.maxDecodedLength(3)];
+    assertEquals(2, Base41.decode("CH:A60%", 3, 6, out));
+    assertArrayEquals(new byte[] {0x00, 0x01}, Arrays.copyOf(out, 2));
+  }
+
+  @Test
+  public void boundsTheDecodedLength() {
+    assertEquals(0, Base41.maxDecodedLength(0));
+    assertEquals(2, Base41.maxDecodedLength(1));
+    assertEquals(2, Base41.maxDecodedLength(2));
+    assertEquals(2, Base41.maxDecodedLength(3));
+    assertEquals(4, Base41.maxDecodedLength(4));
+  }
+
+  private static String encode(byte[] bytes) {
+    StringBuilder out = new StringBuilder();
+    Base41.encode(bytes, bytes.length, out);
+    return out.toString();
+  }
+
+  private static byte[] decode(String base41) {
+    byte[] out = new byte[Base41.maxDecodedLength(base41.length())];
+    int length = Base41.decode(base41, 0, base41.length(), out);
+    return Arrays.copyOf(out, length);
+  }
+}
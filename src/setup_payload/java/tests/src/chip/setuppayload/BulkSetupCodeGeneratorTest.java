@@ -0,0 +1,263 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.setuppayload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkSetupCodeGeneratorTest {
+
+  // Not a multiple of the chunk sizes, so that the last chunk is partial.
+  private static final int COUNT = 10007;
+
+  private static final BulkSetupCodeGenerator.PayloadSource SOURCE =
+      BulkSetupCodeGeneratorTest::fill;
+
+  private Path file;
+  private FileChannel channel;
+
+  @Before
+  public void setUp() throws IOException {
+    file = Files.createTempFile("BulkSetupCodeGeneratorTest", ".csv");
+    channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    channel.close();
+    Files.delete(file);
+  }
+
+  @Test(timeout = 60000)
+  public void generatesAsSetupCodeGenerator() throws IOException {
+    for (BulkSetupCodeGenerator.Output output : BulkSetupCodeGenerator.Output.values()) {
+      byte[] expected = expectedCodes(output, COUNT);
+      for (int threadCount : new int[] {1, 4}) {
+        for (int chunkSize : new int[] {1, 7, BulkSetupCodeGenerator.DEFAULT_CHUNK_SIZE}) {
+          String message = output + " with " + threadCount + " threads of " + chunkSize;
+          channel.truncate(0);
+          channel.position(0);
+
+          long written =
+              new BulkSetupCodeGenerator(output, threadCount, chunkSize)
+                  .generate(SOURCE, COUNT, channel);
+
+          assertEquals(message, expected.length, written);
+          assertEquals(message, expected.length, channel.position());
+          assertArrayEquals(message, expected, readAll());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void writesFromChannelPosition() throws IOException {
+    byte[] header = "header\n".getBytes(StandardCharsets.US_ASCII);
+    channel.write(ByteBuffer.wrap(header));
+    byte[] expected = expectedCodes(BulkSetupCodeGenerator.Output.QR_CODE, 100);
+
+    long written =
+        new BulkSetupCodeGenerator(BulkSetupCodeGenerator.Output.QR_CODE, 3, 8)
+            .generate(SOURCE, 100, channel);
+
+    assertEquals(expected.length, written);
+    assertEquals(header.length + expected.length, channel.position());
+    byte[] contents = readAll();
+    assertArrayEquals(header, Arrays.copyOf(contents, header.length));
+    assertArrayEquals(expected, Arrays.copyOfRange(contents, header.length, contents.length));
+  }
+
+  @Test
+  public void generatesNothingForNoDevices() throws IOException {
+    BulkSetupCodeGenerator generator =
+        new BulkSetupCodeGenerator(BulkSetupCodeGenerator.Output.QR_CODE, 4, 16);
+
+    assertEquals(0, generator.generate(SOURCE, 0, channel));
+    assertEquals(0, channel.size());
+  }
+
+  @Test(timeout = 60000)
+  public void stopsWhenSourceThrows() throws IOException {
+    byte[] expected = expectedCodes(BulkSetupCodeGenerator.Output.QR_CODE, COUNT);
+    for (int threadCount : new int[] {1, 4}) {
+      for (int failingIndex : new int[] {0, 5, 5000, COUNT - 1}) {
+        String message = threadCount + " threads failing at " + failingIndex;
+        channel.truncate(0);
+        channel.position(0);
+        IllegalStateException failure = new IllegalStateException("Source failed");
+        BulkSetupCodeGenerator.PayloadSource source =
+            (index, payload) -> {
+              if (index == failingIndex) {
+                throw failure;
+              }
+              fill(index, payload);
+            };
+
+        BulkSetupCodeGenerator generator =
+            new BulkSetupCodeGenerator(BulkSetupCodeGenerator.Output.QR_CODE, threadCount, 3);
+        IllegalStateException thrown =
+            assertThrows(
+                message,
+                IllegalStateException.class,
+                () -> generator.generate(source, COUNT, channel));
+        assertSame(message, failure, thrown);
+
+        // The threads are joined, and only whole chunks before the failing one were written.
+        assertFalse(message, hasGeneratorThreads());
+        assertEquals(message, 0, channel.position());
+        byte[] contents = readAll();
+        assertArrayEquals(message, Arrays.copyOf(expected, contents.length), contents);
+        int lines = 0;
+        for (byte b : contents) {
+          if (b == '\n') {
+            lines++;
+          }
+        }
+        assertTrue(message, contents.length == 0 || contents[contents.length - 1] == '\n');
+        assertTrue(message, lines <= failingIndex && lines % 3 == 0);
+        if (threadCount == 1) {
+          assertEquals(message, failingIndex / 3 * 3, lines);
+        }
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void failsOnDiscriminatorOutOfManualEntryCode() throws IOException {
+    BulkSetupCodeGenerator.PayloadSource source =
+        (index, payload) -> {
+          fill(index, payload);
+          if (index == 50) {
+            payload.discriminator = 16;
+          }
+        };
+
+    for (BulkSetupCodeGenerator.Output output :
+        new BulkSetupCodeGenerator.Output[] {
+          BulkSetupCodeGenerator.Output.MANUAL_ENTRY_CODE,
+          BulkSetupCodeGenerator.Output.QR_CODE_AND_MANUAL_ENTRY_CODE
+        }) {
+      BulkSetupCodeGenerator generator = new BulkSetupCodeGenerator(output, 2, 4);
+      assertThrows(
+          output.toString(),
+          IllegalArgumentException.class,
+          () -> generator.generate(source, 100, channel));
+    }
+
+    // The QR codes alone hold the discriminator.
+    new BulkSetupCodeGenerator(BulkSetupCodeGenerator.Output.QR_CODE, 2, 4)
+        .generate(source, 100, channel);
+  }
+
+  @Test
+  public void rejectsInvalidArguments() {
+    BulkSetupCodeGenerator.Output output = BulkSetupCodeGenerator.Output.QR_CODE;
+    assertThrows(IllegalArgumentException.class, () -> new BulkSetupCodeGenerator(output, 0, 1));
+    assertThrows(IllegalArgumentException.class, () -> new BulkSetupCodeGenerator(output, 1, 0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new BulkSetupCodeGenerator(output, 1, 1).generate(SOURCE, -1, channel));
+  }
+
+  /** Fills in varied payloads, some with optional data, some only from their defaults. */
+  private static void fill(long index, SetupPayload payload) {
+    int i = (int) index;
+    payload.version = i % 8;
+    payload.vendorId = (i * 31) & 0xFFFF;
+    payload.productId = (i * 17) & 0xFFFF;
+    payload.requiresCustomFlow = i % 3 == 0;
+    payload.rendezvousInformation = 1 + i % 15;
+    payload.discriminator = i % 16;
+    payload.setupPinCode = 1 + (i * 7919L) % ((1 << 27) - 1);
+    if (i % 5 == 0) {
+      OptionalQRCodeInfo string = new OptionalQRCodeInfo();
+      string.tag = 2;
+      string.type = OptionalQRCodeInfo.OptionalQRCodeInfoType.TYPE_STRING;
+      string.data = "device " + i;
+      payload.addOptionalQRCodeInfo(string);
+
+      OptionalQRCodeInfo integer = new OptionalQRCodeInfo();
+      integer.tag = 3;
+      integer.type = OptionalQRCodeInfo.OptionalQRCodeInfoType.TYPE_INT32;
+      integer.int32 = -i;
+      payload.addOptionalQRCodeInfo(integer);
+    }
+  }
+
+  /** Returns the lines of the codes of the devices, generated one by one on this thread. */
+  private static byte[] expectedCodes(BulkSetupCodeGenerator.Output output, int count) {
+    SetupCodeGenerator generator = new SetupCodeGenerator();
+    ByteArrayOutputStream codes = new ByteArrayOutputStream();
+    for (int i = 0; i < count; i++) {
+      SetupPayload payload = new SetupPayload();
+      fill(i, payload);
+      String line;
+      switch (output) {
+        case QR_CODE:
+          line = generator.generateQrCode(payload);
+          break;
+        case MANUAL_ENTRY_CODE:
+          line = generator.generateManualEntryCode(payload);
+          break;
+        default:
+          line =
+              generator.generateQrCode(payload) + "," + generator.generateManualEntryCode(payload);
+          break;
+      }
+      byte[] bytes = (line + "\n").getBytes(StandardCharsets.US_ASCII);
+      codes.write(bytes, 0, bytes.length);
+    }
+    return codes.toByteArray();
+  }
+
+  private byte[] readAll() throws IOException {
+    ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+    while (contents.hasRemaining()) {
+      if (channel.read(contents, contents.position()) < 0) {
+        break;
+      }
+    }
+    return contents.array();
+  }
+
+  private static boolean hasGeneratorThreads() {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith("BulkSetupCodeGenerator-") && thread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
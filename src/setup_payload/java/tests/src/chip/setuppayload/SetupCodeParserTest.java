@@ -0,0 +1,294 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.setuppayload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests of {@link SetupCodeParser}, on the vectors of src/setup_payload/tests and against the
+ * native parser of {@link SetupPayloadParser}, which needs libSetupPayloadParser on the library
+ * path.
+ */
+public class SetupCodeParserTest {
+
+  // TestQRCode.cpp: version 5, vendor 12, product 1, Wi-Fi, discriminator 128, PIN 2048.
+  private static final String QR_CODE = "CH:J20800G008008000";
+
+  // The optional data of TestHelpers.h, in the structure the C++ generator writes: tag 2
+  // "myData", tag 3 12, and the serial number "123456789".
+  private static final int[] OPTIONAL_DATA = {
+    0x95, 0x00, 0x00,
+    0x2C, 0x02, 0x06, 'm', 'y', 'D', 'a', 't', 'a',
+    0x24, 0x03, 0x0C,
+    0x2C, 0x80, 0x09, '1', '2', '3', '4', '5', '6', '7', '8', '9',
+    0x18
+  };
+
+  // TestManualCode.cpp, without their check digits: the code, then its PIN code,
+  // discriminator, vendor and product IDs.
+  private static final Object[][] MANUAL_ENTRY_CODES = {
+    {"00000394914536714526", 1234, 1, 45367, 14526},
+    {"12393051190456200032", 38728284, 15, 4562, 32},
+    {"00000000350000100001", 1, 1, 1, 1},
+    {"0000039490", 1234, 1, 0, 0},
+    {"0000000034", 1, 1, 0, 0},
+    {"00000000330000000000", 1, 0, 0, 0},
+    {"0000000032", 1, 0, 0, 0},
+    {"00000000330000014536", 1, 0, 0, 14536},
+    {"00000000332645300000", 1, 0, 26453, 0},
+  };
+
+  private static final String[] INVALID_MANUAL_ENTRY_CODES = {
+    "", "24184.2196", "2456", "123456789123456785671", "12749875380", "23456789123456785610",
+    // A PIN code of 0.
+    "0000000016",
+  };
+
+  private final SetupCodeParser parser = new SetupCodeParser();
+  private final SetupPayloadParser nativeParser = new SetupPayloadParser();
+
+  @Test
+  public void parsesQrCode() throws InvalidSetupCodeException {
+    SetupPayload payload = parser.parseQrCode(QR_CODE);
+
+    assertEquals(5, payload.version);
+    assertEquals(12, payload.vendorId);
+    assertEquals(1, payload.productId);
+    assertFalse(payload.requiresCustomFlow);
+    assertEquals(1, payload.rendezvousInformation);
+    assertEquals(128, payload.discriminator);
+    assertEquals(2048, payload.setupPinCode);
+    assertTrue(payload.optionalQRCodeInfo.isEmpty());
+    assertAgreesWithNative(QR_CODE);
+  }
+
+  @Test
+  public void findsPayloadBetweenDelimiters() throws InvalidSetupCodeException {
+    // The forms of TestQRCode.cpp's TestExtractPayload.
+    String payload = QR_CODE.substring(3);
+    for (String qrCode :
+        new String[] {
+          "Z%CH:" + payload + "%",
+          "%Z%CH:" + payload,
+          "%CH:%CH:" + payload + "%DDD",
+          "CH:" + payload + "%",
+        }) {
+      assertEquals(qrCode, 2048, parser.parseQrCode(qrCode).setupPinCode);
+      assertAgreesWithNative(qrCode);
+    }
+
+    for (String qrCode : new String[] {"", "CH:", "%CH:%", "ASCH:" + payload, payload}) {
+      assertThrows(qrCode, InvalidSetupCodeException.class, () -> parser.parseQrCode(qrCode));
+      assertAgreesWithNative(qrCode);
+    }
+  }
+
+  @Test
+  public void parsesOptionalData() throws InvalidSetupCodeException {
+    String qrCode = qrCodeWithOptionalData(OPTIONAL_DATA.length);
+    SetupPayload payload = parser.parseQrCode(qrCode);
+
+    assertEquals(2048, payload.setupPinCode);
+    // The serial number is CHIP data, which is not returned.
+    assertEquals(2, payload.optionalQRCodeInfo.size());
+    OptionalQRCodeInfo string = payload.optionalQRCodeInfo.get(2);
+    assertEquals(OptionalQRCodeInfo.OptionalQRCodeInfoType.TYPE_STRING, string.type);
+    assertEquals("myData", string.data);
+    OptionalQRCodeInfo integer = payload.optionalQRCodeInfo.get(3);
+    assertEquals(OptionalQRCodeInfo.OptionalQRCodeInfoType.TYPE_INT32, integer.type);
+    assertEquals(12, integer.int32);
+    assertAgreesWithNative(qrCode);
+  }
+
+  @Test
+  public void rejectsTruncatedOptionalData() {
+    for (int length = 1; length < OPTIONAL_DATA.length; length++) {
+      assertAgreesWithNative(qrCodeWithOptionalData(length));
+    }
+
+    // Cut within "myData", and within the serial number.
+    for (int length : new int[] {8, 20}) {
+      String qrCode = qrCodeWithOptionalData(length);
+      assertThrows(qrCode, InvalidSetupCodeException.class, () -> parser.parseQrCode(qrCode));
+    }
+  }
+
+  @Test
+  public void rejectsInvalidBase41() {
+    List<String> qrCodes = new ArrayList<>();
+    for (int i = 3; i < QR_CODE.length(); i++) {
+      for (char c : new char[] {'a', '#', '/', '[', '\u00e9'}) {
+        qrCodes.add(QR_CODE.substring(0, i) + c + QR_CODE.substring(i + 1));
+      }
+    }
+
+    for (String qrCode : qrCodes) {
+      assertThrows(qrCode, InvalidSetupCodeException.class, () -> parser.parseQrCode(qrCode));
+      assertAgreesWithNative(qrCode);
+    }
+  }
+
+  @Test
+  public void parsesManualEntryCodes() throws InvalidSetupCodeException {
+    for (Object[] vector : MANUAL_ENTRY_CODES) {
+      String entryCode = withCheckDigit((String) vector[0]);
+      SetupPayload payload = parser.parseManualEntryCode(entryCode);
+
+      assertEquals(entryCode, (int) vector[1], payload.setupPinCode);
+      assertEquals(entryCode, (int) vector[2], payload.discriminator);
+      assertEquals(entryCode, (int) vector[3], payload.vendorId);
+      assertEquals(entryCode, (int) vector[4], payload.productId);
+      assertEquals(entryCode, entryCode.length() == 21, payload.requiresCustomFlow);
+      assertManualEntryCodeAgreesWithNative(entryCode);
+    }
+  }
+
+  @Test
+  public void rejectsInvalidManualEntryCodes() {
+    List<String> entryCodes = new ArrayList<>();
+    for (String entryCode : INVALID_MANUAL_ENTRY_CODES) {
+      entryCodes.add(withCheckDigit(entryCode));
+    }
+    // TestManualCode.cpp's code with a wrong check digit.
+    entryCodes.add("02684354589");
+    // Every wrong check digit of the valid codes.
+    for (Object[] vector : MANUAL_ENTRY_CODES) {
+      String entryCode = (String) vector[0];
+      char checkDigit = withCheckDigit(entryCode).charAt(entryCode.length());
+      for (char c = '0'; c <= '9'; c++) {
+        if (c != checkDigit) {
+          entryCodes.add(entryCode + c);
+        }
+      }
+    }
+
+    for (String entryCode : entryCodes) {
+      assertThrows(
+          entryCode,
+          InvalidSetupCodeException.class,
+          () -> parser.parseManualEntryCode(entryCode));
+      assertManualEntryCodeAgreesWithNative(entryCode);
+    }
+  }
+
+  @Test
+  public void agreesWithNativeOnRandomCodes() {
+    Random random = new Random(2020);
+    List<String> qrCodes = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      // Random fields, some followed by random optional data.
+      byte[] bytes = new byte[11 + (i % 2 == 0 ? 0 : random.nextInt(24))];
+      random.nextBytes(bytes);
+      StringBuilder qrCode = new StringBuilder("CH:");
+      Base41.encode(bytes, bytes.length, qrCode);
+      qrCodes.add(qrCode.toString());
+    }
+
+    SetupPayloadResults results = nativeParser.parseQrCodes(qrCodes.toArray(new String[0]));
+    for (int i = 0; i < qrCodes.size(); i++) {
+      assertAgreesWithNative(qrCodes.get(i), results, i);
+    }
+  }
+
+  @Test
+  public void reusesPayload() throws InvalidSetupCodeException {
+    SetupPayload payload = new SetupPayload();
+    parser.parseQrCode(qrCodeWithOptionalData(OPTIONAL_DATA.length), payload);
+    parser.parseQrCode(QR_CODE, payload);
+
+    assertEquals(2048, payload.setupPinCode);
+    assertTrue(payload.optionalQRCodeInfo.isEmpty());
+  }
+
+  private void assertAgreesWithNative(String qrCode) {
+    assertAgreesWithNative(qrCode, nativeParser.parseQrCodes(new String[] {qrCode}), 0);
+  }
+
+  private void assertAgreesWithNative(String qrCode, SetupPayloadResults results, int index) {
+    SetupPayload payload;
+    try {
+      payload = parser.parseQrCode(qrCode);
+    } catch (InvalidSetupCodeException e) {
+      assertFalse(qrCode + " is valid natively", results.isValid(index));
+      return;
+    }
+    assertTrue(qrCode + " is invalid natively", results.isValid(index));
+    assertSamePayload(qrCode, results.getPayload(index), payload);
+  }
+
+  private void assertManualEntryCodeAgreesWithNative(String entryCode) {
+    // The native parser returns an empty payload for invalid codes, while valid ones have a PIN
+    // code.
+    SetupPayload expected = nativeParser.parseManualEntryCode(entryCode);
+    SetupPayload payload;
+    try {
+      payload = parser.parseManualEntryCode(entryCode);
+    } catch (InvalidSetupCodeException e) {
+      assertEquals(entryCode + " is valid natively", 0, expected.setupPinCode);
+      return;
+    }
+    assertSamePayload(entryCode, expected, payload);
+  }
+
+  private static void assertSamePayload(String code, SetupPayload expected, SetupPayload actual) {
+    assertNotNull(code, expected);
+    assertEquals(code, expected.version, actual.version);
+    assertEquals(code, expected.vendorId, actual.vendorId);
+    assertEquals(code, expected.productId, actual.productId);
+    assertEquals(code, expected.requiresCustomFlow, actual.requiresCustomFlow);
+    assertEquals(code, expected.rendezvousInformation, actual.rendezvousInformation);
+    assertEquals(code, expected.discriminator, actual.discriminator);
+    assertEquals(code, expected.setupPinCode, actual.setupPinCode);
+
+    assertEquals(code, expected.optionalQRCodeInfo.keySet(), actual.optionalQRCodeInfo.keySet());
+    for (OptionalQRCodeInfo info : expected.optionalQRCodeInfo.values()) {
+      OptionalQRCodeInfo actualInfo = actual.optionalQRCodeInfo.get(info.tag);
+      assertEquals(code, info.type, actualInfo.type);
+      assertEquals(code, info.data, actualInfo.data);
+      assertEquals(code, info.int32, actualInfo.int32);
+    }
+  }
+
+  /** Returns {@link #QR_CODE} followed by the first bytes of {@link #OPTIONAL_DATA}. */
+  private static String qrCodeWithOptionalData(int length) {
+    byte[] fields = new byte[Base41.maxDecodedLength(QR_CODE.length() - 3)];
+    int fieldsLength = Base41.decode(QR_CODE, 3, QR_CODE.length(), fields);
+    byte[] bytes = Arrays.copyOf(fields, fieldsLength + length);
+    for (int i = 0; i < length; i++) {
+      bytes[fieldsLength + i] = (byte) OPTIONAL_DATA[i];
+    }
+
+    StringBuilder qrCode = new StringBuilder("CH:");
+    Base41.encode(bytes, bytes.length, qrCode);
+    return qrCode.toString();
+  }
+
+  private static String withCheckDigit(String digits) {
+    return digits + Verhoeff10.computeCheckChar(digits, 0, digits.length());
+  }
+}
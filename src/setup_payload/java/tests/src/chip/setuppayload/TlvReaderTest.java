@@ -0,0 +1,266 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.setuppayload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TlvReaderTest {
+
+  private static final long PROFILE_ID = 0x0000000FL;
+
+  // Control bytes: the tag control in the upper 3 bits, the element type in the lower 5.
+  private static final int ANONYMOUS = 0 << 5;
+  private static final int CONTEXT = 1 << 5;
+  private static final int IMPLICIT_2 = 4 << 5;
+  private static final int FULLY_QUALIFIED_6 = 6 << 5;
+  private static final int FULLY_QUALIFIED_8 = 7 << 5;
+
+  private static final int END = TlvReader.TYPE_END_OF_CONTAINER;
+
+  @Test
+  public void readsIntegersAndStrings() throws InvalidSetupCodeException {
+    TlvReader reader =
+        reader(
+            IMPLICIT_2 | TlvReader.TYPE_INT8, 0x01, 0x00, 0xFF,
+            IMPLICIT_2 | TlvReader.TYPE_UINT8, 0x02, 0x00, 0xFF,
+            IMPLICIT_2 | 0x02, 0x03, 0x00, 0x00, 0x00, 0x00, 0x80, // Int32.
+            IMPLICIT_2 | TlvReader.TYPE_INT64, 0x04, 0x00, 1, 0, 0, 0, 0, 0, 0, 0x80,
+            IMPLICIT_2 | TlvReader.TYPE_UTF8_STRING_1, 0x05, 0x00, 3, 'a', 'b', 'c',
+            // A string ends at its first NUL, as in C.
+            IMPLICIT_2 | TlvReader.TYPE_UTF8_STRING_1, 0x06, 0x00, 3, 'a', 0, 'c');
+
+    assertTrue(reader.next());
+    assertTrue(reader.isInteger());
+    assertEquals(TlvReader.TYPE_INT8, reader.getElementType());
+    assertEquals(PROFILE_ID << 32 | 1, reader.getTag());
+    assertEquals(-1, reader.getLong());
+
+    assertTrue(reader.next());
+    assertEquals(255, reader.getLong());
+
+    assertTrue(reader.next());
+    assertEquals(Integer.MIN_VALUE, reader.getLong());
+
+    assertTrue(reader.next());
+    assertEquals(Long.MIN_VALUE + 1, reader.getLong());
+
+    assertTrue(reader.next());
+    assertTrue(reader.isUtf8String());
+    assertFalse(reader.isInteger());
+    assertEquals("abc", reader.getString());
+
+    assertTrue(reader.next());
+    assertEquals("a", reader.getString());
+
+    assertFalse(reader.next());
+    assertFalse(reader.next());
+  }
+
+  @Test
+  public void readsTagForms() throws InvalidSetupCodeException {
+    TlvReader reader =
+        reader(
+            FULLY_QUALIFIED_6 | TlvReader.TYPE_UINT8, 0x34, 0x12, 0x78, 0x56, 0x02, 0x01, 7,
+            FULLY_QUALIFIED_8 | TlvReader.TYPE_UINT8, 0x34, 0x12, 0x78, 0x56, 1, 2, 3, 4, 7,
+            (3 << 5) | TlvReader.TYPE_UINT8, 1, 2, 3, 4, 7); // Common profile, 4 bytes.
+
+    assertTrue(reader.next());
+    assertEquals(0x12345678_00000102L, reader.getTag());
+    assertTrue(reader.next());
+    assertEquals(0x12345678_04030201L, reader.getTag());
+    assertTrue(reader.next());
+    assertEquals(0x04030201L, reader.getTag());
+    assertFalse(reader.next());
+  }
+
+  @Test
+  public void entersStructure() throws InvalidSetupCodeException {
+    TlvReader reader =
+        reader(
+            IMPLICIT_2 | TlvReader.TYPE_STRUCTURE, 0x00, 0x00,
+            CONTEXT | TlvReader.TYPE_UINT8, 0x03, 12,
+            CONTEXT | TlvReader.TYPE_UTF8_STRING_1, 0x80, 2, '4', '2',
+            END,
+            // Not read: the reader stays in the container entered.
+            IMPLICIT_2 | TlvReader.TYPE_UINT8, 0x01, 0x00, 1);
+
+    assertTrue(reader.next());
+    assertEquals(TlvReader.TYPE_STRUCTURE, reader.getElementType());
+    reader.enterContainer();
+
+    assertTrue(reader.next());
+    assertEquals(TlvReader.SPECIAL_TAG_MARKER | 3, reader.getTag());
+    assertEquals(12, reader.getLong());
+    assertTrue(reader.next());
+    assertEquals(TlvReader.SPECIAL_TAG_MARKER | 0x80, reader.getTag());
+    assertEquals("42", reader.getString());
+    assertFalse(reader.next());
+  }
+
+  @Test
+  public void skipsContainersNotEntered() throws InvalidSetupCodeException {
+    TlvReader reader =
+        reader(
+            IMPLICIT_2 | TlvReader.TYPE_ARRAY, 0x01, 0x00,
+            ANONYMOUS | TlvReader.TYPE_STRUCTURE,
+            CONTEXT | TlvReader.TYPE_UINT8, 0x01, 1,
+            CONTEXT | TlvReader.TYPE_ARRAY, 0x02,
+            ANONYMOUS | TlvReader.TYPE_UINT8, 2,
+            END,
+            END,
+            END,
+            IMPLICIT_2 | TlvReader.TYPE_UINT8, 0x02, 0x00, 3);
+
+    assertTrue(reader.next());
+    assertEquals(TlvReader.TYPE_ARRAY, reader.getElementType());
+    assertTrue(reader.next());
+    assertEquals(PROFILE_ID << 32 | 2, reader.getTag());
+    assertEquals(3, reader.getLong());
+    assertFalse(reader.next());
+  }
+
+  @Test
+  public void endsContainerTruncatedByEndOfData() throws InvalidSetupCodeException {
+    // As the C++ reader does.
+    TlvReader reader =
+        reader(
+            IMPLICIT_2 | TlvReader.TYPE_STRUCTURE, 0x00, 0x00,
+            CONTEXT | TlvReader.TYPE_UINT8, 0x03, 12);
+
+    assertTrue(reader.next());
+    reader.enterContainer();
+    assertTrue(reader.next());
+    assertFalse(reader.next());
+
+    TlvReader skipping = reader(IMPLICIT_2 | TlvReader.TYPE_STRUCTURE, 0x00, 0x00);
+    assertTrue(skipping.next());
+    assertFalse(skipping.next());
+  }
+
+  @Test
+  public void rejectsTruncatedElements() throws InvalidSetupCodeException {
+    assertInvalid(IMPLICIT_2 | TlvReader.TYPE_UINT8, 0x01);
+    assertInvalid(IMPLICIT_2 | TlvReader.TYPE_UINT8, 0x01, 0x00);
+    assertInvalid(IMPLICIT_2 | 0x02, 0x01, 0x00, 1, 2, 3);
+    assertInvalid(IMPLICIT_2 | 0x0A, 0x01, 0x00, 1, 2, 3); // Float.
+    assertInvalid(IMPLICIT_2 | TlvReader.TYPE_UTF8_STRING_1, 0x01, 0x00, 4, 'a', 'b', 'c');
+    assertInvalid(IMPLICIT_2 | TlvReader.TYPE_UTF8_STRING_1, 0x01, 0x00);
+    // A string length of 2^32 - 1 with 8 bytes.
+    assertInvalid(
+        IMPLICIT_2 | TlvReader.TYPE_UTF8_STRING_8, 0x01, 0x00, 0xFF, 0xFF, 0xFF, 0xFF, 0, 0, 0, 0);
+    assertInvalid(FULLY_QUALIFIED_8 | TlvReader.TYPE_UINT8, 0x34, 0x12, 0x78, 0x56, 1, 2, 3);
+
+    // Within a skipped container too.
+    assertInvalid(
+        IMPLICIT_2 | TlvReader.TYPE_STRUCTURE, 0x00, 0x00,
+        CONTEXT | TlvReader.TYPE_UTF8_STRING_1, 0x01, 9, 'a');
+  }
+
+  @Test
+  public void rejectsTagsInvalidInTheirContainer() throws InvalidSetupCodeException {
+    // Context tags at the top level.
+    assertInvalid(CONTEXT | TlvReader.TYPE_UINT8, 0x01, 1);
+    // End of container at the top level.
+    assertInvalid(END);
+    // Anonymous elements in a structure, and tagged ones in an array.
+    assertInvalidInContainer(
+        IMPLICIT_2 | TlvReader.TYPE_STRUCTURE, 0x00, 0x00, ANONYMOUS | TlvReader.TYPE_UINT8, 1);
+    assertInvalidInContainer(
+        IMPLICIT_2 | TlvReader.TYPE_ARRAY, 0x00, 0x00, CONTEXT | TlvReader.TYPE_UINT8, 0x01, 1);
+    // A tagged end of container.
+    assertInvalidInContainer(IMPLICIT_2 | TlvReader.TYPE_STRUCTURE, 0x00, 0x00, CONTEXT | END, 1);
+  }
+
+  @Test
+  public void rejectsInvalidTypes() throws InvalidSetupCodeException {
+    assertInvalid(IMPLICIT_2 | 0x19, 0x01, 0x00);
+    assertInvalid(IMPLICIT_2 | 0x1F, 0x01, 0x00);
+  }
+
+  @Test
+  public void entersOnlyContainers() throws InvalidSetupCodeException {
+    TlvReader reader =
+        reader(
+            IMPLICIT_2 | TlvReader.TYPE_UINT8, 0x01, 0x00, 1,
+            IMPLICIT_2 | TlvReader.TYPE_STRUCTURE, 0x00, 0x00,
+            CONTEXT | TlvReader.TYPE_STRUCTURE, 0x01,
+            END,
+            END);
+
+    assertThrows(InvalidSetupCodeException.class, reader::enterContainer);
+    assertTrue(reader.next());
+    assertThrows(InvalidSetupCodeException.class, reader::enterContainer);
+    assertTrue(reader.next());
+    reader.enterContainer();
+    assertTrue(reader.next());
+    // Only one level down.
+    assertThrows(InvalidSetupCodeException.class, reader::enterContainer);
+    assertFalse(reader.next());
+  }
+
+  @Test
+  public void readsFromOffset() throws InvalidSetupCodeException {
+    byte[] bytes = bytes(0xFF, IMPLICIT_2 | TlvReader.TYPE_UINT8, 0x01, 0x00, 5, 0xFF);
+    TlvReader reader = new TlvReader(PROFILE_ID);
+    reader.init(bytes, 1, bytes.length - 2);
+
+    assertTrue(reader.next());
+    assertEquals(5, reader.getLong());
+    assertFalse(reader.next());
+  }
+
+  private static void assertInvalid(int... encoding) {
+    TlvReader reader = reader(encoding);
+    assertThrows(
+        InvalidSetupCodeException.class,
+        () -> {
+          while (reader.next()) {}
+        });
+  }
+
+  private static void assertInvalidInContainer(int... encoding) {
+    TlvReader reader = reader(encoding);
+    assertThrows(
+        InvalidSetupCodeException.class,
+        () -> {
+          assertTrue(reader.next());
+          reader.enterContainer();
+          while (reader.next()) {}
+        });
+  }
+
+  private static TlvReader reader(int... encoding) {
+    byte[] bytes = bytes(encoding);
+    TlvReader reader = new TlvReader(PROFILE_ID);
+    reader.init(bytes, 0, bytes.length);
+    return reader;
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ *   Copyright (c) 2020 Project CHIP Authors
+ *   All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package chip.setuppayload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class Verhoeff10Test {
+
+  @Test
+  public void computesKnownCheckDigits() {
+    assertEquals('3', check("236"));
+    assertEquals('1', check("12345"));
+    assertEquals('0', check("142857"));
+    assertEquals('0', check(""));
+    // The check digit of TestManualCode.cpp's code "02684354589" is not 9.
+    assertNotEquals('9', check("0268435458"));
+  }
+
+  @Test
+  public void computesOverRange() {
+    assertEquals(check("236"), Verhoeff10.computeCheckChar("x236y", 1, 4));
+  }
+
+  @Test
+  public void rejectsNonDigits() {
+    assertEquals(0, check("24184.2196"));
+    assertEquals(0, check("12a"));
+    assertEquals(0, check("/"));
+    assertEquals(0, check(":"));
+  }
+
+  @Test
+  public void detectsSingleDigitErrorsAndAdjacentTranspositions() {
+    Random random = new Random(10);
+    for (int i = 0; i < 200; i++) {
+      char[] digits = new char[1 + random.nextInt(20)];
+      for (int j = 0; j < digits.length; j++) {
+        digits[j] = (char) ('0' + random.nextInt(10));
+      }
+      char expected = check(new String(digits));
+
+      for (int j = 0; j < digits.length; j++) {
+        char original = digits[j];
+        for (char c = '0'; c <= '9'; c++) {
+          if (c != original) {
+            digits[j] = c;
+            assertNotEquals(expected, check(new String(digits)));
+          }
+        }
+        digits[j] = original;
+
+        if (j + 1 < digits.length && digits[j] != digits[j + 1]) {
+          digits[j] = digits[j + 1];
+          digits[j + 1] = original;
+          assertNotEquals(expected, check(new String(digits)));
+          digits[j + 1] = digits[j];
+          digits[j] = original;
+        }
+      }
+    }
+  }
+
+  private static char check(String digits) {
+    return Verhoeff10.computeCheckChar(digits, 0, digits.length());
+  }
+}
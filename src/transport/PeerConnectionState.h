@@ -63,6 +63,7 @@ public:
 
     uint32_t GetSendMessageIndex() const { return mSendMessageIndex; }
     void IncrementSendMessageIndex() { mSendMessageIndex++; }
+    void SetSendMessageIndex(uint32_t index) { mSendMessageIndex = index; }
 
     uint32_t GetPeerKeyID() const { return mPeerKeyID; }
     void SetPeerKeyID(uint32_t id) { mPeerKeyID = id; }
@@ -28,6 +28,7 @@
  *
  */
 
+#include <core/CHIPEncoding.h>
 #include <core/CHIPSafeCasts.h>
 #include <support/BufBound.h>
 #include <support/CodeUtils.h>
@@ -74,9 +75,11 @@ CHIP_ERROR SecurePairingSession::Init(uint32_t setupCode, uint32_t pbkdf2IterCou
     {
         mDelegate->Release();
     }
-    mDelegate    = delegate->Retain();
-    mLocalNodeId = myNodeId;
-    mKeyId       = myKeyId;
+    mDelegate              = delegate->Retain();
+    mLocalNodeId           = myNodeId;
+    mKeyId                 = myKeyId;
+    mNextSendMessageIndex  = 0;
+    mSendMessageIndexLimit = 0;
 
 exit:
     return err;
@@ -201,6 +204,101 @@ exit:
     return err;
 }
 
+CHIP_ERROR SecurePairingSession::Serialize(uint8_t * buf, size_t & inOutLen) const
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    VerifyOrExit(buf != nullptr, err = CHIP_ERROR_INVALID_ARGUMENT);
+    VerifyOrExit(mPairingComplete, err = CHIP_ERROR_INCORRECT_STATE);
+
+    {
+        BufBound bbuf(buf, inOutLen);
+        bbuf.Put(kSerializedVersion);
+        bbuf.PutLE16(static_cast<uint16_t>(mKeLen));
+        bbuf.Put(mKe, mKeLen);
+        bbuf.PutLE16(mKeyId);
+        bbuf.PutLE16(mPeerKeyId);
+        bbuf.PutLE32(mSendMessageIndexLimit);
+        bbuf.Put(static_cast<uint8_t>(mPeerNodeId.HasValue() ? 1 : 0));
+        if (mPeerNodeId.HasValue())
+        {
+            bbuf.PutLE64(mPeerNodeId.Value());
+        }
+        VerifyOrExit(bbuf.Fit(), err = CHIP_ERROR_BUFFER_TOO_SMALL);
+
+        inOutLen = bbuf.Written();
+    }
+
+exit:
+    return err;
+}
+
+CHIP_ERROR SecurePairingSession::Deserialize(const uint8_t * buf, size_t len)
+{
+    CHIP_ERROR err    = CHIP_NO_ERROR;
+    const uint8_t * p = buf;
+    const uint8_t * end;
+    uint16_t keLen;
+    uint8_t hasPeerNodeId;
+
+    VerifyOrExit(buf != nullptr, err = CHIP_ERROR_INVALID_ARGUMENT);
+    end = buf + len;
+
+    VerifyOrExit(end - p >= 3, err = CHIP_ERROR_INVALID_MESSAGE_LENGTH);
+    VerifyOrExit(Encoding::Read8(p) == kSerializedVersion, err = CHIP_ERROR_VERSION_MISMATCH);
+    keLen = Encoding::LittleEndian::Read16(p);
+    VerifyOrExit(keLen > 0 && keLen <= sizeof(mKe), err = CHIP_ERROR_INVALID_MESSAGE_LENGTH);
+    VerifyOrExit(end - p >= keLen + 9, err = CHIP_ERROR_INVALID_MESSAGE_LENGTH);
+
+    memcpy(mKe, p, keLen);
+    p += keLen;
+    mKeLen                 = keLen;
+    mKeyId                 = Encoding::LittleEndian::Read16(p);
+    mPeerKeyId             = Encoding::LittleEndian::Read16(p);
+    mSendMessageIndexLimit = Encoding::LittleEndian::Read32(p);
+    hasPeerNodeId          = Encoding::Read8(p);
+
+    if (hasPeerNodeId)
+    {
+        VerifyOrExit(end - p >= static_cast<ptrdiff_t>(sizeof(NodeId)), err = CHIP_ERROR_INVALID_MESSAGE_LENGTH);
+        mPeerNodeId.SetValue(Encoding::LittleEndian::Read64(p));
+    }
+    else
+    {
+        mPeerNodeId.ClearValue();
+    }
+    VerifyOrExit(p == end, err = CHIP_ERROR_INVALID_MESSAGE_LENGTH);
+
+    // Every index below the limit may have been sent before the pairing was stored.
+    mNextSendMessageIndex = mSendMessageIndexLimit;
+    mNextExpectedMsg      = Spake2pMsgType::kSpake2pMsgTypeMax;
+    mPairingComplete      = true;
+
+exit:
+    if (err != CHIP_NO_ERROR)
+    {
+        memset(&mKe[0], 0, sizeof(mKe));
+        mPairingComplete = false;
+    }
+    return err;
+}
+
+CHIP_ERROR SecurePairingSession::ReserveSendMessageIndexes(uint32_t count)
+{
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    VerifyOrExit(mPairingComplete, err = CHIP_ERROR_INCORRECT_STATE);
+    VerifyOrExit(mNextSendMessageIndex <= UINT32_MAX - count, err = CHIP_ERROR_INVALID_USE_OF_SESSION_KEY);
+
+    if (mSendMessageIndexLimit < mNextSendMessageIndex + count)
+    {
+        mSendMessageIndexLimit = mNextSendMessageIndex + count;
+    }
+
+exit:
+    return err;
+}
+
 CHIP_ERROR SecurePairingSession::HandleCompute_pA(const MessageHeader & header, System::PacketBuffer * msg)
 {
     CHIP_ERROR err = CHIP_NO_ERROR;
@@ -139,6 +139,87 @@ public:
      */
     CHIP_ERROR HandlePeerMessage(MessageHeader & header, System::PacketBuffer * msg);
 
+    /**
+     * @brief
+     *   Whether the pairing handshake has completed, or a completed pairing
+     *   has been restored with Deserialize().
+     */
+    bool IsPaired() const { return mPairingComplete; }
+
+    /**
+     * @brief
+     *   Serialize the state of a completed pairing: the shared secret, the key
+     *   IDs, the peer node ID and the send message index limit. The output is
+     *   secret key material, to be kept in a protected store.
+     *
+     * @param buf         Output buffer, at least kMaxSerializedLength bytes
+     *                    for any pairing
+     * @param inOutLen    Size of the buffer in, length of the output out
+     * @return CHIP_ERROR The result of serialization
+     */
+    CHIP_ERROR Serialize(uint8_t * buf, size_t & inOutLen) const;
+
+    /**
+     * @brief
+     *   Restore a completed pairing from the output of Serialize(), so that
+     *   new secure sessions can be derived without a new handshake. Sessions
+     *   derived from it send from the stored send message index limit, which
+     *   must be raised with ReserveSendMessageIndexes(), and stored, before
+     *   the first message is sent.
+     *
+     * @param buf         Serialized pairing
+     * @param len         Length of the serialized pairing
+     * @return CHIP_ERROR The result of deserialization
+     */
+    CHIP_ERROR Deserialize(const uint8_t * buf, size_t len);
+
+    /** Node ID of the peer, if it was given during pairing. */
+    const Optional<NodeId> & GetPeerNodeId() const { return mPeerNodeId; }
+
+    /** Key ID assigned by the local node to the session on the peer node. */
+    uint16_t GetLocalKeyId() const { return mKeyId; }
+
+    /** Key ID assigned by the peer node to the session on the local node. */
+    uint16_t GetPeerKeyId() const { return mPeerKeyId; }
+
+    /**
+     * @brief
+     *   Index of the first message sent on the next secure session derived
+     *   from the pairing.
+     *
+     *   Every session derived from a pairing has the same keys, and the
+     *   message index is the nonce of the messages sent with them, so it must
+     *   never go back: it is 0 after a handshake, and the send message index
+     *   limit after Deserialize(). The owner of the pairing advances it for
+     *   every message it sends.
+     */
+    uint32_t GetNextSendMessageIndex() const { return mNextSendMessageIndex; }
+    void SetNextSendMessageIndex(uint32_t index) { mNextSendMessageIndex = index; }
+
+    /**
+     * @brief
+     *   Index from which no message has been sent with the keys of the
+     *   pairing. It is serialized, so that sessions derived after a restart
+     *   do not reuse the indexes sent before it.
+     */
+    uint32_t GetSendMessageIndexLimit() const { return mSendMessageIndexLimit; }
+
+    /**
+     * @brief
+     *   Raise the send message index limit to count indexes past the next
+     *   send message index. The pairing has to be stored again before sending
+     *   messages up to the new limit.
+     *
+     * @param count       Number of message indexes to reserve
+     * @return CHIP_ERROR CHIP_ERROR_INVALID_USE_OF_SESSION_KEY when the
+     *                    message indexes of the pairing are exhausted, and it
+     *                    has to be replaced by a new handshake
+     */
+    CHIP_ERROR ReserveSendMessageIndexes(uint32_t count);
+
+    static constexpr uint8_t kSerializedVersion  = 2;
+    static constexpr size_t kMaxSerializedLength = 1 + 2 + kMAX_Hash_Length + 2 + 2 + 4 + 1 + sizeof(NodeId);
+
 private:
     CHIP_ERROR Init(uint32_t setupCode, uint32_t pbkdf2IterCount, const uint8_t * salt, size_t saltLen, Optional<NodeId> myNodeId,
                     uint16_t myKeyId, SecurePairingSessionDelegate * delegate);
@@ -184,6 +265,10 @@ private:
     uint16_t mKeyId;
 
     uint16_t mPeerKeyId;
+
+    uint32_t mNextSendMessageIndex = 0;
+
+    uint32_t mSendMessageIndexLimit = 0;
 };
 
 /*
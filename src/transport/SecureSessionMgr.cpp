@@ -189,12 +189,26 @@ CHIP_ERROR SecureSessionMgrBase::NewPairing(Optional<NodeId> peerNodeId, const O
     {
         err = pairing->DeriveSecureSession((const uint8_t *) kSpake2pI2RSessionInfo, strlen(kSpake2pI2RSessionInfo),
                                            state->GetSecureSession());
+        SuccessOrExit(err);
+
+        // The keys are those of every earlier session of the pairing, so carry on from its message indexes.
+        state->SetSendMessageIndex(pairing->GetNextSendMessageIndex());
     }
 
 exit:
     return err;
 }
 
+void SecureSessionMgrBase::ExpirePairing(NodeId peerNodeId)
+{
+    PeerConnectionState * state = nullptr;
+
+    while (mPeerConnections.FindPeerConnectionState(peerNodeId, &state))
+    {
+        mPeerConnections.MarkConnectionExpired(state);
+    }
+}
+
 void SecureSessionMgrBase::ScheduleExpiryTimer(void)
 {
     CHIP_ERROR err =
@@ -302,6 +316,11 @@ void SecureSessionMgrBase::HandleConnectionExpired(const Transport::PeerConnecti
     state.GetPeerAddress().ToString(addr, sizeof(addr));
 
     ChipLogProgress(Inet, "Connection from '%s' expired", addr);
+
+    if (mgr->mCB != nullptr)
+    {
+        mgr->mCB->OnConnectionExpired(state, mgr);
+    }
 }
 
 void SecureSessionMgrBase::ExpiryTimerCallback(System::Layer * layer, void * param, System::Error error)
@@ -86,6 +86,15 @@ public:
      */
     virtual void OnNewConnection(Transport::PeerConnectionState * state, SecureSessionMgrBase * mgr) {}
 
+    /**
+     * @brief
+     *   Called when a connection expires, either because it was idle for too long or because it was
+     *   replaced or expired by the application. The state is cleared once this returns.
+     *
+     * @param state connection state
+     */
+    virtual void OnConnectionExpired(const Transport::PeerConnectionState & state, SecureSessionMgrBase * mgr) {}
+
     virtual ~SecureSessionMgrCallback() {}
 };
 
@@ -133,6 +142,16 @@ public:
     CHIP_ERROR NewPairing(Optional<NodeId> peerNodeId, const Optional<Transport::PeerAddress> & peerAddr, uint16_t peerKeyId,
                           uint16_t localKeyId, SecurePairingSession * pairing);
 
+    /**
+     * @brief
+     *   Remove any pairing established with a peer node
+     *
+     * @details
+     *   This method expires every connection state associated with the
+     *   peer node, so that the slots can be reused for other peers.
+     */
+    void ExpirePairing(NodeId peerNodeId);
+
 protected:
     /**
      * @brief
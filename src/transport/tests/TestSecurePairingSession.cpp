@@ -131,6 +131,121 @@ void SecurePairingHandshakeTest(nlTestSuite * inSuite, void * inContext)
     NL_TEST_ASSERT(inSuite, deleageCommissioner.mNumPairingComplete == 1);
 }
 
+// The delegates are released by the pairings, so they have to outlive them.
+void SecurePairingHandshake(nlTestSuite * inSuite, TestSecurePairingDelegate (&delegates)[2], SecurePairingSession & accessory,
+                            SecurePairingSession & commissioner)
+{
+    delegates[0].peer = &commissioner;
+    delegates[1].peer = &accessory;
+
+    NL_TEST_ASSERT(inSuite,
+                   accessory.WaitForPairing(1234, 500, (const uint8_t *) "salt", 4, Optional<NodeId>::Value(1), 1, &delegates[0]) ==
+                       CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite,
+                   commissioner.Pair(1234, 500, (const uint8_t *) "salt", 4, Optional<NodeId>::Value(2), 2, &delegates[1]) ==
+                       CHIP_NO_ERROR);
+
+    NL_TEST_ASSERT(inSuite, accessory.IsPaired());
+    NL_TEST_ASSERT(inSuite, commissioner.IsPaired());
+}
+
+void SecurePairingSerializeTest(nlTestSuite * inSuite, void * inContext)
+{
+    TestSecurePairingDelegate delegates[2];
+    SecurePairingSession pairingAccessory, pairingCommissioner, restored;
+    uint8_t serialized[SecurePairingSession::kMaxSerializedLength];
+    uint8_t reserialized[SecurePairingSession::kMaxSerializedLength];
+    size_t serializedLen   = sizeof(serialized);
+    size_t reserializedLen = sizeof(reserialized);
+
+    // Only a completed pairing can be serialized.
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.Serialize(serialized, serializedLen) == CHIP_ERROR_INCORRECT_STATE);
+
+    SecurePairingHandshake(inSuite, delegates, pairingAccessory, pairingCommissioner);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.ReserveSendMessageIndexes(100) == CHIP_NO_ERROR);
+
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.Serialize(serialized, serializedLen) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, serializedLen <= SecurePairingSession::kMaxSerializedLength);
+    NL_TEST_ASSERT(inSuite, serialized[0] == SecurePairingSession::kSerializedVersion);
+
+    NL_TEST_ASSERT(inSuite, restored.Deserialize(serialized, serializedLen) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, restored.IsPaired());
+    NL_TEST_ASSERT(inSuite, restored.GetLocalKeyId() == pairingCommissioner.GetLocalKeyId());
+    NL_TEST_ASSERT(inSuite, restored.GetPeerKeyId() == pairingCommissioner.GetPeerKeyId());
+    NL_TEST_ASSERT(inSuite, restored.GetPeerNodeId() == pairingCommissioner.GetPeerNodeId());
+    NL_TEST_ASSERT(inSuite, restored.GetSendMessageIndexLimit() == 100);
+
+    // The indexes below the stored limit may have been sent before, so the restored pairing sends from the limit.
+    NL_TEST_ASSERT(inSuite, restored.GetNextSendMessageIndex() == 100);
+
+    NL_TEST_ASSERT(inSuite, restored.Serialize(reserialized, reserializedLen) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, reserializedLen == serializedLen);
+    NL_TEST_ASSERT(inSuite, memcmp(reserialized, serialized, serializedLen) == 0);
+
+    // The output does not fit in a buffer one byte short.
+    reserializedLen = serializedLen - 1;
+    NL_TEST_ASSERT(inSuite, restored.Serialize(reserialized, reserializedLen) == CHIP_ERROR_BUFFER_TOO_SMALL);
+}
+
+void SecurePairingDeserializeVersionTest(nlTestSuite * inSuite, void * inContext)
+{
+    TestSecurePairingDelegate delegates[2];
+    SecurePairingSession pairingAccessory, pairingCommissioner, restored;
+    uint8_t serialized[SecurePairingSession::kMaxSerializedLength];
+    size_t serializedLen = sizeof(serialized);
+
+    SecurePairingHandshake(inSuite, delegates, pairingAccessory, pairingCommissioner);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.Serialize(serialized, serializedLen) == CHIP_NO_ERROR);
+
+    // Version 1 pairings did not store the send message index limit, so they cannot be resumed safely.
+    serialized[0] = SecurePairingSession::kSerializedVersion - 1;
+    NL_TEST_ASSERT(inSuite, restored.Deserialize(serialized, serializedLen) == CHIP_ERROR_VERSION_MISMATCH);
+    NL_TEST_ASSERT(inSuite, !restored.IsPaired());
+
+    serialized[0] = SecurePairingSession::kSerializedVersion + 1;
+    NL_TEST_ASSERT(inSuite, restored.Deserialize(serialized, serializedLen) == CHIP_ERROR_VERSION_MISMATCH);
+    NL_TEST_ASSERT(inSuite, !restored.IsPaired());
+
+    serialized[0] = SecurePairingSession::kSerializedVersion;
+    NL_TEST_ASSERT(inSuite, restored.Deserialize(serialized, serializedLen - 1) == CHIP_ERROR_INVALID_MESSAGE_LENGTH);
+    NL_TEST_ASSERT(inSuite, !restored.IsPaired());
+
+    NL_TEST_ASSERT(inSuite, restored.Deserialize(serialized, serializedLen) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, restored.IsPaired());
+}
+
+void SecurePairingReserveTest(nlTestSuite * inSuite, void * inContext)
+{
+    TestSecurePairingDelegate delegates[2];
+    SecurePairingSession pairingAccessory, pairingCommissioner;
+
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.ReserveSendMessageIndexes(100) == CHIP_ERROR_INCORRECT_STATE);
+
+    SecurePairingHandshake(inSuite, delegates, pairingAccessory, pairingCommissioner);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.GetNextSendMessageIndex() == 0);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.GetSendMessageIndexLimit() == 0);
+
+    // The window starts at the next send message index.
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.ReserveSendMessageIndexes(100) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.GetSendMessageIndexLimit() == 100);
+
+    // A window within the reserved indexes leaves the limit alone, it never goes back.
+    pairingCommissioner.SetNextSendMessageIndex(40);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.ReserveSendMessageIndexes(10) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.GetSendMessageIndexLimit() == 100);
+
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.ReserveSendMessageIndexes(100) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.GetSendMessageIndexLimit() == 140);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.GetNextSendMessageIndex() == 40);
+
+    // The last index can be reserved, but not past it.
+    pairingCommissioner.SetNextSendMessageIndex(UINT32_MAX - 10);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.ReserveSendMessageIndexes(11) == CHIP_ERROR_INVALID_USE_OF_SESSION_KEY);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.GetSendMessageIndexLimit() == 140);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.ReserveSendMessageIndexes(10) == CHIP_NO_ERROR);
+    NL_TEST_ASSERT(inSuite, pairingCommissioner.GetSendMessageIndexLimit() == UINT32_MAX);
+}
+
 // Test Suite
 
 /**
@@ -142,6 +257,9 @@ static const nlTest sTests[] =
     NL_TEST_DEF("WaitInit",    SecurePairingWaitTest),
     NL_TEST_DEF("Start",       SecurePairingStartTest),
     NL_TEST_DEF("Handshake",   SecurePairingHandshakeTest),
+    NL_TEST_DEF("Serialize",   SecurePairingSerializeTest),
+    NL_TEST_DEF("Version",     SecurePairingDeserializeVersionTest),
+    NL_TEST_DEF("Reserve",     SecurePairingReserveTest),
 
     NL_TEST_SENTINEL()
 };
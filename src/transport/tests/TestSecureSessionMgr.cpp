@@ -47,6 +47,9 @@ static const char PAYLOAD[]         = "Hello!";
 constexpr NodeId kSourceNodeId      = 123654;
 constexpr NodeId kDestinationNodeId = 111222333;
 
+// Past the message indexes reserved by the pairing before it was stored.
+constexpr uint32_t kResumedMessageIndex = 4096;
+
 class LoopbackTransport : public Transport::Base
 {
 public:
@@ -77,14 +80,23 @@ public:
         int compare = memcmp(msgBuf->Start(), PAYLOAD, data_len);
         NL_TEST_ASSERT(mSuite, compare == 0);
 
+        LastMessageId = header.GetMessageId();
         ReceiveHandlerCallCount++;
     }
 
     virtual void OnNewConnection(PeerConnectionState * state, SecureSessionMgrBase * mgr) { NewConnectionHandlerCallCount++; }
 
+    virtual void OnConnectionExpired(const PeerConnectionState & state, SecureSessionMgrBase * mgr)
+    {
+        NL_TEST_ASSERT(mSuite, state.GetPeerNodeId() == kDestinationNodeId);
+        ConnectionExpiredCallCount++;
+    }
+
     nlTestSuite * mSuite              = nullptr;
     int ReceiveHandlerCallCount       = 0;
     int NewConnectionHandlerCallCount = 0;
+    int ConnectionExpiredCallCount    = 0;
+    uint32_t LastMessageId            = 0;
 };
 
 TestSessMgrCallback callback;
@@ -147,6 +159,96 @@ void CheckMessageTest(nlTestSuite * inSuite, void * inContext)
     NL_TEST_ASSERT(inSuite, callback.ReceiveHandlerCallCount == 1);
 }
 
+void CheckExpirePairingTest(nlTestSuite * inSuite, void * inContext)
+{
+    TestContext & ctx = *reinterpret_cast<TestContext *>(inContext);
+
+    size_t payload_len = sizeof(PAYLOAD);
+
+    ctx.GetInetLayer().SystemLayer()->Init(NULL);
+
+    chip::System::PacketBuffer * buffer = chip::System::PacketBuffer::NewWithAvailableSize(payload_len);
+    memmove(buffer->Start(), PAYLOAD, payload_len);
+    buffer->SetDataLength(payload_len);
+
+    IPAddress addr;
+    IPAddress::FromString("127.0.0.1", addr);
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    SecureSessionMgr<LoopbackTransport> conn;
+
+    err = conn.Init(kSourceNodeId, ctx.GetInetLayer().SystemLayer(), "LOOPBACK");
+    NL_TEST_ASSERT(inSuite, err == CHIP_NO_ERROR);
+
+    SecurePairingUsingTestSecret pairing;
+    Optional<Transport::PeerAddress> peer(Transport::PeerAddress::UDP(addr, CHIP_PORT));
+
+    callback.mSuite                     = inSuite;
+    callback.ConnectionExpiredCallCount = 0;
+    conn.SetDelegate(&callback);
+
+    err = conn.NewPairing(Optional<NodeId>::Value(kDestinationNodeId), peer, 2, 1, &pairing);
+    NL_TEST_ASSERT(inSuite, err == CHIP_NO_ERROR);
+
+    conn.ExpirePairing(kDestinationNodeId);
+    NL_TEST_ASSERT(inSuite, callback.ConnectionExpiredCallCount == 1);
+
+    // Once the pairing is gone there is no connection left to send on.
+    err = conn.SendMessage(kDestinationNodeId, buffer);
+    NL_TEST_ASSERT(inSuite, err == CHIP_ERROR_INVALID_DESTINATION_NODE_ID);
+}
+
+void CheckResumedPairingMessageIndexTest(nlTestSuite * inSuite, void * inContext)
+{
+    TestContext & ctx = *reinterpret_cast<TestContext *>(inContext);
+
+    size_t payload_len = sizeof(PAYLOAD);
+
+    ctx.GetInetLayer().SystemLayer()->Init(NULL);
+
+    IPAddress addr;
+    IPAddress::FromString("127.0.0.1", addr);
+    CHIP_ERROR err = CHIP_NO_ERROR;
+
+    SecureSessionMgr<LoopbackTransport> conn;
+
+    err = conn.Init(kSourceNodeId, ctx.GetInetLayer().SystemLayer(), "LOOPBACK");
+    NL_TEST_ASSERT(inSuite, err == CHIP_NO_ERROR);
+
+    callback.mSuite = inSuite;
+
+    conn.SetDelegate(&callback);
+
+    SecurePairingUsingTestSecret pairing1, pairing2;
+    Optional<Transport::PeerAddress> peer(Transport::PeerAddress::UDP(addr, CHIP_PORT));
+
+    // A connection derived from a pairing sends from the pairing's next index, as a restored pairing does past its window.
+    pairing2.SetNextSendMessageIndex(kResumedMessageIndex);
+
+    err = conn.NewPairing(Optional<NodeId>::Value(kSourceNodeId), peer, 1, 2, &pairing1);
+    NL_TEST_ASSERT(inSuite, err == CHIP_NO_ERROR);
+
+    err = conn.NewPairing(Optional<NodeId>::Value(kDestinationNodeId), peer, 2, 1, &pairing2);
+    NL_TEST_ASSERT(inSuite, err == CHIP_NO_ERROR);
+
+    for (uint32_t i = 0; i < 2; i++)
+    {
+        chip::System::PacketBuffer * buffer = chip::System::PacketBuffer::NewWithAvailableSize(payload_len);
+        memmove(buffer->Start(), PAYLOAD, payload_len);
+        buffer->SetDataLength(payload_len);
+
+        callback.ReceiveHandlerCallCount = 0;
+
+        err = conn.SendMessage(kDestinationNodeId, buffer);
+        NL_TEST_ASSERT(inSuite, err == CHIP_NO_ERROR);
+
+        ctx.DriveIOUntil(1000 /* ms */, []() { return callback.ReceiveHandlerCallCount != 0; });
+
+        NL_TEST_ASSERT(inSuite, callback.ReceiveHandlerCallCount == 1);
+        NL_TEST_ASSERT(inSuite, callback.LastMessageId == kResumedMessageIndex + i);
+    }
+}
+
 // Test Suite
 
 /**
@@ -157,6 +259,8 @@ const nlTest sTests[] =
 {
     NL_TEST_DEF("Simple Init Test",              CheckSimpleInitTest),
     NL_TEST_DEF("Message Self Test",             CheckMessageTest),
+    NL_TEST_DEF("Expire Pairing Test",           CheckExpirePairingTest),
+    NL_TEST_DEF("Resumed Pairing Index Test",    CheckResumedPairingMessageIndexTest),
 
     NL_TEST_SENTINEL()
 };